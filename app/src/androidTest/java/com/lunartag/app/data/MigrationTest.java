@@ -0,0 +1,237 @@
+package com.lunartag.app.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.lunartag.app.model.AuditLog;
+import com.lunartag.app.model.PhotoWithDetails;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs every migration in {@link DatabaseMigrations} against the schemas Room exported to
+ * app/schemas (packaged as androidTest assets): each step on its own, then 1 -> current in one go.
+ * MigrationTestHelper validates every table, index, foreign key and FTS table against the
+ * exported schema of the target version, so a migration that drifts from its entity fails here
+ * instead of on a user's first open.
+ *
+ * app/schemas is filled by tools/export_room_schemas.sh (room-compiler at each version's commit);
+ * until it has been run, every test here fails for want of a schema asset.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String DB_NAME = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void migrate1To2() throws IOException {
+        close(helper.createDatabase(DB_NAME, 1));
+        close(helper.runMigrationsAndValidate(DB_NAME, 2, true, DatabaseMigrations.MIGRATION_1_2));
+    }
+
+    @Test
+    public void migrate2To3() throws IOException {
+        close(helper.createDatabase(DB_NAME, 2));
+        close(helper.runMigrationsAndValidate(DB_NAME, 3, true, DatabaseMigrations.MIGRATION_2_3));
+    }
+
+    @Test
+    public void migrate3To4() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 3);
+        long id = insertV1Photo(db, "Mill Lane 4");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(DB_NAME, 4, true, DatabaseMigrations.MIGRATION_3_4);
+        // Existing rows get "unknown" (0) for the new columns.
+        assertEquals(0, queryLong(db, "SELECT jpegQuality FROM photos WHERE id = " + id));
+        assertEquals(0, queryLong(db, "SELECT fileSizeBytes FROM photos WHERE id = " + id));
+        db.close();
+    }
+
+    @Test
+    public void migrate4To5() throws IOException {
+        close(helper.createDatabase(DB_NAME, 4));
+        close(helper.runMigrationsAndValidate(DB_NAME, 5, true, DatabaseMigrations.MIGRATION_4_5));
+    }
+
+    @Test
+    public void migrate5To6() throws IOException {
+        close(helper.createDatabase(DB_NAME, 5));
+        close(helper.runMigrationsAndValidate(DB_NAME, 6, true, DatabaseMigrations.MIGRATION_5_6));
+    }
+
+    @Test
+    public void migrate6To7KeepsTheDescriptiveColumns() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 6);
+        long id = insertV1Photo(db, "12 Harbour Road");
+        db.execSQL("UPDATE photos SET jpegQuality = 87, sendPath = '/send/1.jpg' WHERE id = " + id);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(DB_NAME, 7, true, DatabaseMigrations.MIGRATION_6_7);
+        assertEquals(87, queryLong(db, "SELECT jpegQuality FROM photos WHERE id = " + id));
+        assertEquals("/send/1.jpg", queryString(db, "SELECT sendPath FROM photos WHERE id = " + id));
+        assertEquals("12 Harbour Road", queryString(db, "SELECT addressHuman FROM photo_details WHERE photoId = " + id));
+        assertEquals("Lunar Field Services", queryString(db, "SELECT companyName FROM photo_details WHERE photoId = " + id));
+        db.close();
+    }
+
+    @Test
+    public void migrate7To8IndexesExistingLogs() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 7);
+        db.execSQL("INSERT INTO audit_logs (photoId, action, details, timestamp) "
+                + "VALUES (1, 'SEND_FAILED', 'upload refused by server', 1700000000000)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(DB_NAME, 8, true, DatabaseMigrations.MIGRATION_7_8);
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM audit_logs_fts WHERE audit_logs_fts MATCH 'refused'"));
+        db.close();
+    }
+
+    @Test
+    public void migrate8To9IndexesExistingDetails() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 8);
+        db.execSQL("INSERT INTO photos (filePath, assignedTimestamp, captureTimestampReal, lat, lon, "
+                + "accuracyMeters, sendScheduledAt, status, createdAt) "
+                + "VALUES ('/p/1.jpg', 1, 1, 1.5, 2.5, 5, 1, 'SENT', 1)");
+        db.execSQL("INSERT INTO photo_details (photoId, addressHuman, companyName, watermarkName) "
+                + "VALUES (1, 'Müllerstraße 3', 'Northgate Security', 'LunarTag')");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(DB_NAME, 9, true, DatabaseMigrations.MIGRATION_8_9);
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM photo_details_fts WHERE photo_details_fts MATCH 'north*'"));
+        // unicode61 folds the diacritics of existing rows too.
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM photo_details_fts WHERE photo_details_fts MATCH 'muller*'"));
+        db.close();
+    }
+
+    @Test
+    public void migrate9To10KeepsQueuedCaptures() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 9);
+        db.execSQL("INSERT INTO capture_journal (photoId, stagingPath, realTime, assignedTime, located, lat, "
+                + "lon, accuracy, fixTime, rotateViaExif, state, attempts, createdAt, updatedAt) "
+                + "VALUES (1, '/staging/1.jpg', 1, 1, 0, 0, 0, 0, 0, 0, 'QUEUED', 1, 1, 1)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(DB_NAME, 10, true, DatabaseMigrations.MIGRATION_9_10);
+        assertEquals("QUEUED", queryString(db, "SELECT state FROM capture_journal"));
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM capture_journal WHERE outputUri IS NULL"));
+        db.close();
+    }
+
+    /**
+     * A v1 install upgraded straight to the current version, then opened by Room itself: the
+     * identity hash and every table must match what the compiled AppDatabase expects.
+     */
+    @Test
+    public void migrateAllFromVersion1() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 1);
+        long id = insertV1Photo(db, "7 Station Avenue");
+        db.execSQL("INSERT INTO audit_logs (photoId, action, details, timestamp) "
+                + "VALUES (" + id + ", 'CAPTURE', 'captured offline', 1700000000000)");
+        db.close();
+
+        close(helper.runMigrationsAndValidate(DB_NAME, latestVersion(), true, DatabaseMigrations.ALL));
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        AppDatabase room = Room.databaseBuilder(context, AppDatabase.class, DB_NAME)
+                .addMigrations(DatabaseMigrations.ALL)
+                .allowMainThreadQueries()
+                .build();
+        try {
+            PhotoWithDetails photo = room.photoDao().getPhotoWithDetails(id);
+            assertNotNull(photo);
+            assertEquals("7 Station Avenue", photo.details.getAddressHuman());
+            List<AuditLog> logs = room.auditLogDao().getLogsForPhoto(id);
+            assertEquals(1, logs.size());
+            assertEquals("captured offline", logs.get(0).getDetails());
+            assertEquals(1, room.photoDao().searchFrom("\"station*\"", Long.MAX_VALUE, 10).size());
+        } finally {
+            room.close();
+        }
+    }
+
+    /**
+     * Every exported schema up to the current version has a step that leads to it, and no
+     * schema was exported past the last step.
+     */
+    @Test
+    public void everyExportedSchemaHasAMigrationStep() throws IOException {
+        int expected = 1;
+        for (Migration migration : DatabaseMigrations.ALL) {
+            assertEquals(expected, migration.startVersion);
+            assertEquals(expected + 1, migration.endVersion);
+            expected++;
+        }
+        Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+        String dir = AppDatabase.class.getCanonicalName() + "/";
+        for (int version = 1; version <= latestVersion(); version++) {
+            testContext.getAssets().open(dir + version + ".json").close();
+        }
+        try {
+            testContext.getAssets().open(dir + (latestVersion() + 1) + ".json").close();
+            fail("Schema " + (latestVersion() + 1) + " was exported without a migration to it");
+        } catch (FileNotFoundException expectedMissing) {
+            // The last step leads to the current version.
+        }
+    }
+
+    // --- Helpers ---
+
+    private static int latestVersion() {
+        return DatabaseMigrations.ALL[DatabaseMigrations.ALL.length - 1].endVersion;
+    }
+
+    /**
+     * A photo with the columns every version up to 6 has.
+     */
+    private static long insertV1Photo(SupportSQLiteDatabase db, String address) {
+        db.execSQL("INSERT INTO photos (filePath, assignedTimestamp, captureTimestampReal, lat, lon, "
+                + "accuracyMeters, addressHuman, shiftStart, shiftEnd, watermarkName, companyName, "
+                + "sendScheduledAt, status, createdAt) VALUES ('/p/1.jpg', 1700000000000, 1700000000000, "
+                + "48.85, 2.29, 5, ?, '08:00 AM', '05:00 PM', 'LunarTag', 'Lunar Field Services', "
+                + "1700000360000, 'PENDING', 1700000000000)", new Object[]{address});
+        long id = queryLong(db, "SELECT last_insert_rowid()");
+        assertTrue(id > 0);
+        return id;
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            assertTrue(sql, cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+
+    private static String queryString(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            assertTrue(sql, cursor.moveToFirst());
+            return cursor.getString(0);
+        }
+    }
+
+    private static void close(SupportSQLiteDatabase db) {
+        db.close();
+    }
+}
@@ -0,0 +1,192 @@
+package com.lunartag.app.data;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.function.IntSupplier;
+
+/**
+ * The list queries through the real PhotoDao (Room's generated cursor mapping, the platform's
+ * SQLite and CursorWindow) against the same lists read as whole rows, the way the v6 SELECT *
+ * queries read them: every column of photos and photo_details fetched per row.
+ *
+ * tools/photo_query_benchmark.py only measures Python's sqlite3 and dict(zip()), a proxy; these
+ * are the numbers for the app. Run on a device:
+ *     ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.lunartag.app.data.PhotoQueryBenchmarkTest
+ * Results are logged under the PhotoQueryBenchmark tag and reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotoQueryBenchmarkTest {
+
+    private static final String TAG = "PhotoQueryBenchmark";
+    private static final int ROWS = 20_000;
+    private static final int WARMUP = 2;
+    private static final int RUNS = 7;
+    private static final long START = 1_700_000_000_000L;
+
+    // What a v6 list query mapped: the whole photo, descriptive columns included.
+    private static final String WIDE = "SELECT * FROM photos JOIN photo_details ON photo_details.photoId = photos.id ";
+
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // On disk, not in memory: page cache and I/O are part of what a list costs.
+        context.deleteDatabase(TAG);
+        db = Room.databaseBuilder(context, AppDatabase.class, TAG)
+                .allowMainThreadQueries()
+                .build();
+        populate(db.getOpenHelper().getWritableDatabase());
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        InstrumentationRegistry.getInstrumentation().getTargetContext().deleteDatabase(TAG);
+    }
+
+    @Test
+    public void slimProjectionsAgainstWholeRows() {
+        PhotoDao dao = db.photoDao();
+        SupportSQLiteDatabase sqlite = db.getOpenHelper().getReadableDatabase();
+        Bundle results = new Bundle();
+
+        compare(results, "recent (10)",
+                () -> dao.getGalleryNewest(10).size(),
+                () -> readAll(sqlite, WIDE + "ORDER BY captureTimestampReal DESC, photos.id DESC LIMIT 10"));
+        compare(results, "gallery page (60)",
+                () -> dao.getGalleryFrom(START + ROWS / 2 * 60_000L, ROWS / 2, 60).size(),
+                () -> readAll(sqlite, WIDE + "WHERE captureTimestampReal <= ? AND (captureTimestampReal < ? "
+                        + "OR photos.id <= ?) ORDER BY captureTimestampReal DESC, photos.id DESC LIMIT 60",
+                        START + ROWS / 2 * 60_000L, START + ROWS / 2 * 60_000L, ROWS / 2));
+        compare(results, "gallery, whole list",
+                () -> dao.getGalleryNewest(ROWS).size(),
+                () -> readAll(sqlite, WIDE + "ORDER BY captureTimestampReal DESC, photos.id DESC"));
+        compare(results, "address backfill page (100)",
+                () -> dao.getPhotosMissingAddress(0, 100).size(),
+                () -> readAll(sqlite, WIDE + "WHERE addressHuman IS NULL AND photos.id > 0 "
+                        + "AND NOT (lat = 0 AND lon = 0) ORDER BY photos.id LIMIT 100"));
+
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    // --- Measurement ---
+
+    private static void compare(Bundle results, String name, IntSupplier slim, IntSupplier wide) {
+        int[] rows = new int[2];
+        double slimMs = bestOf(slim, rows, 0);
+        double wideMs = bestOf(wide, rows, 1);
+        assertEquals(name, rows[1], rows[0]);
+        String line = String.format(Locale.US, "%-28s %6d rows  whole rows %8.2f ms  DAO %8.2f ms  %5.1fx",
+                name, rows[0], wideMs, slimMs, wideMs / slimMs);
+        Log.i(TAG, line);
+        results.putString(name, line);
+    }
+
+    /**
+     * Best wall time of several runs after a warm-up, in ms; the row count goes to rows[slot].
+     */
+    private static double bestOf(IntSupplier query, int[] rows, int slot) {
+        for (int i = 0; i < WARMUP; i++) query.getAsInt();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            rows[slot] = query.getAsInt();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /**
+     * Reads every column of every row by its type, as Room's generated code does for an entity.
+     */
+    private static int readAll(SupportSQLiteDatabase sqlite, String sql, Object... args) {
+        int rows = 0;
+        try (Cursor cursor = sqlite.query(new SimpleSQLiteQuery(sql, args))) {
+            int columns = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                for (int c = 0; c < columns; c++) {
+                    switch (cursor.getType(c)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            cursor.getLong(c);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            cursor.getDouble(c);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            cursor.getString(c);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    // --- Data ---
+
+    /**
+     * Photos one minute apart with full details (every tenth without an address), text columns
+     * the length of real ones.
+     */
+    private static void populate(SupportSQLiteDatabase sqlite) {
+        String[] streets = {"Main Street", "Harbour Road", "Station Avenue", "Mill Lane"};
+        String[] statuses = {"SENT", "SENT", "SENT", "PENDING", "FAILED"};
+        sqlite.beginTransaction();
+        try {
+            SupportSQLiteStatement photo = sqlite.compileStatement("INSERT INTO photos (filePath, "
+                    + "assignedTimestamp, captureTimestampReal, lat, lon, accuracyMeters, sendScheduledAt, "
+                    + "status, createdAt, sendPath, thumbnailPath) VALUES (?, ?, ?, ?, ?, 5, ?, ?, ?, ?, ?)");
+            SupportSQLiteStatement details = sqlite.compileStatement("INSERT INTO photo_details (photoId, "
+                    + "addressHuman, shiftStart, shiftEnd, companyName, watermarkName) "
+                    + "VALUES (?, ?, '08:00 AM', '05:00 PM', 'Lunar Field Services', 'LunarTag')");
+            for (int i = 1; i <= ROWS; i++) {
+                long time = START + (i - 1) * 60_000L;
+                photo.bindString(1, "/storage/emulated/0/Pictures/LunarTag/LunarTag_" + time + ".jpg");
+                photo.bindLong(2, time);
+                photo.bindLong(3, time);
+                photo.bindDouble(4, 48.85 + (i % 1000) * 1e-4);
+                photo.bindDouble(5, 2.29 + (i % 1000) * 1e-4);
+                photo.bindLong(6, time + 3_600_000L);
+                photo.bindString(7, statuses[i % statuses.length]);
+                photo.bindLong(8, time);
+                photo.bindString(9, "/data/user/0/com.lunartag.app/files/send/LunarTag_" + time + ".jpg");
+                photo.bindString(10, "/data/user/0/com.lunartag.app/cache/thumbs/LunarTag_" + time + ".jpg");
+                long id = photo.executeInsert();
+
+                details.bindLong(1, id);
+                if (i % 10 == 0) {
+                    details.bindNull(2);
+                } else {
+                    details.bindString(2, (i % 200) + " " + streets[i % streets.length]
+                            + ", 75007 Paris, Île-de-France, France");
+                }
+                details.executeInsert();
+            }
+            sqlite.setTransactionSuccessful();
+        } finally {
+            sqlite.endTransaction();
+        }
+    }
+}
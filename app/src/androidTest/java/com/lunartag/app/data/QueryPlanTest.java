@@ -0,0 +1,237 @@
+package com.lunartag.app.data;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.paging.PagingSource;
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EXPLAIN QUERY PLAN for the SQL Room actually runs: the database is created by the compiled
+ * AppDatabase, the DAO methods and paging sources are called for real, and a QueryCallback
+ * records each statement with its arguments. Every list, page and retention query must use its
+ * index: no table scan and no temporary B-tree for ORDER BY.
+ *
+ * The desktop check (tools/check_query_plans.py) covers the same queries on 100k rows; this one
+ * runs the platform's SQLite and cannot drift from the DAOs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    private static final int ROWS = 5_000;
+    private static final long START = 1_700_000_000_000L;
+
+    private AppDatabase db;
+    private final List<Object[]> recorded = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .setQueryExecutor(Runnable::run)
+                .setTransactionExecutor(Runnable::run)
+                .setQueryCallback((sql, args) -> {
+                    synchronized (recorded) {
+                        recorded.add(new Object[]{sql, args.toArray()});
+                    }
+                }, Runnable::run)
+                .allowMainThreadQueries()
+                .build();
+        populate(db.getOpenHelper().getWritableDatabase());
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void photoQueriesUseTheirIndex() {
+        PhotoDao dao = db.photoDao();
+        long key = ROWS / 2;
+        long keyTs = START + (key - 1) * 60_000;
+        String byTime = "index_photos_captureTimestampReal";
+
+        assertPlan(byTime, () -> dao.getGalleryNewest(60));
+        assertPlan(byTime, () -> dao.getGalleryFrom(keyTs, key, 60));
+        assertPlan(byTime, () -> dao.getGalleryOlderThan(keyTs, key, 60));
+        assertPlan(byTime, () -> dao.getGalleryNewerThan(keyTs, key, 60));
+        assertPlan(byTime, () -> dao.countGalleryOlderThan(keyTs, key));
+        assertPlan(byTime, () -> dao.countGalleryNewerThan(keyTs, key));
+        assertPlan(byTime, () -> observeOnce(dao.observeRecentPhotos(10)));
+        assertPlan("index_photos_status_sendScheduledAt", () -> observeOnce(dao.observePendingPhotos()));
+        // photoId is the rowid of photo_details, and FTS docids are photo ids.
+        assertPlan("INTEGER PRIMARY KEY", () -> dao.getPhotosMissingAddress(key, 100));
+        assertPlan("INTEGER PRIMARY KEY", () -> dao.searchFrom("\"harbour*\"", Long.MAX_VALUE, 60));
+        assertPlan("INTEGER PRIMARY KEY", () -> dao.searchOlderThan("\"harbour*\"", key, 60));
+        assertPlan("INTEGER PRIMARY KEY", () -> dao.searchNewerThan("\"harbour*\"", key, 60));
+    }
+
+    @Test
+    public void auditQueriesUseTheirIndex() {
+        AuditLogDao dao = db.auditLogDao();
+        long cutoff = START + ROWS / 2 * 1_000L;
+        assertPlan("index_audit_logs_photoId_timestamp", () -> dao.getLogsForPhoto(42));
+        assertPlan("INTEGER PRIMARY KEY", () -> dao.getLogsOlderThan(cutoff, 0, 500));
+        assertPlan("INTEGER PRIMARY KEY", () -> dao.deleteArchived(1, 500, START, 500));
+    }
+
+    @Test
+    public void auditViewerPagesUseTheirIndex() {
+        AuditLogPagingSource.Key key = new AuditLogPagingSource.Key(START + ROWS / 2 * 1_000L, ROWS / 2);
+        assertPages("index_audit_logs_timestamp", new AuditLogPagingSource.Filter(null, -1, null), key);
+        assertPages("index_audit_logs_action_timestamp",
+                new AuditLogPagingSource.Filter("SEND_ATTEMPT", -1, null), key);
+        assertPages("index_audit_logs_photoId_timestamp", new AuditLogPagingSource.Filter(null, 42, null), key);
+        assertPages("index_audit_logs_photoId_timestamp", new AuditLogPagingSource.Filter(null, 42, "send"), key);
+        // Text search: the FTS index drives, the logs are looked up by id.
+        assertPages("INTEGER PRIMARY KEY", new AuditLogPagingSource.Filter(null, -1, "send"), key);
+        assertPages("INTEGER PRIMARY KEY", new AuditLogPagingSource.Filter("SEND_ATTEMPT", -1, "send"), key);
+    }
+
+    // --- The checks ---
+
+    private void assertPages(String index, AuditLogPagingSource.Filter filter, AuditLogPagingSource.Key key) {
+        assertPlan(index, () -> load(filter, new PagingSource.LoadParams.Refresh<>(null, 50, false)));
+        assertPlan(index, () -> load(filter, new PagingSource.LoadParams.Refresh<>(key, 50, false)));
+        assertPlan(index, () -> load(filter, new PagingSource.LoadParams.Append<>(key, 50, false)));
+        assertPlan(index, () -> load(filter, new PagingSource.LoadParams.Prepend<>(key, 50, false)));
+    }
+
+    private void load(AuditLogPagingSource.Filter filter, PagingSource.LoadParams<AuditLogPagingSource.Key> params) {
+        AuditLogPagingSource source = new AuditLogPagingSource(db, filter);
+        try {
+            PagingSource.LoadResult<AuditLogPagingSource.Key, ?> result = source.loadFuture(params).get();
+            assertFalse(String.valueOf(result), result instanceof PagingSource.LoadResult.Error);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        } finally {
+            source.invalidate();
+        }
+    }
+
+    /**
+     * Runs the call, then explains every statement it sent to SQLite.
+     */
+    private void assertPlan(String index, Runnable call) {
+        List<Object[]> statements = record(call);
+        assertFalse("No query recorded", statements.isEmpty());
+        SupportSQLiteDatabase sqlite = db.getOpenHelper().getReadableDatabase();
+        for (Object[] statement : statements) {
+            String sql = (String) statement[0];
+            List<String> plan = new ArrayList<>();
+            try (Cursor cursor = sqlite.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + sql, (Object[]) statement[1]))) {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) plan.add(cursor.getString(detail));
+            }
+            String where = sql + "\n  plan: " + plan;
+            boolean usesIndex = false;
+            for (String step : plan) {
+                usesIndex |= step.contains(index);
+                // "SCAN <fts> VIRTUAL TABLE INDEX n" is a full-text lookup, not a table scan.
+                assertFalse("Table scan: " + where, step.startsWith("SCAN") && !step.contains("USING")
+                        && !step.contains("VIRTUAL TABLE"));
+                assertFalse("Sort in a temporary B-tree: " + where, step.contains("TEMP B-TREE"));
+            }
+            assertTrue("Does not use " + index + ": " + where, usesIndex);
+        }
+        record(() -> { }); // Drop the EXPLAIN statements themselves.
+    }
+
+    /**
+     * The app's statements the call ran, without transactions and invalidation-tracker bookkeeping.
+     */
+    private List<Object[]> record(Runnable call) {
+        synchronized (recorded) {
+            recorded.clear();
+        }
+        call.run();
+        List<Object[]> statements = new ArrayList<>();
+        synchronized (recorded) {
+            for (Object[] statement : recorded) {
+                String sql = ((String) statement[0]).trim();
+                String verb = sql.length() > 6 ? sql.substring(0, 6).toUpperCase() : sql.toUpperCase();
+                boolean dml = verb.startsWith("SELECT") || verb.startsWith("DELETE") || verb.startsWith("UPDATE");
+                if (dml && !sql.contains("room_table_modification_log") && !sql.startsWith("EXPLAIN")) {
+                    statements.add(statement);
+                }
+            }
+            recorded.clear();
+        }
+        return statements;
+    }
+
+    private static <T> void observeOnce(LiveData<T> live) {
+        Observer<T> observer = value -> { };
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> live.observeForever(observer));
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> live.removeObserver(observer));
+    }
+
+    // --- Data ---
+
+    /**
+     * Photos one minute apart with details (every tenth without an address), and audit logs one
+     * second apart. SQLite plans without statistics, so a few thousand rows plan like a full device.
+     */
+    private static void populate(SupportSQLiteDatabase sqlite) {
+        String[] streets = {"Main Street", "Harbour Road", "Station Avenue", "Mill Lane"};
+        String[] statuses = {"SENT", "SENT", "SENT", "PENDING", "FAILED"};
+        sqlite.beginTransaction();
+        try {
+            SupportSQLiteStatement photo = sqlite.compileStatement("INSERT INTO photos (filePath, "
+                    + "assignedTimestamp, captureTimestampReal, lat, lon, accuracyMeters, sendScheduledAt, "
+                    + "status, createdAt) VALUES (?, ?, ?, ?, ?, 5, ?, ?, ?)");
+            SupportSQLiteStatement details = sqlite.compileStatement("INSERT INTO photo_details (photoId, "
+                    + "addressHuman, companyName, watermarkName) VALUES (?, ?, 'Lunar Field Services', 'LunarTag')");
+            SupportSQLiteStatement log = sqlite.compileStatement("INSERT INTO audit_logs (photoId, action, "
+                    + "details, timestamp) VALUES (?, ?, ?, ?)");
+            for (int i = 1; i <= ROWS; i++) {
+                long time = START + (i - 1) * 60_000L;
+                photo.bindString(1, "/photos/LunarTag_" + i + ".jpg");
+                photo.bindLong(2, time);
+                photo.bindLong(3, time);
+                photo.bindDouble(4, (i % 180) - 90 + 0.5);
+                photo.bindDouble(5, (i % 360) - 180 + 0.5);
+                photo.bindLong(6, time + 3_600_000L);
+                photo.bindString(7, statuses[i % statuses.length]);
+                photo.bindLong(8, time);
+                long id = photo.executeInsert();
+
+                details.bindLong(1, id);
+                if (i % 10 == 0) {
+                    details.bindNull(2);
+                } else {
+                    details.bindString(2, (i % 200) + " " + streets[i % streets.length] + ", Springfield");
+                }
+                details.executeInsert();
+
+                log.bindLong(1, 1 + i % 500);
+                log.bindString(2, i % 3 == 0 ? "CAPTURE" : "SEND_ATTEMPT");
+                log.bindString(3, "send attempt " + i);
+                log.bindLong(4, START + i * 1_000L);
+                log.executeInsert();
+            }
+            sqlite.setTransactionSuccessful();
+        } finally {
+            sqlite.endTransaction();
+        }
+    }
+}
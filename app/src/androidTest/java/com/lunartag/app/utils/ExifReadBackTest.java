@@ -0,0 +1,128 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.location.Location;
+
+import androidx.exifinterface.media.ExifInterface;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The capture path's Exif, read back the way the gallery and the send path read it: a
+ * Bitmap.compress() JPEG (with the encoder's own JFIF header) streamed through
+ * ExifInjectingOutputStream with a segment from ExifUtils.buildCaptureSegment, then opened with
+ * androidx ExifInterface.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifReadBackTest {
+
+    private static final long REAL_TIME = 1709647629000L;
+    private static final long ASSIGNED_TIME = 1709640000000L;
+
+    @Test
+    public void exifInterfaceReadsEveryTagAndTheThumbnail() throws IOException {
+        Bitmap image = picture(320, 240);
+        Bitmap small = Bitmap.createScaledBitmap(image, 160, 120, true);
+        byte[] thumbnail = compress(small, 80);
+
+        Location location = new Location("test");
+        location.setLatitude(28.6139);
+        location.setLongitude(-77.2090);
+        location.setAltitude(216.5);
+        location.setTime(REAL_TIME);
+        byte[] segment = ExifUtils.buildCaptureSegment(location, REAL_TIME, ASSIGNED_TIME, 90, thumbnail);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ExifInjectingOutputStream(bytes, segment)) {
+            assertTrue(image.compress(Bitmap.CompressFormat.JPEG, 90, out));
+        }
+        byte[] jpeg = bytes.toByteArray();
+
+        ExifInterface exif = new ExifInterface(new ByteArrayInputStream(jpeg));
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90,
+                exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED));
+        assertEquals(90, exif.getRotationDegrees());
+
+        SimpleDateFormat local = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        local.setTimeZone(TimeZone.getDefault());
+        assertEquals(local.format(new Date(REAL_TIME)), exif.getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL));
+        assertEquals(local.format(new Date(REAL_TIME)), exif.getAttribute(ExifInterface.TAG_DATETIME_DIGITIZED));
+        assertEquals("{\"assignedTimestamp\":" + ASSIGNED_TIME + ",\"captureTimestampReal\":" + REAL_TIME + "}",
+                exif.getAttribute(ExifInterface.TAG_IMAGE_DESCRIPTION));
+
+        double[] latLong = exif.getLatLong();
+        assertNotNull(latLong);
+        assertEquals(28.6139, latLong[0], 1e-6);
+        assertEquals(-77.2090, latLong[1], 1e-6);
+        assertEquals(216.5, exif.getAltitude(0), 1e-3);
+        assertEquals(Long.valueOf(REAL_TIME), exif.getGpsDateTime());
+
+        assertTrue(exif.hasThumbnail());
+        assertTrue(exif.isThumbnailCompressed());
+        assertArrayEquals(thumbnail, exif.getThumbnailBytes());
+        Bitmap decodedThumbnail = exif.getThumbnailBitmap();
+        assertNotNull(decodedThumbnail);
+        assertEquals(160, decodedThumbnail.getWidth());
+        assertEquals(120, decodedThumbnail.getHeight());
+
+        // The main image still decodes, at full size.
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        assertNotNull(decoded);
+        assertEquals(320, decoded.getWidth());
+        assertEquals(240, decoded.getHeight());
+        assertEquals(90, ExifUtils.readRotationDegrees(jpeg));
+    }
+
+    @Test
+    public void orientedThumbnailCarriesTheImageOrientation() throws IOException {
+        Bitmap image = picture(200, 100);
+        byte[] thumbnail = compress(Bitmap.createScaledBitmap(image, 160, 80, true), 80);
+        byte[] segment = ExifUtils.buildCaptureSegment(null, REAL_TIME, ASSIGNED_TIME, 270, thumbnail);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ExifInjectingOutputStream(bytes, segment)) {
+            assertTrue(image.compress(Bitmap.CompressFormat.JPEG, 90, out));
+        }
+
+        ExifInterface exif = new ExifInterface(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNull(exif.getLatLong());
+
+        byte[] oriented = ExifUtils.readOrientedThumbnail(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNotNull(oriented);
+        assertEquals(270, new ExifInterface(new ByteArrayInputStream(oriented)).getRotationDegrees());
+    }
+
+    private static Bitmap picture(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                bitmap.setPixel(x, y, Color.rgb(x * 255 / width, y * 255 / height, (x ^ y) & 0xFF));
+            }
+        }
+        return bitmap;
+    }
+
+    private static byte[] compress(Bitmap bitmap, int quality) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out));
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,68 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.Matrix;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * The band-wise rotation of {@link ImageUtils#decodeJpeg} against a whole decode rotated with a
+ * Matrix, on a frame several bands tall whose height is not a multiple of the band.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageUtilsRotationTest {
+
+    // Region decodes may upsample chroma differently at a band edge.
+    private static final int TOLERANCE = 6;
+
+    @Test
+    public void everyQuarterTurnMatchesAMatrixRotation() {
+        byte[] jpeg = jpeg(300, 700);
+        for (int rotation : new int[]{90, 180, 270}) {
+            Bitmap actual = ImageUtils.decodeJpeg(jpeg, rotation);
+            assertNotNull(actual);
+            assertTrue(actual.isMutable());
+
+            Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotation);
+            Bitmap expected = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, false);
+
+            assertEquals(expected.getWidth(), actual.getWidth());
+            assertEquals(expected.getHeight(), actual.getHeight());
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    int e = expected.getPixel(x, y);
+                    int a = actual.getPixel(x, y);
+                    String where = rotation + " at (" + x + ", " + y + ")";
+                    assertEquals(where, Color.red(e), Color.red(a), TOLERANCE);
+                    assertEquals(where, Color.green(e), Color.green(a), TOLERANCE);
+                    assertEquals(where, Color.blue(e), Color.blue(a), TOLERANCE);
+                }
+            }
+        }
+    }
+
+    private static byte[] jpeg(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                bitmap.setPixel(x, y, Color.rgb(x * 255 / width, y * 255 / height, 128));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out));
+        return out.toByteArray();
+    }
+}
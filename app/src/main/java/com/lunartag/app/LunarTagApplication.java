@@ -4,6 +4,11 @@ import android.app.Application;
 
 // Import the core FirebaseApp class
 import com.google.firebase.FirebaseApp;
+import com.lunartag.app.audit.AuditLogWriter;
+import com.lunartag.app.utils.WatermarkOverlayCache;
+import com.lunartag.app.workers.AddressBackfillWorker;
+import com.lunartag.app.workers.AuditRetentionWorker;
+import com.lunartag.app.workers.DeferredCaptureWorker;
 
 /**
  * The custom Application class for Lunar Tag.
@@ -18,5 +23,25 @@ public class LunarTagApplication extends Application {
         // Manually initialize Firebase. This MUST be the first Firebase call.
         // This allows Remote Config to function correctly.
         FirebaseApp.initializeApp(this);
+
+        // Resolve addresses for photos captured while offline (runs once the network is back).
+        AddressBackfillWorker.enqueue(this);
+
+        // Finish deferred captures a killed process left in the journal.
+        DeferredCaptureWorker.enqueue(this);
+
+        // Move old audit logs out of the database into the compressed archive, once a day.
+        AuditRetentionWorker.enqueue(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The UI is gone: the process may be killed any time now, write the queued audit events.
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            AuditLogWriter.getInstance(this).requestFlush();
+            // No shots until the camera is back: the pre-rendered watermark blocks can go.
+            WatermarkOverlayCache.getInstance().clear();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,485 @@
+package com.lunartag.app.audit;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.lunartag.app.model.AuditLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only archive of audit logs rolled out of the 'audit_logs' table (see AuditRetentionWorker).
+ *
+ * Every retention batch becomes one immutable, GZIP-compressed segment file. A small index file
+ * lists the segments with their row count and their id, time and photoId ranges, so a query only
+ * opens the segments that can match, and reads them as a stream, one record at a time.
+ *
+ * Crash safety: a segment is written to a temp file, synced and renamed before its index line is
+ * appended, and the index line is the commit point. Segment files missing from the index and a
+ * torn last index line are cleaned up when the archive is opened; an index line whose segment
+ * file is gone, or that cannot be parsed, is skipped and kept, and the segments after it stay.
+ */
+public class AuditArchive {
+
+    private static final String TAG = "AuditArchive";
+
+    private static final String DIR = "audit_archive";
+    private static final String INDEX_FILE = "segments.idx";
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4C544131; // "LTA1"
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static volatile AuditArchive INSTANCE;
+
+    /**
+     * One archived segment, as listed in the index.
+     */
+    public static final class Segment {
+        public final String fileName;
+        public final int count;
+        public final long minId;
+        public final long maxId;
+        public final long minTimestamp;
+        public final long maxTimestamp;
+        public final long minPhotoId;
+        public final long maxPhotoId;
+        public final long cutoff; // Rows archived were older than this (see AuditRetentionWorker)
+        public final long bytes;
+
+        Segment(String fileName, int count, long minId, long maxId, long minTimestamp, long maxTimestamp,
+                long minPhotoId, long maxPhotoId, long cutoff, long bytes) {
+            this.fileName = fileName;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.minPhotoId = minPhotoId;
+            this.maxPhotoId = maxPhotoId;
+            this.cutoff = cutoff;
+            this.bytes = bytes;
+        }
+
+        boolean mayMatch(Query query) {
+            return maxTimestamp >= query.fromTimestamp && minTimestamp <= query.toTimestamp
+                    && (query.photoId < 0 || (query.photoId >= minPhotoId && query.photoId <= maxPhotoId));
+        }
+
+        String toLine() {
+            return fileName + '\t' + count + '\t' + minId + '\t' + maxId + '\t' + minTimestamp + '\t'
+                    + maxTimestamp + '\t' + minPhotoId + '\t' + maxPhotoId + '\t' + cutoff + '\t' + bytes;
+        }
+
+        static Segment fromLine(String line) {
+            String[] f = line.split("\t");
+            if (f.length != 10) return null;
+            try {
+                return new Segment(f[0], Integer.parseInt(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]),
+                        Long.parseLong(f[4]), Long.parseLong(f[5]), Long.parseLong(f[6]),
+                        Long.parseLong(f[7]), Long.parseLong(f[8]), Long.parseLong(f[9]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Filter for {@link #query} and {@link #page}. Time bounds are inclusive; a negative photoId,
+     * a null action or a null text matches everything.
+     */
+    public static final class Query {
+        final long fromTimestamp;
+        final long toTimestamp;
+        final long photoId;
+        final String action;
+        final String[] words; // Lower case; each must start a word of the details
+
+        public Query(long fromTimestamp, long toTimestamp, long photoId, String action) {
+            this(fromTimestamp, toTimestamp, photoId, action, null);
+        }
+
+        /**
+         * @param text Searched like the viewer's full-text search: every word of it must be the
+         *             start of a word of the details, ignoring case.
+         */
+        public Query(long fromTimestamp, long toTimestamp, long photoId, String action, String text) {
+            this.fromTimestamp = fromTimestamp;
+            this.toTimestamp = toTimestamp;
+            this.photoId = photoId;
+            this.action = action;
+            this.words = text != null ? splitWords(text) : new String[0];
+        }
+
+        public static Query all() {
+            return new Query(Long.MIN_VALUE, Long.MAX_VALUE, -1, null);
+        }
+
+        boolean matches(AuditLog log) {
+            return log.getTimestamp() >= fromTimestamp && log.getTimestamp() <= toTimestamp
+                    && (photoId < 0 || log.getPhotoId() == photoId)
+                    && (action == null || action.equals(log.getAction()))
+                    && matchesWords(log.getDetails());
+        }
+
+        private boolean matchesWords(String details) {
+            if (words.length == 0) return true;
+            if (details == null) return false;
+            String[] detailWords = splitWords(details);
+            for (String word : words) {
+                boolean found = false;
+                for (String candidate : detailWords) {
+                    if (candidate.startsWith(word)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) return false;
+            }
+            return true;
+        }
+
+        private static String[] splitWords(String text) {
+            List<String> words = new ArrayList<>();
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) words.add(word);
+            }
+            return words.toArray(new String[0]);
+        }
+    }
+
+    // Viewer order (see AuditLogPagingSource): newest first by timestamp, then by id.
+    private static final Comparator<AuditLog> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.getTimestamp(), a.getTimestamp());
+        return byTime != 0 ? byTime : Long.compare(b.getId(), a.getId());
+    };
+
+    /**
+     * Receives the matching records of a {@link #query}, oldest first.
+     */
+    public interface Visitor {
+        /**
+         * @return False to stop the query.
+         */
+        boolean onLog(AuditLog log);
+    }
+
+    private final File dir;
+    private final File indexFile;
+    private final List<Segment> segments = new ArrayList<>();
+    // Highest number any index line gives a segment, skipped ones included.
+    private int lastNumber;
+
+    public static AuditArchive getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (AuditArchive.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AuditArchive(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private AuditArchive(Context appContext) {
+        this.dir = new File(appContext.getFilesDir(), DIR);
+        this.indexFile = new File(dir, INDEX_FILE);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create " + dir);
+        }
+        loadIndex();
+    }
+
+    /**
+     * Writes the given rows (ordered by id) as a new segment and commits it to the index.
+     * @param cutoff The retention cutoff the rows were selected with.
+     * @return The new segment.
+     */
+    public synchronized Segment append(List<AuditLog> rows, long cutoff) throws IOException {
+        if (rows.isEmpty()) throw new IllegalArgumentException("Empty segment");
+        long minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE;
+        long minPhoto = Long.MAX_VALUE, maxPhoto = Long.MIN_VALUE;
+        for (AuditLog log : rows) {
+            minTs = Math.min(minTs, log.getTimestamp());
+            maxTs = Math.max(maxTs, log.getTimestamp());
+            minPhoto = Math.min(minPhoto, log.getPhotoId());
+            maxPhoto = Math.max(maxPhoto, log.getPhotoId());
+        }
+        long minId = rows.get(0).getId();
+        long maxId = rows.get(rows.size() - 1).getId();
+
+        // Numbered in append order, past every name in the index: names never repeat.
+        int number = lastNumber + 1;
+        String fileName = String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+        File target = new File(dir, fileName);
+        File temp = new File(dir, fileName + TEMP_SUFFIX);
+        if (target.exists()) throw new IOException("Segment already exists: " + fileName);
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(file, BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(rows.size());
+            for (AuditLog log : rows) {
+                out.writeLong(log.getId());
+                out.writeLong(log.getPhotoId());
+                out.writeLong(log.getTimestamp());
+                writeString(out, log.getAction());
+                writeString(out, log.getDetails());
+            }
+            out.flush();
+            gzip.finish();
+            file.getFD().sync();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + target);
+        }
+
+        Segment segment = new Segment(fileName, rows.size(), minId, maxId, minTs, maxTs,
+                minPhoto, maxPhoto, cutoff, target.length());
+        try (FileOutputStream index = new FileOutputStream(indexFile, true)) {
+            index.write((segment.toLine() + "\n").getBytes(StandardCharsets.UTF_8));
+            index.getFD().sync();
+        }
+        segments.add(segment);
+        lastNumber = number;
+        return segment;
+    }
+
+    /**
+     * The most recently written segment, or null if the archive is empty.
+     */
+    public synchronized Segment getLastSegment() {
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    }
+
+    public synchronized List<Segment> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Streams the archived records matching the query, oldest segment first, to the visitor.
+     * Segments whose index ranges cannot match are not opened. Call off the UI thread.
+     * @return The number of records passed to the visitor.
+     */
+    public int query(Query query, Visitor visitor) throws IOException {
+        int[] matched = {0};
+        for (Segment segment : getSegments()) {
+            if (!segment.mayMatch(query)) continue;
+            boolean more = read(segment, log -> {
+                if (!query.matches(log)) return true;
+                matched[0]++;
+                return visitor.onLog(log);
+            });
+            if (!more) break;
+        }
+        return matched[0];
+    }
+
+    /**
+     * One page of the admin viewer: up to limit matching records on one side of the position
+     * (timestamp, id) in viewer order, newest first. With newer set, the records before the
+     * position instead, returned oldest first.
+     *
+     * Segments are read from the position outwards and the walk stops once no segment left can
+     * hold a record that belongs on the page (their index time ranges tell), so a page near
+     * either end of the archive only opens the segments at that end. Call off the UI thread.
+     * @param inclusive True to include the record at the position itself.
+     */
+    public List<AuditLog> page(Query query, long timestamp, long id, boolean newer, boolean inclusive,
+                               int limit) throws IOException {
+        List<Segment> all = getSegments();
+        int n = all.size();
+        Comparator<AuditLog> order = newer ? NEWEST_FIRST.reversed() : NEWEST_FIRST;
+        // bound[i]: the nearest timestamp any segment from walk position i onwards can hold.
+        long[] bound = new long[n + 1];
+        bound[n] = newer ? Long.MAX_VALUE : Long.MIN_VALUE;
+        for (int i = n - 1; i >= 0; i--) {
+            Segment segment = all.get(newer ? i : n - 1 - i);
+            bound[i] = newer ? Math.min(bound[i + 1], segment.minTimestamp)
+                    : Math.max(bound[i + 1], segment.maxTimestamp);
+        }
+
+        // The records kept so far, the one that would drop out first at the head.
+        PriorityQueue<AuditLog> kept = new PriorityQueue<>(limit + 1, order.reversed());
+        for (int i = 0; i < n; i++) {
+            if (kept.size() == limit) {
+                long last = kept.peek().getTimestamp();
+                if (newer ? bound[i] > last : bound[i] < last) break;
+            }
+            Segment segment = all.get(newer ? i : n - 1 - i);
+            if (!segment.mayMatch(query)) continue;
+            if (newer ? segment.maxTimestamp < timestamp : segment.minTimestamp > timestamp) continue;
+            read(segment, log -> {
+                int side = Long.compare(log.getTimestamp(), timestamp);
+                if (side == 0) side = Long.compare(log.getId(), id);
+                boolean onPage = newer ? side > 0 : side < 0 || (inclusive && side == 0);
+                if (onPage && query.matches(log)) {
+                    kept.add(log);
+                    if (kept.size() > limit) kept.poll();
+                }
+                return true;
+            });
+        }
+        List<AuditLog> page = new ArrayList<>(kept);
+        Collections.sort(page, order);
+        return page;
+    }
+
+    /**
+     * Streams every record of a segment, in id order.
+     * @return False if the visitor stopped the read.
+     */
+    private boolean read(Segment segment, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(new File(dir, segment.fileName)), BUFFER_SIZE),
+                BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a segment: " + segment.fileName);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                AuditLog log = new AuditLog();
+                log.setId(in.readLong());
+                log.setPhotoId(in.readLong());
+                log.setTimestamp(in.readLong());
+                log.setAction(readString(in));
+                log.setDetails(readString(in));
+                if (!visitor.onLog(log)) return false;
+            }
+        } catch (EOFException e) {
+            Log.e(TAG, "Truncated segment " + segment.fileName);
+        }
+        return true;
+    }
+
+    /**
+     * One-line summary, in the same shape as the pipeline stage metrics.
+     */
+    public synchronized String describe() {
+        long rows = 0, bytes = 0;
+        for (Segment segment : segments) {
+            rows += segment.count;
+            bytes += segment.bytes;
+        }
+        return "ARCHIVE segments=" + segments.size() + " rows=" + rows + " size=" + (bytes / 1024) + "KB";
+    }
+
+    // --- Index ---
+
+    private void loadIndex() {
+        // Every file name an index line gives, readable or not: none of them is ever deleted.
+        Set<String> named = new HashSet<>();
+        if (indexFile.exists()) {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                // Nothing is repaired or cleaned up from an index that could not be read.
+                Log.e(TAG, "Cannot read the archive index: " + e.getMessage());
+                return;
+            }
+
+            long length = indexFile.length();
+            long offset = 0;
+            long validLength = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                Segment segment = Segment.fromLine(line);
+                // A torn append: the last line is unparsable or has no line end.
+                if (i == lines.size() - 1 && (segment == null || offset > length)) break;
+                validLength = offset;
+
+                String fileName = line.split("\t", 2)[0];
+                named.add(fileName);
+                lastNumber = Math.max(lastNumber, segmentNumber(fileName));
+                if (segment == null) {
+                    Log.w(TAG, "Skipped unreadable archive index line " + (i + 1));
+                } else if (!new File(dir, segment.fileName).isFile()) {
+                    Log.w(TAG, "Skipped archive segment " + segment.fileName + ": file missing");
+                } else {
+                    segments.add(segment);
+                }
+            }
+            // Drop the torn tail so the next append starts on a clean line.
+            if (length > validLength) {
+                try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+                    raf.setLength(validLength);
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot repair the archive index: " + e.getMessage());
+                }
+            }
+        }
+
+        // Segments that never made it into the index are not part of the archive.
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(INDEX_FILE) || named.contains(name)) continue;
+            if (name.startsWith(SEGMENT_PREFIX) && file.delete()) {
+                Log.w(TAG, "Removed uncommitted segment " + name);
+            }
+        }
+    }
+
+    /**
+     * The append number in a segment file name, 0 if it is not one.
+     */
+    private static int segmentNumber(String fileName) {
+        if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) return 0;
+        try {
+            return Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length(),
+                    fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // --- Record encoding ---
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
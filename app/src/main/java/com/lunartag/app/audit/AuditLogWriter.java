@@ -0,0 +1,304 @@
+package com.lunartag.app.audit;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.AuditLogDao;
+import com.lunartag.app.model.AuditLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, batched writer for the 'audit_logs' table.
+ *
+ * {@link #log} can be called from any thread, the capture pipeline included: it only puts the
+ * event in a lock-free ring buffer and returns. One background thread drains the buffer and
+ * inserts the events in a single Room transaction per batch, as soon as {@link #BATCH_SIZE}
+ * events are waiting or {@link #FLUSH_INTERVAL_MS} after the last flush, whichever comes first.
+ *
+ * Overflow policy: {@link #log} never blocks. When the buffer is full the event is dropped and
+ * counted, and the next batch carries an {@link #ACTION_DROPPED} record with the count, so the
+ * loss itself is in the audit trail. Callers that are off the UI thread and must not lose an
+ * event use {@link #logBlocking}, which waits (up to a timeout) for the writer to make room.
+ *
+ * Events still in memory are flushed when the app goes to the background (see
+ * LunarTagApplication) and from a shutdown hook; {@link #flush(long)} does it on demand.
+ */
+public class AuditLogWriter {
+
+    private static final String TAG = "AuditLogWriter";
+
+    // --- Actions ---
+    public static final String ACTION_CAPTURE = "CAPTURE";
+    public static final String ACTION_SEND_ATTEMPT = "SEND_ATTEMPT";
+    public static final String ACTION_SEND_SUCCESS = "SEND_SUCCESS";
+    public static final String ACTION_SEND_FAILED = "SEND_FAILED";
+    public static final String ACTION_DROPPED = "AUDIT_DROPPED";
+
+    private static final int CAPACITY = 1024;
+    // Wake the writer as soon as this many events are waiting...
+    private static final int BATCH_SIZE = 64;
+    // ...or this long after the last flush, whichever comes first.
+    private static final long FLUSH_INTERVAL_MS = 2000;
+    // Upper bound of one transaction, so a burst never holds the database for long.
+    private static final int MAX_BATCH = 256;
+    // A batch that keeps failing is given up after this many attempts.
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long SHUTDOWN_FLUSH_MS = 500;
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static volatile AuditLogWriter INSTANCE;
+
+    private final AppDatabase db;
+    private final AuditLogDao dao;
+    private final AuditRingBuffer<AuditLog> buffer = new AuditRingBuffer<>(CAPACITY);
+    private final Thread writer;
+    private final Object flushed = new Object();
+
+    private volatile boolean flushRequested;
+    private final AtomicLong pendingDrops = new AtomicLong();
+
+    // --- Metrics ---
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    // Events consumed from the buffer and written (or given up); only the writer thread sets it.
+    private volatile long persistedPosition;
+
+    public static AuditLogWriter getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (AuditLogWriter.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AuditLogWriter(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private AuditLogWriter(Context appContext) {
+        this.db = AppDatabase.getDatabase(appContext);
+        this.dao = db.auditLogDao();
+        this.writer = new Thread(this::runWriter, "LunarTag-AUDIT");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_FLUSH_MS)));
+    }
+
+    /**
+     * Queues an audit event. Never blocks.
+     * @param photoId The photo the event is about.
+     * @param action One of the ACTION_ constants.
+     * @param details Extra details, as JSON (may be null).
+     * @return False if the buffer was full and the event was dropped.
+     */
+    public boolean log(long photoId, String action, String details) {
+        if (buffer.offer(newEntry(photoId, action, details))) {
+            onAccepted();
+            return true;
+        }
+        dropped.incrementAndGet();
+        pendingDrops.incrementAndGet();
+        LockSupport.unpark(writer);
+        return false;
+    }
+
+    /**
+     * Queues an audit event, waiting for room if the buffer is full (back-pressure).
+     * Do not call on the UI thread.
+     * @param timeoutMs How long to wait for room before dropping the event like {@link #log}.
+     * @return False if the event was dropped.
+     */
+    public boolean logBlocking(long photoId, String action, String details, long timeoutMs) {
+        AuditLog entry = newEntry(photoId, action, details);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (!buffer.offer(entry)) {
+            if (System.nanoTime() - deadline >= 0) {
+                dropped.incrementAndGet();
+                pendingDrops.incrementAndGet();
+                return false;
+            }
+            flushRequested = true;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(BACKOFF_NANOS);
+        }
+        onAccepted();
+        return true;
+    }
+
+    /**
+     * Asks the writer to write what is queued now, without waiting for it.
+     */
+    public void requestFlush() {
+        flushRequested = true;
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes every event queued before this call and waits for it. Do not call on the UI thread.
+     * @return False if the events were not all written within the timeout.
+     */
+    public boolean flush(long timeoutMs) {
+        long target = buffer.produced();
+        requestFlush();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (flushed) {
+            while (persistedPosition < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    flushed.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of events waiting to be written.
+     */
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Average time of one batch transaction, in milliseconds.
+     */
+    public long getAverageFlushMillis() {
+        long n = batches.get();
+        return n == 0 ? 0 : totalFlushNanos.get() / n / 1_000_000L;
+    }
+
+    /**
+     * One-line snapshot, in the same shape as the pipeline stage metrics, e.g.
+     * "AUDIT q=3/1024 max=70 in=512 out=509 drop=0 fail=0 batches=9 flush=4ms maxFlush=11ms".
+     */
+    public String describe() {
+        return "AUDIT q=" + buffer.size() + "/" + buffer.capacity()
+                + " max=" + maxQueueDepth.get()
+                + " in=" + accepted.get()
+                + " out=" + written.get()
+                + " drop=" + dropped.get()
+                + " fail=" + failed.get()
+                + " batches=" + batches.get()
+                + " flush=" + getAverageFlushMillis() + "ms"
+                + " maxFlush=" + maxFlushNanos.get() / 1_000_000L + "ms";
+    }
+
+    private static AuditLog newEntry(long photoId, String action, String details) {
+        AuditLog entry = new AuditLog();
+        entry.setPhotoId(photoId);
+        entry.setAction(action);
+        entry.setDetails(details);
+        entry.setTimestamp(System.currentTimeMillis());
+        return entry;
+    }
+
+    private void onAccepted() {
+        accepted.incrementAndGet();
+        int depth = buffer.size();
+        updateMax(maxQueueDepth, depth);
+        if (depth >= BATCH_SIZE) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // --- Writer thread ---
+
+    private void runWriter() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+        List<AuditLog> batch = new ArrayList<>(MAX_BATCH);
+        int attempts = 0;
+        while (true) {
+            // Sleep until the batch is full, a flush is requested or the interval is over.
+            long deadline = System.nanoTime() + intervalNanos;
+            while (!flushRequested && buffer.size() < BATCH_SIZE && pendingDrops.get() == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                LockSupport.parkNanos(this, remaining);
+            }
+            flushRequested = false;
+
+            // Drain in batches of at most MAX_BATCH until the buffer is empty.
+            while (true) {
+                if (batch.isEmpty()) {
+                    fill(batch);
+                    if (batch.isEmpty()) break;
+                }
+                if (write(batch)) {
+                    batch.clear();
+                    attempts = 0;
+                } else if (++attempts >= MAX_ATTEMPTS) {
+                    Log.e(TAG, "Giving up on " + batch.size() + " audit events.");
+                    failed.addAndGet(batch.size());
+                    batch.clear();
+                    attempts = 0;
+                } else {
+                    break; // Retry the same batch on the next wake-up
+                }
+                markPersisted();
+            }
+            if (batch.isEmpty()) {
+                markPersisted();
+            }
+        }
+    }
+
+    private void fill(List<AuditLog> batch) {
+        long drops = pendingDrops.getAndSet(0);
+        if (drops > 0) {
+            batch.add(newEntry(0, ACTION_DROPPED, "{\"count\":" + drops + "}"));
+        }
+        AuditLog entry;
+        while (batch.size() < MAX_BATCH && (entry = buffer.poll()) != null) {
+            batch.add(entry);
+        }
+    }
+
+    private boolean write(List<AuditLog> batch) {
+        long start = System.nanoTime();
+        try {
+            db.runInTransaction(() -> dao.insertLogs(batch));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Audit batch of " + batch.size() + " failed: " + e.getMessage());
+            return false;
+        }
+        long nanos = System.nanoTime() - start;
+        written.addAndGet(batch.size());
+        batches.incrementAndGet();
+        totalFlushNanos.addAndGet(nanos);
+        updateMax(maxFlushNanos, nanos);
+        return true;
+    }
+
+    private void markPersisted() {
+        synchronized (flushed) {
+            persistedPosition = buffer.consumed();
+            flushed.notifyAll();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) return;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.lunartag.app.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer / single-consumer ring buffer.
+ *
+ * Every slot carries a sequence number: a producer claims a slot by CAS on the tail, writes
+ * the element and then publishes it by advancing the slot's sequence; the consumer only reads
+ * slots whose sequence says "published". Neither side ever blocks, and a full buffer is
+ * reported to the producer instead of waiting (see {@link AuditLogWriter} for the policy).
+ *
+ * Only one thread may call {@link #poll()}.
+ */
+final class AuditRingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // Next position to claim (producers)
+    private final AtomicLong head = new AtomicLong(); // Next position to read (consumer)
+
+    /**
+     * @param capacity Rounded up to a power of two.
+     */
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element from any thread.
+     * @return False if the buffer is full; the element was not added.
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1); // Publish
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // The consumer has not freed this slot yet: full
+            }
+            // diff > 0: another producer claimed this position first, retry with the new tail
+        }
+    }
+
+    /**
+     * Removes the oldest published element. Consumer thread only.
+     * @return Null if the buffer is empty (or the next element is claimed but not yet published).
+     */
+    E poll() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, position + capacity); // Free the slot for the next lap
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * Number of elements claimed so far (including ones not yet published).
+     */
+    long produced() {
+        return tail.get();
+    }
+
+    /**
+     * Number of elements removed so far.
+     */
+    long consumed() {
+        return head.get();
+    }
+
+    /**
+     * Approximate number of elements in the buffer.
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,65 @@
+package com.lunartag.app.capture;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+
+import com.lunartag.app.geo.AddressCache;
+import com.lunartag.app.geo.OfflineGeocoder;
+import com.lunartag.app.geo.PlatformGeocoder;
+
+/**
+ * Reverse-geocodes a fix into the single address line printed in the watermark.
+ * Answers come from the {@link AddressCache} when the fix falls in an already-resolved cell.
+ * The {@link OfflineGeocoder} is tried after the Geocoder by default, or first when the
+ * "offline_geocoder_primary" setting is on.
+ * Blocking (the platform Geocoder may go to the network): never call on the main thread.
+ */
+class AddressResolver {
+
+    static final String UNKNOWN = "Location Unknown";
+    static final String NOT_FOUND = "Address Not Found";
+
+    // Preferences for Settings (offline geocoder order)
+    private static final String PREFS_SETTINGS = "LunarTagSettings";
+    private static final String KEY_OFFLINE_PRIMARY = "offline_geocoder_primary";
+
+    private final Context context;
+    private final AddressCache cache;
+    private final OfflineGeocoder offlineGeocoder;
+    private final PlatformGeocoder geocoder;
+
+    AddressResolver(Context context) {
+        this.context = context;
+        this.cache = AddressCache.getInstance(context);
+        this.offlineGeocoder = OfflineGeocoder.getInstance(context);
+        this.geocoder = new PlatformGeocoder(context);
+    }
+
+    String resolve(Location location) {
+        if (location == null) return UNKNOWN;
+        double lat = location.getLatitude();
+        double lon = location.getLongitude();
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+        boolean offlineFirst = prefs.getBoolean(KEY_OFFLINE_PRIMARY, false);
+
+        String address = offlineFirst ? offlineGeocoder.resolve(lat, lon) : null;
+        if (address == null) {
+            address = cache.lookup(lat, lon, geocoder);
+        }
+        // Offline answers are not cached: they are cheap, and a later online lookup should win.
+        if (address == null && !offlineFirst) {
+            address = offlineGeocoder.resolve(lat, lon);
+        }
+        return address != null ? address : NOT_FOUND;
+    }
+
+    /**
+     * True if the address is the offline index's answer for the fix: good enough for the
+     * watermark, but not stored as the photo's address, so the backfill looks it up online.
+     */
+    boolean isOfflineAnswer(Location location, String address) {
+        if (location == null || address == null) return false;
+        return address.equals(offlineGeocoder.resolve(location.getLatitude(), location.getLongitude()));
+    }
+}
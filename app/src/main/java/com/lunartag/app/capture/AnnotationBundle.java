@@ -0,0 +1,83 @@
+package com.lunartag.app.capture;
+
+import android.location.Location;
+import android.os.SystemClock;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Everything the watermark needs that can be worked out before the shutter fires:
+ * the fix, its reverse-geocoded address and a snapshot of the settings.
+ * Immutable; {@link CaptureReadyState} swaps in a new one whenever something changes.
+ */
+public class AnnotationBundle {
+
+    // A bundle is only trusted if its fix is this recent...
+    static final long MAX_FIX_AGE_MS = 30_000L;
+    // ...and the current fix is still this close to the one that was geocoded.
+    static final float MAX_DRIFT_METERS = 25f;
+
+    final Location location;
+    final String address;
+    final String companyName;
+    final boolean rotateViaExif;
+    final long builtAtMillis;
+
+    AnnotationBundle(Location location, String address, String companyName, boolean rotateViaExif) {
+        this.location = location;
+        this.address = address;
+        this.companyName = companyName;
+        this.rotateViaExif = rotateViaExif;
+        this.builtAtMillis = System.currentTimeMillis();
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * True if the shutter can use this bundle as-is for a shot taken at the given fix.
+     */
+    public boolean isFresh(Location current) {
+        if (location == null || current == null) return false;
+        if (AddressResolver.NOT_FOUND.equals(address)) return false;
+        long ageMs = (SystemClock.elapsedRealtimeNanos() - current.getElapsedRealtimeNanos()) / 1_000_000L;
+        return ageMs <= MAX_FIX_AGE_MS && location.distanceTo(current) <= MAX_DRIFT_METERS;
+    }
+
+    /**
+     * True if a new fix is close enough that this bundle's address can be reused for it.
+     */
+    boolean coversLocation(Location other) {
+        return location != null && other != null
+                && !AddressResolver.NOT_FOUND.equals(address)
+                && location.distanceTo(other) <= MAX_DRIFT_METERS;
+    }
+
+    /**
+     * The watermark text block. Only the time line changes from shot to shot.
+     */
+    static String[] buildLines(String companyName, String address, Location location, long assignedTime) {
+        // --- FIX: REMOVED ':ss' (SECONDS) FROM FORMAT ---
+        SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy hh:mm a", Locale.US);
+        // ------------------------------------------------
+
+        String timeString = sdf.format(new Date(assignedTime));
+        String gpsString = "Lat: " + (location != null ? location.getLatitude() : "0.0") +
+                " Lon: " + (location != null ? location.getLongitude() : "0.0");
+
+        return new String[]{
+                "GPS Map Camera",
+                companyName,
+                address,
+                gpsString,
+                timeString
+        };
+    }
+}
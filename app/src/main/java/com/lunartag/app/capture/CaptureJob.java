@@ -0,0 +1,129 @@
+package com.lunartag.app.capture;
+
+import android.graphics.Bitmap;
+import android.location.Location;
+
+import androidx.camera.core.ImageProxy;
+
+import com.lunartag.app.jpeg.JpegStructure;
+
+/**
+ * The unit of work that travels through the {@link CapturePipeline}.
+ * Every stage reads what the previous stage produced and fills in its own fields.
+ * Heavy resources (the sensor frame, the full-resolution bitmap, the encoded bytes)
+ * are dropped as soon as the next stage no longer needs them.
+ */
+public class CaptureJob {
+
+    // --- Filled in at the shutter (cheap, must keep capture order) ---
+    final long realTime;
+    final long assignedTime;
+    final Location location;
+    final String companyName;
+    boolean rotateViaExif;   // Settings snapshot: keep sensor pixels, write EXIF Orientation
+
+    // --- Produced by the stages ---
+    ImageProxy imageProxy;   // DECODE input, closed by DECODE
+    final String stagingPath; // DECODE input instead of imageProxy for deferred captures
+    Bitmap bitmap;           // DECODE output, recycled by ENCODE
+    int exifRotation;        // DECODE: rotation left for the viewer (0 if pixels are upright)
+    byte[] sourceJpeg;       // DECODE: sensor JPEG kept for splicing, released by ENCODE
+    JpegStructure sourceStructure; // DECODE: parsed header of sourceJpeg (null = full re-encode)
+    int stripTop;            // DECODE: first image row held by bitmap when splicing
+    String address;          // Ready state (pre-resolved) or ANNOTATE
+    String[] watermarkLines; // ANNOTATE
+    String absolutePath;     // ENCODE: primary file path or content URI
+    String outputUri;        // ENCODE: MediaStore item or SAF document (deferred: kept across attempts)
+    PhotoWriter.UriRecorder outputUriRecorder; // Deferred: journals outputUri before it is written
+    int jpegQuality;         // ENCODE: quality used (estimated from the sensor tables when spliced)
+    long jpegBytes;          // ENCODE: size of the written file
+    Bitmap sendBitmap;       // ENCODE output (downscaled frame), recycled by DERIVE
+    String sendPath;         // DERIVE: send-optimized copy (null = send the master)
+    String thumbnailPath;    // DERIVE: gallery thumbnail
+    long photoId = -1;       // PERSIST
+
+    // --- Timing (nanoTime) used for the stage latency counters ---
+    final long submittedAtNanos;
+    long stageEnqueuedAtNanos;
+
+    public CaptureJob(ImageProxy imageProxy, long realTime, long assignedTime,
+                      Location location, String companyName) {
+        this(imageProxy, null, realTime, assignedTime, location, companyName);
+    }
+
+    /**
+     * A deferred capture: the sensor JPEG was written to stagingPath by the shutter
+     * and is processed later (see {@link CaptureJournal}).
+     */
+    public CaptureJob(String stagingPath, long realTime, long assignedTime,
+                      Location location, String companyName) {
+        this(null, stagingPath, realTime, assignedTime, location, companyName);
+    }
+
+    private CaptureJob(ImageProxy imageProxy, String stagingPath, long realTime, long assignedTime,
+                       Location location, String companyName) {
+        this.imageProxy = imageProxy;
+        this.stagingPath = stagingPath;
+        this.realTime = realTime;
+        this.assignedTime = assignedTime;
+        this.location = location;
+        this.companyName = companyName;
+        this.submittedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * When true, the pixels are stored in sensor order and the rotation is written as the
+     * EXIF Orientation tag, instead of being applied during conversion.
+     */
+    public void setRotateViaExif(boolean rotateViaExif) {
+        this.rotateViaExif = rotateViaExif;
+    }
+
+    public String getFileName() {
+        return "LunarTag_" + realTime;
+    }
+
+    public long getRealTime() {
+        return realTime;
+    }
+
+    public long getAssignedTime() {
+        return assignedTime;
+    }
+
+    public String getAbsolutePath() {
+        return absolutePath;
+    }
+
+    public long getPhotoId() {
+        return photoId;
+    }
+
+    /**
+     * Total time spent since the shutter handed this job to the pipeline.
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - submittedAtNanos) / 1_000_000L;
+    }
+
+    /**
+     * Frees every heavy resource still attached to the job.
+     * Called when a job finishes, fails, or is discarded on shutdown.
+     */
+    void release() {
+        if (imageProxy != null) {
+            imageProxy.close();
+            imageProxy = null;
+        }
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+        if (sendBitmap != null) {
+            sendBitmap.recycle();
+            sendBitmap = null;
+        }
+        sourceJpeg = null;
+        sourceStructure = null;
+    }
+}
@@ -0,0 +1,236 @@
+package com.lunartag.app.capture;
+
+import android.content.Context;
+import android.location.Location;
+
+import com.lunartag.app.audit.AuditLogWriter;
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.CaptureJournalDao;
+import com.lunartag.app.model.AuditLog;
+import com.lunartag.app.model.CaptureJournalEntry;
+import com.lunartag.app.model.Photo;
+import com.lunartag.app.workers.DeferredCaptureWorker;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Capture-now-process-later: the shutter only saves the sensor JPEG to a staging file and
+ * records the capture here; {@link DeferredCaptureWorker} runs the watermark/encode/export/schedule
+ * steps later through the {@link CapturePipeline} stages.
+ *
+ * Every step is safe to repeat, so a run killed at any point is simply run again:
+ *  - QUEUED: the output and its variants are (re)written from the staging file under the same names.
+ *    The MediaStore item or SAF document is recorded in the entry as soon as it is created, before
+ *    its first byte, and a retry rewrites that one instead of creating another.
+ *  - ENCODED: the output exists; the Photo row is completed and the alarm (re)armed.
+ *  - Then the entry is deleted and the CAPTURE audit event written in one transaction, so the
+ *    event is logged once however often the steps before ran; the staging file goes last
+ *    (or with {@link #sweepStaging()}).
+ * A run killed between creating the item and the update recording it leaves that one item behind.
+ * Meanwhile the gallery shows the staging file with the PROCESSING status.
+ */
+public class CaptureJournal {
+
+    public static final String STATUS_PROCESSING = "PROCESSING";
+
+    private static final String STAGING_DIR = "capture_staging";
+    // A job failing this many times is marked FAILED and keeps its staging file.
+    private static final int MAX_ATTEMPTS = 3;
+    // Staging files younger than this may belong to a shutter that has not journaled yet.
+    private static final long ORPHAN_AGE_MS = 60 * 60 * 1000L;
+
+    private static volatile CaptureJournal INSTANCE;
+
+    private final Context context;
+    private final AppDatabase db;
+    private final CaptureJournalDao dao;
+
+    public static CaptureJournal getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (CaptureJournal.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CaptureJournal(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private CaptureJournal(Context appContext) {
+        this.context = appContext;
+        this.db = AppDatabase.getDatabase(appContext);
+        this.dao = db.captureJournalDao();
+    }
+
+    /**
+     * Where the shutter should save the sensor JPEG of a capture taken at realTime.
+     */
+    public File newStagingFile(long realTime) {
+        File dir = new File(context.getFilesDir(), STAGING_DIR);
+        if (!dir.exists()) dir.mkdirs();
+        return new File(dir, "LunarTag_" + realTime + ".jpg");
+    }
+
+    /**
+     * Journals a staged capture (see {@link CaptureJob#CaptureJob(String, long, long, Location, String)})
+     * and its PROCESSING gallery row in one transaction, then wakes the worker.
+     * Blocking: call off the main thread.
+     * @return The ID of the Photo row.
+     */
+    public long record(CaptureJob job) {
+        long now = System.currentTimeMillis();
+        Photo photo = new Photo();
+        photo.setFilePath(job.stagingPath);
+        photo.setCaptureTimestampReal(job.realTime);
+        photo.setAssignedTimestamp(job.assignedTime);
+        photo.setCreatedAt(now);
+        photo.setStatus(STATUS_PROCESSING);
+
+        CaptureJournalEntry entry = new CaptureJournalEntry();
+        entry.setStagingPath(job.stagingPath);
+        entry.setRealTime(job.realTime);
+        entry.setAssignedTime(job.assignedTime);
+        Location location = job.location;
+        if (location != null) {
+            photo.setLat(location.getLatitude());
+            photo.setLon(location.getLongitude());
+            photo.setAccuracyMeters(location.getAccuracy());
+            entry.setLocated(true);
+            entry.setLat(location.getLatitude());
+            entry.setLon(location.getLongitude());
+            entry.setAccuracy(location.getAccuracy());
+            entry.setAltitude(location.hasAltitude() ? location.getAltitude() : null);
+            entry.setFixTime(location.getTime());
+            entry.setProvider(location.getProvider());
+        }
+        entry.setCompanyName(job.companyName);
+        entry.setAddress(job.address);
+        entry.setRotateViaExif(job.rotateViaExif);
+        entry.setState(CaptureJournalEntry.STATE_QUEUED);
+        entry.setCreatedAt(now);
+        entry.setUpdatedAt(now);
+
+        db.runInTransaction(() -> {
+            job.photoId = db.photoDao().insertPhoto(photo);
+            entry.setPhotoId(job.photoId);
+            dao.insert(entry);
+        });
+        DeferredCaptureWorker.enqueue(context);
+        return job.photoId;
+    }
+
+    public List<CaptureJournalEntry> getUnfinished() {
+        return dao.getUnfinished();
+    }
+
+    /**
+     * Runs whatever is left of one journaled capture.
+     * @return False if it failed and should be retried later.
+     */
+    public boolean process(CaptureJournalEntry entry) {
+        CapturePipeline pipeline = CapturePipeline.getInstance(context);
+        CaptureJob job = toJob(entry);
+        try {
+            if (CaptureJournalEntry.STATE_QUEUED.equals(entry.getState())) {
+                if (!new File(entry.getStagingPath()).exists()) {
+                    throw new IllegalStateException("Staging file is gone: " + entry.getStagingPath());
+                }
+                pipeline.log("Deferred: Processing capture " + entry.getRealTime() + "...");
+                job.outputUriRecorder = uri -> {
+                    entry.setOutputUri(uri.toString());
+                    entry.setUpdatedAt(System.currentTimeMillis());
+                    dao.update(entry);
+                };
+                pipeline.encodeNow(job);
+                entry.setOutputPath(job.absolutePath);
+                entry.setAddress(job.address);
+                entry.setState(CaptureJournalEntry.STATE_ENCODED);
+                entry.setUpdatedAt(System.currentTimeMillis());
+                db.runInTransaction(() -> {
+                    dao.update(entry);
+                    db.photoDao().updateEncodeResults(entry.getPhotoId(), job.jpegQuality, job.jpegBytes,
+                            job.sendPath, job.thumbnailPath);
+                });
+            } else {
+                // Resuming after ENCODED: the variants were stored on the row with the encode stats.
+                Photo photo = db.photoDao().getPhotoById(entry.getPhotoId());
+                if (photo != null) {
+                    job.sendPath = photo.getSendPath();
+                    job.thumbnailPath = photo.getThumbnailPath();
+                    job.jpegQuality = photo.getJpegQuality();
+                    job.jpegBytes = photo.getFileSizeBytes();
+                }
+            }
+            pipeline.finishNow(job);
+            AuditLog captured = new AuditLog();
+            captured.setPhotoId(job.photoId);
+            captured.setAction(AuditLogWriter.ACTION_CAPTURE);
+            captured.setDetails(CaptureProcessor.describeCapture(job));
+            captured.setTimestamp(System.currentTimeMillis());
+            db.runInTransaction(() -> {
+                dao.delete(entry.getId());
+                db.auditLogDao().insertLog(captured);
+            });
+            new File(entry.getStagingPath()).delete();
+            pipeline.log("Deferred: Capture " + entry.getRealTime() + " done.");
+            return true;
+        } catch (Exception e) {
+            pipeline.log("Deferred ERROR: " + e.getMessage());
+            entry.setAttempts(entry.getAttempts() + 1);
+            entry.setUpdatedAt(System.currentTimeMillis());
+            if (entry.getAttempts() < MAX_ATTEMPTS) {
+                dao.update(entry);
+                return false;
+            }
+            entry.setState(CaptureJournalEntry.STATE_FAILED);
+            db.runInTransaction(() -> {
+                dao.update(entry);
+                Photo photo = db.photoDao().getPhotoById(entry.getPhotoId());
+                if (photo != null) {
+                    photo.setStatus("FAILED");
+                    db.photoDao().updatePhoto(photo);
+                }
+            });
+            return true;
+        }
+    }
+
+    /**
+     * Deletes staging files no entry refers to: left behind when the process died after the
+     * entry was deleted, or before the shutter got to journal the file.
+     */
+    public void sweepStaging() {
+        File[] files = new File(context.getFilesDir(), STAGING_DIR).listFiles();
+        if (files == null) return;
+        Set<String> referenced = new HashSet<>(dao.getStagingPaths());
+        long cutoff = System.currentTimeMillis() - ORPHAN_AGE_MS;
+        for (File file : files) {
+            if (!referenced.contains(file.getAbsolutePath()) && file.lastModified() < cutoff) {
+                file.delete();
+            }
+        }
+    }
+
+    private static CaptureJob toJob(CaptureJournalEntry entry) {
+        Location location = null;
+        if (entry.isLocated()) {
+            location = new Location(entry.getProvider());
+            location.setLatitude(entry.getLat());
+            location.setLongitude(entry.getLon());
+            location.setAccuracy(entry.getAccuracy());
+            location.setTime(entry.getFixTime());
+            if (entry.getAltitude() != null) location.setAltitude(entry.getAltitude());
+        }
+        CaptureJob job = new CaptureJob(entry.getStagingPath(), entry.getRealTime(), entry.getAssignedTime(),
+                location, entry.getCompanyName());
+        job.setRotateViaExif(entry.isRotateViaExif());
+        job.address = entry.getAddress();
+        job.absolutePath = entry.getOutputPath();
+        job.outputUri = entry.getOutputUri();
+        job.photoId = entry.getPhotoId();
+        return job;
+    }
+}
@@ -0,0 +1,201 @@
+package com.lunartag.app.capture;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.lunartag.app.audit.AuditLogWriter;
+import com.lunartag.app.geo.AddressCache;
+import com.lunartag.app.utils.BudgetedJpegEncoder;
+import com.lunartag.app.utils.SafStorageBackend;
+import com.lunartag.app.utils.WatermarkOverlayCache;
+
+/**
+ * The staged capture pipeline: DECODE -> ANNOTATE -> ENCODE -> DERIVE -> PERSIST -> SCHEDULE.
+ *
+ * Each stage has its own worker budget and a bounded queue in front of it, so a second
+ * capture can be decoded while the first one is still encoding. When every queue is full
+ * {@link #submit(CaptureJob)} returns false and the shutter must back off.
+ *
+ * The pipeline lives for the whole process (like {@code AppDatabase}), so photos that are
+ * still in flight finish even if the user leaves the Camera screen.
+ */
+public class CapturePipeline {
+
+    private static final String TAG = "CapturePipeline";
+
+    // --- Stage budgets: {workers, queue capacity} ---
+    // Decode/Annotate/Encode each hold a full-resolution bitmap, so they are kept tight.
+    private static final int[] DECODE_BUDGET = {1, 2};
+    private static final int[] ANNOTATE_BUDGET = {1, 1};
+    private static final int[] ENCODE_BUDGET = {1, 1};
+    // Derive holds a send-sized bitmap (~1600px), a quarter of a frame or less.
+    private static final int[] DERIVE_BUDGET = {1, 2};
+    private static final int[] PERSIST_BUDGET = {1, 4};
+    private static final int[] SCHEDULE_BUDGET = {1, 8};
+
+    /**
+     * Callbacks are delivered on pipeline worker threads.
+     */
+    public interface Listener {
+        void onLog(String message);
+        void onJobCompleted(CaptureJob job);
+        void onJobFailed(CaptureJob job, String stage, Exception error);
+    }
+
+    private static volatile CapturePipeline INSTANCE;
+
+    private final PipelineStage decode;
+    private final PipelineStage annotate;
+    private final PipelineStage encode;
+    private final PipelineStage derive;
+    private final PipelineStage persist;
+    private final PipelineStage schedule;
+    private final PipelineStage[] stages;
+    private final CaptureProcessor processor;
+    private final AddressCache addressCache;
+    private final SafStorageBackend safStorage;
+    private final BudgetedJpegEncoder jpegEncoder;
+    private final AuditLogWriter auditLog;
+
+    private volatile Listener listener;
+
+    public static CapturePipeline getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (CapturePipeline.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CapturePipeline(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private CapturePipeline(Context appContext) {
+        processor = new CaptureProcessor(appContext, this);
+        addressCache = AddressCache.getInstance(appContext);
+        safStorage = SafStorageBackend.getInstance(appContext);
+        jpegEncoder = BudgetedJpegEncoder.getInstance(appContext);
+        auditLog = AuditLogWriter.getInstance(appContext);
+
+        schedule = new PipelineStage("SCHEDULE", SCHEDULE_BUDGET[0], SCHEDULE_BUDGET[1], processor::schedule, this::forward);
+        persist = new PipelineStage("PERSIST", PERSIST_BUDGET[0], PERSIST_BUDGET[1], processor::persist, this::forward);
+        derive = new PipelineStage("DERIVE", DERIVE_BUDGET[0], DERIVE_BUDGET[1], processor::derive, this::forward);
+        encode = new PipelineStage("ENCODE", ENCODE_BUDGET[0], ENCODE_BUDGET[1], processor::encode, this::forward);
+        annotate = new PipelineStage("ANNOTATE", ANNOTATE_BUDGET[0], ANNOTATE_BUDGET[1], processor::annotate, this::forward);
+        decode = new PipelineStage("DECODE", DECODE_BUDGET[0], DECODE_BUDGET[1], processor::decode, this::forward);
+        stages = new PipelineStage[]{decode, annotate, encode, derive, persist, schedule};
+
+        for (PipelineStage stage : stages) {
+            stage.start();
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Hands a fresh capture to the DECODE stage without blocking.
+     * @return false if the pipeline is saturated. The caller still owns the job and must close it.
+     */
+    public boolean submit(CaptureJob job) {
+        return decode.offer(job);
+    }
+
+    /**
+     * True if the shutter can fire again without being rejected.
+     */
+    public boolean hasCapacity() {
+        return decode.hasCapacity();
+    }
+
+    /**
+     * Number of jobs currently waiting in any stage queue.
+     */
+    public int getQueuedJobs() {
+        int total = 0;
+        for (PipelineStage stage : stages) {
+            total += stage.getQueueDepth();
+        }
+        return total;
+    }
+
+    /**
+     * Multi-line snapshot of the queue depth and latency counters of every stage,
+     * plus the watermark overlay and address cache hit rates, the SAF create counters
+     * the chosen JPEG qualities and sizes, and the audit writer's queue and flush times.
+     */
+    public String describeMetrics() {
+        StringBuilder sb = new StringBuilder();
+        for (PipelineStage stage : stages) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(stage.describe());
+        }
+        sb.append('\n').append(WatermarkOverlayCache.getInstance().describe());
+        sb.append('\n').append(addressCache.describe());
+        sb.append('\n').append(safStorage.describe());
+        sb.append('\n').append(jpegEncoder.describe());
+        sb.append('\n').append(auditLog.describe());
+        return sb.toString();
+    }
+
+    /**
+     * Runs DECODE, ANNOTATE, ENCODE and DERIVE for a deferred capture on the calling thread,
+     * outside the stage queues (and their counters). Releases the job's resources either way.
+     */
+    void encodeNow(CaptureJob job) throws Exception {
+        try {
+            processor.decode(job);
+            processor.annotate(job);
+            processor.encode(job);
+            processor.derive(job);
+        } finally {
+            job.release();
+        }
+    }
+
+    /**
+     * Runs PERSIST and SCHEDULE for a deferred capture on the calling thread.
+     */
+    void finishNow(CaptureJob job) {
+        processor.persist(job);
+        processor.schedule(job);
+    }
+
+    /**
+     * Moves a job from one stage to the next, blocking when the next stage is full.
+     */
+    private void forward(PipelineStage from, CaptureJob job, Exception error) throws InterruptedException {
+        if (error != null) {
+            job.release();
+            Listener l = listener;
+            if (l != null) l.onJobFailed(job, from.getName(), error);
+            return;
+        }
+
+        if (from == decode) {
+            annotate.put(job);
+        } else if (from == annotate) {
+            encode.put(job);
+        } else if (from == encode) {
+            derive.put(job);
+        } else if (from == derive) {
+            persist.put(job);
+        } else if (from == persist) {
+            schedule.put(job);
+        } else {
+            job.release();
+            Listener l = listener;
+            if (l != null) l.onJobCompleted(job);
+        }
+    }
+
+    void log(String message) {
+        Listener l = listener;
+        if (l != null) {
+            l.onLog(message);
+        } else {
+            Log.d(TAG, message);
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.lunartag.app.capture;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Environment;
+
+import com.lunartag.app.audit.AuditLogWriter;
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.PhotoDao;
+import com.lunartag.app.jpeg.JpegSplicer;
+import com.lunartag.app.jpeg.JpegStructure;
+import com.lunartag.app.model.Photo;
+import com.lunartag.app.model.PhotoDetails;
+import com.lunartag.app.utils.BudgetedJpegEncoder;
+import com.lunartag.app.utils.ExifInjectingOutputStream;
+import com.lunartag.app.utils.ExifSegmentBuilder;
+import com.lunartag.app.utils.ExifUtils;
+import com.lunartag.app.utils.ImageUtils;
+import com.lunartag.app.utils.Scheduler;
+import com.lunartag.app.utils.WatermarkUtils;
+import com.lunartag.app.utils.YuvConversionContext;
+import com.lunartag.app.workers.AddressBackfillWorker;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * The work done by each stage of the {@link CapturePipeline}.
+ * This is the old CameraFragment.processAndSaveImage, split at its natural seams.
+ */
+class CaptureProcessor {
+
+    // "GPS Map Camera", company, address, GPS, time: see annotate().
+    private static final int WATERMARK_LINE_COUNT = 5;
+    // Extra rows decoded above the block, for the text shadow and anti-aliasing.
+    private static final int STRIP_MARGIN = 16;
+
+    // Preferences for Settings (JPEG size target)
+    private static final String PREFS_SETTINGS = "LunarTagSettings";
+    private static final String KEY_JPEG_BUDGET_KB = "jpeg_budget_kb";   // 0 = legacy quality 100
+    private static final String KEY_JPEG_TARGET_PSNR = "jpeg_target_psnr"; // > 0 wins over the budget
+    private static final int DEFAULT_JPEG_BUDGET_KB = 1536;
+
+    // Variants written next to the master (see derive()).
+    private static final String SEND_DIR = "send";             // Under external Pictures: FileProvider-shareable
+    private static final String THUMBNAIL_DIR = "thumbnails";  // Under internal files
+    private static final int SEND_LONG_EDGE = 1600;
+    private static final int SEND_QUALITY = 80;
+    private static final int THUMBNAIL_LONG_EDGE = 320;
+    private static final int THUMBNAIL_QUALITY = 75;
+    private static final int EXIF_THUMBNAIL_LONG_EDGE = 160; // Exif/DCF size (160x120)
+    private static final int EXIF_THUMBNAIL_QUALITY = 70;
+
+    private final Context context;
+    private final CapturePipeline pipeline;
+    private final AddressResolver addressResolver;
+    private final BudgetedJpegEncoder jpegEncoder;
+
+    // One set of pooled YUV buffers per DECODE worker.
+    private final ThreadLocal<YuvConversionContext> yuvContexts = new ThreadLocal<YuvConversionContext>() {
+        @Override
+        protected YuvConversionContext initialValue() {
+            return new YuvConversionContext();
+        }
+    };
+
+    CaptureProcessor(Context context, CapturePipeline pipeline) {
+        this.context = context;
+        this.pipeline = pipeline;
+        this.addressResolver = new AddressResolver(context);
+        this.jpegEncoder = BudgetedJpegEncoder.getInstance(context);
+    }
+
+    /**
+     * STAGE 1: Sensor frame -> mutable Bitmap. Frees the camera buffer as early as possible.
+     * The sensor rotation is either applied here or carried forward for the EXIF tag.
+     * An upright sensor JPEG only has its bottom strip decoded (see prepareStrip).
+     * Deferred captures are read from their staging file instead of a camera buffer.
+     */
+    void decode(CaptureJob job) throws IOException {
+        if (job.stagingPath != null) {
+            decodeStaged(job);
+            return;
+        }
+        try {
+            // Upright sensor JPEG: decode only the bottom strip, the rest is spliced through untouched.
+            if (job.imageProxy.getImageInfo().getRotationDegrees() == 0
+                    && prepareStrip(job, ImageUtils.getJpegBytes(job.imageProxy))) {
+                pipeline.log("System: Decoding watermark strip only...");
+                return;
+            }
+            // In-memory captures arrive as JPEG (ImageCapture's default format): a rotated frame
+            // is decoded band by band into the upright bitmap, see ImageUtils.decodeJpeg.
+            pipeline.log("System: Decoding sensor frame...");
+            job.bitmap = ImageUtils.imageProxyToBitmap(job.imageProxy, yuvContexts.get(), !job.rotateViaExif);
+            job.exifRotation = job.rotateViaExif ? job.imageProxy.getImageInfo().getRotationDegrees() : 0;
+        } finally {
+            job.imageProxy.close();
+            job.imageProxy = null;
+        }
+        if (job.bitmap == null) {
+            throw new IOException("Failed to convert image to bitmap.");
+        }
+    }
+
+    /**
+     * DECODE for a deferred capture: the staging file is the sensor JPEG as CameraX saved it,
+     * with the sensor rotation in its EXIF Orientation tag.
+     */
+    private void decodeStaged(CaptureJob job) throws IOException {
+        byte[] jpegBytes = Files.readAllBytes(new File(job.stagingPath).toPath());
+        int rotation = ExifUtils.readRotationDegrees(jpegBytes);
+        if (rotation == 0 && prepareStrip(job, jpegBytes)) {
+            pipeline.log("System: Decoding watermark strip only...");
+            return;
+        }
+        pipeline.log("System: Decoding staged JPEG...");
+        job.bitmap = ImageUtils.decodeJpeg(jpegBytes, job.rotateViaExif ? 0 : rotation);
+        job.exifRotation = job.rotateViaExif ? rotation : 0;
+        if (job.bitmap == null) {
+            throw new IOException("Failed to decode staged JPEG.");
+        }
+    }
+
+    /**
+     * STAGE 2: Reverse-geocode (unless the ready state already did), build the text block
+     * and draw it onto the bitmap.
+     */
+    void annotate(CaptureJob job) {
+        if (job.address == null) {
+            job.address = addressResolver.resolve(job.location);
+        } else {
+            pipeline.log("System: Using pre-resolved address.");
+        }
+        job.watermarkLines = AnnotationBundle.buildLines(job.companyName, job.address, job.location, job.assignedTime);
+
+        pipeline.log("System: Applying Watermark...");
+        if (job.sourceStructure != null) {
+            JpegStructure jpeg = job.sourceStructure;
+            WatermarkUtils.addWatermarkToStrip(job.bitmap, jpeg.width, jpeg.height, job.stripTop,
+                    null, job.watermarkLines);
+        } else {
+            WatermarkUtils.addWatermark(job.bitmap, null, job.watermarkLines, job.exifRotation);
+        }
+    }
+
+    /**
+     * STAGE 3: Encode the JPEG straight into every destination file, then drop the bitmap.
+     * On the strip path only the watermarked MCU rows are re-encoded and spliced onto the sensor JPEG.
+     * Either way the Exif segment (GPS, times, audit JSON, orientation) is written into the
+     * stream as it is produced, replacing any Exif block the camera or encoder put there.
+     * A full re-encode uses the quality {@link BudgetedJpegEncoder} picks for the size target;
+     * a splice keeps the sensor's own quality.
+     * The watermarked frame is downscaled once for DERIVE, so the variants need no second decode;
+     * the same small frame gives the Exif thumbnail embedded in the master.
+     */
+    void encode(CaptureJob job) throws IOException {
+        byte[] spliced = null;
+        if (job.sourceStructure != null) {
+            job.jpegQuality = job.sourceStructure.estimateQuality();
+            try {
+                spliced = spliceStrip(job);
+            } catch (IOException e) {
+                // e.g. the sensor's Huffman tables lack a code the strip needs: redo it the slow way.
+                pipeline.log("Splice failed (" + e.getMessage() + "), re-encoding full frame.");
+                job.bitmap.recycle();
+                job.bitmap = decodeFullWithWatermark(job);
+            } finally {
+                job.sourceJpeg = null;
+                job.sourceStructure = null;
+            }
+        }
+
+        BudgetedJpegEncoder.Choice choice = null;
+        if (spliced == null) {
+            choice = jpegEncoder.choose(job.bitmap, jpegTarget());
+            job.jpegQuality = choice.quality;
+            pipeline.log("System: JPEG quality " + choice.quality + " (" + choice.tries + " tries, "
+                    + choice.searchNanos / 1_000_000L + "ms)");
+        }
+
+        // Downscale before the master is written: the send frame also yields the Exif thumbnail.
+        job.sendBitmap = prepareSendBitmap(job, spliced);
+        byte[] exifThumbnail = job.sendBitmap != null ? encodeExifThumbnail(job.sendBitmap) : null;
+
+        pipeline.log("System: Saving File...");
+        byte[] exifSegment = ExifUtils.buildCaptureSegment(job.location, job.realTime, job.assignedTime,
+                job.exifRotation, exifThumbnail);
+        PhotoWriter writer = PhotoWriter.open(context, pipeline, job.getFileName(), job.outputUri, uri -> {
+            job.outputUri = uri.toString();
+            if (job.outputUriRecorder != null) job.outputUriRecorder.record(uri);
+        });
+        try {
+            OutputStream out = new ExifInjectingOutputStream(writer.getStream(), exifSegment);
+            if (spliced != null) {
+                out.write(spliced);
+            } else if (!job.bitmap.compress(Bitmap.CompressFormat.JPEG, choice.quality, out)) {
+                throw new IOException("JPEG compression failed.");
+            }
+            job.absolutePath = writer.commit();
+            job.jpegBytes = writer.getBytesWritten();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        if (choice != null) jpegEncoder.recordActual(choice, job.jpegBytes);
+        pipeline.log(writer.describe());
+        pipeline.log("SUCCESS: File Written. (" + job.absolutePath + ")");
+
+        if (job.bitmap != null) {
+            job.bitmap.recycle();
+            job.bitmap = null;
+        }
+    }
+
+    /**
+     * The watermarked frame at send size, for DERIVE. On the splice path job.bitmap is only the
+     * strip, so the spliced JPEG is decoded subsampled instead (a fraction of a full decode).
+     * @return Null if it could not be made: the master is then used for everything.
+     */
+    private Bitmap prepareSendBitmap(CaptureJob job, byte[] spliced) {
+        try {
+            Bitmap source = spliced != null ? decodeSubsampled(spliced, SEND_LONG_EDGE) : job.bitmap;
+            if (source == null) return null;
+            Bitmap scaled = scaleToLongEdge(source, SEND_LONG_EDGE);
+            if (scaled == job.bitmap) {
+                // Already small: ENCODE still needs job.bitmap for the master.
+                return job.bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            }
+            if (scaled != source && source != job.bitmap) source.recycle();
+            return scaled;
+        } catch (RuntimeException | OutOfMemoryError e) {
+            pipeline.log("Send copy skipped: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The Exif thumbnail embedded in the master, so viewers can show it without decoding the image.
+     * @return Null if it does not fit the Exif segment or cannot be encoded.
+     */
+    private static byte[] encodeExifThumbnail(Bitmap send) {
+        Bitmap small = scaleToLongEdge(send, EXIF_THUMBNAIL_LONG_EDGE);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+            if (!small.compress(Bitmap.CompressFormat.JPEG, EXIF_THUMBNAIL_QUALITY, out)
+                    || out.size() > ExifSegmentBuilder.MAX_THUMBNAIL_BYTES) {
+                return null;
+            }
+            return out.toByteArray();
+        } finally {
+            if (small != send) small.recycle();
+        }
+    }
+
+    /**
+     * STAGE 4: Write the send-optimized copy and the gallery thumbnail from the downscaled frame.
+     * Both carry the master's Exif segment (orientation, GPS, times). A failure only costs the
+     * variants: the send alarm and the gallery fall back to the master.
+     */
+    void derive(CaptureJob job) {
+        Bitmap send = job.sendBitmap;
+        if (send == null) return;
+        Bitmap thumbnail = null;
+        try {
+            byte[] exifSegment = ExifUtils.buildCaptureSegment(job.location, job.realTime, job.assignedTime, job.exifRotation);
+            String name = job.getFileName() + ".jpg";
+            job.sendPath = writeVariant(new File(context.getExternalFilesDir(Environment.DIRECTORY_PICTURES), SEND_DIR),
+                    name, send, SEND_QUALITY, exifSegment);
+            thumbnail = scaleToLongEdge(send, THUMBNAIL_LONG_EDGE);
+            job.thumbnailPath = writeVariant(new File(context.getFilesDir(), THUMBNAIL_DIR),
+                    name, thumbnail, THUMBNAIL_QUALITY, exifSegment);
+            pipeline.log("System: Send copy and thumbnail written.");
+        } catch (IOException | RuntimeException e) {
+            pipeline.log("Variants failed (" + e.getMessage() + "), using the master.");
+        } finally {
+            if (thumbnail != null && thumbnail != send) thumbnail.recycle();
+            send.recycle();
+            job.sendBitmap = null;
+        }
+    }
+
+    /**
+     * Encodes bitmap into dir/name through a temporary file, so a variant is either complete or absent.
+     * @return The absolute path of the variant.
+     */
+    private static String writeVariant(File dir, String name, Bitmap bitmap, int quality,
+                                       byte[] exifSegment) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File target = new File(dir, name);
+        File temp = new File(dir, name + ".tmp");
+        try (OutputStream out = new ExifInjectingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)), exifSegment)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+                throw new IOException("JPEG compression failed.");
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp);
+        }
+        return target.getAbsolutePath();
+    }
+
+    private static Bitmap decodeSubsampled(byte[] jpeg, int longEdge) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / (sampleSize * 2) >= longEdge) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    }
+
+    /**
+     * Bitmap shrunk so its long edge is at most longEdge; the bitmap itself if it already fits.
+     */
+    private static Bitmap scaleToLongEdge(Bitmap bitmap, int longEdge) {
+        int current = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (current <= longEdge) return bitmap;
+        float scale = (float) longEdge / current;
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+    }
+
+    /**
+     * The size target from the settings, or null for the legacy fixed quality 100.
+     */
+    private BudgetedJpegEncoder.Target jpegTarget() {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+        float psnr = prefs.getFloat(KEY_JPEG_TARGET_PSNR, 0f);
+        if (psnr > 0) return BudgetedJpegEncoder.Target.psnr(psnr);
+        int budgetKb = prefs.getInt(KEY_JPEG_BUDGET_KB, DEFAULT_JPEG_BUDGET_KB);
+        return budgetKb > 0 ? BudgetedJpegEncoder.Target.budget(budgetKb * 1024L) : null;
+    }
+
+    /**
+     * Parses the sensor JPEG and, if it can be spliced, decodes just the rows the watermark covers
+     * (rounded up to a whole MCU row) into job.bitmap.
+     * @return False if the frame must go through the full decode path instead.
+     */
+    private boolean prepareStrip(CaptureJob job, byte[] jpegBytes) {
+        if (jpegBytes == null) return false;
+        JpegStructure jpeg;
+        try {
+            jpeg = JpegStructure.parse(jpegBytes);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!jpeg.isSpliceable()) return false;
+
+        int blockHeight = WatermarkUtils.getBlockHeight(jpeg.width, null, WATERMARK_LINE_COUNT);
+        int stripTop = JpegSplicer.alignStripTop(jpeg, jpeg.height - blockHeight - STRIP_MARGIN);
+
+        BitmapRegionDecoder decoder = null;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(jpegBytes, 0, jpegBytes.length, false);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inMutable = true;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap strip = decoder.decodeRegion(new Rect(0, stripTop, jpeg.width, jpeg.height), options);
+            if (strip == null) return false;
+            job.bitmap = strip;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (decoder != null) decoder.recycle();
+        }
+        job.sourceJpeg = jpegBytes;
+        job.sourceStructure = jpeg;
+        job.stripTop = stripTop;
+        job.exifRotation = 0;
+        return true;
+    }
+
+    private byte[] spliceStrip(CaptureJob job) throws IOException {
+        Bitmap strip = job.bitmap;
+        int[] argb = new int[strip.getWidth() * strip.getHeight()];
+        strip.getPixels(argb, 0, strip.getWidth(), 0, 0, strip.getWidth(), strip.getHeight());
+        return JpegSplicer.splice(job.sourceJpeg, job.sourceStructure, job.stripTop, argb);
+    }
+
+    private Bitmap decodeFullWithWatermark(CaptureJob job) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        Bitmap full = BitmapFactory.decodeByteArray(job.sourceJpeg, 0, job.sourceJpeg.length, options);
+        if (full == null) {
+            throw new IOException("Failed to decode sensor JPEG.");
+        }
+        WatermarkUtils.addWatermark(full, null, job.watermarkLines);
+        return full;
+    }
+
+    /**
+     * STAGE 5: Insert the Room row for the written file.
+     * A deferred capture already has a PROCESSING row (see {@link CaptureJournal}): that one is
+     * completed instead, so running this twice for the same job is harmless.
+     */
+    void persist(CaptureJob job) {
+        AppDatabase db = AppDatabase.getDatabase(context);
+        PhotoDao dao = db.photoDao();
+        Photo photo = job.photoId > 0 ? dao.getPhotoById(job.photoId) : null;
+        if (photo == null) {
+            photo = new Photo();
+            photo.setCreatedAt(System.currentTimeMillis());
+        }
+        photo.setFilePath(job.absolutePath);
+        photo.setCaptureTimestampReal(job.realTime);
+        photo.setAssignedTimestamp(job.assignedTime);
+        photo.setStatus("PENDING");
+        // Zero when resuming a deferred job: the journal already stored them on the row.
+        if (job.jpegBytes > 0) {
+            photo.setJpegQuality(job.jpegQuality);
+            photo.setFileSizeBytes(job.jpegBytes);
+        }
+        if (job.sendPath != null) photo.setSendPath(job.sendPath);
+        if (job.thumbnailPath != null) photo.setThumbnailPath(job.thumbnailPath);
+        if (job.location != null) {
+            photo.setLat(job.location.getLatitude());
+            photo.setLon(job.location.getLongitude());
+            photo.setAccuracyMeters(job.location.getAccuracy());
+        }
+        // Placeholders and offline answers stay null so the address backfill job picks the
+        // photo up later and an online lookup wins (see AddressResolver).
+        boolean hasAddress = job.address != null
+                && !AddressResolver.UNKNOWN.equals(job.address)
+                && !AddressResolver.NOT_FOUND.equals(job.address)
+                && !addressResolver.isOfflineAnswer(job.location, job.address);
+        final Photo row = photo;
+        db.runInTransaction(() -> {
+            if (row.getId() > 0) {
+                dao.updatePhoto(row);
+            } else {
+                job.photoId = dao.insertPhoto(row);
+            }
+            // The descriptive columns live in photo_details (see PhotoDetails).
+            PhotoDetails details = dao.getDetails(job.photoId);
+            if (details == null) {
+                details = new PhotoDetails();
+                details.setPhotoId(job.photoId);
+            }
+            details.setCompanyName(job.companyName);
+            if (hasAddress) {
+                details.setAddressHuman(job.address);
+            }
+            dao.saveDetails(details);
+        });
+        pipeline.log("System: Database Updated.");
+        // A deferred capture is logged by CaptureJournal when its entry completes: this stage
+        // runs again when a resumed entry is retried.
+        if (job.stagingPath == null) {
+            AuditLogWriter.getInstance(context).log(job.photoId, AuditLogWriter.ACTION_CAPTURE, describeCapture(job));
+        }
+        if (!hasAddress && job.location != null) {
+            AddressBackfillWorker.enqueue(context);
+        }
+    }
+
+    /**
+     * Audit details of a capture, as JSON.
+     */
+    static String describeCapture(CaptureJob job) {
+        JSONObject details = new JSONObject();
+        try {
+            details.put("file", job.absolutePath);
+            details.put("assignedTime", job.assignedTime);
+            details.put("realTime", job.realTime);
+            if (job.jpegBytes > 0) {
+                details.put("quality", job.jpegQuality);
+                details.put("bytes", job.jpegBytes);
+            }
+            if (job.location != null) {
+                details.put("lat", job.location.getLatitude());
+                details.put("lon", job.location.getLongitude());
+                details.put("accuracy", job.location.getAccuracy());
+            }
+        } catch (JSONException e) {
+            // Only thrown for NaN / infinite numbers: keep what was put so far.
+        }
+        return details.toString();
+    }
+
+    /**
+     * STAGE 6: Arm the send alarm for the new row, sharing the send copy when there is one.
+     */
+    void schedule(CaptureJob job) {
+        pipeline.log("System: Scheduling Alarm for Photo ID: " + job.photoId);
+        String sharedPath = job.sendPath != null ? job.sendPath : job.absolutePath;
+        Scheduler.schedulePhotoSend(context, job.photoId, sharedPath, job.assignedTime);
+    }
+}
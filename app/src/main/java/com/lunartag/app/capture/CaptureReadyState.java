@@ -0,0 +1,208 @@
+package com.lunartag.app.capture;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import com.lunartag.app.utils.LocationProvider;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps an {@link AnnotationBundle} ready while the preview is open, so the shutter path
+ * no longer has to geocode or read settings: it only composites and encodes.
+ *
+ * The bundle is rebuilt in the background on every location update (the Geocoder is only
+ * called again once the fix has moved more than {@link AnnotationBundle#MAX_DRIFT_METERS})
+ * and whenever the screen resumes, which picks up settings changes.
+ */
+public class CaptureReadyState {
+
+    private static final String TAG = "CaptureReadyState";
+
+    // Preferences for Settings (Company Name)
+    private static final String PREFS_SETTINGS = "LunarTagSettings";
+    private static final String KEY_COMPANY_NAME = "company_name";
+    private static final String KEY_ROTATION_VIA_EXIF = "rotation_via_exif";
+    private static final String KEY_DEFERRED_PROCESSING = "deferred_processing";
+
+    // Re-evaluate freshness even when no new fix arrives (e.g. signal lost indoors).
+    private static final long TICK_MS = 5_000L;
+
+    /**
+     * Called on the main thread whenever the bundle or its freshness changes.
+     */
+    public interface Listener {
+        void onReadyStateChanged(AnnotationBundle bundle, boolean fresh);
+    }
+
+    private final Context context;
+    private final LocationProvider locationProvider;
+    private final AddressResolver addressResolver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+
+    private volatile AnnotationBundle bundle;
+    private ExecutorService executor;
+    private Listener listener;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            notifyListener();
+            mainHandler.postDelayed(this, TICK_MS);
+        }
+    };
+
+    public CaptureReadyState(Context context, LocationProvider locationProvider) {
+        this.context = context.getApplicationContext();
+        this.locationProvider = locationProvider;
+        this.addressResolver = new AddressResolver(this.context);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Call in onResume(), after the location engine has been started.
+     */
+    public void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor();
+        }
+        requestRefresh();
+        mainHandler.removeCallbacks(tick);
+        mainHandler.post(tick);
+    }
+
+    /**
+     * Call in onPause(). The last bundle is kept; it simply goes stale.
+     */
+    public void stop() {
+        mainHandler.removeCallbacks(tick);
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        refreshPending.set(false);
+    }
+
+    /**
+     * Feed from {@link LocationProvider.LocationStatusListener}.
+     */
+    public void onLocationUpdated(Location location) {
+        AnnotationBundle current = bundle;
+        if (current != null && current.coversLocation(location)) {
+            // Same place: just move the fix forward, no Geocoder call.
+            bundle = new AnnotationBundle(location, current.address, current.companyName, current.rotateViaExif);
+            notifyListener();
+            return;
+        }
+        requestRefresh();
+    }
+
+    public AnnotationBundle getBundle() {
+        return bundle;
+    }
+
+    public boolean isFresh() {
+        AnnotationBundle current = bundle;
+        return current != null && current.isFresh(locationProvider.getCurrentLocationFast());
+    }
+
+    /**
+     * Builds the job for a frame that just came off the sensor. Uses the prepared bundle when
+     * it is fresh, fix included, so the photo carries the fix the ready indicator showed;
+     * otherwise stamps the current fix, reads the settings now and leaves the address to the
+     * ANNOTATE stage.
+     */
+    public CaptureJob createJob(ImageProxy imageProxy, long realTime, long assignedTime) {
+        return createJob(imageProxy, null, realTime, assignedTime);
+    }
+
+    /**
+     * Same as {@link #createJob(ImageProxy, long, long)} for a deferred capture whose sensor
+     * JPEG has been saved to stagingPath.
+     */
+    public CaptureJob createStagedJob(String stagingPath, long realTime, long assignedTime) {
+        return createJob(null, stagingPath, realTime, assignedTime);
+    }
+
+    /**
+     * True if the "process later" setting is on: the shutter only stages the sensor JPEG
+     * and the {@link CaptureJournal} does the rest in the background.
+     */
+    public boolean isDeferredProcessing() {
+        SharedPreferences settingsPrefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+        return settingsPrefs.getBoolean(KEY_DEFERRED_PROCESSING, false);
+    }
+
+    private CaptureJob createJob(ImageProxy imageProxy, String stagingPath, long realTime, long assignedTime) {
+        Location location = locationProvider.getCurrentLocationFast();
+        AnnotationBundle current = bundle;
+        String companyName;
+        boolean rotateViaExif;
+        String address = null;
+        if (current != null && current.isFresh(location)) {
+            // Within MAX_DRIFT_METERS of the current fix, and the one the address was resolved for.
+            location = current.location;
+            companyName = current.companyName;
+            rotateViaExif = current.rotateViaExif;
+            address = current.address;
+        } else {
+            SharedPreferences settingsPrefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+            companyName = settingsPrefs.getString(KEY_COMPANY_NAME, "My Company");
+            rotateViaExif = settingsPrefs.getBoolean(KEY_ROTATION_VIA_EXIF, false);
+        }
+        CaptureJob job = stagingPath != null
+                ? new CaptureJob(stagingPath, realTime, assignedTime, location, companyName)
+                : new CaptureJob(imageProxy, realTime, assignedTime, location, companyName);
+        job.setRotateViaExif(rotateViaExif);
+        job.address = address;
+        return job;
+    }
+
+    /**
+     * Schedules a rebuild; requests arriving while one is queued are folded into it.
+     */
+    private void requestRefresh() {
+        ExecutorService ex = executor;
+        if (ex == null || !refreshPending.compareAndSet(false, true)) return;
+        try {
+            ex.execute(this::refresh);
+        } catch (Exception e) {
+            refreshPending.set(false);
+        }
+    }
+
+    private void refresh() {
+        refreshPending.set(false);
+        Location location = locationProvider.getCurrentLocationFast();
+        SharedPreferences settingsPrefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+        String companyName = settingsPrefs.getString(KEY_COMPANY_NAME, "My Company");
+        boolean rotateViaExif = settingsPrefs.getBoolean(KEY_ROTATION_VIA_EXIF, false);
+
+        AnnotationBundle current = bundle;
+        String address = (current != null && current.coversLocation(location))
+                ? current.address
+                : addressResolver.resolve(location);
+
+        bundle = new AnnotationBundle(location, address, companyName, rotateViaExif);
+        Log.d(TAG, "Bundle refreshed: " + address);
+        mainHandler.post(this::notifyListener);
+    }
+
+    private void notifyListener() {
+        Listener l = listener;
+        if (l == null) return;
+        l.onReadyStateChanged(bundle, isFresh());
+    }
+}
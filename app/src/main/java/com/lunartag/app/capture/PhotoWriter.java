@@ -0,0 +1,269 @@
+package com.lunartag.app.capture;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Environment;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+
+import com.lunartag.app.utils.FanOutOutputStream;
+import com.lunartag.app.utils.SafStorageBackend;
+import com.lunartag.app.utils.StorageUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Every destination of one photo, opened up front and fed by a single encode through a
+ * {@link FanOutOutputStream}:
+ *  - Custom folder selected: the SAF document only (as before).
+ *  - Otherwise: the app's pictures dir (the path the scheduler sends from) plus a MediaStore
+ *    copy in Pictures/LunarTag, kept IS_PENDING until the write completes so the gallery never
+ *    shows a half-written image.
+ * The first sink is the primary one: its location is what the Photo row stores.
+ *
+ * A retried deferred capture passes the content URI its previous attempt created (see
+ * {@link CaptureJournal}): that item or document is truncated and rewritten instead of a second
+ * one being created. One of the other kind (the folder setting changed meanwhile) is deleted.
+ */
+class PhotoWriter {
+
+    static final String SINK_FILE = "file";
+    static final String SINK_MEDIASTORE = "mediastore";
+    static final String SINK_SAF = "saf";
+
+    /**
+     * Told about the MediaStore item or SAF document of a photo once it exists, before anything
+     * is written to it.
+     */
+    interface UriRecorder {
+        void record(Uri uri);
+    }
+
+    private final Context context;
+    private final CapturePipeline pipeline;
+    private final FanOutOutputStream fanOut = new FanOutOutputStream();
+    private final UriRecorder recorder;
+
+    private File file;
+    private Uri mediaUri;
+    private Uri safUri;
+    private boolean safOpenFailed;
+    private String primaryLocation;
+
+    private PhotoWriter(Context context, CapturePipeline pipeline, UriRecorder recorder) {
+        this.context = context;
+        this.pipeline = pipeline;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Creates the destinations for a photo called fileName + ".jpg".
+     * @param previousUri Content URI created by an earlier attempt at the same photo, or null.
+     * @param recorder Told about a new content URI before it is written to, or null.
+     * @throws IOException if the primary destination cannot be created.
+     */
+    static PhotoWriter open(Context context, CapturePipeline pipeline, String fileName,
+                            String previousUri, UriRecorder recorder) throws IOException {
+        PhotoWriter writer = new PhotoWriter(context, pipeline, recorder);
+        Uri previous = previousUri != null ? Uri.parse(previousUri) : null;
+        try {
+            if (StorageUtils.hasCustomFolder(context)) {
+                pipeline.log("Storage: Using User-Selected Folder (SD/External).");
+                if (previous != null && isMediaStore(previous)) {
+                    writer.deleteLeftover(previous);
+                    previous = null;
+                }
+                writer.openSaf(fileName, previous);
+            } else {
+                pipeline.log("Storage: Using Default Internal Storage + Public Gallery.");
+                if (previous != null && !isMediaStore(previous)) {
+                    writer.deleteLeftover(previous);
+                    previous = null;
+                }
+                writer.openFile(fileName);
+                writer.openMediaStore(fileName, previous);
+            }
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+        return writer;
+    }
+
+    OutputStream getStream() {
+        return fanOut;
+    }
+
+    /**
+     * Closes every sink and publishes the MediaStore item.
+     * @return The primary location (file path or content URI).
+     * @throws IOException if the primary destination failed.
+     */
+    String commit() throws IOException {
+        fanOut.close();
+        if (mediaUri != null) {
+            ContentResolver resolver = context.getContentResolver();
+            if (fanOut.isHealthy(SINK_MEDIASTORE)) {
+                ContentValues done = new ContentValues();
+                done.put(MediaStore.MediaColumns.IS_PENDING, 0);
+                resolver.update(mediaUri, done, null, null);
+                pipeline.log("Export: Copy Success.");
+            } else {
+                resolver.delete(mediaUri, null, null);
+                pipeline.log("Export: Gallery copy failed, removed.");
+            }
+        }
+        return primaryLocation;
+    }
+
+    /**
+     * Closes everything and deletes whatever was created. Safe to call more than once.
+     */
+    void abort() {
+        try {
+            fanOut.close();
+        } catch (IOException ignored) {
+            // Being thrown away anyway.
+        }
+        if (file != null) file.delete();
+        // Only a failure of the folder itself (most likely the card went away) makes the next
+        // capture re-resolve it; an encode that failed with a healthy folder keeps the cache.
+        boolean safSinkFailed = safUri != null && !safOpenFailed && !fanOut.isHealthy(SINK_SAF);
+        if (safOpenFailed || safSinkFailed) {
+            SafStorageBackend.getInstance(context).invalidate();
+        }
+        ContentResolver resolver = context.getContentResolver();
+        try {
+            if (mediaUri != null) resolver.delete(mediaUri, null, null);
+            if (safUri != null) DocumentsContract.deleteDocument(resolver, safUri);
+        } catch (Exception e) {
+            pipeline.log("Cleanup EXCEPTION: " + e.getMessage());
+        }
+        file = null;
+        mediaUri = null;
+        safUri = null;
+        safOpenFailed = false;
+    }
+
+    String describe() {
+        return fanOut.describe();
+    }
+
+    /**
+     * Size of the photo as written to every destination.
+     */
+    long getBytesWritten() {
+        return fanOut.getBytesWritten();
+    }
+
+    private void openFile(String fileName) throws IOException {
+        File directory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        if (directory == null) {
+            throw new IOException("External Files Dir is null!");
+        }
+        file = new File(directory, fileName + ".jpg");
+        fanOut.addSink(SINK_FILE, new FileOutputStream(file), primaryLocation == null);
+        if (primaryLocation == null) primaryLocation = file.getAbsolutePath();
+    }
+
+    private void openMediaStore(String fileName, Uri previous) {
+        try {
+            ContentResolver resolver = context.getContentResolver();
+            if (previous != null) {
+                // Back to pending while it is rewritten; nothing to update if it was deleted.
+                ContentValues pending = new ContentValues();
+                pending.put(MediaStore.MediaColumns.IS_PENDING, 1);
+                OutputStream out = resolver.update(previous, pending, null, null) > 0 ? reopen(previous) : null;
+                if (out != null) {
+                    mediaUri = previous;
+                    fanOut.addSink(SINK_MEDIASTORE, out, false);
+                    return;
+                }
+            }
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName + ".jpg");
+            contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
+            contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + File.separator + "LunarTag");
+            contentValues.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+            Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
+            if (uri == null) return;
+            mediaUri = uri;
+            if (recorder != null) recorder.record(uri);
+            OutputStream out = resolver.openOutputStream(uri);
+            if (out == null) {
+                resolver.delete(uri, null, null);
+                mediaUri = null;
+                return;
+            }
+            // The gallery copy is a convenience: losing it must not lose the photo.
+            fanOut.addSink(SINK_MEDIASTORE, out, false);
+        } catch (Exception e) {
+            pipeline.log("Export EXCEPTION: " + e.getMessage());
+        }
+    }
+
+    private void openSaf(String fileName, Uri previous) throws IOException {
+        OutputStream out = previous != null ? reopen(previous) : null;
+        Uri uri = previous;
+        if (out == null) {
+            // Every failure below is the folder's: abort() then invalidates the cached tree.
+            safOpenFailed = true;
+            uri = StorageUtils.createImageInCustomFolder(context, fileName);
+            if (uri == null) {
+                throw new IOException("Cannot create file in the selected folder.");
+            }
+            safUri = uri;
+            if (recorder != null) recorder.record(uri);
+            try {
+                out = context.getContentResolver().openOutputStream(uri);
+            } catch (SecurityException | IllegalArgumentException e) {
+                throw new IOException("Cannot open the selected folder for writing.", e);
+            }
+            if (out == null) {
+                throw new IOException("Cannot open the selected folder for writing.");
+            }
+            safOpenFailed = false;
+        }
+        safUri = uri;
+        fanOut.addSink(SINK_SAF, out, primaryLocation == null);
+        if (primaryLocation == null) primaryLocation = uri.toString();
+    }
+
+    /**
+     * Opens an item or document of an earlier attempt for rewriting from its first byte.
+     * @return Null if it is gone or can no longer be written.
+     */
+    private OutputStream reopen(Uri uri) {
+        try {
+            return context.getContentResolver().openOutputStream(uri, "wt");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes an item or document an earlier attempt left in the destination not used any more.
+     */
+    private void deleteLeftover(Uri uri) {
+        try {
+            ContentResolver resolver = context.getContentResolver();
+            if (isMediaStore(uri)) {
+                resolver.delete(uri, null, null);
+            } else {
+                DocumentsContract.deleteDocument(resolver, uri);
+            }
+        } catch (Exception e) {
+            pipeline.log("Cleanup EXCEPTION: " + e.getMessage());
+        }
+    }
+
+    private static boolean isMediaStore(Uri uri) {
+        return MediaStore.AUTHORITY.equals(uri.getAuthority());
+    }
+}
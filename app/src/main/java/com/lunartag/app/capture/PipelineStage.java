@@ -0,0 +1,166 @@
+package com.lunartag.app.capture;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the {@link CapturePipeline}.
+ * A stage owns a bounded input queue and a fixed number of worker threads (its "budget").
+ * When the queue is full, upstream workers block on {@link #put(CaptureJob)}, so the
+ * back-pressure travels all the way back to the shutter.
+ */
+class PipelineStage {
+
+    private static final String TAG = "PipelineStage";
+
+    /**
+     * The actual work of a stage. Throwing marks the job as failed.
+     */
+    interface Handler {
+        void process(CaptureJob job) throws Exception;
+    }
+
+    /**
+     * Receives the job after this stage is done with it.
+     */
+    interface Sink {
+        void accept(PipelineStage from, CaptureJob job, Exception error) throws InterruptedException;
+    }
+
+    private final String name;
+    private final BlockingQueue<CaptureJob> queue;
+    private final Thread[] workers;
+    private final Handler handler;
+    private final Sink sink;
+
+    // --- Counters ---
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalServiceNanos = new AtomicLong();
+    private final AtomicLong maxServiceNanos = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    PipelineStage(String name, int workerCount, int queueCapacity, Handler handler, Sink sink) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = new Thread[workerCount];
+        this.handler = handler;
+        this.sink = sink;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "LunarTag-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+        }
+    }
+
+    void start() {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Non-blocking hand-off used by the shutter. Returns false when the stage is saturated.
+     */
+    boolean offer(CaptureJob job) {
+        job.stageEnqueuedAtNanos = System.nanoTime();
+        return running && queue.offer(job);
+    }
+
+    /**
+     * Blocking hand-off used between stages. Waits until this stage has room.
+     */
+    void put(CaptureJob job) throws InterruptedException {
+        job.stageEnqueuedAtNanos = System.nanoTime();
+        queue.put(job);
+    }
+
+    boolean hasCapacity() {
+        return queue.remainingCapacity() > 0;
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runWorker() {
+        while (running) {
+            CaptureJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            totalWaitNanos.addAndGet(start - job.stageEnqueuedAtNanos);
+
+            Exception error = null;
+            try {
+                handler.process(job);
+            } catch (Exception e) {
+                error = e;
+            }
+
+            long service = System.nanoTime() - start;
+            totalServiceNanos.addAndGet(service);
+            long max;
+            do {
+                max = maxServiceNanos.get();
+            } while (service > max && !maxServiceNanos.compareAndSet(max, service));
+
+            if (error == null) {
+                processed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                Log.e(TAG, name + " failed", error);
+            }
+
+            try {
+                sink.accept(this, job, error);
+            } catch (InterruptedException e) {
+                job.release();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stops the workers and releases any job still waiting in the queue.
+     */
+    void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        CaptureJob leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.release();
+        }
+    }
+
+    /**
+     * One-line snapshot, e.g. "ENCODE q=1 ok=12 fail=0 wait=40ms svc=820ms max=1300ms".
+     */
+    String describe() {
+        long done = processed.get() + failed.get();
+        long avgWait = done == 0 ? 0 : totalWaitNanos.get() / done / 1_000_000L;
+        long avgService = done == 0 ? 0 : totalServiceNanos.get() / done / 1_000_000L;
+        return name
+                + " q=" + queue.size()
+                + " ok=" + processed.get()
+                + " fail=" + failed.get()
+                + " wait=" + avgWait + "ms"
+                + " svc=" + avgService + "ms"
+                + " max=" + (maxServiceNanos.get() / 1_000_000L) + "ms";
+    }
+}
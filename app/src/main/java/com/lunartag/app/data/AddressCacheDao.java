@@ -0,0 +1,53 @@
+package com.lunartag.app.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.lunartag.app.model.AddressCacheEntry;
+
+/**
+ * Data Access Object (DAO) for the AddressCacheEntry entity.
+ * This interface defines the database interactions for the 'address_cache' table.
+ */
+@Dao
+public interface AddressCacheDao {
+
+    /**
+     * Inserts or replaces the cached address for a geohash cell.
+     * @param entry The cache entry to store.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(AddressCacheEntry entry);
+
+    /**
+     * Retrieves the cached address for a geohash cell.
+     * @param geohash The cell key.
+     * @return The entry, or null if the cell has never been resolved.
+     */
+    @Query("SELECT * FROM address_cache WHERE geohash = :geohash")
+    AddressCacheEntry get(String geohash);
+
+    /**
+     * Marks an entry as just used, so it is evicted last.
+     */
+    @Query("UPDATE address_cache SET lastAccessedAt = :now WHERE geohash = :geohash")
+    void touch(String geohash, long now);
+
+    /**
+     * Deletes every entry resolved before the cutoff (TTL expiry).
+     * @return The number of rows deleted.
+     */
+    @Query("DELETE FROM address_cache WHERE createdAt < :cutoff")
+    int deleteExpired(long cutoff);
+
+    /**
+     * Keeps only the most recently used entries.
+     * @param maxRows The number of rows to keep.
+     * @return The number of rows deleted.
+     */
+    @Query("DELETE FROM address_cache WHERE geohash NOT IN " +
+            "(SELECT geohash FROM address_cache ORDER BY lastAccessedAt DESC LIMIT :maxRows)")
+    int trimTo(int maxRows);
+}
@@ -6,8 +6,13 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 
+import com.lunartag.app.model.AddressCacheEntry;
 import com.lunartag.app.model.AuditLog;
+import com.lunartag.app.model.AuditLogFts;
+import com.lunartag.app.model.CaptureJournalEntry;
 import com.lunartag.app.model.Photo;
+import com.lunartag.app.model.PhotoDetails;
+import com.lunartag.app.model.PhotoDetailsFts;
 
 /**
  * The main database class for the application.
@@ -15,11 +20,14 @@ import com.lunartag.app.model.Photo;
  * to the persisted data. It follows a singleton pattern to prevent having multiple
  * instances of the database opened at the same time.
  */
-@Database(entities = {Photo.class, AuditLog.class}, version = 1, exportSchema = false)
+@Database(entities = {Photo.class, PhotoDetails.class, PhotoDetailsFts.class, AuditLog.class,
+        AuditLogFts.class, AddressCacheEntry.class, CaptureJournalEntry.class}, version = 10, exportSchema = true)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract PhotoDao photoDao();
     public abstract AuditLogDao auditLogDao();
+    public abstract AddressCacheDao addressCacheDao();
+    public abstract CaptureJournalDao captureJournalDao();
 
     private static volatile AppDatabase INSTANCE;
 
@@ -29,9 +37,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                                     AppDatabase.class, "lunartag_database")
-                            // NOTE: In a production app, you would need a proper migration strategy
-                            // instead of destructive migration.
-                            .fallbackToDestructiveMigration()
+                            .addMigrations(DatabaseMigrations.ALL)
                             .build();
                 }
             }
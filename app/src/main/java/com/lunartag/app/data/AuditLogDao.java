@@ -3,6 +3,8 @@ package com.lunartag.app.data;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import com.lunartag.app.model.AuditLog;
 
@@ -22,6 +24,13 @@ public interface AuditLogDao {
     @Insert
     void insertLog(AuditLog auditLog);
 
+    /**
+     * Inserts a batch of audit log records (see AuditLogWriter, which wraps it in one transaction).
+     * @param auditLogs The audit log objects to insert.
+     */
+    @Insert
+    void insertLogs(List<AuditLog> auditLogs);
+
     /**
      * Retrieves all audit logs for a specific photo ID, ordered by the most recent first.
      * @param photoId The ID of the photo to get logs for.
@@ -31,10 +40,29 @@ public interface AuditLogDao {
     List<AuditLog> getLogsForPhoto(long photoId);
 
     /**
-     * Retrieves all audit logs from the database, ordered by the most recent first.
-     * @return A list of all AuditLog objects.
+     * Retrieves one page of audit logs for the admin console. The query is built by
+     * {@link AuditLogPagingSource}, which only adds the filters that are set, so every
+     * combination reads its own index instead of scanning the table.
+     */
+    @RawQuery(observedEntities = AuditLog.class)
+    List<AuditLog> getLogPage(SupportSQLiteQuery query);
+
+    // --- Retention (see AuditRetentionWorker) ---
+
+    /**
+     * Retrieves the next chunk of logs older than the cutoff, in id order (keyset paging on the rowid).
+     * @param afterId Only logs with a larger ID are returned.
+     */
+    @Query("SELECT * FROM audit_logs WHERE timestamp < :cutoff AND id > :afterId ORDER BY id LIMIT :limit")
+    List<AuditLog> getLogsOlderThan(long cutoff, long afterId, int limit);
+
+    /**
+     * Deletes up to {@code limit} archived logs: the ones in the id range of a segment that were
+     * older than its cutoff. Called until it returns 0, so each statement only holds the lock briefly.
+     * @return The number of rows deleted.
      */
-    @Query("SELECT * FROM audit_logs ORDER BY timestamp DESC")
-    List<AuditLog> getAllLogs();
+    @Query("DELETE FROM audit_logs WHERE id IN (SELECT id FROM audit_logs " +
+            "WHERE id BETWEEN :minId AND :maxId AND timestamp < :cutoff LIMIT :limit)")
+    int deleteArchived(long minId, long maxId, long cutoff, int limit);
 
 }
@@ -0,0 +1,331 @@
+package com.lunartag.app.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+import androidx.room.InvalidationTracker;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.lunartag.app.audit.AuditArchive;
+import com.lunartag.app.model.AuditLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Pages the audit logs newest first with keyset pagination on (timestamp, id), like
+ * {@link GalleryPagingSource}, optionally filtered by action, photo and full-text search.
+ *
+ * Only the filters that are set go into the SQL, so SQLite picks the matching index:
+ * index_audit_logs_photoId_timestamp, index_audit_logs_action_timestamp or
+ * index_audit_logs_timestamp. A text search is driven by the FTS index instead and pages on
+ * the log id, which follows write order (see {@link #buildSearchQuery}).
+ *
+ * No counts are computed (they would cost a full FTS scan per page): the viewer runs without
+ * placeholders, and drops pages far from the screen to stay within a bounded memory.
+ *
+ * With {@link Filter#includeArchive}, the records {@link com.lunartag.app.workers.AuditRetentionWorker}
+ * moved to the {@link AuditArchive} follow the live logs: retention archives everything below
+ * its cutoff, so every archived record is older (and has a lower id) than every live one, and
+ * the archive only has to be read once the live logs run out. A record that is in both (the
+ * worker stopped between writing a segment and deleting its rows) is shown once.
+ */
+public class AuditLogPagingSource extends ListenableFuturePagingSource<AuditLogPagingSource.Key, AuditLog> {
+
+    private static final String FTS_TABLE = "audit_logs_fts";
+
+    /**
+     * Position of one log in viewer order.
+     */
+    public static final class Key {
+        final long timestamp;
+        final long id;
+
+        Key(long timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        static Key of(AuditLog log) {
+            return new Key(log.getTimestamp(), log.getId());
+        }
+    }
+
+    /**
+     * What the viewer shows. A null action, a negative photoId or an empty text means "any".
+     */
+    public static final class Filter {
+        final String action;
+        final long photoId;
+        final String text;
+        final boolean includeArchive;
+
+        public Filter(String action, long photoId, String text) {
+            this(action, photoId, text, false);
+        }
+
+        /**
+         * @param includeArchive True to page on into the archived logs after the live ones.
+         */
+        public Filter(String action, long photoId, String text, boolean includeArchive) {
+            this.action = action;
+            this.photoId = photoId;
+            this.text = text;
+            this.includeArchive = includeArchive;
+        }
+
+        /**
+         * The search text as an FTS4 MATCH expression (see {@link FtsQuery#prefixMatch}).
+         * @return Null if there is nothing to search for.
+         */
+        String toMatchQuery() {
+            return FtsQuery.prefixMatch(text);
+        }
+
+        /**
+         * The same filter for {@link AuditArchive#page}, which matches the words of the text the
+         * way the FTS prefix search does.
+         */
+        AuditArchive.Query toArchiveQuery() {
+            String words = toMatchQuery() != null ? text : null;
+            return new AuditArchive.Query(Long.MIN_VALUE, Long.MAX_VALUE, photoId, action, words);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Filter)) return false;
+            Filter other = (Filter) o;
+            return photoId == other.photoId && includeArchive == other.includeArchive
+                    && Objects.equals(action, other.action)
+                    && Objects.equals(toMatchQuery(), other.toMatchQuery());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(action, photoId, toMatchQuery(), includeArchive);
+        }
+    }
+
+    private final AppDatabase db;
+    private final AuditLogDao dao;
+    private final Filter filter;
+    @Nullable
+    private final AuditArchive archive;
+    private final InvalidationTracker.Observer observer;
+
+    public AuditLogPagingSource(AppDatabase db, Filter filter) {
+        this(db, filter, null);
+    }
+
+    /**
+     * @param archive Read when the filter includes the archive. Retention deletes the rows it
+     *                archives, so the invalidation of audit_logs covers archive changes too.
+     */
+    public AuditLogPagingSource(AppDatabase db, Filter filter, @Nullable AuditArchive archive) {
+        this.db = db;
+        this.dao = db.auditLogDao();
+        this.filter = filter;
+        this.archive = filter.includeArchive ? archive : null;
+        this.observer = new InvalidationTracker.Observer("audit_logs") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        db.getInvalidationTracker().addObserver(observer);
+        registerInvalidatedCallback(() -> {
+            db.getInvalidationTracker().removeObserver(observer);
+            return kotlin.Unit.INSTANCE;
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Key, AuditLog>> loadFuture(@NonNull LoadParams<Key> params) {
+        return Futures.submit(() -> {
+            try {
+                return load(params);
+            } catch (RuntimeException | IOException e) {
+                return new LoadResult.Error<>(e);
+            }
+        }, db.getQueryExecutor());
+    }
+
+    private LoadResult<Key, AuditLog> load(LoadParams<Key> params) throws IOException {
+        Key key = params.getKey();
+        int size = params.getLoadSize();
+        List<AuditLog> logs;
+        if (params instanceof LoadParams.Append) {
+            logs = dao.getLogPage(buildQuery(key, "<", size));
+            appendArchived(logs, key, false, size);
+        } else if (params instanceof LoadParams.Prepend) {
+            logs = prependArchived(key, size);
+            if (logs.size() < size) {
+                List<AuditLog> live = dao.getLogPage(buildQuery(key, ">", size - logs.size()));
+                addNew(logs, live, size);
+            }
+            Collections.reverse(logs);
+        } else {
+            logs = dao.getLogPage(buildQuery(key, "<=", size));
+            appendArchived(logs, key, true, size);
+        }
+
+        // A short page means there is nothing further in that direction.
+        Key prevKey = null;
+        Key nextKey = null;
+        if (!logs.isEmpty()) {
+            Key first = Key.of(logs.get(0));
+            Key last = Key.of(logs.get(logs.size() - 1));
+            boolean full = logs.size() == size;
+            if (params instanceof LoadParams.Append) {
+                prevKey = first;
+                nextKey = full ? last : null;
+            } else if (params instanceof LoadParams.Prepend) {
+                prevKey = full ? first : null;
+                nextKey = last;
+            } else {
+                prevKey = key != null ? first : null; // Refreshed mid-list: newer logs may exist
+                nextKey = full ? last : null;
+            }
+        }
+        return new LoadResult.Page<>(logs, prevKey, nextKey);
+    }
+
+    /**
+     * Fills a short page of live logs (newest first) with the archived logs that follow them.
+     * @param key The position the live page was loaded from.
+     * @param inclusive True if the page starts at the key itself (a refresh).
+     */
+    private void appendArchived(List<AuditLog> logs, @Nullable Key key, boolean inclusive, int size)
+            throws IOException {
+        if (archive == null || logs.size() >= size) return;
+        long timestamp = Long.MAX_VALUE;
+        long id = Long.MAX_VALUE;
+        if (!logs.isEmpty()) {
+            AuditLog last = logs.get(logs.size() - 1);
+            timestamp = last.getTimestamp();
+            id = last.getId();
+            inclusive = false;
+        } else if (key != null) {
+            timestamp = key.timestamp;
+            id = key.id;
+        }
+        addNew(logs, archive.page(filter.toArchiveQuery(), timestamp, id, false, inclusive,
+                size - logs.size()), size);
+    }
+
+    /**
+     * The archived logs newer than the key, oldest first: a page that starts in the archive,
+     * before it reaches the live logs.
+     */
+    private List<AuditLog> prependArchived(Key key, int size) throws IOException {
+        AuditArchive.Segment newest = archive != null ? archive.getLastSegment() : null;
+        if (newest == null || key.timestamp > newest.maxTimestamp) return new ArrayList<>();
+        return archive.page(filter.toArchiveQuery(), key.timestamp, key.id, true, false, size);
+    }
+
+    /**
+     * Adds the logs not on the page yet, up to size.
+     */
+    private static void addNew(List<AuditLog> page, List<AuditLog> logs, int size) {
+        Set<Long> ids = new HashSet<>();
+        for (AuditLog log : page) ids.add(log.getId());
+        for (AuditLog log : logs) {
+            if (page.size() >= size) return;
+            if (ids.add(log.getId())) page.add(log);
+        }
+    }
+
+    /**
+     * Builds one page query.
+     * @param key Where the page starts, null for the newest logs.
+     * @param direction "<" for the page older than the key, "<=" for the page starting at it,
+     *                  ">" for the page newer than it (returned oldest first).
+     */
+    private SimpleSQLiteQuery buildQuery(@Nullable Key key, String direction, int limit) {
+        String match = filter.toMatchQuery();
+        return match != null && filter.photoId < 0
+                ? buildSearchQuery(match, key, direction, limit)
+                : buildIndexQuery(match, key, direction, limit);
+    }
+
+    /**
+     * Text search: the FTS index drives, walking its docids (= log ids, written in time order)
+     * from the key and stopping at the page size, so a common word costs no more than a rare one.
+     */
+    private SimpleSQLiteQuery buildSearchQuery(String match, @Nullable Key key, String direction, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT audit_logs.* FROM " + FTS_TABLE
+                + " JOIN audit_logs ON audit_logs.id = " + FTS_TABLE + ".docid WHERE " + FTS_TABLE + " MATCH ?");
+        List<Object> args = new ArrayList<>();
+        args.add(match);
+        if (filter.action != null) {
+            sql.append(" AND audit_logs.action = ?");
+            args.add(filter.action);
+        }
+        if (key != null) {
+            sql.append(" AND " + FTS_TABLE + ".docid ").append(direction).append(" ?");
+            args.add(key.id);
+        }
+        sql.append(" ORDER BY " + FTS_TABLE + ".docid ").append(">".equals(direction) ? "ASC" : "DESC");
+        sql.append(" LIMIT ?");
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Everything else: the filter's index drives, in (timestamp, id) order. A search within one
+     * photo's history (a handful of rows) is a membership test against the FTS matches.
+     */
+    private SimpleSQLiteQuery buildIndexQuery(@Nullable String match, @Nullable Key key, String direction, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM audit_logs WHERE 1");
+        List<Object> args = new ArrayList<>();
+        if (filter.photoId >= 0) {
+            sql.append(" AND photoId = ?");
+            args.add(filter.photoId);
+        }
+        if (filter.action != null) {
+            sql.append(" AND action = ?");
+            args.add(filter.action);
+        }
+        if (match != null) {
+            sql.append(" AND +id IN (SELECT docid FROM " + FTS_TABLE + " WHERE " + FTS_TABLE + " MATCH ?)");
+            args.add(match);
+        }
+        boolean newer = ">".equals(direction);
+        if (key != null) {
+            // "ts <= :ts AND (ts < :ts OR id < :id)" keeps the range on the index (see PhotoDao).
+            String ts = newer ? ">=" : "<=";
+            String strict = newer ? ">" : "<";
+            sql.append(" AND timestamp ").append(ts).append(" ? AND (timestamp ").append(strict)
+                    .append(" ? OR id ").append(direction).append(" ?)");
+            args.add(key.timestamp);
+            args.add(key.timestamp);
+            args.add(key.id);
+        }
+        sql.append(newer ? " ORDER BY timestamp ASC, id ASC" : " ORDER BY timestamp DESC, id DESC");
+        sql.append(" LIMIT ?");
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Refreshes from the log nearest to where the user is, so the list does not jump.
+     */
+    @Nullable
+    @Override
+    public Key getRefreshKey(@NonNull PagingState<Key, AuditLog> state) {
+        Integer anchor = state.getAnchorPosition();
+        if (anchor == null) return null;
+        AuditLog log = state.closestItemToPosition(anchor);
+        return log != null ? Key.of(log) : null;
+    }
+}
@@ -0,0 +1,52 @@
+package com.lunartag.app.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+import com.lunartag.app.model.CaptureJournalEntry;
+
+import java.util.List;
+
+/**
+ * Data Access Object (DAO) for the CaptureJournalEntry entity.
+ * This interface defines the database interactions for the 'capture_journal' table.
+ */
+@Dao
+public interface CaptureJournalDao {
+
+    /**
+     * Records a new deferred capture.
+     * @param entry The journal entry to insert.
+     * @return The row ID of the newly inserted entry.
+     */
+    @Insert
+    long insert(CaptureJournalEntry entry);
+
+    /**
+     * Updates the state, output path or attempt count of an entry.
+     * @param entry The journal entry to update.
+     */
+    @Update
+    void update(CaptureJournalEntry entry);
+
+    /**
+     * Retrieves every entry that still has work to do, oldest capture first.
+     * @return Queued and encoded entries; failed ones are left alone.
+     */
+    @Query("SELECT * FROM capture_journal WHERE state != 'FAILED' ORDER BY id")
+    List<CaptureJournalEntry> getUnfinished();
+
+    /**
+     * Retrieves the staging file of every entry, failed ones included.
+     */
+    @Query("SELECT stagingPath FROM capture_journal")
+    List<String> getStagingPaths();
+
+    /**
+     * Removes a finished entry.
+     */
+    @Query("DELETE FROM capture_journal WHERE id = :id")
+    void delete(long id);
+}
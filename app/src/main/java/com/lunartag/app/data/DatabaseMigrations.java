@@ -0,0 +1,236 @@
+package com.lunartag.app.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Hand-written schema migrations for {@link AppDatabase}.
+ * Each one must produce exactly the table Room generates for the entity, or Room will
+ * reject the database on open. Compare with the exported schemas in app/schemas/.
+ * There is no destructive fallback: a missing step fails the open instead of wiping photos.
+ */
+final class DatabaseMigrations {
+
+    private DatabaseMigrations() {}
+
+    /**
+     * v2: Reverse-geocode cache keyed by geohash cell.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `address_cache` ("
+                    + "`geohash` TEXT NOT NULL, "
+                    + "`address` TEXT, "
+                    + "`createdAt` INTEGER NOT NULL, "
+                    + "`lastAccessedAt` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`geohash`))");
+        }
+    };
+
+    /**
+     * v3: Journal of deferred captures waiting for background processing.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `capture_journal` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`photoId` INTEGER NOT NULL, "
+                    + "`stagingPath` TEXT, "
+                    + "`realTime` INTEGER NOT NULL, "
+                    + "`assignedTime` INTEGER NOT NULL, "
+                    + "`located` INTEGER NOT NULL, "
+                    + "`lat` REAL NOT NULL, "
+                    + "`lon` REAL NOT NULL, "
+                    + "`accuracy` REAL NOT NULL, "
+                    + "`altitude` REAL, "
+                    + "`fixTime` INTEGER NOT NULL, "
+                    + "`provider` TEXT, "
+                    + "`companyName` TEXT, "
+                    + "`address` TEXT, "
+                    + "`rotateViaExif` INTEGER NOT NULL, "
+                    + "`state` TEXT, "
+                    + "`outputPath` TEXT, "
+                    + "`attempts` INTEGER NOT NULL, "
+                    + "`createdAt` INTEGER NOT NULL, "
+                    + "`updatedAt` INTEGER NOT NULL)");
+        }
+    };
+
+    /**
+     * v4: JPEG quality and file size per photo (size-budgeted encoding).
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `photos` ADD COLUMN `jpegQuality` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `photos` ADD COLUMN `fileSizeBytes` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * v5: Send-optimized copy and gallery thumbnail written next to each master.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `photos` ADD COLUMN `sendPath` TEXT");
+            db.execSQL("ALTER TABLE `photos` ADD COLUMN `thumbnailPath` TEXT");
+        }
+    };
+
+    /**
+     * v6: Indices for the pending queue, the recent/gallery lists and the per-photo audit history,
+     * which were full-table scans. Names follow Room's index_<table>_<columns> scheme.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_status_sendScheduledAt` "
+                    + "ON `photos` (`status`, `sendScheduledAt`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_captureTimestampReal` "
+                    + "ON `photos` (`captureTimestampReal`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_audit_logs_photoId_timestamp` "
+                    + "ON `audit_logs` (`photoId`, `timestamp`)");
+        }
+    };
+
+    /**
+     * v7: Hot/cold split of photos. The descriptive text columns move to photo_details, so the
+     * rows list and scheduling queries walk are about half as wide. SQLite on API 26 has no
+     * DROP COLUMN, so photos is rebuilt; photo_details is only created after the old table is
+     * renamed away, so its ON DELETE CASCADE never sees the drop.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS `index_photos_status_sendScheduledAt`");
+            db.execSQL("DROP INDEX IF EXISTS `index_photos_captureTimestampReal`");
+            db.execSQL("ALTER TABLE `photos` RENAME TO `_old_photos`");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `photos` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`filePath` TEXT, "
+                    + "`assignedTimestamp` INTEGER NOT NULL, "
+                    + "`captureTimestampReal` INTEGER NOT NULL, "
+                    + "`lat` REAL NOT NULL, "
+                    + "`lon` REAL NOT NULL, "
+                    + "`accuracyMeters` REAL NOT NULL, "
+                    + "`sendScheduledAt` INTEGER NOT NULL, "
+                    + "`status` TEXT, "
+                    + "`createdAt` INTEGER NOT NULL, "
+                    + "`jpegQuality` INTEGER NOT NULL DEFAULT 0, "
+                    + "`fileSizeBytes` INTEGER NOT NULL DEFAULT 0, "
+                    + "`sendPath` TEXT, "
+                    + "`thumbnailPath` TEXT)");
+            db.execSQL("INSERT INTO `photos` (`id`, `filePath`, `assignedTimestamp`, `captureTimestampReal`, "
+                    + "`lat`, `lon`, `accuracyMeters`, `sendScheduledAt`, `status`, `createdAt`, "
+                    + "`jpegQuality`, `fileSizeBytes`, `sendPath`, `thumbnailPath`) "
+                    + "SELECT `id`, `filePath`, `assignedTimestamp`, `captureTimestampReal`, "
+                    + "`lat`, `lon`, `accuracyMeters`, `sendScheduledAt`, `status`, `createdAt`, "
+                    + "`jpegQuality`, `fileSizeBytes`, `sendPath`, `thumbnailPath` FROM `_old_photos`");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `photo_details` ("
+                    + "`photoId` INTEGER NOT NULL, "
+                    + "`addressHuman` TEXT, "
+                    + "`shiftStart` TEXT, "
+                    + "`shiftEnd` TEXT, "
+                    + "`watermarkName` TEXT, "
+                    + "`companyName` TEXT, "
+                    + "PRIMARY KEY(`photoId`), "
+                    + "FOREIGN KEY(`photoId`) REFERENCES `photos`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("INSERT INTO `photo_details` (`photoId`, `addressHuman`, `shiftStart`, `shiftEnd`, "
+                    + "`watermarkName`, `companyName`) "
+                    + "SELECT `id`, `addressHuman`, `shiftStart`, `shiftEnd`, `watermarkName`, `companyName` "
+                    + "FROM `_old_photos`");
+            db.execSQL("DROP TABLE `_old_photos`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_status_sendScheduledAt` "
+                    + "ON `photos` (`status`, `sendScheduledAt`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_photos_captureTimestampReal` "
+                    + "ON `photos` (`captureTimestampReal`)");
+        }
+    };
+
+    /**
+     * v8: Admin console audit viewer. Indices for paging by time, with or without an action
+     * filter, and an external-content FTS4 index over the details, with the same sync triggers
+     * Room creates for {@code @Fts4(contentEntity = AuditLog.class)}; 'rebuild' indexes the
+     * existing rows.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_audit_logs_action_timestamp` "
+                    + "ON `audit_logs` (`action`, `timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_audit_logs_timestamp` "
+                    + "ON `audit_logs` (`timestamp`)");
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `audit_logs_fts` "
+                    + "USING FTS4(`details` TEXT, content=`audit_logs`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_audit_logs_fts_BEFORE_UPDATE "
+                    + "BEFORE UPDATE ON `audit_logs` BEGIN DELETE FROM `audit_logs_fts` "
+                    + "WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_audit_logs_fts_BEFORE_DELETE "
+                    + "BEFORE DELETE ON `audit_logs` BEGIN DELETE FROM `audit_logs_fts` "
+                    + "WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_audit_logs_fts_AFTER_UPDATE "
+                    + "AFTER UPDATE ON `audit_logs` BEGIN INSERT INTO `audit_logs_fts`(`docid`, `details`) "
+                    + "VALUES (NEW.`rowid`, NEW.`details`); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_audit_logs_fts_AFTER_INSERT "
+                    + "AFTER INSERT ON `audit_logs` BEGIN INSERT INTO `audit_logs_fts`(`docid`, `details`) "
+                    + "VALUES (NEW.`rowid`, NEW.`details`); END");
+            db.execSQL("INSERT INTO `audit_logs_fts`(`audit_logs_fts`) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * v9: Gallery search. An external-content FTS4 index over the address, company and watermark
+     * in photo_details, with the sync triggers Room creates for PhotoDetailsFts; 'rebuild'
+     * indexes the existing rows.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `photo_details_fts` USING FTS4("
+                    + "`addressHuman` TEXT, `companyName` TEXT, `watermarkName` TEXT, "
+                    + "tokenize=unicode61, content=`photo_details`, prefix=`2,3`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_photo_details_fts_BEFORE_UPDATE "
+                    + "BEFORE UPDATE ON `photo_details` BEGIN DELETE FROM `photo_details_fts` "
+                    + "WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_photo_details_fts_BEFORE_DELETE "
+                    + "BEFORE DELETE ON `photo_details` BEGIN DELETE FROM `photo_details_fts` "
+                    + "WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_photo_details_fts_AFTER_UPDATE "
+                    + "AFTER UPDATE ON `photo_details` BEGIN INSERT INTO `photo_details_fts`(`docid`, "
+                    + "`addressHuman`, `companyName`, `watermarkName`) VALUES (NEW.`rowid`, "
+                    + "NEW.`addressHuman`, NEW.`companyName`, NEW.`watermarkName`); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_photo_details_fts_AFTER_INSERT "
+                    + "AFTER INSERT ON `photo_details` BEGIN INSERT INTO `photo_details_fts`(`docid`, "
+                    + "`addressHuman`, `companyName`, `watermarkName`) VALUES (NEW.`rowid`, "
+                    + "NEW.`addressHuman`, NEW.`companyName`, NEW.`watermarkName`); END");
+            db.execSQL("INSERT INTO `photo_details_fts`(`photo_details_fts`) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * v10: The MediaStore item or SAF document of a deferred capture is recorded before it is
+     * written, so a retried entry reuses it instead of creating a second one.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `capture_journal` ADD COLUMN `outputUri` TEXT");
+        }
+    };
+
+    static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10
+    };
+}
@@ -0,0 +1,27 @@
+package com.lunartag.app.data;
+
+/**
+ * Turns what the user typed into a search box into an FTS4 MATCH expression.
+ */
+public final class FtsQuery {
+
+    private FtsQuery() {
+    }
+
+    /**
+     * Every word must appear, as a prefix: "main st" becomes {@code "main*" "st*"}.
+     * Quotes and FTS operators typed by the user are treated as plain text. The star goes inside
+     * the quotes: FTS4 ignores it after a closing quote, which makes the word an exact match.
+     * @return Null if there is nothing to search for.
+     */
+    public static String prefixMatch(String text) {
+        if (text == null) return null;
+        StringBuilder sb = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append('"').append(word).append("*\"");
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.lunartag.app.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+import androidx.room.InvalidationTracker;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.lunartag.app.model.GalleryItem;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pages the gallery newest first with keyset pagination on (captureTimestampReal, id):
+ * every page is an index range read, however deep the user scrolls (no OFFSET).
+ *
+ * Each page reports how many photos lie before/after it, so the adapter can show placeholders
+ * for the whole library. Any write to the photos table invalidates the source; the refresh then
+ * restarts at the photo the user was looking at.
+ */
+public class GalleryPagingSource extends ListenableFuturePagingSource<GalleryPagingSource.Key, GalleryItem> {
+
+    /**
+     * Position of one photo in gallery order.
+     */
+    public static final class Key {
+        final long timestamp;
+        final long id;
+
+        Key(long timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        static Key of(GalleryItem item) {
+            return new Key(item.getCaptureTimestampReal(), item.getId());
+        }
+    }
+
+    private final AppDatabase db;
+    private final PhotoDao dao;
+    private final InvalidationTracker.Observer observer;
+
+    public GalleryPagingSource(AppDatabase db) {
+        this.db = db;
+        this.dao = db.photoDao();
+        this.observer = new InvalidationTracker.Observer("photos") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        db.getInvalidationTracker().addObserver(observer);
+        registerInvalidatedCallback(() -> {
+            db.getInvalidationTracker().removeObserver(observer);
+            return kotlin.Unit.INSTANCE;
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Key, GalleryItem>> loadFuture(@NonNull LoadParams<Key> params) {
+        return Futures.submit(() -> {
+            try {
+                return db.runInTransaction(() -> load(params));
+            } catch (RuntimeException e) {
+                return new LoadResult.Error<>(e);
+            }
+        }, db.getQueryExecutor());
+    }
+
+    private LoadResult<Key, GalleryItem> load(LoadParams<Key> params) {
+        Key key = params.getKey();
+        int size = params.getLoadSize();
+        List<GalleryItem> items;
+        if (params instanceof LoadParams.Append) {
+            items = dao.getGalleryOlderThan(key.timestamp, key.id, size);
+        } else if (params instanceof LoadParams.Prepend) {
+            items = dao.getGalleryNewerThan(key.timestamp, key.id, size);
+            Collections.reverse(items);
+        } else if (key != null) {
+            items = dao.getGalleryFrom(key.timestamp, key.id, size);
+        } else {
+            items = dao.getGalleryNewest(size);
+        }
+        if (items.isEmpty()) {
+            return new LoadResult.Page<>(items, null, null, 0, 0);
+        }
+
+        Key first = Key.of(items.get(0));
+        Key last = Key.of(items.get(items.size() - 1));
+        int before = params instanceof LoadParams.Append
+                ? LoadResult.Page.COUNT_UNDEFINED : dao.countGalleryNewerThan(first.timestamp, first.id);
+        int after = params instanceof LoadParams.Prepend
+                ? LoadResult.Page.COUNT_UNDEFINED : dao.countGalleryOlderThan(last.timestamp, last.id);
+        Key prevKey = before == 0 ? null : first;
+        Key nextKey = after == 0 ? null : last;
+        return new LoadResult.Page<>(items, prevKey, nextKey, before, after);
+    }
+
+    /**
+     * Refreshes from the photo nearest to where the user is, so the grid does not jump.
+     */
+    @Nullable
+    @Override
+    public Key getRefreshKey(@NonNull PagingState<Key, GalleryItem> state) {
+        Integer anchor = state.getAnchorPosition();
+        if (anchor == null) return null;
+        GalleryItem item = state.closestItemToPosition(anchor);
+        return item != null ? Key.of(item) : null;
+    }
+}
@@ -1,17 +1,25 @@
 package com.lunartag.app.data;
 
+import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
+import androidx.room.Upsert;
 
+import com.lunartag.app.model.GalleryItem;
 import com.lunartag.app.model.Photo;
+import com.lunartag.app.model.PhotoDetails;
+import com.lunartag.app.model.PhotoLocation;
+import com.lunartag.app.model.PhotoWithDetails;
 
 import java.util.List;
 
 /**
  * Data Access Object (DAO) for the Photo entity.
- * This interface defines the database interactions for the 'photos' table.
+ * This interface defines the database interactions for the 'photos' table and its
+ * 'photo_details' side table. List queries read slim projections, never the whole row.
  */
 @Dao
 public interface PhotoDao {
@@ -40,24 +48,175 @@ public interface PhotoDao {
     Photo getPhotoById(long id);
 
     /**
-     * Retrieves all photos from the database, ordered by the most recent capture time first.
-     * @return A list of all Photo objects.
+     * Retrieves a photo with its descriptive columns, for a detail view.
+     * @param id The ID of the photo.
+     */
+    @Transaction
+    @Query("SELECT * FROM photos WHERE id = :id")
+    PhotoWithDetails getPhotoWithDetails(long id);
+
+    // --- Keyset-paged gallery (see GalleryPagingSource) ---
+    // Newest first by (captureTimestampReal, id). The "ts <= :ts AND (ts < :ts OR id < :id)" form
+    // keeps the range on index_photos_captureTimestampReal (which ends in the rowid), so neither
+    // the page nor the counts scan the table or sort.
+
+    String GALLERY_COLUMNS = "id, filePath, thumbnailPath, assignedTimestamp, captureTimestampReal, status";
+
+    /**
+     * The first gallery page: the newest photos.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photos " +
+            "ORDER BY captureTimestampReal DESC, id DESC LIMIT :limit")
+    List<GalleryItem> getGalleryNewest(int limit);
+
+    /**
+     * The gallery page that starts at the given photo (inclusive) and goes back in time.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photos " +
+            "WHERE captureTimestampReal <= :timestamp AND (captureTimestampReal < :timestamp OR id <= :id) " +
+            "ORDER BY captureTimestampReal DESC, id DESC LIMIT :limit")
+    List<GalleryItem> getGalleryFrom(long timestamp, long id, int limit);
+
+    /**
+     * The gallery page right after (older than) the given photo.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photos " +
+            "WHERE captureTimestampReal <= :timestamp AND (captureTimestampReal < :timestamp OR id < :id) " +
+            "ORDER BY captureTimestampReal DESC, id DESC LIMIT :limit")
+    List<GalleryItem> getGalleryOlderThan(long timestamp, long id, int limit);
+
+    /**
+     * The gallery page right before (newer than) the given photo, oldest first: reverse it for display.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photos " +
+            "WHERE captureTimestampReal >= :timestamp AND (captureTimestampReal > :timestamp OR id > :id) " +
+            "ORDER BY captureTimestampReal ASC, id ASC LIMIT :limit")
+    List<GalleryItem> getGalleryNewerThan(long timestamp, long id, int limit);
+
+    /**
+     * Number of photos older than the given one (placeholders after a page).
+     */
+    @Query("SELECT COUNT(*) FROM photos " +
+            "WHERE captureTimestampReal <= :timestamp AND (captureTimestampReal < :timestamp OR id < :id)")
+    int countGalleryOlderThan(long timestamp, long id);
+
+    /**
+     * Number of photos newer than the given one (placeholders before a page).
+     */
+    @Query("SELECT COUNT(*) FROM photos " +
+            "WHERE captureTimestampReal >= :timestamp AND (captureTimestampReal > :timestamp OR id > :id)")
+    int countGalleryNewerThan(long timestamp, long id);
+
+    // --- Gallery search (see PhotoSearchPagingSource) ---
+    // photo_details_fts drives: its docids are photo ids, so a page walks the match list from
+    // the key in id (capture) order and stops at :limit, whatever the number of matches.
+    // :query is an FTS4 MATCH expression (see FtsQuery).
+
+    /**
+     * The search results page that starts at the given photo id (inclusive), newest first.
+     * Pass Long.MAX_VALUE for the first page.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photo_details_fts JOIN photos ON photos.id = photo_details_fts.docid " +
+            "WHERE photo_details_fts MATCH :query AND photo_details_fts.docid <= :id " +
+            "ORDER BY photo_details_fts.docid DESC LIMIT :limit")
+    List<GalleryItem> searchFrom(String query, long id, int limit);
+
+    /**
+     * The search results page right after (older than) the given photo id.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photo_details_fts JOIN photos ON photos.id = photo_details_fts.docid " +
+            "WHERE photo_details_fts MATCH :query AND photo_details_fts.docid < :id " +
+            "ORDER BY photo_details_fts.docid DESC LIMIT :limit")
+    List<GalleryItem> searchOlderThan(String query, long id, int limit);
+
+    /**
+     * The search results page right before (newer than) the given photo id, oldest first:
+     * reverse it for display.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photo_details_fts JOIN photos ON photos.id = photo_details_fts.docid " +
+            "WHERE photo_details_fts MATCH :query AND photo_details_fts.docid > :id " +
+            "ORDER BY photo_details_fts.docid ASC LIMIT :limit")
+    List<GalleryItem> searchNewerThan(String query, long id, int limit);
+
+    // --- Short lists (Dashboard boxes, camera shortcut), same slim projection as the gallery ---
+
+    /**
+     * Observes the most recent photos: the LiveData re-runs the query whenever the photos table
+     * changes (Room's invalidation tracker), so screens never have to re-query on resume.
+     * Ordered like the gallery, so photos taken in the same millisecond come out in a stable order.
+     * @param limit The maximum number of photos to retrieve.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photos " +
+            "ORDER BY captureTimestampReal DESC, id DESC LIMIT :limit")
+    LiveData<List<GalleryItem>> observeRecentPhotos(int limit);
+
+    /**
+     * Observes the "PENDING" photos, next to be sent first. See {@link #observeRecentPhotos}.
+     */
+    @Query("SELECT " + GALLERY_COLUMNS + " FROM photos WHERE status = 'PENDING' ORDER BY sendScheduledAt")
+    LiveData<List<GalleryItem>> observePendingPhotos();
+
+    // --- Descriptive columns (photo_details) ---
+
+    /**
+     * Retrieves the descriptive columns of a photo.
+     * @return Null if the photo has none yet.
      */
-    @Query("SELECT * FROM photos ORDER BY captureTimestampReal DESC")
-    List<Photo> getAllPhotos();
+    @Query("SELECT * FROM photo_details WHERE photoId = :photoId")
+    PhotoDetails getDetails(long photoId);
 
     /**
-     * Retrieves a limited number of the most recent photos.
+     * Inserts or updates the descriptive columns of a photo.
+     * An upsert, not a REPLACE: REPLACE deletes the old row without firing the delete trigger,
+     * which would leave its words in photo_details_fts.
+     */
+    @Upsert
+    void saveDetails(PhotoDetails details);
+
+    /**
+     * Retrieves the next page of photos that have a fix but no human-readable address yet.
+     * Photos without a fix (0,0) are skipped: there is nothing to resolve.
+     * @param afterId Only photos with a larger ID are returned (keyset paging / checkpoint).
      * @param limit The maximum number of photos to retrieve.
-     * @return A list of the most recent Photo objects.
+     * @return Photos ordered by ID.
+     */
+    @Query("SELECT p.id, p.lat, p.lon FROM photos p LEFT JOIN photo_details d ON d.photoId = p.id " +
+            "WHERE d.addressHuman IS NULL AND p.id > :afterId " +
+            "AND NOT (p.lat = 0 AND p.lon = 0) ORDER BY p.id LIMIT :limit")
+    List<PhotoLocation> getPhotosMissingAddress(long afterId, int limit);
+
+    /**
+     * Counts the photos that {@link #getPhotosMissingAddress} would eventually return from afterId on.
+     */
+    @Query("SELECT COUNT(*) FROM photos p LEFT JOIN photo_details d ON d.photoId = p.id " +
+            "WHERE d.addressHuman IS NULL AND p.id > :afterId AND NOT (p.lat = 0 AND p.lon = 0)")
+    int countPhotosMissingAddress(long afterId);
+
+    /**
+     * Sets the human-readable address of a single photo.
+     * @return The number of rows updated: 0 if the photo has no details row yet.
+     */
+    @Query("UPDATE photo_details SET addressHuman = :address WHERE photoId = :id")
+    int updateAddress(long id, String address);
+
+    /**
+     * Sets the human-readable address of a single photo, creating its details row if needed.
      */
-    @Query("SELECT * FROM photos ORDER BY captureTimestampReal DESC LIMIT :limit")
-    List<Photo> getRecentPhotos(int limit);
+    @Transaction
+    default void setAddress(long id, String address) {
+        if (updateAddress(id, address) == 0) {
+            PhotoDetails details = new PhotoDetails();
+            details.setPhotoId(id);
+            details.setAddressHuman(address);
+            saveDetails(details);
+        }
+    }
 
     /**
-     * Retrieves all photos that have a "PENDING" status.
-     * @return A list of pending Photo objects.
+     * Records what the encode of a photo produced: the master's JPEG quality and file size,
+     * and the paths of its send copy and thumbnail (null if they could not be written).
      */
-    @Query("SELECT * FROM photos WHERE status = 'PENDING'")
-    List<Photo> getPendingPhotos();
+    @Query("UPDATE photos SET jpegQuality = :quality, fileSizeBytes = :sizeBytes, " +
+            "sendPath = :sendPath, thumbnailPath = :thumbnailPath WHERE id = :id")
+    void updateEncodeResults(long id, int quality, long sizeBytes, String sendPath, String thumbnailPath);
 }
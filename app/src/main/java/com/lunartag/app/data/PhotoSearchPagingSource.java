@@ -0,0 +1,111 @@
+package com.lunartag.app.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+import androidx.room.InvalidationTracker;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.lunartag.app.model.GalleryItem;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pages the photos whose address, company or watermark match a search, newest first.
+ *
+ * The FTS index drives (see PhotoDao#searchFrom): keyset pagination on the photo id, which is
+ * capture order, so every page costs the same however common the words are. Like the audit
+ * viewer, no counts are computed and the adapter runs without placeholders.
+ *
+ * Writes to photos (status, thumbnail) and photo_details (a resolved address) invalidate the
+ * source; the refresh restarts at the photo the user was looking at.
+ */
+public class PhotoSearchPagingSource extends ListenableFuturePagingSource<Long, GalleryItem> {
+
+    private final AppDatabase db;
+    private final PhotoDao dao;
+    private final String match;
+    private final InvalidationTracker.Observer observer;
+
+    /**
+     * @param match An FTS4 MATCH expression (see {@link FtsQuery#prefixMatch}).
+     */
+    public PhotoSearchPagingSource(AppDatabase db, String match) {
+        this.db = db;
+        this.dao = db.photoDao();
+        this.match = match;
+        this.observer = new InvalidationTracker.Observer("photos", "photo_details") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        db.getInvalidationTracker().addObserver(observer);
+        registerInvalidatedCallback(() -> {
+            db.getInvalidationTracker().removeObserver(observer);
+            return kotlin.Unit.INSTANCE;
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Long, GalleryItem>> loadFuture(@NonNull LoadParams<Long> params) {
+        return Futures.submit(() -> {
+            try {
+                return load(params);
+            } catch (RuntimeException e) {
+                return new LoadResult.Error<>(e);
+            }
+        }, db.getQueryExecutor());
+    }
+
+    private LoadResult<Long, GalleryItem> load(LoadParams<Long> params) {
+        Long key = params.getKey();
+        int size = params.getLoadSize();
+        List<GalleryItem> items;
+        if (params instanceof LoadParams.Append) {
+            items = dao.searchOlderThan(match, key, size);
+        } else if (params instanceof LoadParams.Prepend) {
+            items = dao.searchNewerThan(match, key, size);
+            Collections.reverse(items);
+        } else {
+            items = dao.searchFrom(match, key != null ? key : Long.MAX_VALUE, size);
+        }
+
+        // A short page means there is nothing further in that direction.
+        Long prevKey = null;
+        Long nextKey = null;
+        if (!items.isEmpty()) {
+            long first = items.get(0).getId();
+            long last = items.get(items.size() - 1).getId();
+            boolean full = items.size() == size;
+            if (params instanceof LoadParams.Append) {
+                prevKey = first;
+                nextKey = full ? last : null;
+            } else if (params instanceof LoadParams.Prepend) {
+                prevKey = full ? first : null;
+                nextKey = last;
+            } else {
+                prevKey = key != null ? first : null; // Refreshed mid-list: newer photos may match
+                nextKey = full ? last : null;
+            }
+        }
+        return new LoadResult.Page<>(items, prevKey, nextKey);
+    }
+
+    /**
+     * Refreshes from the photo nearest to where the user is, so the grid does not jump.
+     */
+    @Nullable
+    @Override
+    public Long getRefreshKey(@NonNull PagingState<Long, GalleryItem> state) {
+        Integer anchor = state.getAnchorPosition();
+        if (anchor == null) return null;
+        GalleryItem item = state.closestItemToPosition(anchor);
+        return item != null ? item.getId() : null;
+    }
+}
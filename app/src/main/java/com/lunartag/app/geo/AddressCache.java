@@ -0,0 +1,213 @@
+package com.lunartag.app.geo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.lunartag.app.data.AddressCacheDao;
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.model.AddressCacheEntry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier reverse-geocode cache keyed by geohash cell, so a crew standing at the same site
+ * all day hits the Geocoder once instead of once per photo.
+ *
+ * 1. In-memory LRU (instant).
+ * 2. Room table 'address_cache', with a TTL and a row cap (survives restarts).
+ * 3. The caller's {@link Loader} (normally the platform Geocoder).
+ *
+ * Concurrent lookups for the same cell are single-flighted: one thread loads, the others
+ * wait for its answer. The cell size is the geohash precision, read from the settings.
+ */
+public class AddressCache {
+
+    private static final String TAG = "AddressCache";
+
+    // Preferences for Settings (cache cell size)
+    private static final String PREFS_SETTINGS = "LunarTagSettings";
+    private static final String KEY_PRECISION = "address_cache_precision";
+    public static final int DEFAULT_PRECISION = 7; // ~150 m cells
+
+    private static final int MEMORY_ENTRIES = 64;
+    private static final long TTL_MS = 30L * 24 * 60 * 60 * 1000; // 30 days
+    private static final int MAX_ROWS = 2000;
+    // Expired / excess rows are purged after this many inserts.
+    private static final int EVICT_EVERY_INSERTS = 50;
+
+    private static volatile AddressCache INSTANCE;
+
+    /**
+     * Resolves a coordinate the slow way. Returns null when nothing was found, which is not cached.
+     */
+    public interface Loader {
+        String load(double lat, double lon);
+    }
+
+    private final Context context;
+    private final AddressCacheDao dao;
+    private final LruCache<String, String> memory = new LruCache<>(MEMORY_ENTRIES);
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    // --- Metrics ---
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong inserts = new AtomicLong();
+
+    public static AddressCache getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (AddressCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AddressCache(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private AddressCache(Context appContext) {
+        this.context = appContext;
+        this.dao = AppDatabase.getDatabase(appContext).addressCacheDao();
+    }
+
+    /**
+     * The geohash length used as the cache cell, from the settings (1..12).
+     */
+    public int getPrecision() {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+        int precision = prefs.getInt(KEY_PRECISION, DEFAULT_PRECISION);
+        return Math.max(1, Math.min(Geohash.MAX_PRECISION, precision));
+    }
+
+    public String cellFor(double lat, double lon) {
+        return Geohash.encode(lat, lon, getPrecision());
+    }
+
+    /**
+     * Returns the address for the cell containing (lat, lon), loading it if needed.
+     * Blocking; never call on the main thread.
+     * @return The address, or null if the loader found nothing.
+     */
+    public String lookup(double lat, double lon, Loader loader) {
+        long start = System.nanoTime();
+        try {
+            String cell = cellFor(lat, lon);
+            String cached = memory.get(cell);
+            if (cached != null) {
+                memoryHits.incrementAndGet();
+                return cached;
+            }
+
+            CompletableFuture<String> mine = new CompletableFuture<>();
+            CompletableFuture<String> existing = inFlight.putIfAbsent(cell, mine);
+            if (existing != null) {
+                sharedLoads.incrementAndGet();
+                return await(existing);
+            }
+            try {
+                String address = loadCell(cell, lat, lon, loader);
+                mine.complete(address);
+                return address;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(cell, mine);
+            }
+        } finally {
+            lookups.incrementAndGet();
+            lookupNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Stores an address obtained elsewhere (e.g. by a backfill job) for the cell containing (lat, lon).
+     */
+    public void put(double lat, double lon, String address) {
+        if (address == null) return;
+        String cell = cellFor(lat, lon);
+        memory.put(cell, address);
+        store(cell, address);
+    }
+
+    /**
+     * One-line summary for the on-screen log, in the same shape as the pipeline stage metrics.
+     */
+    public String describe() {
+        long n = lookups.get();
+        long hits = memoryHits.get() + databaseHits.get();
+        long loaded = loads.get();
+        return "ADDRESS lookups=" + n
+                + " hit=" + (n == 0 ? 0 : hits * 100 / n) + "%"
+                + " (mem=" + memoryHits.get() + " db=" + databaseHits.get() + ")"
+                + " load=" + loaded + " shared=" + sharedLoads.get()
+                + " avg=" + (n == 0 ? 0 : lookupNanos.get() / n / 1_000_000L) + "ms"
+                + " loadAvg=" + (loaded == 0 ? 0 : loadNanos.get() / loaded / 1_000_000L) + "ms";
+    }
+
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    public long getHitCount() {
+        return memoryHits.get() + databaseHits.get();
+    }
+
+    private String loadCell(String cell, double lat, double lon, Loader loader) {
+        long now = System.currentTimeMillis();
+        AddressCacheEntry entry = dao.get(cell);
+        if (entry != null && entry.getAddress() != null && now - entry.getCreatedAt() < TTL_MS) {
+            databaseHits.incrementAndGet();
+            dao.touch(cell, now);
+            memory.put(cell, entry.getAddress());
+            return entry.getAddress();
+        }
+
+        long start = System.nanoTime();
+        String address = loader.load(lat, lon);
+        loads.incrementAndGet();
+        loadNanos.addAndGet(System.nanoTime() - start);
+        if (address != null) {
+            memory.put(cell, address);
+            store(cell, address);
+        }
+        return address;
+    }
+
+    private void store(String cell, String address) {
+        long now = System.currentTimeMillis();
+        AddressCacheEntry entry = new AddressCacheEntry();
+        entry.setGeohash(cell);
+        entry.setAddress(address);
+        entry.setCreatedAt(now);
+        entry.setLastAccessedAt(now);
+        dao.upsert(entry);
+
+        if (inserts.incrementAndGet() % EVICT_EVERY_INSERTS == 0) {
+            int expired = dao.deleteExpired(now - TTL_MS);
+            int trimmed = dao.trimTo(MAX_ROWS);
+            Log.d(TAG, "Evicted " + expired + " expired, " + trimmed + " excess entries.");
+        }
+    }
+
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.lunartag.app.geo;
+
+import java.util.Arrays;
+
+/**
+ * Standard base-32 geohash encoding (the same strings as geohash.org).
+ * Each extra character shrinks the cell by a factor of 32; at precision 7 a cell is
+ * roughly 150 m x 150 m, at 8 roughly 40 m x 20 m.
+ *
+ * Pure Java (no android.* imports).
+ */
+public class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    public static final int MAX_PRECISION = 12;
+
+    private Geohash() {}
+
+    /**
+     * Encodes a coordinate into a geohash of the given length (1..12).
+     */
+    public static String encode(double lat, double lon, int precision) {
+        precision = Math.max(1, Math.min(MAX_PRECISION, precision));
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        char[] out = new char[precision];
+        boolean evenBit = true; // longitude first
+        int bit = 0;
+        int ch = 0;
+        int i = 0;
+        while (i < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                out[i++] = BASE32[ch];
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return new String(out);
+    }
+
+    /**
+     * Bounding box of a geohash cell: {minLat, minLon, maxLat, maxLon}.
+     */
+    public static double[] bounds(String geohash) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            char c = geohash.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) throw new IllegalArgumentException("Invalid geohash: " + geohash);
+            for (int b = 4; b >= 0; b--) {
+                int bitValue = (value >> b) & 1;
+                if (evenBit) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (bitValue == 1) minLon = mid; else maxLon = mid;
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (bitValue == 1) minLat = mid; else maxLat = mid;
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{minLat, minLon, maxLat, maxLon};
+    }
+
+    /**
+     * The centre of a geohash cell: {lat, lon}.
+     */
+    public static double[] center(String geohash) {
+        double[] b = bounds(geohash);
+        return new double[]{(b[0] + b[2]) / 2, (b[1] + b[3]) / 2};
+    }
+
+    /**
+     * Packs a geohash (up to 12 characters) into a long, 5 bits per character.
+     * Cells of the same precision sort in the same order as their strings.
+     */
+    public static long toLong(String geohash) {
+        long value = 0;
+        for (int i = 0; i < geohash.length(); i++) {
+            char c = geohash.charAt(i);
+            int v = c < 128 ? DECODE[c] : -1;
+            if (v < 0) throw new IllegalArgumentException("Invalid geohash: " + geohash);
+            value = (value << 5) | v;
+        }
+        return value;
+    }
+
+    /**
+     * The geohash of the cell dLat rows and dLon columns away from this one, at the same
+     * precision (any offsets; PlaceIndex searches several rings out). Wraps around the
+     * antimeridian once, so |dLon| must stay within half the cells around the globe.
+     * @return Null if the cell would lie beyond a pole.
+     */
+    public static String neighbour(String geohash, int dLat, int dLon) {
+        double[] b = bounds(geohash);
+        double lat = (b[0] + b[2]) / 2 + dLat * (b[2] - b[0]);
+        double lon = (b[1] + b[3]) / 2 + dLon * (b[3] - b[1]);
+        if (lat > 90 || lat < -90) return null;
+        if (lon > 180) lon -= 360;
+        if (lon < -180) lon += 360;
+        return encode(lat, lon, geohash.length());
+    }
+}
@@ -0,0 +1,117 @@
+package com.lunartag.app.geo;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Offline reverse geocoder for sites where the platform Geocoder has no network
+ * (basements, rural areas). Answers from a prebuilt {@link PlaceIndex} file,
+ * memory-mapped from the app's files dir.
+ *
+ * The index is looked for at files/offline_places.idx. If it is missing but the APK ships one
+ * in assets, it is copied out once (assets may be compressed, so they cannot be mapped directly).
+ */
+public class OfflineGeocoder {
+
+    private static final String TAG = "OfflineGeocoder";
+    public static final String INDEX_FILE_NAME = "offline_places.idx";
+
+    // One ring of precision-6 cells covers this radius up to about 65 degrees; PlaceIndex widens
+    // the search beyond that, so no closer place is missed.
+    private static final double MAX_DISTANCE_METERS = 500;
+    // Beyond this the answer is phrased as "Near ..." rather than as the address itself.
+    private static final double EXACT_DISTANCE_METERS = 75;
+
+    private static volatile OfflineGeocoder INSTANCE;
+
+    private final Context context;
+    private PlaceIndex index;
+    private boolean loadAttempted;
+
+    public static OfflineGeocoder getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (OfflineGeocoder.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new OfflineGeocoder(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private OfflineGeocoder(Context appContext) {
+        this.context = appContext;
+    }
+
+    /**
+     * True if an index file is installed and could be mapped.
+     */
+    public boolean isAvailable() {
+        return getIndex() != null;
+    }
+
+    /**
+     * @return The nearest known place as a watermark address line, or null if there is no
+     *         index or nothing within {@link #MAX_DISTANCE_METERS}.
+     */
+    public String resolve(double lat, double lon) {
+        PlaceIndex placeIndex = getIndex();
+        if (placeIndex == null) return null;
+        PlaceIndex.Match match = placeIndex.nearest(lat, lon, MAX_DISTANCE_METERS);
+        if (match == null) return null;
+        return match.distanceMeters <= EXACT_DISTANCE_METERS ? match.name : "Near " + match.name;
+    }
+
+    /**
+     * Drops the current mapping so a newly installed index file is picked up on the next query.
+     */
+    public synchronized void reload() {
+        index = null;
+        loadAttempted = false;
+    }
+
+    private synchronized PlaceIndex getIndex() {
+        if (loadAttempted) return index;
+        loadAttempted = true;
+        File file = new File(context.getFilesDir(), INDEX_FILE_NAME);
+        try {
+            if (!file.exists()) {
+                copyFromAssets(file);
+            }
+            if (file.exists()) {
+                index = PlaceIndex.open(file);
+                Log.d(TAG, "Offline index mapped: " + file.length() + " bytes, bucket precision "
+                        + index.getBucketPrecision());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Offline index unusable: " + e.getMessage());
+            index = null;
+        }
+        return index;
+    }
+
+    private void copyFromAssets(File target) {
+        File temp = new File(target.getPath() + ".tmp");
+        try (InputStream in = context.getAssets().open(INDEX_FILE_NAME);
+             OutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            // No bundled index: the offline geocoder simply stays off.
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+        }
+    }
+}
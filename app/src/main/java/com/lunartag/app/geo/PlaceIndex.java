@@ -0,0 +1,175 @@
+package com.lunartag.app.geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only, memory-mapped spatial index of named places / streets, bucketed by geohash cell.
+ * The file is never copied onto the heap: every query reads straight from the mapping, so a
+ * dataset of several hundred MB costs only the pages actually touched.
+ *
+ * File layout (big-endian), written by tools/OfflineIndexBuilder.java:
+ * <pre>
+ * header   : magic "LTPI" | version u32 | bucketPrecision u32 | bucketCount u32 | placeCount u32
+ *            | placesOffset u32 | stringsOffset u32
+ * buckets  : bucketCount x { cell u64 (Geohash.toLong), firstPlace u32, count u32 }, sorted by cell
+ * places   : placeCount  x { latE6 s32, lonE6 s32, nameOffset u32 }, grouped by bucket
+ * strings  : { length u16, UTF-8 bytes } ...
+ * </pre>
+ *
+ * Pure Java (no android.* imports) so the builder tool and the app share one definition.
+ */
+public class PlaceIndex {
+
+    public static final int MAGIC = 0x4C545049; // "LTPI"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 28;
+    public static final int BUCKET_SIZE = 16;
+    public static final int PLACE_SIZE = 12;
+
+    private static final double EARTH_RADIUS_M = 6_371_000.0;
+
+    /**
+     * A query answer: the place name and how far the query point is from it.
+     */
+    public static class Match {
+        public final String name;
+        public final double distanceMeters;
+
+        Match(String name, double distanceMeters) {
+            this.name = name;
+            this.distanceMeters = distanceMeters;
+        }
+    }
+
+    private final MappedByteBuffer map;
+    private final int bucketPrecision;
+    private final int bucketCount;
+    private final int placesOffset;
+    private final int stringsOffset;
+
+    private PlaceIndex(MappedByteBuffer map) throws IOException {
+        this.map = map;
+        if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a place index file");
+        }
+        if (map.getInt(4) != VERSION) {
+            throw new IOException("Unsupported place index version " + map.getInt(4));
+        }
+        bucketPrecision = map.getInt(8);
+        bucketCount = map.getInt(12);
+        placesOffset = map.getInt(20);
+        stringsOffset = map.getInt(24);
+        if (placesOffset < HEADER_SIZE + (long) bucketCount * BUCKET_SIZE || stringsOffset > map.capacity()) {
+            throw new IOException("Corrupt place index header");
+        }
+    }
+
+    /**
+     * Maps the file read-only. The mapping stays valid after the channel is closed.
+     */
+    public static PlaceIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return new PlaceIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getBucketPrecision() {
+        return bucketPrecision;
+    }
+
+    /**
+     * Nearest place to (lat, lon). Searches the query cell and as many rings of neighbours as
+     * the radius needs: one ring at mid latitudes, more where cells narrow towards the poles.
+     * @param maxDistanceMeters Places further away than this are ignored.
+     * @return The match, or null if nothing is close enough.
+     */
+    public Match nearest(double lat, double lon, double maxDistanceMeters) {
+        // Absolute reads on a private view, so concurrent queries never share a position.
+        ByteBuffer buf = map.duplicate();
+        String center = Geohash.encode(lat, lon, bucketPrecision);
+        double[] cellBounds = Geohash.bounds(center);
+        double cellHeight = cellBounds[2] - cellBounds[0];
+        double cellWidth = cellBounds[3] - cellBounds[1];
+
+        // The radius in degrees: latitude, then longitude at the most poleward latitude reached.
+        double radiusLat = Math.toDegrees(maxDistanceMeters / EARTH_RADIUS_M);
+        double poleward = Math.min(90, Math.abs(lat) + radiusLat);
+        double cos = Math.cos(Math.toRadians(poleward));
+        int lonCells = (int) Math.round(360 / cellWidth);
+        int ringsLat = (int) Math.ceil(radiusLat / cellHeight);
+        int ringsLon = (lonCells - 1) / 2;
+        if (cos > 1e-9) {
+            ringsLon = (int) Math.min(ringsLon, Math.ceil(radiusLat / cos / cellWidth));
+        }
+
+        int bestPlace = -1;
+        double bestDistance = maxDistanceMeters;
+        for (int dLat = -ringsLat; dLat <= ringsLat; dLat++) {
+            for (int dLon = -ringsLon; dLon <= ringsLon; dLon++) {
+                String cell = (dLat == 0 && dLon == 0) ? center : Geohash.neighbour(center, dLat, dLon);
+                if (cell == null) continue;
+                int bucket = findBucket(buf, Geohash.toLong(cell));
+                if (bucket < 0) continue;
+                int b = HEADER_SIZE + bucket * BUCKET_SIZE;
+                int first = buf.getInt(b + 8);
+                int count = buf.getInt(b + 12);
+                for (int i = first; i < first + count; i++) {
+                    int p = placesOffset + i * PLACE_SIZE;
+                    double d = distance(lat, lon, buf.getInt(p) / 1e6, buf.getInt(p + 4) / 1e6);
+                    if (d <= bestDistance) {
+                        bestDistance = d;
+                        bestPlace = i;
+                    }
+                }
+            }
+        }
+        if (bestPlace < 0) return null;
+        int nameOffset = buf.getInt(placesOffset + bestPlace * PLACE_SIZE + 8);
+        return new Match(readString(buf, stringsOffset + nameOffset), bestDistance);
+    }
+
+    private int findBucket(ByteBuffer buf, long cell) {
+        int lo = 0;
+        int hi = bucketCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long value = buf.getLong(HEADER_SIZE + mid * BUCKET_SIZE);
+            if (value < cell) {
+                lo = mid + 1;
+            } else if (value > cell) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static String readString(ByteBuffer buf, int offset) {
+        int length = buf.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buf.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Equirectangular approximation; accurate to well under 1% at the few-km range used here.
+     * The longitude difference is taken the short way round, across the antimeridian if need be.
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLon = Math.abs(lon2 - lon1);
+        if (dLon > 180) dLon = 360 - dLon;
+        double x = Math.toRadians(dLon) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS_M;
+    }
+}
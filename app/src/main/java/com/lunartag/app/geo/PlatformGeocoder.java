@@ -0,0 +1,36 @@
+package com.lunartag.app.geo;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link AddressCache.Loader} backed by the platform Geocoder (network on most devices).
+ * Returns the first address line, or null when there is no answer or no network.
+ */
+public class PlatformGeocoder implements AddressCache.Loader {
+
+    private final Context context;
+
+    public PlatformGeocoder(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public String load(double lat, double lon) {
+        try {
+            Geocoder geocoder = new Geocoder(context, Locale.getDefault());
+            List<Address> addresses = geocoder.getFromLocation(lat, lon, 1);
+            if (addresses != null && !addresses.isEmpty()) {
+                return addresses.get(0).getAddressLine(0);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
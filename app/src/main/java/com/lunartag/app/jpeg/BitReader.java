@@ -0,0 +1,88 @@
+package com.lunartag.app.jpeg;
+
+import java.io.IOException;
+
+/**
+ * Reads entropy-coded JPEG data one bit at a time, removing the 0x00 stuffed after 0xFF.
+ * Keeps track of exactly which byte (and which bit inside it) comes next, so the
+ * splicer can cut the stream at an arbitrary MCU boundary.
+ */
+class BitReader {
+
+    private final byte[] data;
+    private int pos;          // next raw byte to load
+    private int current;      // byte being consumed
+    private int currentOffset;
+    private int bitsLeft;     // unread bits in current
+
+    BitReader(byte[] data, int start) {
+        this.data = data;
+        this.pos = start;
+    }
+
+    int readBit() throws IOException {
+        if (bitsLeft == 0) {
+            load();
+        }
+        bitsLeft--;
+        return (current >> bitsLeft) & 1;
+    }
+
+    int readBits(int count) throws IOException {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    private void load() throws IOException {
+        if (pos >= data.length) throw new IOException("Unexpected end of entropy data");
+        currentOffset = pos;
+        current = data[pos++] & 0xFF;
+        if (current == 0xFF) {
+            int next = pos < data.length ? data[pos] & 0xFF : -1;
+            if (next != 0x00) throw new IOException("Unexpected marker inside an MCU");
+            pos++; // stuffed zero
+        }
+        bitsLeft = 8;
+    }
+
+    /**
+     * Drops the padding bits before a restart marker and consumes the RSTn marker itself.
+     */
+    void skipRestartMarker() throws IOException {
+        bitsLeft = 0;
+        while (pos + 1 < data.length && (data[pos] & 0xFF) == 0xFF && (data[pos + 1] & 0xFF) == 0xFF) {
+            pos++; // fill bytes
+        }
+        if (pos + 1 >= data.length || (data[pos] & 0xFF) != 0xFF
+                || (data[pos + 1] & 0xF8) != 0xD0) {
+            throw new IOException("Expected RST marker at " + pos);
+        }
+        pos += 2;
+    }
+
+    /**
+     * Number of bits of the current byte already consumed (0 if at a byte boundary).
+     */
+    int consumedBitsInByte() {
+        return bitsLeft == 0 ? 0 : 8 - bitsLeft;
+    }
+
+    /**
+     * The consumed high bits of the current byte, right-aligned.
+     */
+    int consumedBitsValue() {
+        return bitsLeft == 0 ? 0 : current >> bitsLeft;
+    }
+
+    /**
+     * Everything before this offset can be copied verbatim.
+     * At a byte boundary that is the next raw byte; otherwise it is the partly read byte,
+     * which the writer rebuilds from {@link #consumedBitsValue()}.
+     */
+    int copyLimit() {
+        return bitsLeft == 0 ? pos : currentOffset;
+    }
+}
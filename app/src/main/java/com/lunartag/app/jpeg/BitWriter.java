@@ -0,0 +1,67 @@
+package com.lunartag.app.jpeg;
+
+import java.util.Arrays;
+
+/**
+ * Writes entropy-coded JPEG data, stuffing a 0x00 after every 0xFF.
+ * Can be pre-loaded with the first bits of a byte that was cut in the middle of the host stream.
+ */
+class BitWriter {
+
+    private byte[] buffer;
+    private int length;
+    private int accumulator;
+    private int bitCount;
+
+    BitWriter(int initialCapacity) {
+        buffer = new byte[Math.max(1024, initialCapacity)];
+    }
+
+    void write(int bits, int size) {
+        accumulator = (accumulator << size) | (bits & ((1 << size) - 1));
+        bitCount += size;
+        while (bitCount >= 8) {
+            int b = (accumulator >> (bitCount - 8)) & 0xFF;
+            put(b);
+            if (b == 0xFF) put(0x00);
+            bitCount -= 8;
+        }
+        accumulator &= (1 << bitCount) - 1;
+    }
+
+    /**
+     * Pads the last byte with 1-bits (T.81 F.1.2.3), as required before a marker.
+     */
+    void flush() {
+        if (bitCount > 0) {
+            write((1 << (8 - bitCount)) - 1, 8 - bitCount);
+        }
+    }
+
+    void restartMarker(int index) {
+        flush();
+        put(0xFF);
+        put(0xD0 + (index & 7));
+    }
+
+    void marker(int code) {
+        flush();
+        put(0xFF);
+        put(code);
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void put(int b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = (byte) b;
+    }
+}
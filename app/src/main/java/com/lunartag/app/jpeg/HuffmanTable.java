@@ -0,0 +1,58 @@
+package com.lunartag.app.jpeg;
+
+import java.io.IOException;
+
+/**
+ * One canonical JPEG Huffman table (ITU T.81 Annex C), usable both for decoding
+ * (to walk existing entropy-coded data) and for encoding (to write new blocks with the
+ * exact same codes the host file uses).
+ */
+class HuffmanTable {
+
+    // --- Encoding: code and length per symbol (length 0 = symbol not present) ---
+    final int[] codes = new int[256];
+    final int[] lengths = new int[256];
+
+    // --- Decoding (T.81 F.2.2.3): per code length ---
+    private final int[] minCode = new int[17];
+    private final int[] maxCode = new int[18];
+    private final int[] valPtr = new int[17];
+    private final int[] values;
+
+    HuffmanTable(int[] bits, int[] values) {
+        this.values = values;
+        int code = 0;
+        int k = 0;
+        for (int len = 1; len <= 16; len++) {
+            valPtr[len] = k;
+            minCode[len] = code;
+            for (int i = 0; i < bits[len]; i++) {
+                int symbol = values[k++];
+                codes[symbol] = code;
+                lengths[symbol] = len;
+                code++;
+            }
+            maxCode[len] = bits[len] == 0 ? -1 : code - 1;
+            code <<= 1;
+        }
+        maxCode[17] = Integer.MAX_VALUE; // sentinel
+    }
+
+    boolean has(int symbol) {
+        return lengths[symbol] != 0;
+    }
+
+    /**
+     * Reads one symbol, bit by bit.
+     */
+    int decode(BitReader in) throws IOException {
+        int code = in.readBit();
+        int len = 1;
+        while (len <= 16 && code > maxCode[len]) {
+            code = (code << 1) | in.readBit();
+            len++;
+        }
+        if (len > 16) throw new IOException("Bad Huffman code");
+        return values[valPtr[len] + code - minCode[len]];
+    }
+}
@@ -0,0 +1,149 @@
+package com.lunartag.app.jpeg;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replaces the bottom MCU rows of a baseline JPEG without re-encoding the rest of it.
+ *
+ * Everything above the strip is copied byte for byte from the host file (no generational loss,
+ * no decode, no encode). The cut point is found in one of two ways:
+ *  - Fast path: the strip starts on a restart boundary, so the cut is simply the matching RSTn.
+ *  - General path: the entropy-coded data is Huffman-walked (no IDCT) up to the first MCU of the
+ *    strip, which gives the exact bit position and the DC predictors to continue with.
+ * The strip is then encoded with the host's own tables and appended, followed by EOI.
+ */
+public class JpegSplicer {
+
+    // How far up to look for a restart-aligned MCU row before falling back to the walk.
+    private static final int MAX_ALIGNMENT_ROWS = 4;
+
+    private JpegSplicer() {}
+
+    /**
+     * Picks the first image row of the strip: an MCU row at or above desiredTop,
+     * preferring one that also sits on a restart boundary.
+     */
+    public static int alignStripTop(JpegStructure jpeg, int desiredTop) {
+        int mcuHeight = jpeg.getMcuHeight();
+        int row = Math.max(0, Math.min(desiredTop, jpeg.height - 1)) / mcuHeight;
+        int restart = jpeg.restartInterval;
+        if (restart > 0) {
+            int mcusPerRow = jpeg.getMcusPerRow();
+            for (int r = row; r >= 0 && r >= row - MAX_ALIGNMENT_ROWS; r--) {
+                if ((r * mcusPerRow) % restart == 0) {
+                    return r * mcuHeight;
+                }
+            }
+        }
+        return row * mcuHeight;
+    }
+
+    /**
+     * Builds the spliced file.
+     * @param host The original JPEG.
+     * @param jpeg Its parsed structure (must be {@link JpegStructure#isSpliceable()}).
+     * @param stripTop A value returned by {@link #alignStripTop}.
+     * @param argb The new strip pixels, rows stripTop..height-1, stride = image width.
+     */
+    public static byte[] splice(byte[] host, JpegStructure jpeg, int stripTop, int[] argb) throws IOException {
+        if (!jpeg.isSpliceable()) throw new IOException("JPEG layout not supported for splicing");
+        int mcuHeight = jpeg.getMcuHeight();
+        if (stripTop % mcuHeight != 0) throw new IOException("Strip is not MCU aligned");
+
+        int firstMcuRow = stripTop / mcuHeight;
+        int firstMcu = firstMcuRow * jpeg.getMcusPerRow();
+        int restart = jpeg.restartInterval;
+
+        int copyLimit;
+        int[] dcPredictors = new int[jpeg.scanComponents.length];
+        BitWriter writer = new BitWriter((host.length - jpeg.entropyStart) / 4);
+
+        if (firstMcu == 0) {
+            copyLimit = jpeg.entropyStart;
+        } else if (restart > 0 && firstMcu % restart == 0) {
+            copyLimit = findRestartMarker(host, jpeg, firstMcu / restart);
+        } else {
+            BitReader reader = walkTo(host, jpeg, firstMcu, dcPredictors);
+            copyLimit = reader.copyLimit();
+            int pending = reader.consumedBitsInByte();
+            if (pending > 0) {
+                writer.write(reader.consumedBitsValue(), pending);
+            }
+        }
+
+        new StripEncoder(jpeg, writer, dcPredictors)
+                .encode(argb, jpeg.width, jpeg.height - stripTop, firstMcuRow);
+        writer.marker(0xD9); // EOI
+
+        byte[] result = new byte[copyLimit + writer.length()];
+        System.arraycopy(host, 0, result, 0, copyLimit);
+        System.arraycopy(writer.array(), 0, result, copyLimit, writer.length());
+        return result;
+    }
+
+    /**
+     * Offset of the n-th RSTn marker (1-based) in the entropy-coded data.
+     */
+    private static int findRestartMarker(byte[] d, JpegStructure jpeg, int n) throws IOException {
+        int seen = 0;
+        for (int p = jpeg.entropyStart; p < jpeg.entropyEnd - 1; p++) {
+            if ((d[p] & 0xFF) != 0xFF) continue;
+            int m = d[p + 1] & 0xFF;
+            if (m >= 0xD0 && m <= 0xD7) {
+                if (++seen == n) return p;
+                p++;
+            } else if (m == 0x00) {
+                p++;
+            }
+        }
+        throw new IOException("Restart marker " + n + " not found");
+    }
+
+    /**
+     * Huffman-decodes (without dequantizing or IDCT) every block before targetMcu,
+     * tracking DC predictors and restart markers.
+     */
+    private static BitReader walkTo(byte[] d, JpegStructure jpeg, int targetMcu, int[] dcPredictors)
+            throws IOException {
+        BitReader in = new BitReader(d, jpeg.entropyStart);
+        JpegStructure.Component[] comps = jpeg.scanComponents;
+        int restart = jpeg.restartInterval;
+        for (int mcu = 0; mcu < targetMcu; mcu++) {
+            if (restart > 0 && mcu > 0 && mcu % restart == 0) {
+                in.skipRestartMarker();
+                Arrays.fill(dcPredictors, 0);
+            }
+            for (int i = 0; i < comps.length; i++) {
+                HuffmanTable dc = jpeg.dcTables[comps[i].dcTable];
+                HuffmanTable ac = jpeg.acTables[comps[i].acTable];
+                int blocks = comps[i].h * comps[i].v;
+                for (int b = 0; b < blocks; b++) {
+                    int size = dc.decode(in);
+                    if (size > 0) {
+                        dcPredictors[i] += extend(in.readBits(size), size);
+                    }
+                    for (int k = 1; k < 64; ) {
+                        int rs = ac.decode(in);
+                        int run = rs >> 4;
+                        int bits = rs & 0x0F;
+                        if (bits == 0) {
+                            if (run != 15) break; // EOB
+                            k += 16;              // ZRL
+                            continue;
+                        }
+                        in.readBits(bits);
+                        k += run + 1;
+                    }
+                }
+            }
+        }
+        // A restart due exactly at the target is emitted by the encoder, not consumed here.
+        return in;
+    }
+
+    /** T.81 F.2.2.1 EXTEND. */
+    private static int extend(int value, int size) {
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+}
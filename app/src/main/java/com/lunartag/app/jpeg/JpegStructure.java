@@ -0,0 +1,294 @@
+package com.lunartag.app.jpeg;
+
+import java.io.IOException;
+
+/**
+ * The parsed header of a baseline JPEG, plus where its entropy-coded data starts and ends.
+ * Only what the splicer needs is kept: frame size, components, quantization and Huffman
+ * tables, the restart interval and the single scan.
+ *
+ * Pure Java (no android.* imports) so the whole bitstream layer runs on a plain JVM.
+ */
+public class JpegStructure {
+
+    /**
+     * One frame component, joined with its scan table selectors.
+     */
+    public static class Component {
+        public final int id;
+        public final int h;
+        public final int v;
+        public final int quantTable;
+        int dcTable = -1;
+        int acTable = -1;
+
+        Component(int id, int h, int v, int quantTable) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantTable = quantTable;
+        }
+    }
+
+    // ITU T.81 Annex K.1 luminance table (order does not matter: only its sum is used).
+    private static final int[] STD_LUMINANCE_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    public int width;
+    public int height;
+    public Component[] components;
+    /** Components in scan order (same objects as {@link #components}). */
+    public Component[] scanComponents;
+    public int maxH = 1;
+    public int maxV = 1;
+    public int restartInterval;
+    public boolean baseline;
+
+    /** Quantization tables, in zigzag order, indexed by table id. */
+    public final int[][] quantTables = new int[4][];
+    public final HuffmanTable[] dcTables = new HuffmanTable[4];
+    public final HuffmanTable[] acTables = new HuffmanTable[4];
+
+    /** Offset of the first entropy-coded byte (right after the SOS header). */
+    public int entropyStart;
+    /** Offset of the EOI marker that ends the scan. */
+    public int entropyEnd;
+
+    private JpegStructure() {}
+
+    public int getMcuWidth() {
+        return 8 * maxH;
+    }
+
+    public int getMcuHeight() {
+        return 8 * maxV;
+    }
+
+    public int getMcusPerRow() {
+        return (width + getMcuWidth() - 1) / getMcuWidth();
+    }
+
+    public int getMcuRows() {
+        return (height + getMcuHeight() - 1) / getMcuHeight();
+    }
+
+    /**
+     * True if this file is a single-scan, 8-bit, Huffman-coded sequential JPEG with one or three
+     * interleaved components, i.e. something the splicer can work on.
+     */
+    public boolean isSpliceable() {
+        if (!baseline || components == null || scanComponents == null) return false;
+        if (components.length != 1 && components.length != 3) return false;
+        if (scanComponents.length != components.length) return false;
+        for (Component c : components) {
+            if (quantTables[c.quantTable] == null) return false;
+            if (c.dcTable < 0 || dcTables[c.dcTable] == null) return false;
+            if (c.acTable < 0 || acTables[c.acTable] == null) return false;
+        }
+        return entropyEnd > entropyStart;
+    }
+
+    /**
+     * Estimates the IJG quality setting (1..100) the file was encoded with, by comparing the
+     * first component's quantization table with the standard luminance table.
+     * @return -1 if the table is missing.
+     */
+    public int estimateQuality() {
+        if (components == null || components.length == 0) return -1;
+        int[] table = quantTables[components[0].quantTable];
+        if (table == null) return -1;
+        long sum = 0;
+        long standardSum = 0;
+        for (int i = 0; i < 64; i++) {
+            sum += table[i];
+            standardSum += STD_LUMINANCE_QUANT[i];
+        }
+        // IJG scales the standard table by 5000/q (q < 50) or 200 - 2q (q >= 50), in percent.
+        double scale = 100.0 * sum / standardSum;
+        int quality = scale <= 100 ? (int) Math.round((200 - scale) / 2) : (int) Math.round(5000 / scale);
+        return Math.max(1, Math.min(100, quality));
+    }
+
+    /**
+     * Parses the markers of a JPEG up to SOS, then scans the entropy-coded data for its end.
+     * @throws IOException if the data is not a well-formed JPEG.
+     */
+    public static JpegStructure parse(byte[] data) throws IOException {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            throw new IOException("Missing SOI marker");
+        }
+        JpegStructure s = new JpegStructure();
+        int pos = 2;
+        while (true) {
+            pos = skipFill(data, pos);
+            if (pos + 4 > data.length) throw new IOException("Truncated header");
+            int marker = data[pos + 1] & 0xFF;
+            int length = u16(data, pos + 2);
+            int body = pos + 4;
+            int next = pos + 2 + length;
+            if (next > data.length) throw new IOException("Truncated segment");
+
+            switch (marker) {
+                case 0xC0: // SOF0 baseline
+                case 0xC1: // SOF1 extended sequential, Huffman
+                    s.parseFrame(data, body);
+                    break;
+                case 0xC2: case 0xC3: case 0xC5: case 0xC6: case 0xC7:
+                case 0xC9: case 0xCA: case 0xCB: case 0xCD: case 0xCE: case 0xCF:
+                    s.baseline = false; // progressive, lossless or arithmetic
+                    break;
+                case 0xC4:
+                    s.parseHuffman(data, body, next);
+                    break;
+                case 0xDB:
+                    s.parseQuant(data, body, next);
+                    break;
+                case 0xDD:
+                    s.restartInterval = u16(data, body);
+                    break;
+                case 0xDA:
+                    s.parseScan(data, body);
+                    s.entropyStart = next;
+                    s.entropyEnd = findScanEnd(data, next);
+                    return s;
+                case 0xD9:
+                    throw new IOException("EOI before SOS");
+                default:
+                    // APPn, COM and friends are copied through untouched.
+                    break;
+            }
+            pos = next;
+        }
+    }
+
+    private void parseFrame(byte[] d, int p) throws IOException {
+        int precision = d[p] & 0xFF;
+        height = u16(d, p + 1);
+        width = u16(d, p + 3);
+        int count = d[p + 5] & 0xFF;
+        baseline = precision == 8 && height > 0 && width > 0;
+        components = new Component[count];
+        for (int i = 0; i < count; i++) {
+            int o = p + 6 + i * 3;
+            int hv = d[o + 1] & 0xFF;
+            components[i] = new Component(d[o] & 0xFF, hv >> 4, hv & 0x0F, d[o + 2] & 0x03);
+        }
+        if (count == 1) {
+            // A single-component scan is never interleaved: one block per MCU.
+            components[0] = new Component(components[0].id, 1, 1, components[0].quantTable);
+        }
+        for (Component c : components) {
+            if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4) throw new IOException("Bad sampling factors");
+            maxH = Math.max(maxH, c.h);
+            maxV = Math.max(maxV, c.v);
+        }
+    }
+
+    private void parseQuant(byte[] d, int p, int end) {
+        while (p < end) {
+            int pqTq = d[p++] & 0xFF;
+            int precision = pqTq >> 4;
+            int[] table = new int[64];
+            for (int i = 0; i < 64; i++) {
+                if (precision == 0) {
+                    table[i] = d[p++] & 0xFF;
+                } else {
+                    table[i] = u16(d, p);
+                    p += 2;
+                }
+            }
+            quantTables[pqTq & 0x03] = table;
+        }
+    }
+
+    private void parseHuffman(byte[] d, int p, int end) throws IOException {
+        while (p < end) {
+            int tcTh = d[p++] & 0xFF;
+            int[] bits = new int[17];
+            int total = 0;
+            for (int i = 1; i <= 16; i++) {
+                bits[i] = d[p++] & 0xFF;
+                total += bits[i];
+            }
+            if (p + total > end) throw new IOException("Bad DHT");
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++) {
+                values[i] = d[p++] & 0xFF;
+            }
+            HuffmanTable table = new HuffmanTable(bits, values);
+            if ((tcTh >> 4) == 0) {
+                dcTables[tcTh & 0x03] = table;
+            } else {
+                acTables[tcTh & 0x03] = table;
+            }
+        }
+    }
+
+    private void parseScan(byte[] d, int p) throws IOException {
+        if (components == null) throw new IOException("SOS before SOF");
+        int count = d[p] & 0xFF;
+        scanComponents = new Component[count];
+        for (int i = 0; i < count; i++) {
+            int id = d[p + 1 + i * 2] & 0xFF;
+            int tables = d[p + 2 + i * 2] & 0xFF;
+            for (Component c : components) {
+                if (c.id == id) {
+                    c.dcTable = tables >> 4;
+                    c.acTable = tables & 0x0F;
+                    scanComponents[i] = c;
+                }
+            }
+            if (scanComponents[i] == null) throw new IOException("Unknown scan component");
+        }
+        int o = p + 1 + count * 2;
+        int ss = d[o] & 0xFF;
+        int se = d[o + 1] & 0xFF;
+        int ahAl = d[o + 2] & 0xFF;
+        if (ss != 0 || se != 63 || ahAl != 0) {
+            baseline = false;
+        }
+    }
+
+    /**
+     * Walks the entropy-coded bytes (skipping stuffed zeros and RSTn) to the marker that ends
+     * the scan. Anything but EOI there (a second scan, DNL...) makes the file unspliceable.
+     */
+    private static int findScanEnd(byte[] d, int p) {
+        int n = d.length - 1;
+        while (p < n) {
+            if ((d[p] & 0xFF) != 0xFF) {
+                p++;
+                continue;
+            }
+            int m = d[p + 1] & 0xFF;
+            if (m == 0x00 || (m >= 0xD0 && m <= 0xD7)) {
+                p += 2;
+            } else if (m == 0xFF) {
+                p++;
+            } else {
+                return m == 0xD9 ? p : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipFill(byte[] d, int p) throws IOException {
+        if (p >= d.length || (d[p] & 0xFF) != 0xFF) throw new IOException("Expected marker at " + p);
+        while (p + 1 < d.length && (d[p + 1] & 0xFF) == 0xFF) {
+            p++;
+        }
+        return p;
+    }
+
+    static int u16(byte[] d, int p) {
+        return ((d[p] & 0xFF) << 8) | (d[p + 1] & 0xFF);
+    }
+}
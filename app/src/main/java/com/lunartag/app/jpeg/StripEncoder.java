@@ -0,0 +1,227 @@
+package com.lunartag.app.jpeg;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Baseline JPEG encoder for a horizontal strip of MCU rows, using the host file's own
+ * sampling factors, quantization tables, Huffman tables and restart interval, so its output
+ * can continue the host's entropy-coded data without touching the header.
+ */
+class StripEncoder {
+
+    /** jpeg_natural_order: natural (row-major) index of the k-th zigzag coefficient. */
+    private static final int[] NATURAL_ORDER = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    /** DCT basis: COS[u * 8 + x] = C(u) / 2 * cos((2x + 1) * u * PI / 16). */
+    private static final double[] COS = new double[64];
+
+    static {
+        for (int u = 0; u < 8; u++) {
+            double cu = (u == 0) ? Math.sqrt(0.5) : 1.0;
+            for (int x = 0; x < 8; x++) {
+                COS[u * 8 + x] = 0.5 * cu * Math.cos((2 * x + 1) * u * Math.PI / 16.0);
+            }
+        }
+    }
+
+    private final JpegStructure jpeg;
+    private final BitWriter out;
+    private final int[] dcPredictors;
+
+    // Scratch, reused for every block.
+    private final double[] samples = new double[64];
+    private final double[] temp = new double[64];
+    private final int[] coefficients = new int[64];
+
+    StripEncoder(JpegStructure jpeg, BitWriter out, int[] dcPredictors) {
+        this.jpeg = jpeg;
+        this.out = out;
+        this.dcPredictors = dcPredictors;
+    }
+
+    /**
+     * Encodes MCU rows [firstMcuRow, mcuRows) from the strip pixels.
+     * @param argb Strip pixels, ARGB, row-major; row 0 is image row firstMcuRow * mcuHeight.
+     * @param stride Pixels per strip row (normally the image width).
+     * @param stripRows Rows of real pixels in the strip; rows beyond repeat the last one.
+     */
+    void encode(int[] argb, int stride, int stripRows, int firstMcuRow) throws IOException {
+        JpegStructure.Component[] comps = jpeg.scanComponents;
+        int mcusPerRow = jpeg.getMcusPerRow();
+        int mcuRows = jpeg.getMcuRows();
+        int restart = jpeg.restartInterval;
+
+        byte[][] planes = new byte[comps.length][];
+        int[] planeWidths = new int[comps.length];
+        int stripMcuRows = mcuRows - firstMcuRow;
+        for (int i = 0; i < comps.length; i++) {
+            planeWidths[i] = mcusPerRow * comps[i].h * 8;
+            planes[i] = samplePlane(argb, stride, stripRows, comps[i], componentIndex(comps[i]),
+                    planeWidths[i], stripMcuRows * comps[i].v * 8);
+        }
+
+        for (int row = firstMcuRow; row < mcuRows; row++) {
+            for (int col = 0; col < mcusPerRow; col++) {
+                int mcu = row * mcusPerRow + col;
+                if (restart > 0 && mcu > 0 && mcu % restart == 0) {
+                    out.restartMarker(mcu / restart - 1);
+                    Arrays.fill(dcPredictors, 0);
+                }
+                for (int i = 0; i < comps.length; i++) {
+                    JpegStructure.Component c = comps[i];
+                    int[] quant = jpeg.quantTables[c.quantTable];
+                    HuffmanTable dc = jpeg.dcTables[c.dcTable];
+                    HuffmanTable ac = jpeg.acTables[c.acTable];
+                    for (int by = 0; by < c.v; by++) {
+                        for (int bx = 0; bx < c.h; bx++) {
+                            int x0 = (col * c.h + bx) * 8;
+                            int y0 = ((row - firstMcuRow) * c.v + by) * 8;
+                            loadBlock(planes[i], planeWidths[i], x0, y0);
+                            forwardDct(quant);
+                            encodeBlock(i, dc, ac);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int componentIndex(JpegStructure.Component c) {
+        for (int i = 0; i < jpeg.components.length; i++) {
+            if (jpeg.components[i] == c) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Builds one component's samples for the whole strip, padded to full MCUs.
+     * Colour conversion is JFIF YCbCr; chroma is box-filtered down to the component's sampling.
+     * Pixels outside the image repeat the nearest edge pixel.
+     */
+    private byte[] samplePlane(int[] argb, int stride, int stripRows, JpegStructure.Component c,
+                               int channel, int planeWidth, int planeHeight) {
+        byte[] plane = new byte[planeWidth * planeHeight];
+        int sx = jpeg.maxH / c.h;
+        int sy = jpeg.maxV / c.v;
+        int imageWidth = jpeg.width;
+        int area = sx * sy;
+        for (int py = 0; py < planeHeight; py++) {
+            for (int px = 0; px < planeWidth; px++) {
+                int sum = 0;
+                for (int dy = 0; dy < sy; dy++) {
+                    int y = Math.min(py * sy + dy, stripRows - 1);
+                    int rowBase = y * stride;
+                    for (int dx = 0; dx < sx; dx++) {
+                        int x = Math.min(px * sx + dx, imageWidth - 1);
+                        sum += toYCbCr(argb[rowBase + x], channel);
+                    }
+                }
+                plane[py * planeWidth + px] = (byte) ((sum + area / 2) / area);
+            }
+        }
+        return plane;
+    }
+
+    private static int toYCbCr(int p, int channel) {
+        int r = (p >> 16) & 0xFF;
+        int g = (p >> 8) & 0xFF;
+        int b = p & 0xFF;
+        int v;
+        switch (channel) {
+            case 1:  v = (int) Math.round(-0.168736 * r - 0.331264 * g + 0.5 * b + 128); break;
+            case 2:  v = (int) Math.round(0.5 * r - 0.418688 * g - 0.081312 * b + 128); break;
+            default: v = (int) Math.round(0.299 * r + 0.587 * g + 0.114 * b); break;
+        }
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    private void loadBlock(byte[] plane, int planeWidth, int x0, int y0) {
+        for (int y = 0; y < 8; y++) {
+            int base = (y0 + y) * planeWidth + x0;
+            for (int x = 0; x < 8; x++) {
+                samples[y * 8 + x] = (plane[base + x] & 0xFF) - 128;
+            }
+        }
+    }
+
+    /**
+     * Separable 2-D DCT-II followed by quantization into zigzag order.
+     */
+    private void forwardDct(int[] quantZigzag) {
+        // Rows
+        for (int y = 0; y < 8; y++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int x = 0; x < 8; x++) {
+                    sum += COS[u * 8 + x] * samples[y * 8 + x];
+                }
+                temp[y * 8 + u] = sum;
+            }
+        }
+        // Columns
+        for (int u = 0; u < 8; u++) {
+            for (int v = 0; v < 8; v++) {
+                double sum = 0;
+                for (int y = 0; y < 8; y++) {
+                    sum += COS[v * 8 + y] * temp[y * 8 + u];
+                }
+                samples[v * 8 + u] = sum;
+            }
+        }
+        for (int k = 0; k < 64; k++) {
+            coefficients[k] = (int) Math.round(samples[NATURAL_ORDER[k]] / quantZigzag[k]);
+        }
+    }
+
+    private void encodeBlock(int componentSlot, HuffmanTable dc, HuffmanTable ac) throws IOException {
+        int diff = coefficients[0] - dcPredictors[componentSlot];
+        dcPredictors[componentSlot] = coefficients[0];
+        int size = bitLength(diff);
+        emit(dc, size);
+        if (size > 0) {
+            out.write(diff < 0 ? diff - 1 : diff, size);
+        }
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int c = coefficients[k];
+            if (c == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                emit(ac, 0xF0); // ZRL
+                run -= 16;
+            }
+            size = bitLength(c);
+            emit(ac, (run << 4) | size);
+            out.write(c < 0 ? c - 1 : c, size);
+            run = 0;
+        }
+        if (run > 0) {
+            emit(ac, 0x00); // EOB
+        }
+    }
+
+    private void emit(HuffmanTable table, int symbol) throws IOException {
+        if (!table.has(symbol)) {
+            throw new IOException("Host Huffman table has no code for symbol 0x" + Integer.toHexString(symbol));
+        }
+        out.write(table.codes[symbol], table.lengths[symbol]);
+    }
+
+    private static int bitLength(int value) {
+        int v = value < 0 ? -value : value;
+        return v == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(v);
+    }
+}
@@ -0,0 +1,56 @@
+package com.lunartag.app.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A data model class that represents one cached reverse-geocode result in the local Room database.
+ * Rows are keyed by the geohash of the cell the address was resolved for.
+ */
+@Entity(tableName = "address_cache")
+public class AddressCacheEntry {
+
+    @PrimaryKey
+    @NonNull
+    private String geohash = "";
+
+    private String address;
+    private long createdAt; // When the Geocoder answered; used for the TTL
+    private long lastAccessedAt; // Used to evict the least recently used rows first
+
+    // --- Getters and Setters for all fields ---
+
+    @NonNull
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public void setGeohash(@NonNull String geohash) {
+        this.geohash = geohash;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
+    public void setLastAccessedAt(long lastAccessedAt) {
+        this.lastAccessedAt = lastAccessedAt;
+    }
+}
@@ -1,13 +1,19 @@
 package com.lunartag.app.model;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
  * A data model class that represents an audit log record in the local Room database.
  * An entry is created for every critical action performed in the app.
  */
-@Entity(tableName = "audit_logs")
+@Entity(tableName = "audit_logs",
+        indices = {
+                @Index(value = {"photoId", "timestamp"}), // Per-photo history, newest first
+                @Index(value = {"action", "timestamp"}),  // Admin console, filtered by action
+                @Index(value = {"timestamp"})             // Admin console, everything
+        })
 public class AuditLog {
 
     @PrimaryKey(autoGenerate = true)
@@ -0,0 +1,25 @@
+package com.lunartag.app.model;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+/**
+ * Full-text index over {@link AuditLog#getDetails()}, for the admin console search.
+ * An external-content FTS4 table: it stores only the index, the text stays in 'audit_logs',
+ * and Room's triggers keep it in sync on every insert, update and delete (retention included).
+ * The docid of a row is the id of its audit log.
+ */
+@Fts4(contentEntity = AuditLog.class)
+@Entity(tableName = "audit_logs_fts")
+public class AuditLogFts {
+
+    private String details;
+
+    public String getDetails() {
+        return details;
+    }
+
+    public void setDetails(String details) {
+        this.details = details;
+    }
+}
@@ -0,0 +1,216 @@
+package com.lunartag.app.model;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A data model class that represents one deferred capture in the local Room database.
+ * The shutter writes the sensor JPEG to a staging file and records everything the watermark
+ * needs here; the row is deleted once the photo has been processed and scheduled.
+ */
+@Entity(tableName = "capture_journal")
+public class CaptureJournalEntry {
+
+    public static final String STATE_QUEUED = "QUEUED";   // Staged, not processed yet
+    public static final String STATE_ENCODED = "ENCODED"; // Output written, row/alarm not finished
+    public static final String STATE_FAILED = "FAILED";   // Gave up; the staging file is kept
+
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    private long photoId; // The PROCESSING row shown in the gallery meanwhile
+    private String stagingPath;
+    private long realTime; // Stored as long (milliseconds) for Room
+    private long assignedTime; // Stored as long (milliseconds) for Room
+
+    // --- Location snapshot (located = false: no fix at the shutter) ---
+    private boolean located;
+    private double lat;
+    private double lon;
+    private float accuracy;
+    private Double altitude;
+    private long fixTime;
+    private String provider;
+
+    // --- Settings snapshot ---
+    private String companyName;
+    private String address; // Pre-resolved by the ready state, or null
+    private boolean rotateViaExif;
+
+    private String state;
+    private String outputPath; // Set once the watermarked JPEG has been written
+    private String outputUri; // MediaStore item or SAF document, stored before the first byte is written
+    private int attempts;
+    private long createdAt; // Stored as long (milliseconds) for Room
+    private long updatedAt; // Stored as long (milliseconds) for Room
+
+    // --- Getters and Setters for all fields ---
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getPhotoId() {
+        return photoId;
+    }
+
+    public void setPhotoId(long photoId) {
+        this.photoId = photoId;
+    }
+
+    public String getStagingPath() {
+        return stagingPath;
+    }
+
+    public void setStagingPath(String stagingPath) {
+        this.stagingPath = stagingPath;
+    }
+
+    public long getRealTime() {
+        return realTime;
+    }
+
+    public void setRealTime(long realTime) {
+        this.realTime = realTime;
+    }
+
+    public long getAssignedTime() {
+        return assignedTime;
+    }
+
+    public void setAssignedTime(long assignedTime) {
+        this.assignedTime = assignedTime;
+    }
+
+    public boolean isLocated() {
+        return located;
+    }
+
+    public void setLocated(boolean located) {
+        this.located = located;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public void setLat(double lat) {
+        this.lat = lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public void setLon(double lon) {
+        this.lon = lon;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+    }
+
+    public Double getAltitude() {
+        return altitude;
+    }
+
+    public void setAltitude(Double altitude) {
+        this.altitude = altitude;
+    }
+
+    public long getFixTime() {
+        return fixTime;
+    }
+
+    public void setFixTime(long fixTime) {
+        this.fixTime = fixTime;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public boolean isRotateViaExif() {
+        return rotateViaExif;
+    }
+
+    public void setRotateViaExif(boolean rotateViaExif) {
+        this.rotateViaExif = rotateViaExif;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    public String getOutputUri() {
+        return outputUri;
+    }
+
+    public void setOutputUri(String outputUri) {
+        this.outputUri = outputUri;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,86 @@
+package com.lunartag.app.model;
+
+import java.util.Objects;
+
+/**
+ * A lightweight projection of a {@link Photo} row: just what one gallery grid cell shows.
+ * Not an entity; filled by the keyset-paged queries in PhotoDao.
+ */
+public class GalleryItem {
+
+    private long id;
+    private String filePath; // Master, for older rows without a thumbnail
+    private String thumbnailPath;
+    private long assignedTimestamp;
+    private long captureTimestampReal; // Paging key, with id
+    private String status;
+
+    // --- Getters and Setters for all fields ---
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+
+    public long getAssignedTimestamp() {
+        return assignedTimestamp;
+    }
+
+    public void setAssignedTimestamp(long assignedTimestamp) {
+        this.assignedTimestamp = assignedTimestamp;
+    }
+
+    public long getCaptureTimestampReal() {
+        return captureTimestampReal;
+    }
+
+    public void setCaptureTimestampReal(long captureTimestampReal) {
+        this.captureTimestampReal = captureTimestampReal;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    // Compared by the paged adapter's DiffUtil callback.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GalleryItem)) return false;
+        GalleryItem other = (GalleryItem) o;
+        return id == other.id
+                && assignedTimestamp == other.assignedTimestamp
+                && captureTimestampReal == other.captureTimestampReal
+                && Objects.equals(filePath, other.filePath)
+                && Objects.equals(thumbnailPath, other.thumbnailPath)
+                && Objects.equals(status, other.status);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, filePath, thumbnailPath, assignedTimestamp, captureTimestampReal, status);
+    }
+}
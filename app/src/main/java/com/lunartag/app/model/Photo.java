@@ -1,14 +1,22 @@
 package com.lunartag.app.model;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import java.util.Date;
 
 /**
  * A data model class that represents a photo record in the local Room database.
  * This object is saved locally on the device for every captured photo.
+ * Only the columns lists, scheduling and the capture pipeline use live here; the descriptive
+ * text (address, shift, watermark, company) is in {@link PhotoDetails}.
  */
-@Entity(tableName = "photos")
+@Entity(tableName = "photos",
+        indices = {
+                @Index(value = {"status", "sendScheduledAt"}), // Pending queue, in send order
+                @Index(value = {"captureTimestampReal"})        // Gallery / recent lists
+        })
 public class Photo {
 
     @PrimaryKey(autoGenerate = true)
@@ -20,14 +28,15 @@ public class Photo {
     private double lat;
     private double lon;
     private double accuracyMeters;
-    private String addressHuman;
-    private String shiftStart;
-    private String shiftEnd;
-    private String watermarkName;
-    private String companyName;
     private long sendScheduledAt; // Stored as long (milliseconds) for Room
     private String status; // e.g., "PENDING", "SENT", "FAILED"
     private long createdAt; // Stored as long (milliseconds) for Room
+    @ColumnInfo(defaultValue = "0")
+    private int jpegQuality; // Quality the file was encoded with (0 = unknown, older rows)
+    @ColumnInfo(defaultValue = "0")
+    private long fileSizeBytes; // Size of the written JPEG (0 = unknown, older rows)
+    private String sendPath; // Downscaled copy shared by the send alarm (null = send the master)
+    private String thumbnailPath; // Small copy shown in the gallery grid (null = load the master)
 
     // --- Getters and Setters for all fields ---
 
@@ -87,67 +96,59 @@ public class Photo {
         this.accuracyMeters = accuracyMeters;
     }
 
-    public String getAddressHuman() {
-        return addressHuman;
-    }
-
-    public void setAddressHuman(String addressHuman) {
-        this.addressHuman = addressHuman;
-    }
-
-    public String getShiftStart() {
-        return shiftStart;
+    public long getSendScheduledAt() {
+        return sendScheduledAt;
     }
 
-    public void setShiftStart(String shiftStart) {
-        this.shiftStart = shiftStart;
+    public void setSendScheduledAt(long sendScheduledAt) {
+        this.sendScheduledAt = sendScheduledAt;
     }
 
-    public String getShiftEnd() {
-        return shiftEnd;
+    public String getStatus() {
+        return status;
     }
 
-    public void setShiftEnd(String shiftEnd) {
-        this.shiftEnd = shiftEnd;
+    public void setStatus(String status) {
+        this.status = status;
     }
 
-    public String getWatermarkName() {
-        return watermarkName;
+    public long getCreatedAt() {
+        return createdAt;
     }
 
-    public void setWatermarkName(String watermarkName) {
-        this.watermarkName = watermarkName;
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
     }
 
-    public String getCompanyName() {
-        return companyName;
+    public int getJpegQuality() {
+        return jpegQuality;
     }
 
-    public void setCompanyName(String companyName) {
-        this.companyName = companyName;
+    public void setJpegQuality(int jpegQuality) {
+        this.jpegQuality = jpegQuality;
     }
 
-    public long getSendScheduledAt() {
-        return sendScheduledAt;
+    public long getFileSizeBytes() {
+        return fileSizeBytes;
     }
 
-    public void setSendScheduledAt(long sendScheduledAt) {
-        this.sendScheduledAt = sendScheduledAt;
+    public void setFileSizeBytes(long fileSizeBytes) {
+        this.fileSizeBytes = fileSizeBytes;
     }
 
-    public String getStatus() {
-        return status;
+    public String getSendPath() {
+        return sendPath;
     }
 
-    public void setStatus(String status) {
-        this.status = status;
+    public void setSendPath(String sendPath) {
+        this.sendPath = sendPath;
     }
 
-    public long getCreatedAt() {
-        return createdAt;
+    public String getThumbnailPath() {
+        return thumbnailPath;
     }
 
-    public void setCreatedAt(long createdAt) {
-        this.createdAt = createdAt;
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
     }
-}
\ No newline at end of file
+}
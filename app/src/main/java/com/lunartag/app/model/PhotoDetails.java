@@ -0,0 +1,75 @@
+package com.lunartag.app.model;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.PrimaryKey;
+
+/**
+ * The descriptive, rarely read columns of a {@link Photo}, kept in their own table so list and
+ * scheduling queries never read them. One row per photo, deleted with it.
+ * Joined only where the text is shown or searched (see PhotoWithDetails).
+ */
+@Entity(tableName = "photo_details",
+        foreignKeys = @ForeignKey(entity = Photo.class, parentColumns = "id", childColumns = "photoId",
+                onDelete = ForeignKey.CASCADE))
+public class PhotoDetails {
+
+    @PrimaryKey
+    private long photoId;
+
+    private String addressHuman; // Null until resolved (see AddressBackfillWorker)
+    private String shiftStart;
+    private String shiftEnd;
+    private String watermarkName;
+    private String companyName;
+
+    // --- Getters and Setters for all fields ---
+
+    public long getPhotoId() {
+        return photoId;
+    }
+
+    public void setPhotoId(long photoId) {
+        this.photoId = photoId;
+    }
+
+    public String getAddressHuman() {
+        return addressHuman;
+    }
+
+    public void setAddressHuman(String addressHuman) {
+        this.addressHuman = addressHuman;
+    }
+
+    public String getShiftStart() {
+        return shiftStart;
+    }
+
+    public void setShiftStart(String shiftStart) {
+        this.shiftStart = shiftStart;
+    }
+
+    public String getShiftEnd() {
+        return shiftEnd;
+    }
+
+    public void setShiftEnd(String shiftEnd) {
+        this.shiftEnd = shiftEnd;
+    }
+
+    public String getWatermarkName() {
+        return watermarkName;
+    }
+
+    public void setWatermarkName(String watermarkName) {
+        this.watermarkName = watermarkName;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+}
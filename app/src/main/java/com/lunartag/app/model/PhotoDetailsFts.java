@@ -0,0 +1,46 @@
+package com.lunartag.app.model;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the address, company and watermark of {@link PhotoDetails}, for the
+ * gallery search. External content like {@link AuditLogFts}: the text stays in 'photo_details'
+ * and Room's triggers keep the index in sync. The docid of a row is the id of its photo.
+ *
+ * unicode61 folds case and diacritics ("Müller" matches "muller"); the 2- and 3-character
+ * prefix indexes keep short prefix queries, typed while the user is still typing, cheap.
+ */
+@Fts4(contentEntity = PhotoDetails.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61, prefix = {2, 3})
+@Entity(tableName = "photo_details_fts")
+public class PhotoDetailsFts {
+
+    private String addressHuman;
+    private String companyName;
+    private String watermarkName;
+
+    public String getAddressHuman() {
+        return addressHuman;
+    }
+
+    public void setAddressHuman(String addressHuman) {
+        this.addressHuman = addressHuman;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+
+    public String getWatermarkName() {
+        return watermarkName;
+    }
+
+    public void setWatermarkName(String watermarkName) {
+        this.watermarkName = watermarkName;
+    }
+}
@@ -0,0 +1,38 @@
+package com.lunartag.app.model;
+
+/**
+ * The position of a photo, without the rest of the row: what the address backfill reads.
+ * Not an entity; filled by PhotoDao.getPhotosMissingAddress.
+ */
+public class PhotoLocation {
+
+    private long id;
+    private double lat;
+    private double lon;
+
+    // --- Getters and Setters for all fields ---
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public void setLat(double lat) {
+        this.lat = lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public void setLon(double lon) {
+        this.lon = lon;
+    }
+}
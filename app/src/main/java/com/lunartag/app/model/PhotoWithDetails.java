@@ -0,0 +1,17 @@
+package com.lunartag.app.model;
+
+import androidx.room.Embedded;
+import androidx.room.Relation;
+
+/**
+ * A photo joined with its descriptive columns, for a detail view.
+ * Details is null for a photo still being processed (see CaptureJournal).
+ */
+public class PhotoWithDetails {
+
+    @Embedded
+    public Photo photo;
+
+    @Relation(parentColumn = "id", entityColumn = "photoId")
+    public PhotoDetails details;
+}
@@ -17,6 +17,7 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.content.FileProvider;
 
 import com.lunartag.app.R;
+import com.lunartag.app.audit.AuditLogWriter;
 
 import java.io.File;
 
@@ -31,6 +32,8 @@ public class AlarmReceiver extends BroadcastReceiver {
     
     // Key to retrieve file path (Must match Scheduler)
     public static final String EXTRA_FILE_PATH = "com.lunartag.app.EXTRA_FILE_PATH";
+    // Photo the alarm is for (audit trail). Missing on alarms armed by older versions.
+    public static final String EXTRA_PHOTO_ID = "com.lunartag.app.EXTRA_PHOTO_ID";
 
     // Settings Prefs (To read "Love" group name)
     private static final String PREFS_SETTINGS = "LunarTagSettings";
@@ -40,6 +43,7 @@ public class AlarmReceiver extends BroadcastReceiver {
     private static final String PREFS_ACCESSIBILITY = "LunarTagAccessPrefs";
     private static final String KEY_TARGET_GROUP = "target_group_name";
     private static final String KEY_JOB_PENDING = "job_is_pending";
+    private static final String KEY_PHOTO_ID = "photo_id";
 
     private static final String CHANNEL_ID = "SendServiceChannel"; 
     private static final int NOTIFICATION_ID = 999;
@@ -51,9 +55,11 @@ public class AlarmReceiver extends BroadcastReceiver {
         Toast.makeText(context, "LunarTag: Scheduled Time Reached!", Toast.LENGTH_LONG).show();
 
         String filePath = intent.getStringExtra(EXTRA_FILE_PATH);
+        long photoId = intent.getLongExtra(EXTRA_PHOTO_ID, -1);
 
         if (filePath == null || filePath.isEmpty()) {
             Log.e(TAG, "No file path provided in Alarm Intent.");
+            audit(context, photoId, AuditLogWriter.ACTION_SEND_FAILED, "{\"reason\":\"no_path\"}");
             return;
         }
 
@@ -69,6 +75,7 @@ public class AlarmReceiver extends BroadcastReceiver {
                 if (!file.exists()) {
                     Toast.makeText(context, "Error: Photo file missing!", Toast.LENGTH_SHORT).show();
                     Log.e(TAG, "File missing at: " + filePath);
+                    audit(context, photoId, AuditLogWriter.ACTION_SEND_FAILED, "{\"reason\":\"file_missing\"}");
                     return;
                 }
                 // Secure File Provider URI
@@ -80,21 +87,31 @@ public class AlarmReceiver extends BroadcastReceiver {
             }
         } catch (Exception e) {
             Log.e(TAG, "URI Parse Error: " + e.getMessage());
+            audit(context, photoId, AuditLogWriter.ACTION_SEND_FAILED, "{\"reason\":\"bad_uri\"}");
             return;
         }
 
         // 2. Arm the Accessibility Bridge (So the robot knows what to do)
-        armAccessibilityService(context);
+        armAccessibilityService(context, photoId);
 
         // 3. Create the Notification (The "Doorbell")
         showNotification(context, imageUri);
+        audit(context, photoId, AuditLogWriter.ACTION_SEND_ATTEMPT, null);
+    }
+
+    /**
+     * Queues an audit event (never blocks the main thread, see AuditLogWriter).
+     */
+    private static void audit(Context context, long photoId, String action, String details) {
+        if (photoId < 0) return; // Alarm armed by an older version
+        AuditLogWriter.getInstance(context).log(photoId, action, details);
     }
 
     /**
      * Writes the Target Group Name to persistent memory so the
      * Accessibility Service can read it whenever WhatsApp finally opens.
      */
-    private void armAccessibilityService(Context context) {
+    private void armAccessibilityService(Context context, long photoId) {
         SharedPreferences settings = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
         String groupName = settings.getString(KEY_WHATSAPP_GROUP, "");
 
@@ -103,6 +120,7 @@ public class AlarmReceiver extends BroadcastReceiver {
             accessPrefs.edit()
                     .putString(KEY_TARGET_GROUP, groupName)
                     .putBoolean(KEY_JOB_PENDING, true)
+                    .putLong(KEY_PHOTO_ID, photoId)
                     .apply();
             Log.d(TAG, "Bridge Armed for Group: " + groupName);
         } else {
@@ -10,6 +10,10 @@ import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Toast;
 
+import com.lunartag.app.audit.AuditLogWriter;
+
+import org.json.JSONObject;
+
 import java.util.List;
 
 /**
@@ -28,6 +32,7 @@ public class LunarTagAccessibilityService extends AccessibilityService {
     private static final String PREFS_ACCESSIBILITY = "LunarTagAccessPrefs";
     private static final String KEY_TARGET_GROUP = "target_group_name";
     private static final String KEY_JOB_PENDING = "job_is_pending";
+    private static final String KEY_PHOTO_ID = "photo_id";
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
@@ -93,6 +98,11 @@ public class LunarTagAccessibilityService extends AccessibilityService {
 
                     // --- JOB COMPLETE: Update Memory ---
                     prefs.edit().putBoolean(KEY_JOB_PENDING, false).apply();
+                    long photoId = prefs.getLong(KEY_PHOTO_ID, -1);
+                    if (photoId >= 0) {
+                        AuditLogWriter.getInstance(this).log(photoId, AuditLogWriter.ACTION_SEND_SUCCESS,
+                                "{\"group\":" + JSONObject.quote(targetGroupName) + "}");
+                    }
                     showLiveLog("Auto-Send Complete! Job Cleared.");
                     
                     rootNode.recycle();
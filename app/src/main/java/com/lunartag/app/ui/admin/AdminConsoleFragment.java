@@ -3,22 +3,64 @@ package com.lunartag.app.ui.admin;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
+import androidx.paging.CombinedLoadStates;
+import androidx.paging.LoadState;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 
+import com.lunartag.app.audit.AuditArchive;
+import com.lunartag.app.audit.AuditLogWriter;
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.AuditLogPagingSource;
 import com.lunartag.app.databinding.FragmentAdminConsoleBinding;
+import com.lunartag.app.model.AuditLog;
+
+import kotlin.Unit;
 
 public class AdminConsoleFragment extends Fragment {
 
     private static final String PREFS_NAME = "LunarTagFeatureToggles";
     private static final String KEY_CUSTOM_TIMESTAMP_ENABLED = "customTimestampEnabled";
 
+    // Viewer paging: pages far from the screen are dropped, so memory stays bounded however far
+    // the user scrolls (no placeholders: counting FTS matches would cost a full scan per page).
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_DISTANCE = 25;
+    private static final int MAX_LOADED = 300;
+    private static final long FILTER_DELAY_MS = 300;
+
+    // First entry = no action filter.
+    private static final String[] ACTIONS = {
+            "All actions",
+            AuditLogWriter.ACTION_CAPTURE,
+            AuditLogWriter.ACTION_SEND_ATTEMPT,
+            AuditLogWriter.ACTION_SEND_SUCCESS,
+            AuditLogWriter.ACTION_SEND_FAILED,
+            AuditLogWriter.ACTION_DROPPED
+    };
+
     private FragmentAdminConsoleBinding binding;
+    private AuditLogPagingAdapter adapter;
+    private LiveData<PagingData<AuditLog>> logs;
+    private AuditLogPagingSource.Filter currentFilter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable applyFilterTask = this::applyFilter;
     private SharedPreferences featureTogglePrefs;
     private boolean isFeatureEnabled = false;
 
@@ -51,16 +93,109 @@ public class AdminConsoleFragment extends Fragment {
         }
     }
 
+    /**
+     * Sets up the filters and shows the audit logs, newest first, paged from Room.
+     */
     private void loadAuditLogs() {
-        // Logic to:
-        // 1. In a background thread, query the local Room database to get a list of all AuditLog records.
-        // 2. Create and set an adapter for the RecyclerView to display the logs.
-        // 3. Handle the UI states (show the list or the "No logs" message).
+        adapter = new AuditLogPagingAdapter();
+        binding.recyclerViewAuditLogs.setAdapter(adapter);
+        adapter.addLoadStateListener(this::onLoadStates);
+
+        ArrayAdapter<String> actions = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_spinner_item, ACTIONS);
+        actions.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerAuditAction.setAdapter(actions);
+        binding.spinnerAuditAction.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                applyFilter();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        // Typing re-queries once the user pauses, not on every key.
+        TextWatcher debounced = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(applyFilterTask);
+                handler.postDelayed(applyFilterTask, FILTER_DELAY_MS);
+            }
+        };
+        binding.editTextAuditPhotoId.addTextChangedListener(debounced);
+        binding.editTextAuditSearch.addTextChangedListener(debounced);
+        binding.checkBoxAuditArchive.setOnCheckedChangeListener((button, checked) -> applyFilter());
+
+        applyFilter();
+    }
+
+    /**
+     * Starts a new pager for the current filters, unless they did not change.
+     * The previous pager stops with its observer.
+     */
+    private void applyFilter() {
+        if (binding == null) return;
+        AuditLogPagingSource.Filter filter = readFilter();
+        // Same search (e.g. only punctuation was typed): keep the current list.
+        if (filter.equals(currentFilter)) return;
+        currentFilter = filter;
+        if (logs != null) {
+            logs.removeObservers(getViewLifecycleOwner());
+        }
+        AppDatabase db = AppDatabase.getDatabase(requireContext());
+        AuditArchive archive = AuditArchive.getInstance(requireContext());
+        Pager<AuditLogPagingSource.Key, AuditLog> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PREFETCH_DISTANCE, false, PAGE_SIZE * 2, MAX_LOADED),
+                () -> new AuditLogPagingSource(db, filter, archive));
+        logs = PagingLiveData.getLiveData(pager);
+        logs.observe(getViewLifecycleOwner(),
+                data -> adapter.submitData(getViewLifecycleOwner().getLifecycle(), data));
+    }
+
+    private AuditLogPagingSource.Filter readFilter() {
+        int position = binding.spinnerAuditAction.getSelectedItemPosition();
+        String action = position > 0 ? ACTIONS[position] : null;
+        long photoId = -1;
+        CharSequence photoText = binding.editTextAuditPhotoId.getText();
+        if (photoText != null && photoText.length() > 0) {
+            try {
+                photoId = Long.parseLong(photoText.toString());
+            } catch (NumberFormatException e) {
+                // Too long for a photo ID: match nothing rather than everything.
+                photoId = Long.MAX_VALUE;
+            }
+        }
+        CharSequence text = binding.editTextAuditSearch.getText();
+        return new AuditLogPagingSource.Filter(action, photoId, text != null ? text.toString() : null,
+                binding.checkBoxAuditArchive.isChecked());
+    }
+
+    private Unit onLoadStates(CombinedLoadStates states) {
+        if (binding == null) return Unit.INSTANCE; // Safety check if fragment was destroyed
+        if (states.getRefresh() instanceof LoadState.NotLoading) {
+            boolean empty = adapter.getItemCount() == 0;
+            binding.recyclerViewAuditLogs.setVisibility(empty ? View.GONE : View.VISIBLE);
+            binding.textNoLogs.setVisibility(empty ? View.VISIBLE : View.GONE);
+        }
+        return Unit.INSTANCE;
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        handler.removeCallbacks(applyFilterTask);
+        logs = null;
+        currentFilter = null;
         binding = null;
     }
 }
\ No newline at end of file
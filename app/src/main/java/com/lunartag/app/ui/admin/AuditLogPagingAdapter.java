@@ -0,0 +1,79 @@
+package com.lunartag.app.ui.admin;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.lunartag.app.model.AuditLog;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The audit log list of the admin console, fed page by page by
+ * {@link com.lunartag.app.data.AuditLogPagingSource}.
+ */
+public class AuditLogPagingAdapter extends PagingDataAdapter<AuditLog, AuditLogPagingAdapter.LogViewHolder> {
+
+    // Audit logs are never edited, so the same id is the same content.
+    private static final DiffUtil.ItemCallback<AuditLog> DIFF = new DiffUtil.ItemCallback<AuditLog>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull AuditLog oldItem, @NonNull AuditLog newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull AuditLog oldItem, @NonNull AuditLog newItem) {
+            return oldItem.getTimestamp() == newItem.getTimestamp()
+                    && Objects.equals(oldItem.getAction(), newItem.getAction())
+                    && Objects.equals(oldItem.getDetails(), newItem.getDetails());
+        }
+    };
+
+    private final SimpleDateFormat timeFormat;
+
+    public AuditLogPagingAdapter() {
+        super(DIFF);
+        this.timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+    }
+
+    @NonNull
+    @Override
+    public LogViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        return new LogViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull LogViewHolder holder, int position) {
+        AuditLog log = getItem(position);
+        if (log == null) {
+            holder.titleTextView.setText(null);
+            holder.detailsTextView.setText(null);
+            return;
+        }
+        holder.titleTextView.setText(timeFormat.format(log.getTimestamp()) + "  " + log.getAction()
+                + "  #" + log.getPhotoId());
+        holder.detailsTextView.setText(log.getDetails());
+    }
+
+    static class LogViewHolder extends RecyclerView.ViewHolder {
+        final TextView titleTextView;
+        final TextView detailsTextView;
+
+        LogViewHolder(@NonNull View itemView) {
+            super(itemView);
+            titleTextView = itemView.findViewById(android.R.id.text1);
+            detailsTextView = itemView.findViewById(android.R.id.text2);
+            detailsTextView.setMaxLines(2);
+        }
+    }
+}
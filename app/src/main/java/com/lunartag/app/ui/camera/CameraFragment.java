@@ -3,23 +3,15 @@ package com.lunartag.app.ui.camera;
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.location.Address;
-import android.location.Geocoder;
 import android.location.Location;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
 import android.os.Looper;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.ScaleGestureDetector;
@@ -39,29 +31,26 @@ import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
+import com.bumptech.glide.Glide;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.lunartag.app.R;
+import com.lunartag.app.capture.AnnotationBundle;
+import com.lunartag.app.capture.CaptureJob;
+import com.lunartag.app.capture.CaptureJournal;
+import com.lunartag.app.capture.CapturePipeline;
+import com.lunartag.app.capture.CaptureReadyState;
 import com.lunartag.app.data.AppDatabase;
-import com.lunartag.app.data.PhotoDao;
 import com.lunartag.app.databinding.FragmentCameraBinding;
-import com.lunartag.app.model.Photo;
-import com.lunartag.app.utils.ImageUtils;
+import com.lunartag.app.ui.gallery.PhotoThumbnail;
 import com.lunartag.app.utils.LocationProvider;
-import com.lunartag.app.utils.Scheduler;
+import com.lunartag.app.utils.SafStorageBackend;
 import com.lunartag.app.utils.StorageUtils;
-import com.lunartag.app.utils.WatermarkUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
@@ -78,10 +67,6 @@ public class CameraFragment extends Fragment {
     private static final String PREFS_TOGGLES = "LunarTagFeatureToggles";
     private static final String KEY_ADMIN_ENABLED = "customTimestampEnabled";
 
-    // Preferences for Settings (Company Name)
-    private static final String PREFS_SETTINGS = "LunarTagSettings";
-    private static final String KEY_COMPANY_NAME = "company_name";
-
     private FragmentCameraBinding binding;
     private ImageCapture imageCapture;
     private ExecutorService cameraExecutor;
@@ -94,6 +79,12 @@ public class CameraFragment extends Fragment {
     // Location
     private LocationProvider locationProvider;
 
+    // Address, text lines and settings prepared in the background while the preview runs
+    private CaptureReadyState readyState;
+
+    // Staged capture pipeline (Decode -> Annotate -> Encode -> Persist -> Schedule)
+    private CapturePipeline capturePipeline;
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentCameraBinding.inflate(inflater, container, false);
@@ -107,6 +98,13 @@ public class CameraFragment extends Fragment {
 
         cameraExecutor = Executors.newSingleThreadExecutor();
         locationProvider = new LocationProvider(getContext());
+        readyState = new CaptureReadyState(requireContext(), locationProvider);
+        readyState.setListener(this::showReadyState);
+
+        // The pipeline outlives this view, so only the listener is tied to it.
+        capturePipeline = CapturePipeline.getInstance(requireContext());
+        capturePipeline.setListener(pipelineListener);
+        observeLatestThumbnail();
 
         // Setup Listener to turn GPS Icon GREEN when locked
         locationProvider.setStatusListener(location -> {
@@ -115,6 +113,7 @@ public class CameraFragment extends Fragment {
                     binding.buttonGpsStatus.setColorFilter(Color.GREEN);
                     // Don't spam the log, just visual indication
                 }
+                if (readyState != null) readyState.onLocationUpdated(location);
             });
         });
 
@@ -184,6 +183,9 @@ public class CameraFragment extends Fragment {
         logToScreen("System: Resuming. Starting GPS Engine...");
         // Start tracking immediately so we have data BEFORE capture
         if (locationProvider != null) locationProvider.startLocationUpdates();
+        if (readyState != null) readyState.start();
+        // Preview is idle time: resolve the SD card folder and pre-create documents now.
+        if (getContext() != null) SafStorageBackend.getInstance(getContext()).prewarm();
     }
 
     @Override
@@ -191,9 +193,22 @@ public class CameraFragment extends Fragment {
         super.onPause();
         logToScreen("System: Pausing. Stopping GPS Engine.");
         if (locationProvider != null) locationProvider.stopLocationUpdates();
+        if (readyState != null) readyState.stop();
     }
     // --------------------------------------
 
+    /**
+     * Keeps the gallery shortcut on the most recent photo: Room re-runs the query after every
+     * capture, deferred ones included, for as long as the view exists.
+     */
+    private void observeLatestThumbnail() {
+        AppDatabase.getDatabase(requireContext()).photoDao().observeRecentPhotos(1)
+                .observe(getViewLifecycleOwner(), latest -> {
+                    if (binding == null || latest.isEmpty()) return;
+                    Glide.with(this).load(PhotoThumbnail.of(latest.get(0))).into(binding.imageGalleryThumbnail);
+                });
+    }
+
     // --- DEBUG CONSOLE HELPER (KEPT ORIGINAL) ---
     private void logToScreen(String message) {
         // Always run on Main Thread so we can update the UI
@@ -255,14 +270,28 @@ public class CameraFragment extends Fragment {
             return;
         }
 
+        if (readyState.isDeferredProcessing()) {
+            takePhotoDeferred();
+            return;
+        }
+
+        // Back-pressure: don't even fire the sensor if the pipeline can't take the frame.
+        if (!capturePipeline.hasCapacity()) {
+            logToScreen("WARNING: Pipeline busy (" + capturePipeline.getQueuedJobs() + " queued).");
+            Toast.makeText(getContext(), "Still processing, please wait...", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         Toast.makeText(getContext(), "Capturing...", Toast.LENGTH_SHORT).show();
         logToScreen("System: Requesting image from sensor...");
 
+        // The callback may land after onDestroyView, when requireContext() throws.
+        final Context appContext = requireContext().getApplicationContext();
         imageCapture.takePicture(cameraExecutor, new ImageCapture.OnImageCapturedCallback() {
             @Override
             public void onCaptureSuccess(@NonNull ImageProxy image) {
                 logToScreen("System: Image sensor capture SUCCESS.");
-                processAndSaveImage(image);
+                submitToPipeline(appContext, image);
             }
 
             @Override
@@ -273,17 +302,79 @@ public class CameraFragment extends Fragment {
         });
     }
 
-    private void processAndSaveImage(ImageProxy imageProxy) {
-        try {
-            logToScreen("System: Converting YUV to Bitmap...");
-            Bitmap bitmap = ImageUtils.imageProxyToBitmap(imageProxy);
-            imageProxy.close();
+    /**
+     * Deferred mode: CameraX writes the sensor JPEG straight to a staging file and the capture
+     * is journaled; the watermark and export run later in the background (see CaptureJournal).
+     * No pipeline capacity check: nothing heavy happens until the worker picks the job up.
+     */
+    private void takePhotoDeferred() {
+        final long realTime = System.currentTimeMillis();
+        // The callbacks may land after onDestroyView: everything they need from the fragment
+        // (the application context, the assigned slot) is taken here, on the main thread, in
+        // shutter order.
+        final Context appContext = requireContext().getApplicationContext();
+        final long assignedTime = assignTimestamp(appContext, realTime);
+        final CaptureJournal journal = CaptureJournal.getInstance(appContext);
+        final File stagingFile = journal.newStagingFile(realTime);
+        ImageCapture.OutputFileOptions options = new ImageCapture.OutputFileOptions.Builder(stagingFile).build();
+
+        logToScreen("System: Requesting image from sensor (deferred)...");
+        imageCapture.takePicture(options, cameraExecutor, new ImageCapture.OnImageSavedCallback() {
+            @Override
+            public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
+                logToScreen("System: Sensor JPEG staged.");
+                journalCapture(journal, stagingFile, realTime, assignedTime);
+            }
 
-            if (bitmap == null) {
-                logToScreen("ERROR: Failed to convert image to bitmap.");
-                return;
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                stagingFile.delete();
+                // No photo for the slot: hand it to the next capture.
+                if (assignedTime != realTime) returnSlot(appContext, assignedTime);
+                logToScreen("CRITICAL ERROR: Image Sensor Failed: " + exception.getMessage());
+                Log.e(TAG, "Photo capture failed: " + exception.getMessage(), exception);
             }
+        });
+    }
 
+    /**
+     * Runs on the camera executor, possibly after onDestroyView: touches nothing of the view.
+     */
+    private void journalCapture(CaptureJournal journal, File stagingFile, long realTime, long assignedTime) {
+        try {
+            CaptureJob job = readyState.createStagedJob(stagingFile.getAbsolutePath(), realTime, assignedTime);
+            long photoId = journal.record(job);
+            logToScreen("System: Capture journaled as Photo ID " + photoId + ", processing in background.");
+            new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                if (binding == null) return;
+                Toast.makeText(getContext(), "Photo Captured!", Toast.LENGTH_SHORT).show();
+                updateSlotCounter();
+            });
+        } catch (Exception e) {
+            // The sensor JPEG is the photo: keep it. CaptureJournal.sweepStaging removes it
+            // only once it is old enough to be sure no entry is coming for it.
+            logToScreen("CRITICAL ERROR Top Level: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The timestamp printed on the photo: the real time, or the next preset slot in admin mode.
+     */
+    private long assignTimestamp(Context context, long realTime) {
+        SharedPreferences togglePrefs = context.getSharedPreferences(PREFS_TOGGLES, Context.MODE_PRIVATE);
+        if (togglePrefs.getBoolean(KEY_ADMIN_ENABLED, false)) {
+            return getNextScheduledTimestamp(context, realTime);
+        }
+        return realTime;
+    }
+
+    /**
+     * Runs on the camera executor, possibly after onDestroyView. Only the cheap, order-sensitive work happens here
+     * (location snapshot, slot assignment, settings); everything heavy goes to the pipeline.
+     */
+    private void submitToPipeline(Context appContext, ImageProxy imageProxy) {
+        try {
             // --- CRITICAL CHANGE: INSTANT GPS ---
             logToScreen("System: Grabbing Location immediately...");
             // We DO NOT wait here. We grab the value from memory instantly.
@@ -296,87 +387,57 @@ public class CameraFragment extends Fragment {
             }
             // ------------------------------------
 
-            try {
-                long realTime = System.currentTimeMillis();
-                long assignedTime = realTime;
-
-                SharedPreferences togglePrefs = requireContext().getSharedPreferences(PREFS_TOGGLES, Context.MODE_PRIVATE);
-                if (togglePrefs.getBoolean(KEY_ADMIN_ENABLED, false)) {
-                    assignedTime = getNextScheduledTimestamp(realTime);
-                }
-
-                // --- FIX: LOAD COMPANY NAME FROM SETTINGS ---
-                SharedPreferences settingsPrefs = requireContext().getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
-                String companyName = settingsPrefs.getString(KEY_COMPANY_NAME, "My Company"); 
-                // --------------------------------------------
-
-                String address = getAddressFromLocation(location);
-                
-                // --- FIX: REMOVED ':ss' (SECONDS) FROM FORMAT ---
-                SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy hh:mm a", Locale.US);
-                // ------------------------------------------------
-                
-                String timeString = sdf.format(new Date(assignedTime));
-                String gpsString = "Lat: " + (location != null ? location.getLatitude() : "0.0") +
-                        " Lon: " + (location != null ? location.getLongitude() : "0.0");
-
-                String[] watermarkLines = {
-                        "GPS Map Camera",
-                        companyName,
-                        address,
-                        gpsString,
-                        timeString
-                };
-
-                logToScreen("System: Applying Watermark...");
-                WatermarkUtils.addWatermark(bitmap, null, watermarkLines);
-
-                // --- CRITICAL CHANGE: STORAGE LOGIC ---
-                String absolutePath = null;
-                logToScreen("System: Saving File...");
-
-                // 1. Check if user selected a custom folder
-                if (StorageUtils.hasCustomFolder(getContext())) {
-                    logToScreen("Storage: Using User-Selected Folder (SD/External).");
-                    absolutePath = StorageUtils.saveImageToCustomFolder(getContext(), bitmap, "LunarTag_" + realTime);
-                } 
-                // 2. Fallback to Default Internal
-                else {
-                    logToScreen("Storage: Using Default Internal Storage.");
-                    absolutePath = saveImageToInternalStorage(getContext(), bitmap, "LunarTag_" + realTime);
-                    // If Internal, we also export to Gallery for visibility
-                    if (absolutePath != null) {
-                        logToScreen("Storage: Exporting copy to Public Gallery...");
-                        exportToPublicGallery(getContext(), absolutePath, "LunarTag_" + realTime);
-                    }
-                }
-
-                if (absolutePath != null) {
-                    logToScreen("SUCCESS: File Written. (" + absolutePath + ")");
-                    savePhotoToDatabase(absolutePath, realTime, assignedTime, location);
-                    logToScreen("System: Database Updated.");
-
-                    new android.os.Handler(Looper.getMainLooper()).post(() -> {
-                        Toast.makeText(getContext(), "Photo Saved!", Toast.LENGTH_SHORT).show();
-                        updateSlotCounter();
-                    });
-                } else {
-                    logToScreen("CRITICAL ERROR: File Write Failed! Check permissions.");
-                    new android.os.Handler(Looper.getMainLooper()).post(() ->
-                            Toast.makeText(getContext(), "Save Failed!", Toast.LENGTH_SHORT).show());
-                }
-
-            } catch (Exception e) {
-                logToScreen("CRITICAL ERROR inside Processing: " + e.getMessage());
-                e.printStackTrace();
+            long realTime = System.currentTimeMillis();
+            long assignedTime = assignTimestamp(appContext, realTime);
+
+            // Address and settings come pre-built from the ready state when it is fresh.
+            CaptureJob job = readyState.createJob(imageProxy, realTime, assignedTime);
+            if (!capturePipeline.submit(job)) {
+                imageProxy.close();
+                logToScreen("WARNING: Pipeline full. Capture dropped.");
+                new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                    if (binding == null) return;
+                    Toast.makeText(getContext(), "Still processing, try again.", Toast.LENGTH_SHORT).show();
+                });
             }
 
         } catch (Exception e) {
+            imageProxy.close();
             logToScreen("CRITICAL ERROR Top Level: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Receives pipeline events. Called on pipeline worker threads.
+     */
+    private final CapturePipeline.Listener pipelineListener = new CapturePipeline.Listener() {
+        @Override
+        public void onLog(String message) {
+            logToScreen(message);
+        }
+
+        @Override
+        public void onJobCompleted(CaptureJob job) {
+            logToScreen("System: Photo done in " + job.getElapsedMillis() + "ms.");
+            logToScreen(capturePipeline.describeMetrics());
+            new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                if (binding == null) return;
+                Toast.makeText(getContext(), "Photo Saved!", Toast.LENGTH_SHORT).show();
+                updateSlotCounter();
+            });
+        }
+
+        @Override
+        public void onJobFailed(CaptureJob job, String stage, Exception error) {
+            logToScreen("CRITICAL ERROR in " + stage + ": " + error.getMessage());
+            new android.os.Handler(Looper.getMainLooper()).post(() -> {
+                if (binding == null) return;
+                Toast.makeText(getContext(), "Save Failed!", Toast.LENGTH_SHORT).show();
+            });
+        }
+    };
+
     // --- Handle Folder Selection Result (NEW) ---
     @Override
     public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
@@ -395,8 +456,8 @@ public class CameraFragment extends Fragment {
     }
     // --------------------------------------------
 
-    private long getNextScheduledTimestamp(long fallbackTime) {
-        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
+    private static long getNextScheduledTimestamp(Context context, long fallbackTime) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
         String json = prefs.getString(KEY_TIMESTAMP_LIST, "[]");
         List<Long> list = new ArrayList<>();
 
@@ -422,7 +483,25 @@ public class CameraFragment extends Fragment {
         return assigned;
     }
 
+    /**
+     * Puts a slot taken by a capture that produced no photo back at the front of the list.
+     */
+    private static void returnSlot(Context context, long slot) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SCHEDULE, Context.MODE_PRIVATE);
+        try {
+            JSONArray list = new JSONArray(prefs.getString(KEY_TIMESTAMP_LIST, "[]"));
+            JSONArray updated = new JSONArray().put(slot);
+            for (int i = 0; i < list.length(); i++) {
+                updated.put(list.getLong(i));
+            }
+            prefs.edit().putString(KEY_TIMESTAMP_LIST, updated.toString()).apply();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
     private void updateSlotCounter() {
+        if (binding == null || getContext() == null) return;
         SharedPreferences togglePrefs = requireContext().getSharedPreferences(PREFS_TOGGLES, Context.MODE_PRIVATE);
         if (!togglePrefs.getBoolean(KEY_ADMIN_ENABLED, false)) {
             binding.textSlotCounter.setVisibility(View.GONE);
@@ -440,97 +519,22 @@ public class CameraFragment extends Fragment {
         }
     }
 
-    private String saveImageToInternalStorage(Context context, Bitmap bitmap, String filename) {
-        File directory = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-        if (directory == null) {
-            logToScreen("ERROR: External Files Dir is null!");
-            return null;
-        }
-        File file = new File(directory, filename + ".jpg");
-        try (OutputStream fos = new FileOutputStream(file)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, fos);
-            return file.getAbsolutePath();
-        } catch (IOException e) {
-            logToScreen("ERROR Saving IO: " + e.getMessage());
-            return null;
-        }
-    }
-
-    private void exportToPublicGallery(Context context, String internalPath, String filename) {
-        if (internalPath == null) return;
-        try {
-            File internalFile = new File(internalPath);
-            if (!internalFile.exists()) return;
-
-            ContentResolver resolver = context.getContentResolver();
-            ContentValues contentValues = new ContentValues();
-            contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, filename + ".jpg");
-            contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-            contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + File.separator + "LunarTag");
-
-            Uri imageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
-
-            if (imageUri != null) {
-                try (OutputStream out = resolver.openOutputStream(imageUri);
-                     InputStream in = new FileInputStream(internalFile)) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = in.read(buffer)) > 0) {
-                        out.write(buffer, 0, len);
-                    }
-                    logToScreen("Export: Copy Success.");
-                }
-            }
-        } catch (Exception e) {
-            logToScreen("Export EXCEPTION: " + e.getMessage());
-        }
-    }
-
-    private void savePhotoToDatabase(String filePath, long realTime, long assignedTime, Location loc) {
-        try {
-            Photo photo = new Photo();
-            photo.setFilePath(filePath); 
-            photo.setCaptureTimestampReal(realTime);
-            photo.setAssignedTimestamp(assignedTime);
-            photo.setCreatedAt(System.currentTimeMillis());
-            photo.setStatus("PENDING");
-            if (loc != null) {
-                photo.setLat(loc.getLatitude());
-                photo.setLon(loc.getLongitude());
-                photo.setAccuracyMeters(loc.getAccuracy());
-            }
-            AppDatabase db = AppDatabase.getDatabase(getContext());
-            PhotoDao dao = db.photoDao();
-            
-            // --- FIXED: Capture ID and Schedule Alarm ---
-            long id = dao.insertPhoto(photo);
-            
-            logToScreen("System: Scheduling Alarm for Photo ID: " + id);
-            Scheduler.schedulePhotoSend(
-                requireContext(),
-                id,
-                filePath,
-                assignedTime
-            );
-            // --------------------------------------------
-
-        } catch (Exception e) {
-            logToScreen("DB ERROR: " + e.getMessage());
-        }
-    }
-
-    private String getAddressFromLocation(Location location) {
-        if (location == null) return "Location Unknown";
-        try {
-            Geocoder geocoder = new Geocoder(getContext(), Locale.getDefault());
-            List<Address> addresses = geocoder.getFromLocation(location.getLatitude(), location.getLongitude(), 1);
-            if (addresses != null && !addresses.isEmpty()) {
-                return addresses.get(0).getAddressLine(0);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Top-left indicator: fix accuracy plus whether the shutter will use the prepared bundle.
+     */
+    private void showReadyState(AnnotationBundle bundle, boolean fresh) {
+        if (binding == null) return;
+        // A fresh bundle always holds its fix; the shot will be stamped with that one.
+        Location stamped = bundle != null ? bundle.getLocation() : null;
+        if (fresh && stamped != null) {
+            binding.indicatorGpsAccuracy.setImageResource(R.drawable.ic_gps_good);
+            binding.textGpsAccuracy.setText(getString(R.string.camera_ready_fresh, stamped.getAccuracy()));
+        } else {
+            Location location = locationProvider.getCurrentLocationFast();
+            binding.indicatorGpsAccuracy.setImageResource(location != null ? R.drawable.ic_gps_medium : R.drawable.ic_gps_poor);
+            String accuracy = location != null ? String.format(Locale.US, "%.1fm", location.getAccuracy()) : "--";
+            binding.textGpsAccuracy.setText(getString(R.string.camera_ready_stale, accuracy));
         }
-        return "Address Not Found";
     }
 
     private boolean allPermissionsGranted() {
@@ -547,6 +551,12 @@ public class CameraFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         binding = null;
+        if (capturePipeline != null) {
+            capturePipeline.setListener(null);
+        }
+        if (readyState != null) {
+            readyState.setListener(null);
+        }
         if (cameraExecutor != null) {
             cameraExecutor.shutdown();
         }
@@ -3,8 +3,6 @@ package com.lunartag.app.ui.dashboard;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,16 +15,11 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.lunartag.app.data.AppDatabase;
 import com.lunartag.app.databinding.FragmentDashboardBinding;
-import com.lunartag.app.model.Photo;
 import com.lunartag.app.ui.gallery.GalleryAdapter;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class DashboardFragment extends Fragment {
 
@@ -37,16 +30,9 @@ public class DashboardFragment extends Fragment {
     private static final String KEY_IS_SHIFT_ACTIVE = "is_shift_active";
     private static final String KEY_LAST_ACTION_TIME = "last_action_time";
 
-    // --- DB Components ---
-    private ExecutorService databaseExecutor;
-    
     // Two separate adapters for the two boxes
     private GalleryAdapter scheduledAdapter;
     private GalleryAdapter recentAdapter;
-    
-    // Data lists
-    private List<Photo> scheduledPhotoList;
-    private List<Photo> recentPhotoList;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -58,27 +44,25 @@ public class DashboardFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        // Initialize Executor for DB operations
-        databaseExecutor = Executors.newSingleThreadExecutor();
-        scheduledPhotoList = new ArrayList<>();
-        recentPhotoList = new ArrayList<>();
-
         // --- 1. Setup Top Box (Scheduled Sends) ---
         LinearLayoutManager scheduledManager = new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false);
         // Using 'recyclerViewScheduledSends' based on your UI text. 
         // If your XML ID is different, update this variable name.
         if (binding.recyclerViewScheduledSends != null) {
             binding.recyclerViewScheduledSends.setLayoutManager(scheduledManager);
-            scheduledAdapter = new GalleryAdapter(getContext(), scheduledPhotoList);
+            scheduledAdapter = new GalleryAdapter();
             binding.recyclerViewScheduledSends.setAdapter(scheduledAdapter);
         }
 
         // --- 2. Setup Bottom Box (Recent Photos) ---
         LinearLayoutManager recentManager = new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false);
         binding.recyclerViewRecentPhotos.setLayoutManager(recentManager);
-        recentAdapter = new GalleryAdapter(getContext(), recentPhotoList);
+        recentAdapter = new GalleryAdapter();
         binding.recyclerViewRecentPhotos.setAdapter(recentAdapter);
 
+        // --- 3. Observe the data: Room re-runs the queries when the photos table changes ---
+        observeDashboardData();
+
         // Set click listener for the shift toggle button
         binding.buttonToggleShift.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -93,48 +77,22 @@ public class DashboardFragment extends Fragment {
         super.onResume();
         // Load UI state
         updateUI();
-        // Load Data from DB
-        loadDashboardData();
     }
 
     /**
-     * Query database for BOTH Scheduled (Pending) and Recent photos.
+     * Observes BOTH Scheduled (Pending) and Recent photos for as long as the view exists.
+     * A new capture or a status change only rebinds the rows that changed (see GalleryAdapter).
      */
-    private void loadDashboardData() {
-        if (getContext() == null) return;
+    private void observeDashboardData() {
+        AppDatabase db = AppDatabase.getDatabase(requireContext());
 
-        databaseExecutor.execute(() -> {
-            AppDatabase db = AppDatabase.getDatabase(getContext());
-            
-            // 1. Get Pending Photos (For Top Box)
-            List<Photo> pendingPhotos = db.photoDao().getPendingPhotos();
-            
-            // 2. Get Recent Photos (For Bottom Box) - Limit to 10
-            List<Photo> recentPhotos = db.photoDao().getRecentPhotos(10);
-
-            // Update UI on Main Thread
-            new Handler(Looper.getMainLooper()).post(() -> {
-                if (binding != null) {
-                    // Update Scheduled List
-                    scheduledPhotoList.clear();
-                    if (pendingPhotos != null) {
-                        scheduledPhotoList.addAll(pendingPhotos);
-                    }
-                    if (scheduledAdapter != null) {
-                        scheduledAdapter.notifyDataSetChanged();
-                    }
-
-                    // Update Recent List
-                    recentPhotoList.clear();
-                    if (recentPhotos != null) {
-                        recentPhotoList.addAll(recentPhotos);
-                    }
-                    if (recentAdapter != null) {
-                        recentAdapter.notifyDataSetChanged();
-                    }
-                }
-            });
-        });
+        // 1. Pending Photos (For Top Box)
+        if (scheduledAdapter != null) {
+            db.photoDao().observePendingPhotos().observe(getViewLifecycleOwner(), scheduledAdapter::submitList);
+        }
+
+        // 2. Recent Photos (For Bottom Box) - Limit to 10
+        db.photoDao().observeRecentPhotos(10).observe(getViewLifecycleOwner(), recentAdapter::submitList);
     }
 
     /**
@@ -186,8 +144,5 @@ public class DashboardFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         binding = null; 
-        if (databaseExecutor != null) {
-            databaseExecutor.shutdown();
-        }
     }
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package com.lunartag.app.ui.gallery;
 
-import android.content.Context;
-import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,26 +7,42 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.lunartag.app.R;
-import com.lunartag.app.model.Photo;
+import com.lunartag.app.capture.CaptureJournal;
+import com.lunartag.app.model.GalleryItem;
 
-import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.List;
 import java.util.Locale;
 
-public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.PhotoViewHolder> {
+/**
+ * A short list of photos (the Dashboard boxes). Feed it with {@link #submitList}: the diff against
+ * the previous list is computed on a background thread, and only the rows that changed are rebound.
+ */
+public class GalleryAdapter extends ListAdapter<GalleryItem, GalleryAdapter.PhotoViewHolder> {
+
+    // Same photo = same row; same content = what the cell shows has not changed.
+    // Shared with GalleryPagingAdapter: both adapters show the same slim GalleryItem projection.
+    static final DiffUtil.ItemCallback<GalleryItem> DIFF = new DiffUtil.ItemCallback<GalleryItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull GalleryItem oldItem, @NonNull GalleryItem newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull GalleryItem oldItem, @NonNull GalleryItem newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
 
-    private final Context context;
-    private final List<Photo> photoList;
     private final SimpleDateFormat timeFormat;
 
-    public GalleryAdapter(Context context, List<Photo> photoList) {
-        this.context = context;
-        this.photoList = photoList;
+    public GalleryAdapter() {
+        super(DIFF);
         // Formatter for displaying time in AM/PM format
         this.timeFormat = new SimpleDateFormat("hh:mm a", Locale.US);
     }
@@ -36,35 +50,20 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.PhotoVie
     @NonNull
     @Override
     public PhotoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View itemView = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_photo_thumbnail, parent, false);
-        return new PhotoViewHolder(itemView);
+        return PhotoViewHolder.create(parent);
     }
 
     @Override
     public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
-        Photo currentPhoto = photoList.get(position);
-
-        // Set the timestamp and status text
-        holder.timestampTextView.setText(timeFormat.format(currentPhoto.getAssignedTimestamp()));
-        holder.statusTextView.setText(currentPhoto.getStatus());
-
-        // Use Glide to load the image file into the ImageView
-        File imageFile = new File(currentPhoto.getFilePath());
-        if (imageFile.exists()) {
-            Glide.with(context)
-                    .load(Uri.fromFile(imageFile))
-                    .into(holder.thumbnailImageView);
-        }
-    }
+        GalleryItem currentPhoto = getItem(position);
 
-    @Override
-    public int getItemCount() {
-        return photoList.size();
+        holder.bind(currentPhoto.getAssignedTimestamp(), currentPhoto.getStatus(),
+                PhotoThumbnail.of(currentPhoto), timeFormat);
     }
 
     /**
      * The ViewHolder class holds references to the UI views for a single list item.
+     * Shared with {@link GalleryPagingAdapter}.
      */
     static class PhotoViewHolder extends RecyclerView.ViewHolder {
         final ImageView thumbnailImageView;
@@ -77,5 +76,33 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.PhotoVie
             timestampTextView = itemView.findViewById(R.id.text_thumbnail_timestamp);
             statusTextView = itemView.findViewById(R.id.text_thumbnail_status);
         }
+
+        static PhotoViewHolder create(@NonNull ViewGroup parent) {
+            View itemView = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.item_photo_thumbnail, parent, false);
+            return new PhotoViewHolder(itemView);
+        }
+
+        void bind(long assignedTimestamp, String status, PhotoThumbnail thumbnail, SimpleDateFormat timeFormat) {
+            // Set the timestamp and status text
+            timestampTextView.setText(timeFormat.format(assignedTimestamp));
+            statusTextView.setText(status);
+            // Deferred captures show their unwatermarked staging file, dimmed, until the worker is done.
+            boolean processing = CaptureJournal.STATUS_PROCESSING.equals(status);
+            thumbnailImageView.setAlpha(processing ? 0.5f : 1f);
+
+            // Use Glide to load the thumbnail into the ImageView (never the full master, see PhotoThumbnailLoader)
+            Glide.with(itemView).load(thumbnail).into(thumbnailImageView);
+        }
+
+        /**
+         * Placeholder for a row that is not loaded yet.
+         */
+        void clear() {
+            timestampTextView.setText(null);
+            statusTextView.setText(null);
+            thumbnailImageView.setAlpha(1f);
+            Glide.with(itemView).clear(thumbnailImageView);
+        }
     }
     }
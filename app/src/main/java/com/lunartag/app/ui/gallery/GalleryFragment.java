@@ -1,8 +1,10 @@
 package com.lunartag.app.ui.gallery;
 
-import android.os.Bundle; 
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,24 +12,43 @@ import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
+import androidx.paging.CombinedLoadStates;
+import androidx.paging.LoadState;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 import androidx.recyclerview.widget.GridLayoutManager;
 
 import com.lunartag.app.data.AppDatabase;
-import com.lunartag.app.data.PhotoDao;
+import com.lunartag.app.data.FtsQuery;
+import com.lunartag.app.data.GalleryPagingSource;
+import com.lunartag.app.data.PhotoSearchPagingSource;
 import com.lunartag.app.databinding.FragmentGalleryBinding;
-import com.lunartag.app.model.Photo;
+import com.lunartag.app.model.GalleryItem;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Objects;
+
+import kotlin.Unit;
 
 public class GalleryFragment extends Fragment {
 
+    // Three columns: a page is about six screens of rows, loaded well before it is reached.
+    private static final int PAGE_SIZE = 60;
+    private static final int PREFETCH_DISTANCE = 30;
+    // Search results have no placeholders (see PhotoSearchPagingSource): bound what stays loaded.
+    private static final int MAX_LOADED = 360;
+    private static final long SEARCH_DELAY_MS = 300;
+
     private FragmentGalleryBinding binding;
-    private GalleryAdapter adapter;
-    private ExecutorService databaseExecutor;
-    private List<Photo> photoList;
+    private GalleryPagingAdapter adapter;
+    private LiveData<PagingData<GalleryItem>> photos;
+    private String currentMatch;
+    private boolean started;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable applySearchTask = this::applySearch;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -39,74 +60,94 @@ public class GalleryFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        // Initialize Executor for background DB operations
-        databaseExecutor = Executors.newSingleThreadExecutor();
-        photoList = new ArrayList<>();
-
         // Setup the RecyclerView with a GridLayoutManager to show 3 columns
         GridLayoutManager layoutManager = new GridLayoutManager(getContext(), 3);
         binding.recyclerViewGallery.setLayoutManager(layoutManager);
-        
-        // Initialize adapter with empty list first
-        adapter = new GalleryAdapter(getContext(), photoList);
-        binding.recyclerViewGallery.setAdapter(adapter);
-    }
 
-    @Override
-    public void onResume() {
-        super.onResume();
-        // When the screen becomes visible (e.g., coming back from Camera), reload the photos.
-        loadPhotos();
-    }
+        adapter = new GalleryPagingAdapter();
+        binding.recyclerViewGallery.setAdapter(adapter);
+        adapter.addLoadStateListener(this::onLoadStates);
 
-    private void loadPhotos() {
-        // Show a loading indicator
+        // Show a loading indicator until the first page is in
         binding.progressBarGallery.setVisibility(View.VISIBLE);
         binding.textNoPhotos.setVisibility(View.GONE);
 
-        // Execute database query in background thread
-        databaseExecutor.execute(new Runnable() {
+        // Typing re-queries once the user pauses, not on every key.
+        binding.editTextGallerySearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
             @Override
-            public void run() {
-                AppDatabase db = AppDatabase.getDatabase(getContext());
-                PhotoDao dao = db.photoDao();
-                
-                // Get all photos, ordered by capture time (newest first)
-                final List<Photo> loadedPhotos = dao.getAllPhotos();
-
-                // Update UI on Main Thread
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (binding == null) return; // Safety check if fragment was destroyed
-
-                        binding.progressBarGallery.setVisibility(View.GONE);
-
-                        if (loadedPhotos != null && !loadedPhotos.isEmpty()) {
-                            // Update the list and notify adapter
-                            photoList.clear();
-                            photoList.addAll(loadedPhotos);
-                            adapter.notifyDataSetChanged();
-                            
-                            binding.recyclerViewGallery.setVisibility(View.VISIBLE);
-                            binding.textNoPhotos.setVisibility(View.GONE);
-                        } else {
-                            // Show "No Photos" state
-                            binding.recyclerViewGallery.setVisibility(View.GONE);
-                            binding.textNoPhotos.setVisibility(View.VISIBLE);
-                        }
-                    }
-                });
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(applySearchTask);
+                handler.postDelayed(applySearchTask, SEARCH_DELAY_MS);
             }
         });
+
+        applySearch();
+    }
+
+    /**
+     * Starts a new pager for the current search, unless it did not change: the whole library
+     * when the search box is empty, otherwise the photos whose address, company or watermark
+     * match. The previous pager stops with its observer.
+     */
+    private void applySearch() {
+        if (binding == null) return;
+        CharSequence text = binding.editTextGallerySearch.getText();
+        String match = FtsQuery.prefixMatch(text != null ? text.toString() : null);
+        // Same search (e.g. only punctuation was typed): keep the current grid.
+        if (started && Objects.equals(match, currentMatch)) return;
+        started = true;
+        currentMatch = match;
+        if (photos != null) {
+            photos.removeObservers(getViewLifecycleOwner());
+        }
+
+        AppDatabase db = AppDatabase.getDatabase(requireContext());
+        if (match == null) {
+            // Keyset-paged photos, newest first. The source invalidates itself on every write to
+            // the photos table, so new captures and status changes show up without a reload.
+            Pager<GalleryPagingSource.Key, GalleryItem> pager = new Pager<>(
+                    new PagingConfig(PAGE_SIZE, PREFETCH_DISTANCE, true, PAGE_SIZE * 2),
+                    () -> new GalleryPagingSource(db));
+            photos = PagingLiveData.getLiveData(pager);
+        } else {
+            Pager<Long, GalleryItem> pager = new Pager<>(
+                    new PagingConfig(PAGE_SIZE, PREFETCH_DISTANCE, false, PAGE_SIZE * 2, MAX_LOADED),
+                    () -> new PhotoSearchPagingSource(db, match));
+            photos = PagingLiveData.getLiveData(pager);
+        }
+        photos.observe(getViewLifecycleOwner(),
+                data -> adapter.submitData(getViewLifecycleOwner().getLifecycle(), data));
+    }
+
+    private Unit onLoadStates(CombinedLoadStates states) {
+        if (binding == null) return Unit.INSTANCE; // Safety check if fragment was destroyed
+        if (states.getRefresh() instanceof LoadState.NotLoading) {
+            binding.progressBarGallery.setVisibility(View.GONE);
+            boolean empty = adapter.getItemCount() == 0;
+            // Show "No Photos" state
+            binding.recyclerViewGallery.setVisibility(empty ? View.GONE : View.VISIBLE);
+            binding.textNoPhotos.setText(currentMatch == null
+                    ? "No photos captured yet." : "No photos match your search.");
+            binding.textNoPhotos.setVisibility(empty ? View.VISIBLE : View.GONE);
+        }
+        return Unit.INSTANCE;
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        handler.removeCallbacks(applySearchTask);
+        photos = null;
+        currentMatch = null;
+        started = false;
         binding = null; // Important to prevent memory leaks
-        if (databaseExecutor != null) {
-            databaseExecutor.shutdown();
-        }
     }
-}
\ No newline at end of file
+}
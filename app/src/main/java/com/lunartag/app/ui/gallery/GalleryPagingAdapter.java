@@ -0,0 +1,42 @@
+package com.lunartag.app.ui.gallery;
+
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+
+import com.lunartag.app.model.GalleryItem;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * The gallery grid, fed page by page by {@link com.lunartag.app.data.GalleryPagingSource}.
+ * Rows that are not loaded yet are placeholders (null items).
+ */
+public class GalleryPagingAdapter extends PagingDataAdapter<GalleryItem, GalleryAdapter.PhotoViewHolder> {
+
+    private final SimpleDateFormat timeFormat;
+
+    public GalleryPagingAdapter() {
+        super(GalleryAdapter.DIFF);
+        // Formatter for displaying time in AM/PM format
+        this.timeFormat = new SimpleDateFormat("hh:mm a", Locale.US);
+    }
+
+    @NonNull
+    @Override
+    public GalleryAdapter.PhotoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return GalleryAdapter.PhotoViewHolder.create(parent);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull GalleryAdapter.PhotoViewHolder holder, int position) {
+        GalleryItem item = getItem(position);
+        if (item == null) {
+            holder.clear();
+        } else {
+            holder.bind(item.getAssignedTimestamp(), item.getStatus(), PhotoThumbnail.of(item), timeFormat);
+        }
+    }
+}
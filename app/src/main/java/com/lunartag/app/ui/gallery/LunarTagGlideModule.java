@@ -0,0 +1,30 @@
+package com.lunartag.app.ui.gallery;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.module.AppGlideModule;
+
+import java.io.InputStream;
+
+/**
+ * App-wide Glide setup: grid cells load {@link PhotoThumbnail} models through
+ * {@link PhotoThumbnailLoader} instead of decoding full-resolution masters.
+ */
+@GlideModule
+public final class LunarTagGlideModule extends AppGlideModule {
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        registry.prepend(PhotoThumbnail.class, InputStream.class, new PhotoThumbnailLoader.Factory(context));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.lunartag.app.ui.gallery;
+
+import com.lunartag.app.model.GalleryItem;
+
+import java.util.Objects;
+
+/**
+ * Glide model for a photo shown as a small grid cell (gallery, dashboard, camera shortcut).
+ * Loaded by {@link PhotoThumbnailLoader}, which never decodes the full master when a
+ * smaller source exists.
+ */
+public final class PhotoThumbnail {
+
+    final String thumbnailPath; // Capture-time thumbnail file, may be null (older rows)
+    final String masterPath;    // File path or content URI of the master
+
+    public PhotoThumbnail(String thumbnailPath, String masterPath) {
+        this.thumbnailPath = thumbnailPath;
+        this.masterPath = masterPath;
+    }
+
+    public static PhotoThumbnail of(GalleryItem item) {
+        return new PhotoThumbnail(item.getThumbnailPath(), item.getFilePath());
+    }
+
+    // Glide keys its caches on the model, so equal paths must be equal models.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PhotoThumbnail)) return false;
+        PhotoThumbnail other = (PhotoThumbnail) o;
+        return Objects.equals(thumbnailPath, other.thumbnailPath)
+                && Objects.equals(masterPath, other.masterPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(thumbnailPath, masterPath);
+    }
+
+    @Override
+    public String toString() {
+        return "PhotoThumbnail{" + (thumbnailPath != null ? thumbnailPath : masterPath) + "}";
+    }
+}
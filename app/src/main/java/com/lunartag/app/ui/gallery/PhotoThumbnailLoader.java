@@ -0,0 +1,148 @@
+package com.lunartag.app.ui.gallery;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+import com.lunartag.app.utils.ExifUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads a {@link PhotoThumbnail} from the cheapest source available:
+ *  1. the thumbnail file written at capture time;
+ *  2. the Exif thumbnail embedded in the master (read from the header only);
+ *  3. the master itself, which Glide then downsamples (older photos with neither).
+ * Registered by {@link LunarTagGlideModule}.
+ */
+public class PhotoThumbnailLoader implements ModelLoader<PhotoThumbnail, InputStream> {
+
+    private static final String TAG = "PhotoThumbnailLoader";
+
+    private final Context context;
+
+    PhotoThumbnailLoader(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull PhotoThumbnail model, int width, int height,
+                                               @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(model), new Fetcher(context, model));
+    }
+
+    @Override
+    public boolean handles(@NonNull PhotoThumbnail model) {
+        return model.thumbnailPath != null || model.masterPath != null;
+    }
+
+    static class Factory implements ModelLoaderFactory<PhotoThumbnail, InputStream> {
+        private final Context context;
+
+        Factory(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<PhotoThumbnail, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new PhotoThumbnailLoader(context);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+
+    private static class Fetcher implements DataFetcher<InputStream> {
+        private final Context context;
+        private final PhotoThumbnail model;
+        private InputStream stream;
+
+        Fetcher(Context context, PhotoThumbnail model) {
+            this.context = context;
+            this.model = model;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            try {
+                stream = open();
+                callback.onDataReady(stream);
+            } catch (IOException e) {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        private InputStream open() throws IOException {
+            if (model.thumbnailPath != null) {
+                File thumbnail = new File(model.thumbnailPath);
+                if (thumbnail.exists()) {
+                    return new FileInputStream(thumbnail);
+                }
+            }
+            if (model.masterPath == null) {
+                throw new IOException("No thumbnail and no master.");
+            }
+            try (InputStream header = openMaster()) {
+                byte[] embedded = ExifUtils.readOrientedThumbnail(header);
+                if (embedded != null) {
+                    return new ByteArrayInputStream(embedded);
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.d(TAG, "No Exif thumbnail in " + model.masterPath + ": " + e.getMessage());
+            }
+            return openMaster();
+        }
+
+        private InputStream openMaster() throws IOException {
+            if (model.masterPath.startsWith("content://")) {
+                InputStream in = context.getContentResolver().openInputStream(Uri.parse(model.masterPath));
+                if (in == null) throw new IOException("Cannot open " + model.masterPath);
+                return in;
+            }
+            return new FileInputStream(model.masterPath);
+        }
+
+        @Override
+        public void cleanup() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+                stream = null;
+            }
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+}
@@ -28,6 +28,8 @@ public class SettingsFragment extends Fragment {
     private static final String KEY_SHIFT_START = "shift_start";
     private static final String KEY_SHIFT_END = "shift_end";
     private static final String KEY_WHATSAPP_GROUP = "whatsapp_group";
+    private static final String KEY_ROTATION_VIA_EXIF = "rotation_via_exif";
+    private static final String KEY_DEFERRED_PROCESSING = "deferred_processing";
 
     private FragmentSettingsBinding binding;
     private SharedPreferences settingsPrefs;
@@ -87,6 +89,8 @@ public class SettingsFragment extends Fragment {
         binding.editTextShiftStart.setText(shiftStart);
         binding.editTextShiftEnd.setText(shiftEnd);
         binding.editTextWhatsappGroup.setText(whatsappGroup);
+        binding.switchRotationViaExif.setChecked(settingsPrefs.getBoolean(KEY_ROTATION_VIA_EXIF, false));
+        binding.switchDeferredProcessing.setChecked(settingsPrefs.getBoolean(KEY_DEFERRED_PROCESSING, false));
     }
 
     private void saveSettings() {
@@ -97,6 +101,8 @@ public class SettingsFragment extends Fragment {
         editor.putString(KEY_SHIFT_START, binding.editTextShiftStart.getText().toString());
         editor.putString(KEY_SHIFT_END, binding.editTextShiftEnd.getText().toString());
         editor.putString(KEY_WHATSAPP_GROUP, binding.editTextWhatsappGroup.getText().toString().trim());
+        editor.putBoolean(KEY_ROTATION_VIA_EXIF, binding.switchRotationViaExif.isChecked());
+        editor.putBoolean(KEY_DEFERRED_PROCESSING, binding.switchDeferredProcessing.isChecked());
 
         editor.apply();
 
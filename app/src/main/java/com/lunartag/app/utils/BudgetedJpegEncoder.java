@@ -0,0 +1,243 @@
+package com.lunartag.app.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the JPEG quality for a full-resolution capture instead of always using 100
+ * (6-10 MB files that WhatsApp recompresses anyway).
+ *
+ * The bitmap is downscaled to a small sample once, and the sample is encoded at a few
+ * qualities ({@link QualitySearch}, bounded number of tries) against one of two targets:
+ *  - a byte budget: sample size x pixel ratio x a learned correction must fit the budget;
+ *  - a perceptual target: the decoded sample must reach a luma PSNR.
+ * The sample over-estimates the bytes per pixel of the full image (less detail is lost to
+ * downscaling than to the encoder), so after each real encode the actual/estimated ratio is
+ * folded into a correction factor, persisted across restarts.
+ */
+public class BudgetedJpegEncoder {
+
+    // Search range: below 60 the watermark text gets ringing, above 95 only the size grows.
+    public static final int MIN_QUALITY = 60;
+    public static final int MAX_QUALITY = 95;
+    public static final int LEGACY_QUALITY = 100;
+    private static final int MAX_TRIES = 5;
+    // Long edge of the estimation sample (~0.3 MP for a 4:3 frame).
+    private static final int SAMPLE_LONG_EDGE = 640;
+
+    private static final String PREFS_ENCODER = "LunarTagEncoder";
+    private static final String KEY_SIZE_CORRECTION = "size_correction";
+    private static final float MIN_CORRECTION = 0.25f;
+    private static final float MAX_CORRECTION = 2.0f;
+    private static final float CORRECTION_WEIGHT = 0.3f;
+
+    /**
+     * What the encode should aim for. Null (see {@link #choose}) keeps the legacy quality 100.
+     */
+    public static final class Target {
+        final long maxBytes;
+        final double minPsnr;
+
+        private Target(long maxBytes, double minPsnr) {
+            this.maxBytes = maxBytes;
+            this.minPsnr = minPsnr;
+        }
+
+        public static Target budget(long maxBytes) {
+            return new Target(maxBytes, 0);
+        }
+
+        public static Target psnr(double minPsnrDb) {
+            return new Target(0, minPsnrDb);
+        }
+    }
+
+    /**
+     * The quality to encode at, and what finding it cost.
+     */
+    public static final class Choice {
+        public final int quality;
+        public final long estimatedBytes; // -1 when nothing was estimated (legacy)
+        final double rawEstimate;         // Before the correction factor
+        public final int tries;
+        public final long searchNanos;
+
+        Choice(int quality, long estimatedBytes, double rawEstimate, int tries, long searchNanos) {
+            this.quality = quality;
+            this.estimatedBytes = estimatedBytes;
+            this.rawEstimate = rawEstimate;
+            this.tries = tries;
+            this.searchNanos = searchNanos;
+        }
+    }
+
+    private static volatile BudgetedJpegEncoder INSTANCE;
+
+    private final SharedPreferences prefs;
+    private volatile float correction;
+
+    // --- Metrics ---
+    private final AtomicLong encodes = new AtomicLong();
+    private final AtomicLong totalQuality = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong totalTries = new AtomicLong();
+    private final AtomicLong totalSearchNanos = new AtomicLong();
+
+    public static BudgetedJpegEncoder getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (BudgetedJpegEncoder.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new BudgetedJpegEncoder(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private BudgetedJpegEncoder(Context appContext) {
+        prefs = appContext.getSharedPreferences(PREFS_ENCODER, Context.MODE_PRIVATE);
+        correction = prefs.getFloat(KEY_SIZE_CORRECTION, 1.0f);
+    }
+
+    /**
+     * Finds the quality for bitmap. Costs one downscale plus at most {@value #MAX_TRIES} + 1
+     * sample encodes (and decodes, for a PSNR target).
+     * @param target Null to skip the search and use {@link #LEGACY_QUALITY}.
+     */
+    public Choice choose(Bitmap bitmap, Target target) throws IOException {
+        if (target == null) {
+            return new Choice(LEGACY_QUALITY, -1, -1, 0, 0);
+        }
+        long start = System.nanoTime();
+        final Bitmap sample = downscale(bitmap);
+        final double pixelRatio = (double) bitmap.getWidth() * bitmap.getHeight()
+                / ((double) sample.getWidth() * sample.getHeight());
+        final Map<Integer, Integer> sampleBytes = new HashMap<>();
+        try {
+            QualitySearch.Outcome outcome;
+            if (target.maxBytes > 0) {
+                final float k = correction;
+                outcome = QualitySearch.highestWithin(
+                        q -> sampleSize(sample, q, sampleBytes) * pixelRatio * k,
+                        target.maxBytes, MIN_QUALITY, MAX_QUALITY, MAX_TRIES);
+            } else {
+                final int[] reference = pixels(sample);
+                outcome = QualitySearch.lowestReaching(
+                        q -> samplePsnr(sample, reference, q, sampleBytes),
+                        target.minPsnr, MIN_QUALITY, MAX_QUALITY, MAX_TRIES);
+            }
+            int tries = outcome.tries;
+            Integer bytes = sampleBytes.get(outcome.quality);
+            if (bytes == null) {
+                // Fell back to a bound that was never probed: size it anyway, or the
+                // correction could never learn while every photo sits at the bound.
+                bytes = sampleSize(sample, outcome.quality, sampleBytes);
+                tries++;
+            }
+            double raw = bytes * pixelRatio;
+            return new Choice(outcome.quality, Math.round(raw * correction), raw, tries, System.nanoTime() - start);
+        } finally {
+            if (sample != bitmap) sample.recycle();
+        }
+    }
+
+    /**
+     * Reports the real size of an encode done with choice, to refine the size correction
+     * and the counters.
+     */
+    public void recordActual(Choice choice, long actualBytes) {
+        encodes.incrementAndGet();
+        totalQuality.addAndGet(choice.quality);
+        totalBytes.addAndGet(actualBytes);
+        totalTries.addAndGet(choice.tries);
+        totalSearchNanos.addAndGet(choice.searchNanos);
+        if (choice.rawEstimate <= 0 || actualBytes <= 0) return;
+        synchronized (this) {
+            float observed = (float) (actualBytes / choice.rawEstimate);
+            float next = correction + CORRECTION_WEIGHT * (observed - correction);
+            correction = Math.max(MIN_CORRECTION, Math.min(MAX_CORRECTION, next));
+            prefs.edit().putFloat(KEY_SIZE_CORRECTION, correction).apply();
+        }
+    }
+
+    /**
+     * One-line snapshot, e.g. "JPEG n=12 q=84 size=1.42MB tries=5 search=38ms corr=0.62".
+     */
+    public String describe() {
+        long n = encodes.get();
+        if (n == 0) return "JPEG n=0";
+        return String.format(Locale.US, "JPEG n=%d q=%d size=%.2fMB tries=%d search=%dms corr=%.2f",
+                n, totalQuality.get() / n, totalBytes.get() / n / (1024.0 * 1024.0),
+                totalTries.get() / n, totalSearchNanos.get() / n / 1_000_000L, correction);
+    }
+
+    private static Bitmap downscale(Bitmap bitmap) {
+        int longEdge = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longEdge <= SAMPLE_LONG_EDGE) return bitmap;
+        float scale = (float) SAMPLE_LONG_EDGE / longEdge;
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+    }
+
+    private static int sampleSize(Bitmap sample, int quality, Map<Integer, Integer> sizes) throws IOException {
+        CountingStream counter = new CountingStream();
+        if (!sample.compress(Bitmap.CompressFormat.JPEG, quality, counter)) {
+            throw new IOException("Sample compression failed.");
+        }
+        sizes.put(quality, counter.count);
+        return counter.count;
+    }
+
+    private static double samplePsnr(Bitmap sample, int[] reference, int quality,
+                                     Map<Integer, Integer> sizes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!sample.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+            throw new IOException("Sample compression failed.");
+        }
+        byte[] jpeg = out.toByteArray();
+        sizes.put(quality, jpeg.length);
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        if (decoded == null) {
+            throw new IOException("Sample decode failed.");
+        }
+        try {
+            return QualitySearch.lumaPsnr(reference, pixels(decoded));
+        } finally {
+            decoded.recycle();
+        }
+    }
+
+    private static int[] pixels(Bitmap bitmap) {
+        int[] argb = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(argb, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return argb;
+    }
+
+    /**
+     * Discards the bytes, keeps the count: sizing a sample needs no buffer.
+     */
+    private static final class CountingStream extends OutputStream {
+        int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
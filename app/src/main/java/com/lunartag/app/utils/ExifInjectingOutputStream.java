@@ -0,0 +1,145 @@
+package com.lunartag.app.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sits between a JPEG encoder and its destination and writes a prebuilt Exif APP1 segment
+ * right after SOI while the bytes stream through, so the file is written exactly once.
+ *
+ * Any Exif APP1 the encoder (or the camera) already put in the header is dropped, so readers
+ * never see two conflicting Exif blocks. Other header segments (JFIF APP0, ICC, COM...) pass
+ * through untouched; from the first non-APPn/COM marker on, bytes are copied straight through.
+ *
+ * Pure Java (no android.* imports).
+ */
+public class ExifInjectingOutputStream extends FilterOutputStream {
+
+    private static final int STATE_SOI = 0;        // Expecting FF D8
+    private static final int STATE_MARKER = 1;    // Expecting FF xx of the next segment
+    private static final int STATE_LENGTH = 2;     // Reading the 2-byte segment length
+    private static final int STATE_APP1_ID = 3;    // Buffering an APP1 identifier
+    private static final int STATE_BODY = 4;       // Copying or skipping the rest of a segment
+    private static final int STATE_PASSTHROUGH = 5;
+
+    private static final byte[] EXIF_ID = {'E', 'x', 'i', 'f', 0, 0};
+
+    private final byte[] exifSegment;
+    private int state = STATE_SOI;
+    private int position;          // Bytes seen in the current state
+    private int marker;
+    private int remaining;         // Segment bytes still to copy / skip
+    private boolean skipping;
+    private final byte[] header = new byte[4 + EXIF_ID.length]; // FF xx len len + id
+
+    /**
+     * @param out The real destination.
+     * @param exifSegment A complete APP1 segment from {@link ExifSegmentBuilder#build()}.
+     */
+    public ExifInjectingOutputStream(OutputStream out, byte[] exifSegment) {
+        super(out);
+        this.exifSegment = exifSegment;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (state == STATE_PASSTHROUGH) {
+                out.write(b, off, len);
+                return;
+            }
+            if (state == STATE_BODY) {
+                int n = Math.min(len, remaining);
+                if (!skipping) out.write(b, off, n);
+                off += n;
+                len -= n;
+                remaining -= n;
+                if (remaining == 0) state = STATE_MARKER;
+                continue;
+            }
+            write(b[off++]);
+            len--;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        b &= 0xFF;
+        switch (state) {
+            case STATE_SOI:
+                if (position == 0 && b != 0xFF || position == 1 && b != 0xD8) {
+                    throw new IOException("Not a JPEG stream");
+                }
+                if (++position == 2) {
+                    out.write(0xFF);
+                    out.write(0xD8);
+                    out.write(exifSegment);
+                    state = STATE_MARKER;
+                    position = 0;
+                }
+                break;
+
+            case STATE_MARKER:
+                if (position == 0) {
+                    if (b != 0xFF) throw new IOException("Expected a marker");
+                    header[position++] = (byte) b;
+                } else if (b == 0xFF) {
+                    // Fill byte: the marker code has not come yet.
+                    out.write(0xFF);
+                } else {
+                    marker = b;
+                    header[position++] = (byte) b;
+                    boolean headerSegment = (marker >= 0xE0 && marker <= 0xEF) || marker == 0xFE;
+                    if (!headerSegment) {
+                        out.write(header, 0, 2);
+                        state = STATE_PASSTHROUGH;
+                    } else {
+                        state = STATE_LENGTH;
+                    }
+                }
+                break;
+
+            case STATE_LENGTH:
+                header[position++] = (byte) b;
+                if (position == 4) {
+                    remaining = (((header[2] & 0xFF) << 8) | (header[3] & 0xFF)) - 2;
+                    if (marker == 0xE1 && remaining >= EXIF_ID.length) {
+                        state = STATE_APP1_ID;
+                    } else {
+                        out.write(header, 0, 4);
+                        startBody(false);
+                    }
+                }
+                break;
+
+            case STATE_APP1_ID:
+                header[position++] = (byte) b;
+                remaining--;
+                if (position == header.length) {
+                    boolean isExif = true;
+                    for (int i = 0; i < EXIF_ID.length; i++) {
+                        if (header[4 + i] != EXIF_ID[i]) isExif = false;
+                    }
+                    if (!isExif) out.write(header, 0, header.length);
+                    startBody(isExif);
+                }
+                break;
+
+            case STATE_BODY:
+                if (!skipping) out.write(b);
+                if (--remaining == 0) state = STATE_MARKER;
+                break;
+
+            default:
+                out.write(b);
+                break;
+        }
+    }
+
+    private void startBody(boolean skip) {
+        skipping = skip;
+        position = 0;
+        state = remaining > 0 ? STATE_BODY : STATE_MARKER;
+    }
+}
@@ -0,0 +1,313 @@
+package com.lunartag.app.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds a complete Exif APP1 segment in memory (big-endian TIFF), so the capture path can
+ * write it into the JPEG stream while the file is being written, instead of letting
+ * ExifInterface.saveAttributes() rewrite the whole file afterwards.
+ *
+ * Tags written: IFD0 ImageDescription / Orientation, Exif DateTimeOriginal / DateTimeDigitized,
+ * and GPS version, latitude, longitude, altitude, time stamp and date stamp,
+ * using the same types and encodings as ExifInterface.setGpsInfo().
+ * Optionally IFD1 with a JPEG thumbnail, which ExifInterface.getThumbnail() and gallery apps
+ * read without decoding the main image.
+ *
+ * Pure Java (no android.* imports).
+ */
+public class ExifSegmentBuilder {
+
+    // --- TIFF field types ---
+    private static final int TYPE_BYTE = 1;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_RATIONAL = 5;
+    private static final int TYPE_UNDEFINED = 7;
+
+    // --- Tags ---
+    private static final int TAG_COMPRESSION = 0x0103;
+    private static final int TAG_IMAGE_DESCRIPTION = 0x010E;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+    private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    private static final int TAG_GPS_IFD_POINTER = 0x8825;
+    private static final int TAG_EXIF_VERSION = 0x9000;
+    private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATETIME_DIGITIZED = 0x9004;
+    private static final int TAG_GPS_VERSION_ID = 0x0000;
+    private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    private static final int TAG_GPS_LATITUDE = 0x0002;
+    private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    private static final int TAG_GPS_LONGITUDE = 0x0004;
+    private static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+    private static final int TAG_GPS_ALTITUDE = 0x0006;
+    private static final int TAG_GPS_TIMESTAMP = 0x0007;
+    private static final int TAG_GPS_DATESTAMP = 0x001D;
+
+    private static final int COMPRESSION_JPEG = 6;
+
+    // APP1 length is a u16 that includes itself.
+    private static final int MAX_SEGMENT_PAYLOAD = 0xFFFF - 2;
+    // Leaves room for the tags next to the thumbnail in the one APP1 segment.
+    public static final int MAX_THUMBNAIL_BYTES = 56 * 1024;
+
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private final List<Entry> ifd0 = new ArrayList<>();
+    private final List<Entry> exifIfd = new ArrayList<>();
+    private final List<Entry> gpsIfd = new ArrayList<>();
+    private byte[] thumbnail;
+
+    private static class Entry {
+        final int tag;
+        final int type;
+        final int count;
+        final byte[] value;
+        int pointerTarget = -1; // For IFD pointers: filled in at layout time
+
+        Entry(int tag, int type, int count, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Orientation tag value (1 = normal, see {@link ExifUtils#orientationFromDegrees}).
+     */
+    public ExifSegmentBuilder setOrientation(int orientation) {
+        put(ifd0, new Entry(TAG_ORIENTATION, TYPE_SHORT, 1, shortValue(orientation)));
+        return this;
+    }
+
+    public ExifSegmentBuilder setImageDescription(String description) {
+        put(ifd0, ascii(TAG_IMAGE_DESCRIPTION, description));
+        return this;
+    }
+
+    /**
+     * DateTimeOriginal and DateTimeDigitized, in the device's local time (as the camera app writes them).
+     */
+    public ExifSegmentBuilder setDateTimeOriginal(long timeMillis, TimeZone timeZone) {
+        SimpleDateFormat exifSdf = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        exifSdf.setTimeZone(timeZone);
+        String value = exifSdf.format(new Date(timeMillis));
+        put(exifIfd, new Entry(TAG_EXIF_VERSION, TYPE_UNDEFINED, 4, new byte[]{'0', '2', '3', '0'}));
+        put(exifIfd, ascii(TAG_DATETIME_ORIGINAL, value));
+        put(exifIfd, ascii(TAG_DATETIME_DIGITIZED, value));
+        return this;
+    }
+
+    /**
+     * GPS position and fix time.
+     * @param altitude Metres above the WGS84 ellipsoid, or NaN if unknown.
+     * @param fixTimeMillis UTC time of the fix, or 0 if unknown.
+     */
+    public ExifSegmentBuilder setGps(double latitude, double longitude, double altitude, long fixTimeMillis) {
+        put(gpsIfd, new Entry(TAG_GPS_VERSION_ID, TYPE_BYTE, 4, new byte[]{2, 2, 0, 0}));
+        put(gpsIfd, ascii(TAG_GPS_LATITUDE_REF, latitude >= 0 ? "N" : "S"));
+        put(gpsIfd, new Entry(TAG_GPS_LATITUDE, TYPE_RATIONAL, 3, degreesToDms(Math.abs(latitude))));
+        put(gpsIfd, ascii(TAG_GPS_LONGITUDE_REF, longitude >= 0 ? "E" : "W"));
+        put(gpsIfd, new Entry(TAG_GPS_LONGITUDE, TYPE_RATIONAL, 3, degreesToDms(Math.abs(longitude))));
+        if (!Double.isNaN(altitude)) {
+            put(gpsIfd, new Entry(TAG_GPS_ALTITUDE_REF, TYPE_BYTE, 1, new byte[]{(byte) (altitude >= 0 ? 0 : 1)}));
+            put(gpsIfd, new Entry(TAG_GPS_ALTITUDE, TYPE_RATIONAL, 1,
+                    rationals(Math.round(Math.abs(altitude) * 1000), 1000)));
+        }
+        if (fixTimeMillis > 0) {
+            SimpleDateFormat utc = new SimpleDateFormat("yyyy:MM:dd:HH:mm:ss", Locale.US);
+            utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+            String[] parts = utc.format(new Date(fixTimeMillis)).split(":");
+            put(gpsIfd, new Entry(TAG_GPS_TIMESTAMP, TYPE_RATIONAL, 3, rationals(
+                    Long.parseLong(parts[3]), 1, Long.parseLong(parts[4]), 1, Long.parseLong(parts[5]), 1)));
+            put(gpsIfd, ascii(TAG_GPS_DATESTAMP, parts[0] + ":" + parts[1] + ":" + parts[2]));
+        }
+        return this;
+    }
+
+    /**
+     * Embeds a JPEG thumbnail (IFD1, compression 6). Exif expects about 160x120.
+     * @throws IllegalArgumentException if it is over {@link #MAX_THUMBNAIL_BYTES}.
+     */
+    public ExifSegmentBuilder setThumbnail(byte[] jpeg) {
+        if (jpeg != null && jpeg.length > MAX_THUMBNAIL_BYTES) {
+            throw new IllegalArgumentException("Exif thumbnail too large: " + jpeg.length + " bytes");
+        }
+        thumbnail = jpeg;
+        return this;
+    }
+
+    /**
+     * The complete segment, starting with the FF E1 marker, ready to go right after SOI.
+     * @throws IllegalStateException if the tags do not fit in one APP1 segment (64 KB).
+     */
+    public byte[] build() {
+        List<Entry> root = new ArrayList<>(ifd0);
+        Entry exifPointer = null;
+        Entry gpsPointer = null;
+        if (!exifIfd.isEmpty()) {
+            exifPointer = new Entry(TAG_EXIF_IFD_POINTER, TYPE_LONG, 1, new byte[4]);
+            put(root, exifPointer);
+        }
+        if (!gpsIfd.isEmpty()) {
+            gpsPointer = new Entry(TAG_GPS_IFD_POINTER, TYPE_LONG, 1, new byte[4]);
+            put(root, gpsPointer);
+        }
+
+        // Layout: TIFF header, IFD0 (+data), Exif IFD (+data), GPS IFD (+data),
+        // then IFD1 and the thumbnail bytes.
+        int ifd0Offset = 8;
+        int exifOffset = ifd0Offset + ifdSize(root);
+        int gpsOffset = exifOffset + (exifIfd.isEmpty() ? 0 : ifdSize(exifIfd));
+        if (exifPointer != null) exifPointer.pointerTarget = exifOffset;
+        if (gpsPointer != null) gpsPointer.pointerTarget = gpsOffset;
+
+        List<Entry> ifd1 = new ArrayList<>();
+        int ifd1Offset = 0;
+        if (thumbnail != null) {
+            ifd1Offset = gpsOffset + (gpsIfd.isEmpty() ? 0 : ifdSize(gpsIfd));
+            Entry start = new Entry(TAG_JPEG_INTERCHANGE_FORMAT, TYPE_LONG, 1, new byte[4]);
+            put(ifd1, new Entry(TAG_COMPRESSION, TYPE_SHORT, 1, shortValue(COMPRESSION_JPEG)));
+            put(ifd1, start);
+            put(ifd1, new Entry(TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, TYPE_LONG, 1, intValue(thumbnail.length)));
+            start.pointerTarget = ifd1Offset + ifdSize(ifd1);
+        }
+
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream(512);
+        tiff.write('M');
+        tiff.write('M');
+        writeShort(tiff, 0x002A);
+        writeInt(tiff, ifd0Offset);
+        writeIfd(tiff, root, ifd0Offset, ifd1Offset);
+        if (!exifIfd.isEmpty()) writeIfd(tiff, exifIfd, exifOffset, 0);
+        if (!gpsIfd.isEmpty()) writeIfd(tiff, gpsIfd, gpsOffset, 0);
+        if (thumbnail != null) {
+            writeIfd(tiff, ifd1, ifd1Offset, 0);
+            tiff.write(thumbnail, 0, thumbnail.length);
+        }
+
+        int payload = EXIF_HEADER.length + tiff.size();
+        if (payload + 2 > MAX_SEGMENT_PAYLOAD) {
+            throw new IllegalStateException("Exif segment too large: " + payload + " bytes");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload + 4);
+        out.write(0xFF);
+        out.write(0xE1);
+        writeShort(out, payload + 2);
+        out.write(EXIF_HEADER, 0, EXIF_HEADER.length);
+        byte[] tiffBytes = tiff.toByteArray();
+        out.write(tiffBytes, 0, tiffBytes.length);
+        return out.toByteArray();
+    }
+
+    private static int ifdSize(List<Entry> entries) {
+        int size = 2 + entries.size() * 12 + 4;
+        for (Entry e : entries) {
+            if (e.value.length > 4) size += (e.value.length + 1) & ~1;
+        }
+        return size;
+    }
+
+    private static void writeIfd(ByteArrayOutputStream out, List<Entry> entries, int ifdOffset, int nextIfdOffset) {
+        int dataOffset = ifdOffset + 2 + entries.size() * 12 + 4;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        writeShort(out, entries.size());
+        for (Entry e : entries) {
+            writeShort(out, e.tag);
+            writeShort(out, e.type);
+            writeInt(out, e.count);
+            if (e.pointerTarget >= 0) {
+                writeInt(out, e.pointerTarget);
+            } else if (e.value.length <= 4) {
+                // Inline values are left-justified in the 4-byte field.
+                out.write(e.value, 0, e.value.length);
+                for (int i = e.value.length; i < 4; i++) out.write(0);
+            } else {
+                writeInt(out, dataOffset + data.size());
+                data.write(e.value, 0, e.value.length);
+                if ((e.value.length & 1) != 0) data.write(0); // keep offsets word-aligned
+            }
+        }
+        writeInt(out, nextIfdOffset); // IFD1 after IFD0 when there is a thumbnail, else 0
+        byte[] bytes = data.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Inserts or replaces, keeping the IFD sorted by tag as TIFF requires.
+     */
+    private static void put(List<Entry> ifd, Entry entry) {
+        for (int i = 0; i < ifd.size(); i++) {
+            int tag = ifd.get(i).tag;
+            if (tag == entry.tag) {
+                ifd.set(i, entry);
+                return;
+            }
+            if (tag > entry.tag) {
+                ifd.add(i, entry);
+                return;
+            }
+        }
+        ifd.add(entry);
+    }
+
+    private static Entry ascii(int tag, String value) {
+        byte[] text = value.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[text.length + 1]; // NUL-terminated
+        System.arraycopy(text, 0, bytes, 0, text.length);
+        return new Entry(tag, TYPE_ASCII, bytes.length, bytes);
+    }
+
+    private static byte[] shortValue(int value) {
+        return new byte[]{(byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] intValue(int value) {
+        return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+    }
+
+    /**
+     * Degrees as deg/1, min/1, sec*10000/10000, like ExifInterface.convertDecimalToRational.
+     */
+    private static byte[] degreesToDms(double degrees) {
+        long deg = (long) degrees;
+        double minutesFull = (degrees - deg) * 60;
+        long min = (long) minutesFull;
+        long sec = Math.round((minutesFull - min) * 60 * 10000);
+        return rationals(deg, 1, min, 1, sec, 10000);
+    }
+
+    private static byte[] rationals(long... numeratorDenominatorPairs) {
+        byte[] bytes = new byte[numeratorDenominatorPairs.length * 4];
+        for (int i = 0; i < numeratorDenominatorPairs.length; i++) {
+            long v = numeratorDenominatorPairs[i];
+            bytes[i * 4] = (byte) (v >> 24);
+            bytes[i * 4 + 1] = (byte) (v >> 16);
+            bytes[i * 4 + 2] = (byte) (v >> 8);
+            bytes[i * 4 + 3] = (byte) v;
+        }
+        return bytes;
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int v) {
+        out.write((v >> 8) & 0xFF);
+        out.write(v & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write((v >> 24) & 0xFF);
+        out.write((v >> 16) & 0xFF);
+        out.write((v >> 8) & 0xFF);
+        out.write(v & 0xFF);
+    }
+}
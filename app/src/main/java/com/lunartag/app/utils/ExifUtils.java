@@ -3,7 +3,11 @@ package com.lunartag.app.utils;
 import android.location.Location;
 import androidx.exifinterface.media.ExifInterface;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -17,8 +21,90 @@ public class ExifUtils {
     // Private constructor to prevent instantiation
     private ExifUtils() {}
 
+    /**
+     * Maps a clockwise rotation in degrees to the matching EXIF Orientation value.
+     */
+    public static int orientationFromDegrees(int rotationDegrees) {
+        switch (((rotationDegrees % 360) + 360) % 360) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Reads the EXIF Orientation of an encoded JPEG as a clockwise rotation in degrees.
+     * @return 0 if the tag is missing or the header cannot be parsed.
+     */
+    public static int readRotationDegrees(byte[] jpegBytes) {
+        try {
+            return new ExifInterface(new ByteArrayInputStream(jpegBytes)).getRotationDegrees();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The embedded Exif thumbnail of a JPEG, with the image's Orientation tag written into it
+     * (the thumbnail has the same pixel orientation as the image but no Exif of its own).
+     * @return Null if the JPEG has no JPEG thumbnail.
+     */
+    public static byte[] readOrientedThumbnail(InputStream jpeg) throws IOException {
+        ExifInterface exif = new ExifInterface(jpeg);
+        byte[] thumbnail = exif.getThumbnailBytes();
+        if (thumbnail == null || !exif.isThumbnailCompressed()) return null;
+        int rotation = exif.getRotationDegrees();
+        if (rotation == 0) return thumbnail;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(thumbnail.length + 64);
+        byte[] segment = new ExifSegmentBuilder().setOrientation(orientationFromDegrees(rotation)).build();
+        try (OutputStream injected = new ExifInjectingOutputStream(out, segment)) {
+            injected.write(thumbnail);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds the Exif APP1 segment for a capture: the same GPS, DateTimeOriginal and audit JSON
+     * as {@link #writeExifData}, plus the Orientation tag, without touching any file.
+     * Write it with {@link ExifInjectingOutputStream} while the JPEG is being encoded.
+     * @param realLocation The real GPS location of the capture (may be null).
+     * @param realCaptureTimestamp The real system time of the capture (in milliseconds).
+     * @param assignedTimestamp The assigned timestamp (in milliseconds).
+     * @param rotationDegrees The clockwise rotation the viewer must apply (0 if the pixels are upright).
+     */
+    public static byte[] buildCaptureSegment(Location realLocation, long realCaptureTimestamp,
+                                             long assignedTimestamp, int rotationDegrees) {
+        return buildCaptureSegment(realLocation, realCaptureTimestamp, assignedTimestamp, rotationDegrees, null);
+    }
+
+    /**
+     * Same as above, with thumbnailJpeg embedded as the Exif thumbnail (same orientation as the image).
+     * @param thumbnailJpeg At most {@link ExifSegmentBuilder#MAX_THUMBNAIL_BYTES}, or null for none.
+     */
+    public static byte[] buildCaptureSegment(Location realLocation, long realCaptureTimestamp,
+                                             long assignedTimestamp, int rotationDegrees, byte[] thumbnailJpeg) {
+        ExifSegmentBuilder builder = new ExifSegmentBuilder()
+                .setOrientation(orientationFromDegrees(rotationDegrees))
+                .setDateTimeOriginal(realCaptureTimestamp, TimeZone.getDefault())
+                .setImageDescription(auditJson(realCaptureTimestamp, assignedTimestamp))
+                .setThumbnail(thumbnailJpeg);
+        if (realLocation != null) {
+            builder.setGps(realLocation.getLatitude(), realLocation.getLongitude(),
+                    realLocation.hasAltitude() ? realLocation.getAltitude() : Double.NaN,
+                    realLocation.getTime());
+        }
+        return builder.build();
+    }
+
     /**
      * Writes all required location and timestamp metadata to the image's EXIF tags.
+     * Note: saveAttributes() rewrites the whole file. The capture path uses
+     * {@link #buildCaptureSegment} instead, which costs no extra write.
      * @param filePath The absolute path to the saved JPEG image.
      * @param realLocation The real GPS location of the capture.
      * @param realCaptureTimestamp The real system time of the capture (in milliseconds).
@@ -41,8 +127,7 @@ public class ExifUtils {
 
             // 3. Write a custom ImageDescription tag containing a JSON string for auditing
             // This stores both the real and assigned timestamps clearly for verification.
-            String jsonPayload = "{\"assignedTimestamp\":" + assignedTimestamp + ",\"captureTimestampReal\":" + realCaptureTimestamp + "}";
-            exifInterface.setAttribute(ExifInterface.TAG_IMAGE_DESCRIPTION, jsonPayload);
+            exifInterface.setAttribute(ExifInterface.TAG_IMAGE_DESCRIPTION, auditJson(realCaptureTimestamp, assignedTimestamp));
 
             // Save the changes to the file
             exifInterface.saveAttributes();
@@ -51,4 +136,11 @@ public class ExifUtils {
             e.printStackTrace();
         }
     }
+
+    /**
+     * The ImageDescription payload: both timestamps, for verification.
+     */
+    private static String auditJson(long realCaptureTimestamp, long assignedTimestamp) {
+        return "{\"assignedTimestamp\":" + assignedTimestamp + ",\"captureTimestampReal\":" + realCaptureTimestamp + "}";
+    }
 }
@@ -0,0 +1,157 @@
+package com.lunartag.app.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes one stream of bytes into several destinations at once (app file, MediaStore, SAF...),
+ * so an encoder produces its output a single time no matter how many copies are kept.
+ *
+ * Every sink gets its own large buffer. A sink marked optional that fails is closed and
+ * dropped, and the others carry on; a required sink failing fails the whole write.
+ * Bytes written and time spent are tracked per sink.
+ *
+ * Pure Java (no android.* imports).
+ */
+public class FanOutOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static class Sink {
+        final String name;
+        final OutputStream stream;
+        final boolean required;
+        long bytes;
+        long nanos;
+        IOException error;
+
+        Sink(String name, OutputStream stream, boolean required) {
+            this.name = name;
+            this.stream = new BufferedOutputStream(stream, BUFFER_SIZE);
+            this.required = required;
+        }
+    }
+
+    private final List<Sink> sinks = new ArrayList<>();
+    private long written;
+    private boolean closed;
+
+    /**
+     * @param name Label used in the metrics and error messages.
+     * @param required True if losing this sink must fail the write.
+     */
+    public void addSink(String name, OutputStream stream, boolean required) {
+        sinks.add(new Sink(name, stream, required));
+    }
+
+    /**
+     * Bytes passed to this stream, i.e. the size of every healthy copy.
+     */
+    public long getBytesWritten() {
+        return written;
+    }
+
+    /**
+     * True if the named sink received every byte without error.
+     */
+    public boolean isHealthy(String name) {
+        for (Sink sink : sinks) {
+            if (sink.name.equals(name)) return sink.error == null;
+        }
+        return false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        written += len;
+        for (Sink sink : sinks) {
+            if (sink.error != null) continue;
+            long start = System.nanoTime();
+            try {
+                sink.stream.write(b, off, len);
+                sink.bytes += len;
+            } catch (IOException e) {
+                fail(sink, e);
+            } finally {
+                sink.nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (Sink sink : sinks) {
+            if (sink.error != null) continue;
+            long start = System.nanoTime();
+            try {
+                sink.stream.flush();
+            } catch (IOException e) {
+                fail(sink, e);
+            } finally {
+                sink.nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes every sink. Closing is where most providers actually commit the data,
+     * so a failure here is treated like a write failure.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        IOException requiredFailure = null;
+        for (Sink sink : sinks) {
+            if (sink.error != null) continue; // Closed when it failed
+            long start = System.nanoTime();
+            try {
+                sink.stream.close();
+            } catch (IOException e) {
+                sink.error = e;
+                if (sink.required && requiredFailure == null) requiredFailure = e;
+            } finally {
+                sink.nanos += System.nanoTime() - start;
+            }
+        }
+        if (requiredFailure != null) throw requiredFailure;
+    }
+
+    /**
+     * One line per write, e.g. "FANOUT file=2.31MB/14ms mediastore=2.31MB/52ms saf=FAILED(...)".
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder("FANOUT");
+        for (Sink sink : sinks) {
+            sb.append(' ').append(sink.name).append('=');
+            if (sink.error != null) {
+                sb.append("FAILED(").append(sink.error.getMessage()).append(')');
+            } else {
+                sb.append(String.format(Locale.US, "%.2fMB/%dms",
+                        sink.bytes / (1024.0 * 1024.0), sink.nanos / 1_000_000L));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void fail(Sink sink, IOException e) throws IOException {
+        sink.error = e;
+        try {
+            sink.stream.close();
+        } catch (IOException ignored) {
+            // Already failed.
+        }
+        if (sink.required) {
+            throw new IOException("Write to " + sink.name + " failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -2,14 +2,15 @@ package com.lunartag.app.utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import androidx.camera.core.ImageProxy;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
@@ -18,6 +19,9 @@ import java.nio.ByteBuffer;
  */
 public class ImageUtils {
 
+    // Source rows decoded per band when a JPEG is rotated: ~4 MB of ARGB at 4000 px wide.
+    private static final int ROTATE_BAND_ROWS = 256;
+
     private ImageUtils() {}
 
     /**
@@ -25,43 +29,75 @@ public class ImageUtils {
      * Handles JPEG, YUV_420_888, and Hardware Padding correctly.
      */
     public static Bitmap imageProxyToBitmap(ImageProxy imageProxy) {
+        return imageProxyToBitmap(imageProxy, new YuvConversionContext(), true);
+    }
+
+    /**
+     * Same as {@link #imageProxyToBitmap(ImageProxy)}, but reuses the YUV buffers
+     * held by the given context instead of allocating new ones for every frame.
+     * @param rotatePixels True to return an upright bitmap. Neither format ever holds two full-size
+     *                     bitmaps: YUV frames are rotated inside the conversion loop, JPEG frames
+     *                     band by band (see {@link #decodeJpeg}).
+     *                     False to leave the pixels in sensor order, so the caller can record
+     *                     {@code getRotationDegrees()} as the EXIF Orientation tag instead.
+     */
+    public static Bitmap imageProxyToBitmap(ImageProxy imageProxy, YuvConversionContext yuvContext,
+                                            boolean rotatePixels) {
         if (imageProxy == null || imageProxy.getImage() == null) {
             return null;
         }
 
         Image image = imageProxy.getImage();
-        Bitmap bitmap = null;
+        int rotationDegrees = rotatePixels ? imageProxy.getImageInfo().getRotationDegrees() : 0;
 
         // 1. Try to Extract Bitmap based on Format
         if (image.getFormat() == ImageFormat.JPEG) {
             // Handle JPEG directly
-            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-            buffer.rewind(); // CRITICAL: Reset buffer position before reading
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes);
-            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            return decodeJpeg(getJpegBytes(imageProxy), rotationDegrees);
         } 
         else if (image.getFormat() == ImageFormat.YUV_420_888) {
-            // Handle YUV with strict padding calculations
-            byte[] nv21 = yuv420ToNv21(image);
+            // Handle YUV with strict padding calculations, then convert straight to ARGB
+            // (no JPEG encode/decode round-trip), writing the pixels already rotated.
+            byte[] nv21 = yuv420ToNv21(image, yuvContext);
             if (nv21 != null) {
-                YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
-                byte[] imageBytes = out.toByteArray();
-                bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+                return nv21ToBitmap(nv21, image.getWidth(), image.getHeight(), rotationDegrees);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes an encoded JPEG into a mutable Bitmap and rotates it clockwise by rotationDegrees.
+     * A rotated JPEG is decoded ROTATE_BAND_ROWS source rows at a time, each band drawn straight
+     * into its place in the upright bitmap, so the peak is one full-size bitmap plus one band
+     * instead of the decoded frame and its rotated copy side by side.
+     * @return The Bitmap, or null if the bytes cannot be decoded.
+     */
+    public static Bitmap decodeJpeg(byte[] bytes, int rotationDegrees) {
+        if (bytes == null) {
+            return null;
+        }
+        int rotation = ((rotationDegrees % 360) + 360) % 360;
+        if (rotation != 0) {
+            Bitmap rotated = decodeJpegRotated(bytes, rotation);
+            if (rotated != null) {
+                return rotated;
             }
+            // No region decoder for this stream: fall back to a whole decode and a Matrix copy.
         }
 
+        // Mutable, so the watermark can be drawn on it even when no rotation copy is made.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
         if (bitmap == null) {
             return null;
         }
 
-        // 2. Handle Rotation
-        int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
-        if (rotationDegrees != 0) {
+        if (rotation != 0) {
             Matrix matrix = new Matrix();
-            matrix.postRotate(rotationDegrees);
+            matrix.postRotate(rotation);
             Bitmap rotated = Bitmap.createBitmap(
                     bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true
             );
@@ -75,96 +111,109 @@ public class ImageUtils {
     }
 
     /**
-     * Highly Robust YUV_420_888 to NV21 Converter.
-     * Skips the 'Padding' bytes that cause corruption on Oppo/Vivo/Samsung devices.
+     * The band-wise rotation of {@link #decodeJpeg}.
+     * @param rotation 90, 180 or 270.
+     * @return Null if the JPEG cannot be region-decoded.
      */
-    private static byte[] yuv420ToNv21(Image image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
-        ByteBuffer yBuffer = image.getPlanes()[0].getBuffer();
-        ByteBuffer uBuffer = image.getPlanes()[1].getBuffer();
-        ByteBuffer vBuffer = image.getPlanes()[2].getBuffer();
-
-        int rowStride = image.getPlanes()[0].getRowStride();
-        int pixelStride = image.getPlanes()[0].getPixelStride(); // Usually 1 for Y
-
-        int pos = 0;
-        byte[] nv21 = new byte[width * height + (width * height / 2)];
-
-        // --- 1. Copy Y Channel (Luminance) ---
-        // If rowStride == width, we can copy everything at once.
-        // If rowStride > width, we must copy row-by-row to skip padding.
-        if (rowStride == width) {
-            yBuffer.get(nv21, 0, width * height);
-            pos = width * height;
-        } else {
-            // Complex copy for hardware with padding
-            int yBufferPos = width * height; // Approximate check
-            yBuffer.rewind();
-            for (int row = 0; row < height; row++) {
-                // Be careful with buffer limits
-                int length = Math.min(width, yBuffer.remaining());
-                yBuffer.get(nv21, pos, length);
-                pos += width;
-                
-                // Skip the padding bytes at end of row
-                if (row < height - 1) {
-                    int padding = rowStride - width;
-                    if (yBuffer.remaining() >= padding) {
-                         // Manually advance buffer position
-                         yBuffer.position(yBuffer.position() + padding);
-                    }
-                }
-            }
+    private static Bitmap decodeJpegRotated(byte[] bytes, int rotation) {
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(bytes, 0, bytes.length, false);
+        } catch (IOException e) {
+            return null;
         }
-
-        // --- 2. Copy U and V Channels (Chrominance) Interleaved ---
-        int rowStrideUV = image.getPlanes()[1].getRowStride();
-        int pixelStrideUV = image.getPlanes()[1].getPixelStride();
-        
-        // Fallback mechanism if conversion is too complex for standard copy
-        // Just trying to be safe for your specific crash
+        Bitmap rotated = null;
         try {
-            // Simplified NV21 packing
-            // V first, then U (NV21 standard)
-            // Note: Usually UV planes are subsampled (width/2, height/2)
-            
-            // Reset buffers
-            uBuffer.rewind();
-            vBuffer.rewind();
-            
-            int uvHeight = height / 2;
-            int uvWidth = width / 2;
-            
-            // We are writing to nv21[pos]
-            // NV21 format expects: V, U, V, U...
-            
-            // The safest generic way is to pull bytes individually if we suspect strides
-            byte[] vBytes = new byte[vBuffer.remaining()];
-            vBuffer.get(vBytes);
-            
-            byte[] uBytes = new byte[uBuffer.remaining()];
-            uBuffer.get(uBytes);
-
-            for (int row = 0; row < uvHeight; row++) {
-                for (int col = 0; col < uvWidth; col++) {
-                     // Calculate source index with strides
-                     int vIndex = (row * rowStrideUV) + (col * pixelStrideUV);
-                     int uIndex = (row * rowStrideUV) + (col * pixelStrideUV);
-                     
-                     if (vIndex < vBytes.length && uIndex < uBytes.length && pos < nv21.length - 1) {
-                         nv21[pos++] = vBytes[vIndex]; // V
-                         nv21[pos++] = uBytes[uIndex]; // U
-                     }
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            rotated = Bitmap.createBitmap(
+                    YuvToArgbConverter.rotatedWidth(width, height, rotation),
+                    YuvToArgbConverter.rotatedHeight(width, height, rotation),
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(rotated);
+
+            // Maps a source pixel to its place in the upright frame; quarter turns plus whole-pixel
+            // shifts, so drawing without filtering copies pixels exactly.
+            Matrix frame = new Matrix();
+            frame.postRotate(rotation);
+            if (rotation == 90) {
+                frame.postTranslate(height, 0);
+            } else if (rotation == 180) {
+                frame.postTranslate(width, height);
+            } else {
+                frame.postTranslate(0, width);
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Matrix band = new Matrix();
+            for (int top = 0; top < height; top += ROTATE_BAND_ROWS) {
+                int bottom = Math.min(height, top + ROTATE_BAND_ROWS);
+                Bitmap rows = decoder.decodeRegion(new Rect(0, top, width, bottom), options);
+                if (rows == null) {
+                    rotated.recycle();
+                    return null;
                 }
+                band.set(frame);
+                band.preTranslate(0, top);
+                canvas.drawBitmap(rows, band, null);
+                rows.recycle();
             }
+            return rotated;
+        } catch (RuntimeException e) {
+            if (rotated != null) rotated.recycle();
+            return null;
+        } finally {
+            decoder.recycle();
+        }
+    }
 
-        } catch (Exception e) {
-            // If precise conversion fails, return null to trigger the outer error
+    /**
+     * Copies out the encoded bytes of a JPEG frame.
+     * @return The JPEG file bytes, or null if the frame is not JPEG.
+     */
+    public static byte[] getJpegBytes(ImageProxy imageProxy) {
+        if (imageProxy == null || imageProxy.getImage() == null
+                || imageProxy.getImage().getFormat() != ImageFormat.JPEG) {
             return null;
         }
+        ByteBuffer buffer = imageProxy.getImage().getPlanes()[0].getBuffer();
+        buffer.rewind(); // CRITICAL: Reset buffer position before reading
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
 
-        return nv21;
+    /**
+     * Converts NV21 into a new ARGB_8888 Bitmap, band by band across all cores.
+     * Bands are copied into the Bitmap as soon as they are ready, so no full-frame int[] is needed.
+     * The rotation is applied while converting, so only one full-size bitmap ever exists.
+     */
+    private static Bitmap nv21ToBitmap(byte[] nv21, int width, int height, int rotationDegrees) {
+        final Bitmap bitmap = Bitmap.createBitmap(
+                YuvToArgbConverter.rotatedWidth(width, height, rotationDegrees),
+                YuvToArgbConverter.rotatedHeight(width, height, rotationDegrees),
+                Bitmap.Config.ARGB_8888);
+        YuvToArgbConverter.convert(nv21, width, height, rotationDegrees, (argb, left, top, w, h) -> {
+            // Bands never overlap, but Bitmap pixel access is not documented as thread-safe.
+            synchronized (bitmap) {
+                bitmap.setPixels(argb, 0, w, left, top, w, h);
+            }
+        });
+        return bitmap;
+    }
+
+    /**
+     * Highly Robust YUV_420_888 to NV21 Converter.
+     * Skips the 'Padding' bytes that cause corruption on Oppo/Vivo/Samsung devices.
+     * The returned array belongs to the context and is reused for the next frame.
+     */
+    private static byte[] yuv420ToNv21(Image image, YuvConversionContext context) {
+        Image.Plane[] planes = image.getPlanes();
+        return context.toNv21(
+                planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight());
     }
-}
\ No newline at end of file
+}
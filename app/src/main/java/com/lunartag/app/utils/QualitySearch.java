@@ -0,0 +1,105 @@
+package com.lunartag.app.utils;
+
+import java.io.IOException;
+
+/**
+ * Bounded bisection over JPEG quality (1..100) for a monotone measurement: encoded size grows
+ * with quality, and so does fidelity (PSNR). Used by {@link BudgetedJpegEncoder} on a downscaled
+ * sample, and by the desktop benchmark in tools/ with the same search.
+ *
+ * Pure Java (no android.* imports).
+ */
+public final class QualitySearch {
+
+    /**
+     * Measures the sample encoded at one quality: estimated full-size bytes, or PSNR in dB.
+     */
+    public interface Probe {
+        double measure(int quality) throws IOException;
+    }
+
+    /** Chosen quality, plus how many probes it took to find it. */
+    public static final class Outcome {
+        public final int quality;
+        public final double measured; // Probe value at quality (NaN if never probed)
+        public final int tries;
+
+        Outcome(int quality, double measured, int tries) {
+            this.quality = quality;
+            this.measured = measured;
+            this.tries = tries;
+        }
+    }
+
+    private QualitySearch() {}
+
+    /**
+     * The highest quality in [min, max] whose measurement stays at or under limit
+     * (a byte budget). Falls back to min when even that is over the limit.
+     */
+    public static Outcome highestWithin(Probe probe, double limit, int min, int max, int maxTries)
+            throws IOException {
+        int lo = min;
+        int hi = max;
+        int best = min;
+        double bestValue = Double.NaN;
+        int tries = 0;
+        while (lo <= hi && tries < maxTries) {
+            int mid = (lo + hi + 1) >>> 1;
+            double value = probe.measure(mid);
+            tries++;
+            if (value <= limit) {
+                best = mid;
+                bestValue = value;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return new Outcome(best, bestValue, tries);
+    }
+
+    /**
+     * The lowest quality in [min, max] whose measurement reaches floor (a PSNR target).
+     * Falls back to max when nothing probed reaches it.
+     */
+    public static Outcome lowestReaching(Probe probe, double floor, int min, int max, int maxTries)
+            throws IOException {
+        int lo = min;
+        int hi = max;
+        int best = max;
+        double bestValue = Double.NaN;
+        int tries = 0;
+        while (lo <= hi && tries < maxTries) {
+            int mid = (lo + hi) >>> 1;
+            double value = probe.measure(mid);
+            tries++;
+            if (value >= floor) {
+                best = mid;
+                bestValue = value;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return new Outcome(best, bestValue, tries);
+    }
+
+    /**
+     * Luma PSNR between two same-sized ARGB pixel arrays, in dB (capped at 99 for identical input).
+     */
+    public static double lumaPsnr(int[] reference, int[] candidate) {
+        double sum = 0;
+        for (int i = 0; i < reference.length; i++) {
+            double d = luma(reference[i]) - luma(candidate[i]);
+            sum += d * d;
+        }
+        if (sum == 0) return 99.0;
+        double mse = sum / reference.length;
+        return Math.min(99.0, 10.0 * Math.log10(255.0 * 255.0 / mse));
+    }
+
+    private static double luma(int argb) {
+        return 0.299 * ((argb >> 16) & 0xFF) + 0.587 * ((argb >> 8) & 0xFF) + 0.114 * (argb & 0xFF);
+    }
+}
@@ -0,0 +1,310 @@
+package com.lunartag.app.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Process;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fast path for writing into the user-selected SAF folder (often an SD card).
+ *
+ * Every call into the documents provider is a binder round trip, and on SD cards each can
+ * take hundreds of milliseconds. So:
+ *  - The tree is resolved and validated (exists, is a directory, accepts new files) once,
+ *    and the parent document URI is cached until something fails.
+ *  - Documents are created with {@link DocumentsContract#createDocument} directly, no DocumentFile.
+ *  - A few hidden placeholder documents are created ahead of time on a background thread
+ *    (while the camera is just previewing), so a capture only has to rename one.
+ *
+ * Any failure (card ejected, permission revoked, folder deleted) drops the cached parent and
+ * the pool; the next capture re-resolves, and gets null if the folder is really gone.
+ * Placeholders orphaned by a killed process are swept the next time the folder is resolved.
+ */
+public class SafStorageBackend {
+
+    private static final String TAG = "SafStorageBackend";
+    private static final String MIME_JPEG = "image/jpeg";
+    // Leading dot: hidden from the media scanner until renamed.
+    private static final String PLACEHOLDER_PREFIX = ".lunartag-pending-";
+    private static final int POOL_SIZE = 2;
+
+    private static volatile SafStorageBackend INSTANCE;
+
+    private final Context context;
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "SafStorageBackend");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this.
+    private Uri treeUri;
+    private Uri parentUri;
+    private final ArrayDeque<Uri> pool = new ArrayDeque<>();
+    // Bumped on every invalidate so a refill that raced with it throws its result away.
+    private int generation;
+
+    // --- Metrics ---
+    private final AtomicLong creates = new AtomicLong();
+    private final AtomicLong pooled = new AtomicLong();
+    private final AtomicLong resolves = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong createNanos = new AtomicLong();
+
+    public static SafStorageBackend getInstance(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (SafStorageBackend.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SafStorageBackend(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private SafStorageBackend(Context appContext) {
+        this.context = appContext;
+    }
+
+    /**
+     * Creates an empty JPEG document called displayName in the selected folder.
+     * @return The document URI, or null if there is no usable folder.
+     */
+    @Nullable
+    public Uri createImage(String displayName) {
+        long start = System.nanoTime();
+        // Two rounds: the cached parent may be stale (card swapped), so re-resolve once.
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Uri parent = getParent();
+            if (parent == null) break;
+
+            Uri uri = renamePlaceholder(displayName);
+            if (uri != null) {
+                pooled.incrementAndGet();
+            } else {
+                try {
+                    uri = DocumentsContract.createDocument(context.getContentResolver(), parent, MIME_JPEG, displayName);
+                } catch (Exception e) {
+                    Log.w(TAG, "createDocument failed: " + e.getMessage());
+                }
+            }
+            if (uri != null) {
+                creates.incrementAndGet();
+                createNanos.addAndGet(System.nanoTime() - start);
+                prewarm();
+                return uri;
+            }
+            invalidate();
+        }
+        failures.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Resolves the folder and tops up the placeholder pool on the background thread.
+     * Call when the app is idle with a capture likely to follow (camera preview open).
+     */
+    public void prewarm() {
+        if (!StorageUtils.hasCustomFolder(context)) return;
+        background.execute(this::refill);
+    }
+
+    /**
+     * Forgets the cached folder and placeholders. Call when writing to a document from this
+     * backend failed: the card is probably gone.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            treeUri = null;
+            parentUri = null;
+            pool.clear();
+            generation++;
+        }
+    }
+
+    /**
+     * The user picked another folder: delete the placeholders in the old one and start over.
+     */
+    public void onFolderChanged() {
+        final Uri[] old;
+        synchronized (this) {
+            old = pool.toArray(new Uri[0]);
+        }
+        invalidate();
+        background.execute(() -> {
+            for (Uri uri : old) {
+                deleteQuietly(uri);
+            }
+            refill();
+        });
+    }
+
+    /**
+     * One-line snapshot of the create counters, in the CapturePipeline metrics format.
+     */
+    public String describe() {
+        long n = creates.get();
+        int poolSize;
+        synchronized (this) {
+            poolSize = pool.size();
+        }
+        return "SAF creates=" + n
+                + " pooled=" + pooled.get()
+                + " pool=" + poolSize
+                + " resolves=" + resolves.get()
+                + " failures=" + failures.get()
+                + " avg=" + (n == 0 ? 0 : createNanos.get() / n / 1_000_000L) + "ms";
+    }
+
+    /**
+     * @return The cached parent document URI, resolving and validating the tree first if needed.
+     */
+    @Nullable
+    private Uri getParent() {
+        synchronized (this) {
+            if (parentUri != null) return parentUri;
+        }
+        Uri tree = StorageUtils.getCustomFolderUri(context);
+        if (tree == null) return null;
+
+        Uri parent;
+        try {
+            parent = DocumentsContract.buildDocumentUriUsingTree(tree, DocumentsContract.getTreeDocumentId(tree));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Not a tree URI: " + tree);
+            return null;
+        }
+        if (!isWritableDirectory(parent)) {
+            Log.e(TAG, "Cannot write to the selected folder. Permission lost or SD Card removed.");
+            return null;
+        }
+        resolves.incrementAndGet();
+        synchronized (this) {
+            treeUri = tree;
+            parentUri = parent;
+        }
+        background.execute(this::sweepOrphans);
+        return parent;
+    }
+
+    /**
+     * One query for both checks: the document is a directory and supports creating children.
+     */
+    private boolean isWritableDirectory(Uri document) {
+        String[] projection = {DocumentsContract.Document.COLUMN_MIME_TYPE, DocumentsContract.Document.COLUMN_FLAGS};
+        try (Cursor cursor = context.getContentResolver().query(document, projection, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) return false;
+            String mime = cursor.getString(0);
+            int flags = cursor.getInt(1);
+            return DocumentsContract.Document.MIME_TYPE_DIR.equals(mime)
+                    && (flags & DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE) != 0;
+        } catch (Exception e) {
+            // SecurityException (permission revoked), IllegalArgumentException / FileNotFound (card gone).
+            Log.w(TAG, "Folder check failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Takes a placeholder from the pool and gives it its real name.
+     * @return Null if the pool is empty or the rename failed (the placeholder is then discarded).
+     */
+    @Nullable
+    private Uri renamePlaceholder(String displayName) {
+        Uri placeholder;
+        synchronized (this) {
+            placeholder = pool.poll();
+        }
+        if (placeholder == null) return null;
+        try {
+            Uri renamed = DocumentsContract.renameDocument(context.getContentResolver(), placeholder, displayName);
+            if (renamed != null) return renamed;
+        } catch (Exception e) {
+            // Name taken, or the placeholder vanished with the card.
+            Log.w(TAG, "Placeholder rename failed: " + e.getMessage());
+        }
+        deleteQuietly(placeholder);
+        return null;
+    }
+
+    private void refill() {
+        Uri parent = getParent();
+        if (parent == null) return;
+        ContentResolver resolver = context.getContentResolver();
+        while (true) {
+            int gen;
+            synchronized (this) {
+                if (pool.size() >= POOL_SIZE || !parent.equals(parentUri)) return;
+                gen = generation;
+            }
+            Uri placeholder;
+            try {
+                placeholder = DocumentsContract.createDocument(resolver, parent, MIME_JPEG,
+                        PLACEHOLDER_PREFIX + System.nanoTime());
+            } catch (Exception e) {
+                Log.w(TAG, "Placeholder create failed: " + e.getMessage());
+                invalidate();
+                return;
+            }
+            if (placeholder == null) return;
+            synchronized (this) {
+                if (gen == generation) {
+                    pool.add(placeholder);
+                    continue;
+                }
+            }
+            deleteQuietly(placeholder);
+            return;
+        }
+    }
+
+    /**
+     * Deletes placeholders left in the folder by an earlier process (not the ones pooled now).
+     */
+    private void sweepOrphans() {
+        Uri tree;
+        Uri parent;
+        synchronized (this) {
+            tree = treeUri;
+            parent = parentUri;
+        }
+        if (tree == null || parent == null) return;
+        Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(tree, DocumentsContract.getDocumentId(parent));
+        String[] projection = {DocumentsContract.Document.COLUMN_DOCUMENT_ID, DocumentsContract.Document.COLUMN_DISPLAY_NAME};
+        try (Cursor cursor = context.getContentResolver().query(children, projection, null, null, null)) {
+            if (cursor == null) return;
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                if (name == null || !name.startsWith(PLACEHOLDER_PREFIX)) continue;
+                Uri orphan = DocumentsContract.buildDocumentUriUsingTree(tree, cursor.getString(0));
+                synchronized (this) {
+                    if (pool.contains(orphan)) continue;
+                }
+                deleteQuietly(orphan);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Orphan sweep failed: " + e.getMessage());
+        }
+    }
+
+    private void deleteQuietly(Uri document) {
+        try {
+            DocumentsContract.deleteDocument(context.getContentResolver(), document);
+        } catch (Exception ignored) {
+            // Already gone with the card, or never created.
+        }
+    }
+}
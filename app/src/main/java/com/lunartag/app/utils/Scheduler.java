@@ -34,6 +34,7 @@ public class Scheduler {
         // FIX: Target the AlarmReceiver instead of the Service
         Intent intent = new Intent(context, AlarmReceiver.class);
         intent.putExtra(AlarmReceiver.EXTRA_FILE_PATH, filePath);
+        intent.putExtra(AlarmReceiver.EXTRA_PHOTO_ID, photoId);
 
         // We use the photoId as the request code for the PendingIntent. This ensures
         // that each photo has a unique alarm.
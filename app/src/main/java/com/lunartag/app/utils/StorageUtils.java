@@ -6,18 +6,14 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.UriPermission;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
-import androidx.documentfile.provider.DocumentFile;
 import androidx.fragment.app.Fragment;
 
-import java.io.OutputStream;
-
 /**
  * A dedicated utility to handle Storage Access Framework (SAF).
  * Allows users to select SD Cards or Custom Folders and saves directly to them.
@@ -70,6 +66,7 @@ public class StorageUtils {
         // 2. Save the URI string to local settings so we remember it tomorrow
         SharedPreferences prefs = context.getSharedPreferences(PREFS_STORAGE, Context.MODE_PRIVATE);
         prefs.edit().putString(KEY_CUSTOM_FOLDER_URI, treeUri.toString()).apply();
+        SafStorageBackend.getInstance(context).onFolderChanged();
 
         Toast.makeText(context, "Save Location Updated!", Toast.LENGTH_SHORT).show();
     }
@@ -84,48 +81,34 @@ public class StorageUtils {
     }
 
     /**
-     * Step 3: The Heavy Lifting. Save the actual photo into that specific folder.
-     * Returns the absolute URI string on success, or null on failure.
+     * Helper: The tree URI of the folder the user picked, or null if none.
      */
     @Nullable
-    public static String saveImageToCustomFolder(Context context, Bitmap bitmap, String filename) {
+    public static Uri getCustomFolderUri(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(PREFS_STORAGE, Context.MODE_PRIVATE);
         String uriString = prefs.getString(KEY_CUSTOM_FOLDER_URI, null);
-
-        if (uriString == null) {
-            Log.e(TAG, "No custom folder selected.");
+        if (uriString == null || uriString.isEmpty()) {
             return null;
         }
+        return Uri.parse(uriString);
+    }
 
-        Uri treeUri = Uri.parse(uriString);
-        DocumentFile pickedDir = DocumentFile.fromTreeUri(context, treeUri);
-
-        if (pickedDir == null || !pickedDir.canWrite()) {
-            Log.e(TAG, "Cannot write to the selected folder. Permission lost or SD Card removed.");
+    /**
+     * Step 3: The Heavy Lifting. Create an empty JPEG document inside that specific folder.
+     * The caller streams the image into it (see PhotoWriter), so nothing is buffered here.
+     * The folder lookup is cached by {@link SafStorageBackend}.
+     * Returns the document URI on success, or null on failure.
+     */
+    @Nullable
+    public static Uri createImageInCustomFolder(Context context, String filename) {
+        if (!hasCustomFolder(context)) {
+            Log.e(TAG, "No custom folder selected.");
             return null;
         }
-
-        // Create the file (MIME type, Display Name)
-        DocumentFile newFile = pickedDir.createFile("image/jpeg", filename + ".jpg");
-        
-        if (newFile == null) {
+        Uri uri = SafStorageBackend.getInstance(context).createImage(filename + ".jpg");
+        if (uri == null) {
             Log.e(TAG, "Failed to create file inside custom folder.");
-            return null;
-        }
-
-        // Write the Bitmap data
-        try (OutputStream out = context.getContentResolver().openOutputStream(newFile.getUri())) {
-            if (out == null) return null;
-            
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
-            out.flush();
-            
-            // Return the usable URI
-            return newFile.getUri().toString();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error writing bitmap to custom folder", e);
-            return null;
         }
+        return uri;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,214 @@
+package com.lunartag.app.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.text.TextPaint;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the watermark block pre-rendered as a small ARGB bitmap, so each shot only pays for
+ * one drawBitmap instead of building paints, measuring text and drawing every line again.
+ *
+ * Consecutive shots usually differ in a single line (the time), so when the layout is unchanged
+ * only the horizontal bands of the lines that changed are cleared and redrawn.
+ * {@link com.lunartag.app.LunarTagApplication} clears the cache when the app is trimmed.
+ * Entries are keyed by image size and map snippet; a couple are kept so switching between
+ * portrait and landscape captures does not thrash.
+ */
+public class WatermarkOverlayCache {
+
+    private static final int MAX_ENTRIES = 2;
+    // Rows added above and below a line band so its shadow and glyph overshoot are redrawn too.
+    // Less than half a line: only the lines right above and below reach into a band.
+    private static final int BAND_PADDING = 8;
+
+    private static volatile WatermarkOverlayCache INSTANCE;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(4, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong partialHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong linesRedrawn = new AtomicLong();
+
+    public static WatermarkOverlayCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (WatermarkOverlayCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new WatermarkOverlayCache();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private WatermarkOverlayCache() {}
+
+    /**
+     * One rendered block for a given image size / map snippet.
+     */
+    private static class Entry {
+        final int width;
+        final int height;
+        final Bitmap mapBitmap;
+        final int top;             // Image row the overlay starts at
+        final Bitmap overlay;
+        String[] lines;
+
+        Entry(int width, int height, Bitmap mapBitmap, int top, Bitmap overlay) {
+            this.width = width;
+            this.height = height;
+            this.mapBitmap = mapBitmap;
+            this.top = top;
+            this.overlay = overlay;
+        }
+    }
+
+    /**
+     * Composites the watermark block onto a canvas laid out as a width x height upright image.
+     * Renders or patches the cached overlay first if the lines changed.
+     */
+    public synchronized void draw(Canvas canvas, int width, int height, Bitmap mapBitmap, String[] lines) {
+        String key = width + "x" + height + "@" + System.identityHashCode(mapBitmap);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.mapBitmap != mapBitmap || entry.overlay.isRecycled()) {
+            entry = create(width, height, mapBitmap, lines);
+            entries.put(key, entry);
+            trim();
+            misses.incrementAndGet();
+        } else if (Arrays.equals(entry.lines, lines)) {
+            hits.incrementAndGet();
+        } else if (sameLayout(entry.lines, lines)) {
+            patch(entry, lines);
+            partialHits.incrementAndGet();
+        } else {
+            renderAll(entry, lines);
+            misses.incrementAndGet();
+        }
+        canvas.drawBitmap(entry.overlay, 0, entry.top, null);
+    }
+
+    /**
+     * Drops every cached overlay (e.g. when memory is low).
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.overlay.recycle();
+        }
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getPartialHitCount() {
+        return partialHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * One-line summary for the on-screen log, in the same shape as the pipeline stage metrics.
+     */
+    public String describe() {
+        return "OVERLAY hit=" + hits.get() + " partial=" + partialHits.get()
+                + " miss=" + misses.get() + " lines=" + linesRedrawn.get();
+    }
+
+    private Entry create(int width, int height, Bitmap mapBitmap, String[] lines) {
+        float blockHeight = WatermarkUtils.blockHeight(WatermarkUtils.createTextPaint(width), mapBitmap, lines.length);
+        // Same rounding as the background rect in WatermarkUtils.drawBlock.
+        int top = Math.max(0, (int) (height - blockHeight));
+        Bitmap overlay = Bitmap.createBitmap(width, height - top, Bitmap.Config.ARGB_8888);
+        Entry entry = new Entry(width, height, mapBitmap, top, overlay);
+        renderAll(entry, lines);
+        return entry;
+    }
+
+    private void renderAll(Entry entry, String[] lines) {
+        entry.overlay.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = new Canvas(entry.overlay);
+        canvas.translate(0, -entry.top);
+        WatermarkUtils.drawBlock(canvas, entry.width, entry.height, entry.mapBitmap, lines);
+        entry.lines = lines.clone();
+        linesRedrawn.addAndGet(lines.length);
+    }
+
+    /**
+     * Redraws only the bands of lines that changed. A band runs from the text's left edge (the
+     * map is never touched) and is padded by BAND_PADDING, into the neighbouring lines' slots;
+     * it is cleared, filled with the block background and gets the changed line plus, clipped to
+     * the band, the neighbours whose glyphs and shadows reach into the padding, drawn in the
+     * same order as a full render.
+     */
+    private void patch(Entry entry, String[] lines) {
+        TextPaint textPaint = WatermarkUtils.createTextPaint(entry.width);
+        Paint backgroundPaint = WatermarkUtils.createBackgroundPaint();
+        float textHeight = textPaint.descent() - textPaint.ascent();
+        float blockHeight = WatermarkUtils.blockHeight(textPaint, entry.mapBitmap, lines.length);
+        float firstBaseline = entry.height - blockHeight + textHeight + 5;
+        float textLeft = WatermarkUtils.textLeft(entry.mapBitmap);
+        float bandLeft = Math.max(0, textLeft - BAND_PADDING);
+        // Same rounding as the background rect in WatermarkUtils.drawBlock.
+        int blockTop = (int) (entry.height - blockHeight);
+
+        // drawBlock only advances for non-null lines: index the drawn lines by row.
+        int rows = 0;
+        String[] drawn = new String[lines.length];
+        boolean[] changed = new boolean[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] == null) continue;
+            changed[rows] = !lines[i].equals(entry.lines[i]);
+            drawn[rows++] = lines[i];
+        }
+
+        Canvas canvas = new Canvas(entry.overlay);
+        canvas.translate(0, -entry.top);
+        for (int row = 0; row < rows; row++) {
+            if (!changed[row]) continue;
+            float baseline = firstBaseline + row * textHeight;
+            canvas.save();
+            canvas.clipRect(bandLeft, baseline + textPaint.ascent() - BAND_PADDING,
+                    entry.width, baseline + textPaint.descent() + BAND_PADDING);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            canvas.drawRect(0, blockTop, entry.width, entry.height, backgroundPaint);
+            for (int n = Math.max(0, row - 1); n <= Math.min(rows - 1, row + 1); n++) {
+                canvas.drawText(drawn[n], textLeft, firstBaseline + n * textHeight, textPaint);
+            }
+            canvas.restore();
+            linesRedrawn.incrementAndGet();
+        }
+        entry.lines = lines.clone();
+    }
+
+    /**
+     * True if both arrays produce the same block geometry (same count, nulls in the same places).
+     */
+    private static boolean sameLayout(String[] a, String[] b) {
+        if (a == null || a.length != b.length) return false;
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] == null) != (b[i] == null)) return false;
+        }
+        return true;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            eldest.overlay.recycle();
+        }
+    }
+}
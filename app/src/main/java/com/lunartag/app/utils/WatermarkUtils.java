@@ -3,12 +3,15 @@ package com.lunartag.app.utils;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.text.TextPaint;
 
 /**
  * A utility class with static methods for rendering the watermark onto a photo.
+ * The block itself is rendered by {@link WatermarkOverlayCache} and composited in one drawBitmap.
  */
 public class WatermarkUtils {
 
@@ -22,6 +25,16 @@ public class WatermarkUtils {
      * @param lines An array of strings, with each string representing one line of the watermark text.
      */
     public static void addWatermark(Bitmap originalBitmap, Bitmap mapBitmap, String[] lines) {
+        addWatermark(originalBitmap, mapBitmap, lines, 0);
+    }
+
+    /**
+     * Renders the watermark onto a bitmap whose pixels are still in sensor order.
+     * The block lands on the bottom edge of the image as it will be displayed once the
+     * viewer applies the EXIF Orientation, i.e. after rotating clockwise by rotationDegrees.
+     * @param rotationDegrees The clockwise rotation the viewer will apply (0, 90, 180 or 270).
+     */
+    public static void addWatermark(Bitmap originalBitmap, Bitmap mapBitmap, String[] lines, int rotationDegrees) {
         if (originalBitmap == null || lines == null || lines.length == 0) {
             return;
         }
@@ -30,11 +43,87 @@ public class WatermarkUtils {
         int width = canvas.getWidth();
         int height = canvas.getHeight();
 
-        // --- Configure Paint objects ---
+        if (rotationDegrees % 360 != 0) {
+            // Map "upright" coordinates back onto the stored pixels.
+            Matrix toUpright = new Matrix();
+            toUpright.postRotate(rotationDegrees);
+            RectF bounds = new RectF(0, 0, width, height);
+            toUpright.mapRect(bounds);
+            toUpright.postTranslate(-bounds.left, -bounds.top);
+
+            Matrix toStored = new Matrix();
+            toUpright.invert(toStored);
+            canvas.concat(toStored);
+
+            width = Math.round(bounds.width());
+            height = Math.round(bounds.height());
+        }
+
+        WatermarkOverlayCache.getInstance().draw(canvas, width, height, mapBitmap, lines);
+    }
+
+    /**
+     * Renders only the part of the watermark that falls inside a strip of a larger image.
+     * Used by the JPEG splicing path, where just the bottom MCU rows are decoded.
+     * The block is laid out exactly as it would be on the full image.
+     * @param strip The mutable strip bitmap, covering image rows stripTop..imageHeight-1.
+     * @param imageWidth Width of the full image.
+     * @param imageHeight Height of the full image.
+     * @param stripTop First image row held by the strip.
+     */
+    public static void addWatermarkToStrip(Bitmap strip, int imageWidth, int imageHeight, int stripTop,
+                                           Bitmap mapBitmap, String[] lines) {
+        if (strip == null || lines == null || lines.length == 0) {
+            return;
+        }
+        Canvas canvas = new Canvas(strip);
+        canvas.translate(0, -stripTop);
+        WatermarkOverlayCache.getInstance().draw(canvas, imageWidth, imageHeight, mapBitmap, lines);
+    }
+
+    /**
+     * Height in pixels of the watermark block drawn on an upright image of the given width.
+     */
+    public static int getBlockHeight(int imageWidth, Bitmap mapBitmap, int lineCount) {
+        return (int) Math.ceil(blockHeight(createTextPaint(imageWidth), mapBitmap, lineCount));
+    }
+
+    static TextPaint createTextPaint(int width) {
         TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
         textPaint.setColor(Color.WHITE);
         textPaint.setTextSize(width / 35.0f); // Dynamic text size based on image width
         textPaint.setShadowLayer(3f, 2f, 2f, Color.BLACK);
+        return textPaint;
+    }
+
+    static Paint createBackgroundPaint() {
+        Paint backgroundPaint = createBackgroundPaint();
+        return backgroundPaint;
+    }
+
+    /**
+     * Left edge of the text lines: right of the map, if there is one.
+     */
+    static float textLeft(Bitmap mapBitmap) {
+        return (mapBitmap != null) ? mapBitmap.getWidth() + 40 : 20;
+    }
+
+    static float blockHeight(TextPaint textPaint, Bitmap mapBitmap, int lineCount) {
+        float textHeight = textPaint.descent() - textPaint.ascent();
+        float blockHeight = (textHeight * lineCount) + (lineCount * 10) + 20; // Add padding
+        if (mapBitmap != null && mapBitmap.getHeight() + 20 > blockHeight) {
+            blockHeight = mapBitmap.getHeight() + 20; // Ensure block is tall enough for the map
+        }
+        return blockHeight;
+    }
+
+    /**
+     * Draws the block along the bottom edge of a width x height upright image.
+     * Called by {@link WatermarkOverlayCache} to (re)render its overlays.
+     */
+    static void drawBlock(Canvas canvas, int width, int height, Bitmap mapBitmap, String[] lines) {
+        // --- Configure Paint objects ---
+        TextPaint textPaint = createTextPaint(width);
 
         Paint backgroundPaint = new Paint();
         backgroundPaint.setColor(Color.BLACK);
@@ -42,10 +131,7 @@ public class WatermarkUtils {
 
         // --- Calculate Dimensions ---
         float textHeight = textPaint.descent() - textPaint.ascent();
-        float blockHeight = (textHeight * lines.length) + (lines.length * 10) + 20; // Add padding
-        if (mapBitmap != null && mapBitmap.getHeight() + 20 > blockHeight) {
-            blockHeight = mapBitmap.getHeight() + 20; // Ensure block is tall enough for the map
-        }
+        float blockHeight = blockHeight(textPaint, mapBitmap, lines.length);
 
         // --- Draw Background ---
         Rect backgroundRect = new Rect(0, (int)(height - blockHeight), width, height);
@@ -59,7 +145,7 @@ public class WatermarkUtils {
         }
 
         // --- Draw Text Lines ---
-        float textLeft = (mapBitmap != null) ? mapBitmap.getWidth() + 40 : 20;
+        float textLeft = textLeft(mapBitmap);
         float currentY = height - blockHeight + textHeight + 5;
 
         for (String line : lines) {
@@ -0,0 +1,139 @@
+package com.lunartag.app.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * Reusable YUV_420_888 -> NV21 converter.
+ * Keeps its output and scratch buffers between frames, so a steady stream of captures
+ * at the same resolution does not allocate anything.
+ *
+ * Works directly on the plane ByteBuffers with bulk row copies, and respects the
+ * row-stride padding that Oppo/Vivo/Samsung HALs add at the end of every row
+ * (including the shorter last row some of them hand out).
+ *
+ * Pure Java on purpose (no android.* imports) so it can run on a plain JVM.
+ * Not thread-safe: use one context per worker thread.
+ */
+public class YuvConversionContext {
+
+    private byte[] nv21 = new byte[0];
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+
+    /**
+     * Converts the three planes into the pooled NV21 buffer.
+     * The returned array is owned by this context and is overwritten by the next call.
+     * Plane buffer positions are restored to 0 when done.
+     */
+    public byte[] toNv21(ByteBuffer yBuffer, int yRowStride,
+                         ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                         int width, int height) {
+        int ySize = width * height;
+        int size = ySize + (ySize / 2);
+        if (nv21.length != size) {
+            nv21 = new byte[size];
+        }
+
+        copyLuma(yBuffer, yRowStride, width, height);
+
+        int uvWidth = width / 2;
+        int uvHeight = height / 2;
+        if (uvPixelStride == 2 && isInterleavedVu(uBuffer, vBuffer)) {
+            copyInterleavedChroma(uBuffer, vBuffer, uvRowStride, uvWidth, uvHeight, ySize);
+        } else {
+            copyPlanarChroma(uBuffer, vBuffer, uvRowStride, uvPixelStride, uvWidth, uvHeight, ySize);
+        }
+
+        yBuffer.rewind();
+        uBuffer.rewind();
+        vBuffer.rewind();
+        return nv21;
+    }
+
+    /**
+     * Size in bytes of the last NV21 frame produced.
+     */
+    public int getNv21Length() {
+        return nv21.length;
+    }
+
+    // --- 1. Y Channel (Luminance) ---
+    private void copyLuma(ByteBuffer yBuffer, int rowStride, int width, int height) {
+        // No padding: one bulk copy.
+        if (rowStride == width && yBuffer.capacity() >= width * height) {
+            yBuffer.position(0);
+            yBuffer.get(nv21, 0, width * height);
+            return;
+        }
+        // Padding: one bulk copy per row, jumping over the padding bytes.
+        int out = 0;
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(row * rowStride);
+            yBuffer.get(nv21, out, width);
+            out += width;
+        }
+    }
+
+    // --- 2a. Fast path: V plane already holds V,U,V,U... (semi-planar NV21 in disguise) ---
+    private void copyInterleavedChroma(ByteBuffer uBuffer, ByteBuffer vBuffer, int rowStride,
+                                       int uvWidth, int uvHeight, int out) {
+        // Per row the V buffer covers 2*uvWidth-1 bytes (it stops one short of the last U).
+        int rowBytes = 2 * uvWidth - 1;
+        for (int row = 0; row < uvHeight; row++) {
+            int rowStart = row * rowStride;
+            vBuffer.position(rowStart);
+            vBuffer.get(nv21, out, rowBytes);
+            nv21[out + rowBytes] = uBuffer.get(rowStart + rowBytes - 1);
+            out += 2 * uvWidth;
+        }
+    }
+
+    // --- 2b. Generic path: planar or non-aliased planes, bulk row copies then interleave ---
+    private void copyPlanarChroma(ByteBuffer uBuffer, ByteBuffer vBuffer, int rowStride, int pixelStride,
+                                  int uvWidth, int uvHeight, int out) {
+        int rowBytes = (uvWidth - 1) * pixelStride + 1;
+        if (uRow.length < rowBytes) {
+            uRow = new byte[rowBytes];
+            vRow = new byte[rowBytes];
+        }
+        final byte[] u = uRow;
+        final byte[] v = vRow;
+        final byte[] dst = nv21;
+        for (int row = 0; row < uvHeight; row++) {
+            int rowStart = row * rowStride;
+            vBuffer.position(rowStart);
+            vBuffer.get(v, 0, rowBytes);
+            uBuffer.position(rowStart);
+            uBuffer.get(u, 0, rowBytes);
+            for (int col = 0, src = 0; col < uvWidth; col++, src += pixelStride) {
+                dst[out++] = v[src]; // V
+                dst[out++] = u[src]; // U
+            }
+        }
+    }
+
+    /**
+     * Detects whether the U and V planes are two views of one VU-interleaved buffer,
+     * by flipping a byte of V and checking whether U sees the change.
+     */
+    private static boolean isInterleavedVu(ByteBuffer uBuffer, ByteBuffer vBuffer) {
+        if (vBuffer.capacity() < 2 || uBuffer.capacity() < 1) {
+            return false;
+        }
+        byte saved = vBuffer.get(1);
+        byte flipped = (byte) ~saved;
+        try {
+            vBuffer.put(1, flipped);
+            return uBuffer.get(0) == flipped;
+        } catch (ReadOnlyBufferException e) {
+            return false;
+        } finally {
+            try {
+                vBuffer.put(1, saved);
+            } catch (ReadOnlyBufferException ignored) {
+                // Nothing was written.
+            }
+        }
+    }
+}
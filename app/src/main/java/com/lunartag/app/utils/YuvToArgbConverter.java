@@ -0,0 +1,210 @@
+package com.lunartag.app.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Direct NV21 -> ARGB_8888 conversion (BT.601 full-range, the JFIF matrix).
+ * Replaces the old NV21 -> JPEG(q100) -> Bitmap round-trip, which paid for a full
+ * encode and a full decode just to get pixels.
+ *
+ * The frame is split into row bands that are converted in parallel on the common
+ * fork-join pool. Each finished band is handed to a {@link RegionSink}, so the caller can
+ * copy it straight into a Bitmap without ever holding a full-frame int[].
+ *
+ * The sensor rotation (0/90/180/270, clockwise) can be folded into the same loop: pixels are
+ * written in rotated order, so no second full-resolution bitmap is needed to rotate them.
+ *
+ * Pure Java on purpose (no android.* imports) so it can be tested and benchmarked on a plain JVM.
+ */
+public class YuvToArgbConverter {
+
+    // --- 16.16 fixed-point BT.601 full-range coefficients ---
+    private static final int R_V = 91881;  // 1.402
+    private static final int G_U = 22554;  // 0.344136
+    private static final int G_V = 46802;  // 0.714136
+    private static final int B_U = 116130; // 1.772
+    private static final int ROUND = 1 << 15;
+
+    // Bands smaller than this are not worth forking.
+    private static final int MIN_BAND_ROWS = 16;
+
+    // Band scratch, one per fork-join worker thread.
+    private static final ThreadLocal<int[]> BAND_BUFFERS = new ThreadLocal<>();
+
+    private YuvToArgbConverter() {}
+
+    /**
+     * Receives converted pixels for one rectangle of the (rotated) output image, stored
+     * row-major with stride = regionWidth. May be called concurrently from several threads,
+     * each time with a different, non-overlapping region. The array is only valid during the call.
+     */
+    public interface RegionSink {
+        void onRegion(int[] argb, int left, int top, int regionWidth, int regionHeight);
+    }
+
+    /**
+     * Converts a whole NV21 frame into a caller-provided ARGB array (width * height), unrotated.
+     */
+    public static void convert(byte[] nv21, int width, int height, int[] argbOut) {
+        convertRows(nv21, width, height, 0, height, 0, argbOut);
+    }
+
+    /**
+     * Converts a whole NV21 frame into a caller-provided ARGB array, rotated clockwise.
+     * For 90/270 the output is height pixels wide and width pixels tall.
+     */
+    public static void convert(byte[] nv21, int width, int height, int rotationDegrees, int[] argbOut) {
+        convertRows(nv21, width, height, 0, height, rotationDegrees, argbOut);
+    }
+
+    /**
+     * Converts a whole NV21 frame in parallel row bands and streams each band to the sink.
+     */
+    public static void convert(byte[] nv21, int width, int height, int rotationDegrees, RegionSink sink) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int bandRows = Math.max(MIN_BAND_ROWS, height / Math.max(1, parallelism * 4));
+        ForkJoinPool.commonPool().invoke(
+                new BandTask(nv21, width, height, 0, height, bandRows, normalize(rotationDegrees), sink));
+    }
+
+    /**
+     * Width of the output image once the rotation is applied.
+     */
+    public static int rotatedWidth(int width, int height, int rotationDegrees) {
+        int r = normalize(rotationDegrees);
+        return (r == 90 || r == 270) ? height : width;
+    }
+
+    /**
+     * Height of the output image once the rotation is applied.
+     */
+    public static int rotatedHeight(int width, int height, int rotationDegrees) {
+        int r = normalize(rotationDegrees);
+        return (r == 90 || r == 270) ? width : height;
+    }
+
+    /**
+     * Converts source rows [firstRow, endRow) into out, which receives the rotated band
+     * (see {@link #bandRegion}) in row-major order.
+     */
+    public static void convertRows(byte[] nv21, int width, int height, int firstRow, int endRow,
+                                   int rotationDegrees, int[] out) {
+        final int frameSize = width * height;
+        final int rows = endRow - firstRow;
+        final int r = normalize(rotationDegrees);
+
+        // Each source row is written as a straight line in the band: start + x * step.
+        final int step;
+        switch (r) {
+            case 90:  step = rows;  break;
+            case 180: step = -1;    break;
+            case 270: step = -rows; break;
+            default:  step = 1;     break;
+        }
+
+        for (int y = firstRow; y < endRow; y++) {
+            int o;
+            switch (r) {
+                case 90:  o = endRow - 1 - y; break;
+                case 180: o = (endRow - 1 - y) * width + width - 1; break;
+                case 270: o = (width - 1) * rows + (y - firstRow); break;
+                default:  o = (y - firstRow) * width; break;
+            }
+            int yIndex = y * width;
+            int uvIndex = frameSize + (y >> 1) * width;
+            for (int x = 0; x < width; x += 2) {
+                int v = (nv21[uvIndex++] & 0xFF) - 128;
+                int u = (nv21[uvIndex++] & 0xFF) - 128;
+                int rAdd = R_V * v + ROUND;
+                int gSub = G_U * u + G_V * v - ROUND;
+                int bAdd = B_U * u + ROUND;
+
+                int l = (nv21[yIndex++] & 0xFF) << 16;
+                out[o] = pack(l + rAdd, l - gSub, l + bAdd);
+                o += step;
+                if (x + 1 < width) {
+                    l = (nv21[yIndex++] & 0xFF) << 16;
+                    out[o] = pack(l + rAdd, l - gSub, l + bAdd);
+                    o += step;
+                }
+            }
+        }
+    }
+
+    /**
+     * Where source rows [firstRow, endRow) land in the rotated output: {left, top, width, height}.
+     */
+    public static int[] bandRegion(int width, int height, int firstRow, int endRow, int rotationDegrees) {
+        int rows = endRow - firstRow;
+        switch (normalize(rotationDegrees)) {
+            case 90:  return new int[]{height - endRow, 0, rows, width};
+            case 180: return new int[]{0, height - endRow, width, rows};
+            case 270: return new int[]{firstRow, 0, rows, width};
+            default:  return new int[]{0, firstRow, width, rows};
+        }
+    }
+
+    private static int normalize(int rotationDegrees) {
+        return ((rotationDegrees % 360) + 360) % 360;
+    }
+
+    private static int pack(int r, int g, int b) {
+        r = clamp(r >> 16);
+        g = clamp(g >> 16);
+        b = clamp(b >> 16);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+
+    /**
+     * Splits the row range in half until it fits in one band, then converts it.
+     */
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] nv21;
+        private final int width;
+        private final int height;
+        private final int firstRow;
+        private final int endRow;
+        private final int bandRows;
+        private final int rotation;
+        private final RegionSink sink;
+
+        BandTask(byte[] nv21, int width, int height, int firstRow, int endRow, int bandRows,
+                 int rotation, RegionSink sink) {
+            this.nv21 = nv21;
+            this.width = width;
+            this.height = height;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.bandRows = bandRows;
+            this.rotation = rotation;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = endRow - firstRow;
+            if (rows <= bandRows) {
+                int[] band = BAND_BUFFERS.get();
+                if (band == null || band.length < rows * width) {
+                    band = new int[bandRows * width];
+                    BAND_BUFFERS.set(band);
+                }
+                convertRows(nv21, width, height, firstRow, endRow, rotation, band);
+                int[] region = bandRegion(width, height, firstRow, endRow, rotation);
+                sink.onRegion(band, region[0], region[1], region[2], region[3]);
+                return;
+            }
+            // Keep the split on an even row so chroma pairs stay together.
+            int mid = (firstRow + rows / 2) & ~1;
+            invokeAll(new BandTask(nv21, width, height, firstRow, mid, bandRows, rotation, sink),
+                    new BandTask(nv21, width, height, mid, endRow, bandRows, rotation, sink));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.lunartag.app.workers;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.PhotoDao;
+import com.lunartag.app.geo.AddressCache;
+import com.lunartag.app.geo.PlatformGeocoder;
+import com.lunartag.app.model.PhotoLocation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills in PhotoDetails.addressHuman for photos that were captured without one (offline, no fix yet...).
+ *
+ * Photos are read in ID order, a page at a time, and grouped by geohash cell so every distinct
+ * place is resolved once (through the {@link AddressCache}, so cells already known cost nothing).
+ * Geocoder calls are rate-limited, and each page is written in a single transaction.
+ * The last finished ID is checkpointed in SharedPreferences, so a run killed halfway resumes
+ * where it stopped. Progress is published as "done" / "total" for the part of the pass this run
+ * covers, counted from the checkpoint.
+ */
+public class AddressBackfillWorker extends Worker {
+
+    private static final String TAG = "AddressBackfillWorker";
+    public static final String UNIQUE_WORK_NAME = "address_backfill";
+
+    public static final String PROGRESS_DONE = "done";
+    public static final String PROGRESS_TOTAL = "total";
+
+    private static final String PREFS_BACKFILL = "LunarTagBackfill";
+    private static final String KEY_LAST_PHOTO_ID = "last_photo_id";
+
+    private static final int PAGE_SIZE = 100;
+    // Platform geocoders throttle aggressive callers; stay around one request per second.
+    private static final long MIN_GEOCODER_INTERVAL_MS = 1_100L;
+    // Photos still unresolved after this many runs are left alone until the next enqueue.
+    private static final int MAX_ATTEMPTS = 5;
+
+    private long lastGeocoderCallAt;
+
+    public AddressBackfillWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a backfill run for when the device is online. Does nothing if one is already queued.
+     */
+    public static void enqueue(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(AddressBackfillWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 5, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        AppDatabase db = AppDatabase.getDatabase(context);
+        PhotoDao dao = db.photoDao();
+        AddressCache cache = AddressCache.getInstance(context);
+        PlatformGeocoder geocoder = new PlatformGeocoder(context);
+        AddressCache.Loader rateLimited = (lat, lon) -> {
+            throttle();
+            return geocoder.load(lat, lon);
+        };
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_BACKFILL, Context.MODE_PRIVATE);
+        long lastId = prefs.getLong(KEY_LAST_PHOTO_ID, 0);
+        int total = dao.countPhotosMissingAddress(lastId);
+        int done = 0;
+        int unresolved = 0;
+        Log.d(TAG, "Backfill starting after ID " + lastId + ", " + total + " photos without address.");
+
+        while (!isStopped()) {
+            List<PhotoLocation> page = dao.getPhotosMissingAddress(lastId, PAGE_SIZE);
+            if (page.isEmpty()) break;
+
+            // One Geocoder call per distinct cell in this page.
+            Map<String, List<PhotoLocation>> byCell = new LinkedHashMap<>();
+            for (PhotoLocation photo : page) {
+                String cell = cache.cellFor(photo.getLat(), photo.getLon());
+                List<PhotoLocation> group = byCell.get(cell);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    byCell.put(cell, group);
+                }
+                group.add(photo);
+            }
+
+            final Map<Long, String> resolved = new LinkedHashMap<>();
+            for (List<PhotoLocation> group : byCell.values()) {
+                if (isStopped()) return Result.retry();
+                PhotoLocation first = group.get(0);
+                String address = cache.lookup(first.getLat(), first.getLon(), rateLimited);
+                if (address == null) {
+                    unresolved += group.size();
+                    continue;
+                }
+                for (PhotoLocation photo : group) {
+                    resolved.put(photo.getId(), address);
+                }
+            }
+
+            db.runInTransaction(() -> {
+                for (Map.Entry<Long, String> e : resolved.entrySet()) {
+                    dao.setAddress(e.getKey(), e.getValue());
+                }
+            });
+
+            lastId = page.get(page.size() - 1).getId();
+            prefs.edit().putLong(KEY_LAST_PHOTO_ID, lastId).apply();
+            done += page.size();
+            setProgressAsync(new Data.Builder()
+                    .putInt(PROGRESS_DONE, done)
+                    .putInt(PROGRESS_TOTAL, total)
+                    .build());
+        }
+
+        if (isStopped()) {
+            // Checkpoint is saved; the next run carries on from it.
+            return Result.retry();
+        }
+
+        // Full pass done: next pass starts from the beginning again.
+        prefs.edit().remove(KEY_LAST_PHOTO_ID).apply();
+        Log.d(TAG, "Backfill pass done: " + done + " photos checked, " + unresolved + " unresolved.");
+        if (unresolved > 0 && getRunAttemptCount() < MAX_ATTEMPTS) {
+            return Result.retry();
+        }
+        return Result.success();
+    }
+
+    private void throttle() {
+        long wait = lastGeocoderCallAt + MIN_GEOCODER_INTERVAL_MS - System.currentTimeMillis();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lastGeocoderCallAt = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,116 @@
+package com.lunartag.app.workers;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.lunartag.app.audit.AuditArchive;
+import com.lunartag.app.data.AppDatabase;
+import com.lunartag.app.data.AuditLogDao;
+import com.lunartag.app.model.AuditLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the 'audit_logs' table small: logs older than the retention age are moved into
+ * compressed segments of the {@link AuditArchive}, then deleted from the table.
+ *
+ * Rows are read in id order, a chunk at a time, up to one segment's worth. The segment is
+ * committed to the archive first and the rows are deleted afterwards, in small batches.
+ * A run killed between the two finishes the delete of the last segment when it starts again,
+ * so a row is never lost and never archived twice.
+ */
+public class AuditRetentionWorker extends Worker {
+
+    private static final String TAG = "AuditRetentionWorker";
+    public static final String UNIQUE_WORK_NAME = "audit_retention";
+
+    // Preferences for Settings (retention age)
+    private static final String PREFS_SETTINGS = "LunarTagSettings";
+    private static final String KEY_RETENTION_DAYS = "audit_retention_days";
+    public static final int DEFAULT_RETENTION_DAYS = 30;
+
+    private static final int SEGMENT_ROWS = 5000;
+    private static final int READ_CHUNK = 500;
+    private static final int DELETE_CHUNK = 500;
+
+    public AuditRetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the daily retention run. Does nothing if it is already scheduled.
+     */
+    public static void enqueue(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(AuditRetentionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        AuditLogDao dao = AppDatabase.getDatabase(context).auditLogDao();
+        AuditArchive archive = AuditArchive.getInstance(context);
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_SETTINGS, Context.MODE_PRIVATE);
+        int days = prefs.getInt(KEY_RETENTION_DAYS, DEFAULT_RETENTION_DAYS);
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+
+        // Finish a delete a killed run left behind (a no-op otherwise).
+        AuditArchive.Segment last = archive.getLastSegment();
+        if (last != null) {
+            deleteArchived(dao, last);
+        }
+
+        long afterId = 0;
+        int archived = 0;
+        while (!isStopped()) {
+            List<AuditLog> rows = new ArrayList<>();
+            while (rows.size() < SEGMENT_ROWS) {
+                List<AuditLog> chunk = dao.getLogsOlderThan(cutoff, afterId,
+                        Math.min(READ_CHUNK, SEGMENT_ROWS - rows.size()));
+                if (chunk.isEmpty()) break;
+                rows.addAll(chunk);
+                afterId = chunk.get(chunk.size() - 1).getId();
+            }
+            if (rows.isEmpty()) break;
+
+            AuditArchive.Segment segment;
+            try {
+                segment = archive.append(rows, cutoff);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot write an archive segment: " + e.getMessage());
+                return Result.retry();
+            }
+            deleteArchived(dao, segment);
+            archived += rows.size();
+        }
+
+        Log.d(TAG, "Archived " + archived + " audit logs older than " + days + " days. " + archive.describe());
+        return isStopped() ? Result.retry() : Result.success();
+    }
+
+    private static void deleteArchived(AuditLogDao dao, AuditArchive.Segment segment) {
+        while (dao.deleteArchived(segment.minId, segment.maxId, segment.cutoff, DELETE_CHUNK) > 0) {
+            // Keep going: each call is its own short transaction.
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.lunartag.app.workers;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.lunartag.app.capture.CaptureJournal;
+import com.lunartag.app.model.CaptureJournalEntry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the {@link CaptureJournal}: watermarks, exports and schedules every photo that was
+ * captured in deferred mode, oldest first.
+ *
+ * Runs are chained (APPEND_OR_REPLACE), so a capture journaled while a run is finishing still
+ * gets a run of its own. WorkManager persists the request, and the journal holds each job's
+ * progress, so work interrupted by process death resumes on the next run.
+ * Progress is published as "done" / "total".
+ */
+public class DeferredCaptureWorker extends Worker {
+
+    private static final String TAG = "DeferredCaptureWorker";
+    public static final String UNIQUE_WORK_NAME = "deferred_capture";
+
+    public static final String PROGRESS_DONE = "done";
+    public static final String PROGRESS_TOTAL = "total";
+
+    public DeferredCaptureWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a run after any run already queued.
+     */
+    public static void enqueue(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(DeferredCaptureWorker.class)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        CaptureJournal journal = CaptureJournal.getInstance(getApplicationContext());
+        journal.sweepStaging();
+
+        List<CaptureJournalEntry> entries = journal.getUnfinished();
+        int total = entries.size();
+        int done = 0;
+        boolean retry = false;
+        Log.d(TAG, total + " deferred captures to process.");
+
+        for (CaptureJournalEntry entry : entries) {
+            if (isStopped()) return Result.retry();
+            if (!journal.process(entry)) retry = true;
+            done++;
+            setProgressAsync(new Data.Builder()
+                    .putInt(PROGRESS_DONE, done)
+                    .putInt(PROGRESS_TOTAL, total)
+                    .build());
+        }
+        return retry ? Result.retry() : Result.success();
+    }
+}
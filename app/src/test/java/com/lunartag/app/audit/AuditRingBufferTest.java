@@ -0,0 +1,154 @@
+package com.lunartag.app.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The MPSC contract of {@link AuditRingBuffer}: a full buffer refuses instead of overwriting,
+ * positions wrap around the slots, and several producers against one consumer lose nothing
+ * and duplicate nothing.
+ */
+public class AuditRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new AuditRingBuffer<Integer>(1).capacity());
+        assertEquals(8, new AuditRingBuffer<Integer>(8).capacity());
+        assertEquals(16, new AuditRingBuffer<Integer>(9).capacity());
+    }
+
+    @Test
+    public void offerReturnsFalseWhenFull() {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        assertEquals(4, buffer.produced()); // A refused offer claims nothing
+
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void fifoAcrossManyWrapArounds() {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(8);
+        int next = 0;
+        int expected = 0;
+        // Uneven batches, so the head and tail meet every slot at every offset.
+        for (int lap = 0; lap < 10_000; lap++) {
+            int batch = 1 + lap % buffer.capacity();
+            for (int i = 0; i < batch; i++) {
+                assertTrue(buffer.offer(next++));
+            }
+            for (int i = 0; i < batch; i++) {
+                assertEquals(Integer.valueOf(expected++), buffer.poll());
+            }
+            assertNull(buffer.poll());
+            assertEquals(0, buffer.size());
+        }
+        assertEquals(next, buffer.produced());
+        assertEquals(expected, buffer.consumed());
+        assertTrue(buffer.produced() > 1_000L * buffer.capacity());
+    }
+
+    @Test
+    public void producedAndConsumedCount() {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+        assertEquals(0, buffer.produced());
+        assertEquals(0, buffer.consumed());
+        buffer.offer(1);
+        buffer.offer(2);
+        buffer.offer(3);
+        assertEquals(3, buffer.produced());
+        assertEquals(0, buffer.consumed());
+        assertEquals(3, buffer.size());
+
+        buffer.poll();
+        assertEquals(3, buffer.produced());
+        assertEquals(1, buffer.consumed());
+        assertEquals(2, buffer.size());
+
+        buffer.poll();
+        buffer.poll();
+        assertNull(buffer.poll()); // An empty poll consumes nothing
+        assertEquals(3, buffer.consumed());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test(timeout = 60_000)
+    public void producersAgainstOneConsumerLoseAndDuplicateNothing() throws Exception {
+        final int producers = 4;
+        final int perProducer = 200_000;
+        // Small, so producers keep running into a full buffer and the slots wrap many times.
+        AuditRingBuffer<long[]> buffer = new AuditRingBuffer<>(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        long[] element = {producer, i};
+                        while (!buffer.offer(element)) {
+                            Thread.yield(); // Full: the consumer is behind
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "producer-" + p);
+            threads.add(thread);
+            thread.start();
+        }
+
+        // This thread is the single consumer.
+        int[] nextFrom = new int[producers];
+        long received = 0;
+        start.countDown();
+        while (received < (long) producers * perProducer) {
+            long[] element = buffer.poll();
+            if (element == null) {
+                if (failure.get() != null) break;
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) element[0];
+            // One producer's offers are claimed in order, so they arrive in order: a gap is a
+            // lost element, a repeat is a duplicate.
+            assertEquals("producer " + producer, nextFrom[producer], element[1]);
+            nextFrom[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        for (int p = 0; p < producers; p++) {
+            assertEquals("producer " + p, perProducer, nextFrom[p]);
+        }
+        assertNull(buffer.poll());
+        assertEquals((long) producers * perProducer, buffer.produced());
+        assertEquals(buffer.produced(), buffer.consumed());
+        assertEquals(0, buffer.size());
+    }
+}
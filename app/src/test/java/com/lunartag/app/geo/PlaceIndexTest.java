@@ -0,0 +1,209 @@
+package com.lunartag.app.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Checks {@link PlaceIndex#nearest} against a brute-force scan of every place, on index files
+ * written in the layout of tools/OfflineIndexBuilder.java: random queries at every latitude,
+ * queries on and next to cell edges, and places on the far side of the antimeridian.
+ */
+public class PlaceIndexTest {
+
+    private static final int PRECISION = 6; // As built for the app (see OfflineIndexBuilder)
+    private static final double MAX_DISTANCE = 500; // As queried by OfflineGeocoder
+
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (File file : files) file.delete();
+    }
+
+    @Test
+    public void randomQueriesMatchBruteForce() throws IOException {
+        Random random = new Random(9);
+        List<double[]> places = new ArrayList<>();
+        // Clusters a few km across, so most queries have several candidates in range.
+        for (int c = 0; c < 200; c++) {
+            double lat = -89 + random.nextDouble() * 178;
+            double lon = -180 + random.nextDouble() * 360;
+            for (int i = 0; i < 50; i++) {
+                places.add(new double[]{clampLat(lat + random.nextGaussian() * 0.01),
+                        wrapLon(lon + random.nextGaussian() * 0.01 / Math.cos(Math.toRadians(lat)))});
+            }
+        }
+        PlaceIndex index = build(places);
+
+        for (int q = 0; q < 10_000; q++) {
+            double[] near = places.get(random.nextInt(places.size()));
+            double lat = clampLat(near[0] + random.nextGaussian() * 0.005);
+            double lon = wrapLon(near[1] + random.nextGaussian() * 0.005);
+            assertSameAnswer(index, places, lat, lon);
+        }
+    }
+
+    @Test
+    public void queriesOnCellEdgesMatchBruteForce() throws IOException {
+        Random random = new Random(10);
+        List<double[]> places = new ArrayList<>();
+        List<double[]> queries = new ArrayList<>();
+        for (int c = 0; c < 100; c++) {
+            double[] cell = Geohash.bounds(Geohash.encode(-80 + random.nextDouble() * 160,
+                    -180 + random.nextDouble() * 360, PRECISION));
+            // Places just across each edge and corner; queries on the edges and a hair inside.
+            double eps = 1e-6;
+            for (double lat : new double[]{cell[0] - eps, cell[0], cell[2], cell[2] + eps}) {
+                for (double lon : new double[]{cell[1] - eps, cell[1], cell[3], cell[3] + eps}) {
+                    places.add(new double[]{lat + 0.001 * (random.nextDouble() - 0.5), wrapLon(lon)});
+                    queries.add(new double[]{lat, wrapLon(lon)});
+                }
+            }
+            double midLat = (cell[0] + cell[2]) / 2;
+            double midLon = (cell[1] + cell[3]) / 2;
+            queries.add(new double[]{cell[0] + eps, midLon});
+            queries.add(new double[]{cell[2] - eps, midLon});
+            queries.add(new double[]{midLat, cell[1] + eps});
+            queries.add(new double[]{midLat, wrapLon(cell[3] - eps)});
+        }
+        PlaceIndex index = build(places);
+        for (double[] query : queries) {
+            assertSameAnswer(index, places, query[0], query[1]);
+        }
+    }
+
+    @Test
+    public void findsPlacesAcrossTheAntimeridian() throws IOException {
+        List<double[]> places = new ArrayList<>();
+        places.add(new double[]{-17.7, -179.999}); // Fiji, east of the line
+        places.add(new double[]{-17.7, -179.99});
+        places.add(new double[]{65.5, 179.998});   // Chukotka, west of the line
+        PlaceIndex index = build(places);
+
+        PlaceIndex.Match match = index.nearest(-17.7, 179.999, MAX_DISTANCE);
+        assertNotNull(match);
+        assertEquals("place-0", match.name);
+        assertEquals(PlaceIndex.distance(-17.7, 179.999, -17.7, -179.999), match.distanceMeters, 1e-6);
+        assertEquals(212, match.distanceMeters, 1);
+
+        match = index.nearest(65.5, -179.998, MAX_DISTANCE);
+        assertNotNull(match);
+        assertEquals("place-2", match.name);
+
+        Random random = new Random(11);
+        for (int q = 0; q < 1_000; q++) {
+            double lat = random.nextBoolean() ? -17.7 : 65.5;
+            double lon = wrapLon(180 + (random.nextDouble() - 0.5) * 0.03);
+            assertSameAnswer(index, places, lat + (random.nextDouble() - 0.5) * 0.003, lon);
+        }
+    }
+
+    @Test
+    public void nothingInRangeIsNull() throws IOException {
+        List<double[]> places = new ArrayList<>();
+        places.add(new double[]{51.5, -0.12});
+        PlaceIndex index = build(places);
+        assertNull(index.nearest(51.5, -0.11, MAX_DISTANCE)); // ~690 m east
+        assertNotNull(index.nearest(51.5, -0.115, MAX_DISTANCE));
+    }
+
+    // --- Helpers ---
+
+    /**
+     * The brute-force answer: the closest of all places, if within range.
+     */
+    private static void assertSameAnswer(PlaceIndex index, List<double[]> places, double lat, double lon) {
+        double best = Double.MAX_VALUE;
+        for (double[] place : places) {
+            best = Math.min(best, PlaceIndex.distance(lat, lon, place[0], place[1]));
+        }
+        PlaceIndex.Match match = index.nearest(lat, lon, MAX_DISTANCE);
+        String where = "(" + lat + ", " + lon + ")";
+        if (best > MAX_DISTANCE) {
+            assertNull(where, match);
+        } else {
+            assertNotNull(where + " brute force found " + best + " m", match);
+            // Compared by distance: two places can be equally close.
+            assertEquals(where, best, match.distanceMeters, 1e-6);
+        }
+    }
+
+    /**
+     * Writes the places as an index file (named "place-<i>", latitude and longitude rounded to
+     * microdegrees like the builder) and maps it. The list is rounded in place to match.
+     */
+    private PlaceIndex build(List<double[]> places) throws IOException {
+        TreeMap<Long, List<Integer>> buckets = new TreeMap<>();
+        for (int i = 0; i < places.size(); i++) {
+            double[] place = places.get(i);
+            place[0] = Math.round(place[0] * 1e6) / 1e6;
+            place[1] = Math.round(place[1] * 1e6) / 1e6;
+            long cell = Geohash.toLong(Geohash.encode(place[0], place[1], PRECISION));
+            buckets.computeIfAbsent(cell, k -> new ArrayList<>()).add(i);
+        }
+
+        int placesOffset = PlaceIndex.HEADER_SIZE + buckets.size() * PlaceIndex.BUCKET_SIZE;
+        int stringsOffset = placesOffset + places.size() * PlaceIndex.PLACE_SIZE;
+        File file = File.createTempFile("places", ".idx");
+        files.add(file);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(PlaceIndex.MAGIC);
+            out.writeInt(PlaceIndex.VERSION);
+            out.writeInt(PRECISION);
+            out.writeInt(buckets.size());
+            out.writeInt(places.size());
+            out.writeInt(placesOffset);
+            out.writeInt(stringsOffset);
+            int first = 0;
+            for (Map.Entry<Long, List<Integer>> bucket : buckets.entrySet()) {
+                out.writeLong(bucket.getKey());
+                out.writeInt(first);
+                out.writeInt(bucket.getValue().size());
+                first += bucket.getValue().size();
+            }
+            List<byte[]> names = new ArrayList<>();
+            int nameOffset = 0;
+            for (List<Integer> bucket : buckets.values()) {
+                for (int i : bucket) {
+                    double[] place = places.get(i);
+                    out.writeInt((int) Math.round(place[0] * 1e6));
+                    out.writeInt((int) Math.round(place[1] * 1e6));
+                    out.writeInt(nameOffset);
+                    byte[] name = ("place-" + i).getBytes(StandardCharsets.UTF_8);
+                    names.add(name);
+                    nameOffset += 2 + name.length;
+                }
+            }
+            for (byte[] name : names) {
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        }
+        return PlaceIndex.open(file);
+    }
+
+    private static double clampLat(double lat) {
+        return Math.max(-90, Math.min(90, lat));
+    }
+
+    private static double wrapLon(double lon) {
+        if (lon >= 180) return lon - 360;
+        if (lon < -180) return lon + 360;
+        return lon;
+    }
+}
@@ -0,0 +1,262 @@
+package com.lunartag.app.jpeg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Golden-file tests of the splicer on JPEGs from another encoder (see tools/JpegFixtureGenerator):
+ * 4:2:0 and 4:4:4, with and without restart markers, 203x157 so the last MCU row and column are
+ * partial. Every MCU row of every fixture is used as a strip top once: row 0, restart-aligned
+ * rows (RSTn fast path), rows inside a restart interval and rows without DRI (Huffman walk).
+ *
+ * Each splice must keep every byte of the host scan above the strip, down to the bit where the
+ * strip starts, and must decode cleanly, both with the strict ScanDecoder and with ImageIO.
+ */
+public class JpegSplicerTest {
+
+    private static final String[] FIXTURES = {
+            "host_420.jpg", "host_420_dri.jpg", "host_444.jpg", "host_444_dri.jpg"
+    };
+
+    @Test
+    public void fixturesHaveTheLayoutsUnderTest() throws IOException {
+        assertLayout("host_420.jpg", 2, 0);
+        assertLayout("host_420_dri.jpg", 2, 5);
+        assertLayout("host_444.jpg", 1, 0);
+        assertLayout("host_444_dri.jpg", 1, 4);
+    }
+
+    @Test
+    public void everyMcuRowSplicesWithoutTouchingTheRowsAbove() throws IOException {
+        for (String name : FIXTURES) {
+            byte[] host = fixture(name);
+            JpegStructure jpeg = JpegStructure.parse(host);
+            for (int row = 0; row < jpeg.getMcuRows(); row++) {
+                assertSplice(name, host, row * jpeg.getMcuHeight());
+            }
+        }
+    }
+
+    @Test
+    public void productionStripTopSplicesCleanly() throws IOException {
+        for (String name : FIXTURES) {
+            byte[] host = fixture(name);
+            JpegStructure jpeg = JpegStructure.parse(host);
+            // Same call as CaptureProcessor: a watermark block near the bottom.
+            assertSplice(name, host, JpegSplicer.alignStripTop(jpeg, jpeg.height - 40));
+        }
+    }
+
+    @Test
+    public void alignStripTopPrefersRestartBoundaries() throws IOException {
+        // 4:2:0, 13 MCUs per row, DRI 5: only row 5 (MCU 65) starts an interval in range.
+        JpegStructure dri = JpegStructure.parse(fixture("host_420_dri.jpg"));
+        assertEquals(5 * 16, JpegSplicer.alignStripTop(dri, 8 * 16 + 3));
+        // Row 0 counts as a boundary too.
+        assertEquals(0, JpegSplicer.alignStripTop(dri, 4 * 16 + 15));
+
+        // 4:4:4, 26 MCUs per row, DRI 4: every even row starts an interval.
+        JpegStructure even = JpegStructure.parse(fixture("host_444_dri.jpg"));
+        assertEquals(16 * 8, JpegSplicer.alignStripTop(even, 17 * 8 + 5));
+
+        // Without DRI: the MCU row that holds the desired top.
+        JpegStructure plain = JpegStructure.parse(fixture("host_420.jpg"));
+        assertEquals(8 * 16, JpegSplicer.alignStripTop(plain, 8 * 16 + 3));
+        // Clamped into the image.
+        assertEquals(9 * 16, JpegSplicer.alignStripTop(plain, 10_000));
+        assertEquals(0, JpegSplicer.alignStripTop(plain, -5));
+    }
+
+    @Test
+    public void progressiveHostIsNeverSpliced() throws IOException {
+        // CaptureProcessor falls back to the full re-encode when parse throws or the layout is
+        // not spliceable; a progressive file must end up on one of those two paths.
+        byte[] progressive = encode(stripPicture(64, 48), true);
+        JpegStructure jpeg;
+        try {
+            jpeg = JpegStructure.parse(progressive);
+        } catch (IOException expected) {
+            return;
+        }
+        assertFalse(jpeg.isSpliceable());
+        try {
+            JpegSplicer.splice(progressive, jpeg, 0, new int[64 * 48]);
+            fail("Progressive JPEG was spliced");
+        } catch (IOException expected) {
+            // Same fallback.
+        }
+    }
+
+    @Test
+    public void unalignedStripTopIsRejected() throws IOException {
+        byte[] host = fixture("host_444.jpg");
+        JpegStructure jpeg = JpegStructure.parse(host);
+        try {
+            JpegSplicer.splice(host, jpeg, 13, new int[jpeg.width * (jpeg.height - 13)]);
+            fail("Strip top inside an MCU row was accepted");
+        } catch (IOException expected) {
+            // alignStripTop never returns such a row.
+        }
+    }
+
+    // --- The checks ---
+
+    private static void assertSplice(String name, byte[] host, int stripTop) throws IOException {
+        String where = name + " strip at row " + stripTop;
+        JpegStructure jpeg = JpegStructure.parse(host);
+        int stripRows = jpeg.height - stripTop;
+        BufferedImage stripImage = stripPicture(jpeg.width, stripRows);
+        int[] strip = stripImage.getRGB(0, 0, jpeg.width, stripRows, null, 0, jpeg.width);
+
+        byte[] spliced = JpegSplicer.splice(host, JpegStructure.parse(host), stripTop, strip);
+
+        ScanDecoder.Scan before;
+        ScanDecoder.Scan after;
+        before = ScanDecoder.decode(host);
+        try {
+            after = ScanDecoder.decode(spliced);
+        } catch (IOException e) {
+            throw new AssertionError(where + ": spliced scan does not decode: " + e.getMessage(), e);
+        }
+        assertEquals(where, before.mcuCount(), after.mcuCount());
+
+        // Every byte of the host up to the strip's first MCU is unchanged, and so are the bits of
+        // the shared byte that still belong to the MCU above.
+        int firstMcu = stripTop / before.mcuHeight * before.mcusPerRow;
+        if (firstMcu > 0) {
+            int cut = before.mcuByte[firstMcu];
+            int bits = before.mcuBit[firstMcu];
+            for (int i = 0; i < cut; i++) {
+                if (host[i] != spliced[i]) {
+                    fail(where + ": byte " + i + " of " + cut + " above the strip changed");
+                }
+            }
+            int mask = (0xFF << (8 - bits)) & 0xFF;
+            assertEquals(where + ": partial byte at the cut", host[cut] & mask, spliced[cut] & mask);
+            assertEquals(where, cut, after.mcuByte[firstMcu]);
+            assertEquals(where, bits, after.mcuBit[firstMcu]);
+        }
+        for (int mcu = 0; mcu < firstMcu; mcu++) {
+            for (int b = 0; b < before.blocks[mcu].length; b++) {
+                assertArrayEquals(where + ": MCU " + mcu, before.blocks[mcu][b], after.blocks[mcu][b]);
+            }
+        }
+
+        // An independent decoder agrees, with no warnings: the rows above are pixel-identical
+        // (except the last one when chroma is upsampled across the cut) and the strip shows the
+        // new pixels.
+        BufferedImage hostPixels = decodeStrict(host, where + " (host)");
+        BufferedImage splicedPixels = decodeStrict(spliced, where);
+        int shared = jpeg.maxV > 1 ? Math.max(0, stripTop - 1) : stripTop;
+        for (int y = 0; y < shared; y++) {
+            for (int x = 0; x < jpeg.width; x++) {
+                if (hostPixels.getRGB(x, y) != splicedPixels.getRGB(x, y)) {
+                    fail(where + ": pixel (" + x + "," + y + ") above the strip changed");
+                }
+            }
+        }
+        double error = meanAbsoluteError(stripImage, splicedPixels, stripTop);
+        assertTrue(where + ": strip differs from its pixels by " + error, error < 8);
+    }
+
+    private static void assertLayout(String name, int lumaSampling, int restartInterval) throws IOException {
+        JpegStructure jpeg = JpegStructure.parse(fixture(name));
+        assertTrue(name, jpeg.isSpliceable());
+        assertEquals(name, 3, jpeg.components.length);
+        assertEquals(name, lumaSampling, jpeg.components[0].h);
+        assertEquals(name, lumaSampling, jpeg.components[0].v);
+        assertEquals(name, restartInterval, jpeg.restartInterval);
+        assertTrue(name + " is not MCU aligned", jpeg.width % jpeg.getMcuWidth() != 0
+                && jpeg.height % jpeg.getMcuHeight() != 0);
+    }
+
+    // --- Helpers ---
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = JpegSplicerTest.class.getResourceAsStream("/jpeg/" + name)) {
+            if (in == null) throw new IOException("Missing fixture " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * A watermark-like strip: a dark band with light bars of several widths.
+     */
+    private static BufferedImage stripPicture(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean bar = (x / 6) % 3 == 0 && (y / 4) % 2 == 0;
+                image.setRGB(x, y, bar ? 0xF0E8D0 : 0x202840);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decodeStrict(byte[] jpeg, String where) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        List<String> warnings = new ArrayList<>();
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            reader.setInput(in);
+            reader.addIIOReadWarningListener((source, warning) -> warnings.add(warning));
+            BufferedImage image = reader.read(0);
+            assertTrue(where + ": decoder warnings " + warnings, warnings.isEmpty());
+            return image;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static double meanAbsoluteError(BufferedImage expected, BufferedImage decoded, int top) {
+        long sum = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = decoded.getRGB(x, top + y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    sum += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                }
+            }
+        }
+        return sum / (3.0 * expected.getWidth() * expected.getHeight());
+    }
+
+    private static byte[] encode(BufferedImage image, boolean progressive) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (progressive) param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+}
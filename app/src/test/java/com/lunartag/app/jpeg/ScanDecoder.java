@@ -0,0 +1,242 @@
+package com.lunartag.app.jpeg;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A strict, independent baseline scan decoder for the splicer tests. It shares no code with the
+ * classes under test: its own marker parser, Huffman decoder and bit reader.
+ *
+ * It Huffman-decodes every block of the single scan (no dequantization, no IDCT) and records where
+ * each MCU starts in the file, down to the bit. Anything a conforming decoder would complain about
+ * fails: a marker inside an MCU, restart markers missing or out of sequence, padding bits that are
+ * not 1s, data between the last MCU and EOI, or bytes after EOI.
+ */
+final class ScanDecoder {
+
+    /**
+     * What a scan decoded to.
+     */
+    static final class Scan {
+        int width;
+        int height;
+        int mcusPerRow;
+        int mcuRows;
+        int mcuHeight;
+        int restartInterval;
+        /** Offset of the byte holding the first bit of each MCU. */
+        int[] mcuByte;
+        /** Bits of that byte that belong to the previous MCU (0..7). */
+        int[] mcuBit;
+        /** Coefficients of every block of every MCU, zigzag order, DC undifferenced. */
+        int[][][] blocks;
+
+        int mcuCount() {
+            return mcusPerRow * mcuRows;
+        }
+    }
+
+    private static final class Table {
+        final int[] maxCode = new int[18];
+        final int[] valPtr = new int[17];
+        final int[] minCode = new int[17];
+        int[] values;
+    }
+
+    private final byte[] data;
+    private int pos;
+    private int current;
+    private int currentOffset;
+    private int bitsLeft;
+
+    private ScanDecoder(byte[] data) {
+        this.data = data;
+    }
+
+    static Scan decode(byte[] jpeg) throws IOException {
+        return new ScanDecoder(jpeg).run();
+    }
+
+    private Scan run() throws IOException {
+        if (u8(0) != 0xFF || u8(1) != 0xD8) throw new IOException("No SOI");
+        Scan scan = new Scan();
+        Table[] dc = new Table[4];
+        Table[] ac = new Table[4];
+        int[] ids = null, h = null, v = null;
+        int[] scanSlots = null, dcSel = null, acSel = null;
+        int p = 2;
+        while (true) {
+            if (u8(p) != 0xFF) throw new IOException("Expected a marker at " + p);
+            int marker = u8(p + 1);
+            int length = (u8(p + 2) << 8) | u8(p + 3);
+            int body = p + 4;
+            if (marker == 0xC0) {
+                scan.height = (u8(body + 1) << 8) | u8(body + 2);
+                scan.width = (u8(body + 3) << 8) | u8(body + 4);
+                int n = u8(body + 5);
+                ids = new int[n];
+                h = new int[n];
+                v = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = u8(body + 6 + 3 * i);
+                    h[i] = n == 1 ? 1 : u8(body + 7 + 3 * i) >> 4;
+                    v[i] = n == 1 ? 1 : u8(body + 7 + 3 * i) & 0x0F;
+                }
+            } else if (marker == 0xC4) {
+                int q = body;
+                while (q < p + 2 + length) {
+                    int tcTh = u8(q++);
+                    Table table = new Table();
+                    int[] counts = new int[17];
+                    int total = 0;
+                    for (int i = 1; i <= 16; i++) {
+                        counts[i] = u8(q++);
+                        total += counts[i];
+                    }
+                    table.values = new int[total];
+                    for (int i = 0; i < total; i++) table.values[i] = u8(q++);
+                    int code = 0, k = 0;
+                    for (int len = 1; len <= 16; len++) {
+                        table.valPtr[len] = k;
+                        table.minCode[len] = code;
+                        code += counts[len];
+                        k += counts[len];
+                        table.maxCode[len] = counts[len] == 0 ? -1 : code - 1;
+                        code <<= 1;
+                    }
+                    (tcTh >> 4 == 0 ? dc : ac)[tcTh & 3] = table;
+                }
+            } else if (marker == 0xDD) {
+                scan.restartInterval = (u8(body) << 8) | u8(body + 1);
+            } else if (marker == 0xDA) {
+                int n = u8(body);
+                scanSlots = new int[n];
+                dcSel = new int[n];
+                acSel = new int[n];
+                for (int i = 0; i < n; i++) {
+                    int id = u8(body + 1 + 2 * i);
+                    scanSlots[i] = -1;
+                    for (int c = 0; c < ids.length; c++) {
+                        if (ids[c] == id) scanSlots[i] = c;
+                    }
+                    dcSel[i] = u8(body + 2 + 2 * i) >> 4;
+                    acSel[i] = u8(body + 2 + 2 * i) & 0x0F;
+                }
+                pos = p + 2 + length;
+                break;
+            } else if (marker == 0xD9 || (marker >= 0xC1 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8
+                    && marker != 0xCC)) {
+                throw new IOException("Not a single-scan baseline JPEG (marker " + Integer.toHexString(marker) + ")");
+            }
+            p += 2 + length;
+        }
+
+        int maxH = 1, maxV = 1;
+        for (int i = 0; i < h.length; i++) {
+            maxH = Math.max(maxH, h[i]);
+            maxV = Math.max(maxV, v[i]);
+        }
+        scan.mcuHeight = 8 * maxV;
+        scan.mcusPerRow = (scan.width + 8 * maxH - 1) / (8 * maxH);
+        scan.mcuRows = (scan.height + scan.mcuHeight - 1) / scan.mcuHeight;
+        int mcus = scan.mcuCount();
+        scan.mcuByte = new int[mcus];
+        scan.mcuBit = new int[mcus];
+        scan.blocks = new int[mcus][][];
+
+        int blocksPerMcu = 0;
+        for (int slot : scanSlots) blocksPerMcu += h[slot] * v[slot];
+        int[] predictors = new int[scanSlots.length];
+        int restart = scan.restartInterval;
+        for (int mcu = 0; mcu < mcus; mcu++) {
+            if (restart > 0 && mcu > 0 && mcu % restart == 0) {
+                expectPaddingThenMarker(0xD0 + ((mcu / restart - 1) & 7));
+                Arrays.fill(predictors, 0);
+            }
+            scan.mcuByte[mcu] = bitsLeft == 0 ? pos : currentOffset;
+            scan.mcuBit[mcu] = bitsLeft == 0 ? 0 : 8 - bitsLeft;
+            int[][] blocks = new int[blocksPerMcu][];
+            int b = 0;
+            for (int i = 0; i < scanSlots.length; i++) {
+                int count = h[scanSlots[i]] * v[scanSlots[i]];
+                for (int n = 0; n < count; n++) {
+                    int[] block = new int[64];
+                    int size = decode(dc[dcSel[i]]);
+                    predictors[i] += size == 0 ? 0 : extend(bits(size), size);
+                    block[0] = predictors[i];
+                    for (int k = 1; k < 64; ) {
+                        int rs = decode(ac[acSel[i]]);
+                        if ((rs & 0x0F) == 0) {
+                            if (rs != 0xF0) break;
+                            k += 16;
+                            continue;
+                        }
+                        k += rs >> 4;
+                        if (k > 63) throw new IOException("Coefficient run past the block in MCU " + mcu);
+                        block[k++] = extend(bits(rs & 0x0F), rs & 0x0F);
+                    }
+                    blocks[b++] = block;
+                }
+            }
+            scan.blocks[mcu] = blocks;
+        }
+        expectPaddingThenMarker(0xD9);
+        if (pos != data.length) throw new IOException((data.length - pos) + " bytes after EOI");
+        return scan;
+    }
+
+    /**
+     * The rest of the current byte must be 1-bits, then the marker must follow immediately.
+     */
+    private void expectPaddingThenMarker(int marker) throws IOException {
+        if (bitsLeft > 0 && (current & ((1 << bitsLeft) - 1)) != (1 << bitsLeft) - 1) {
+            throw new IOException("Padding before marker is not all 1-bits at " + pos);
+        }
+        bitsLeft = 0;
+        if (u8(pos) != 0xFF || u8(pos + 1) != marker) {
+            throw new IOException("Expected marker FF" + Integer.toHexString(marker).toUpperCase()
+                    + " at " + pos + ", found " + Integer.toHexString(u8(pos)) + Integer.toHexString(u8(pos + 1)));
+        }
+        pos += 2;
+    }
+
+    private int decode(Table table) throws IOException {
+        if (table == null) throw new IOException("Missing Huffman table");
+        int code = bit();
+        int len = 1;
+        while (code > table.maxCode[len]) {
+            if (++len > 16) throw new IOException("Bad Huffman code before " + pos);
+            code = (code << 1) | bit();
+        }
+        return table.values[table.valPtr[len] + code - table.minCode[len]];
+    }
+
+    private int bits(int count) throws IOException {
+        int value = 0;
+        for (int i = 0; i < count; i++) value = (value << 1) | bit();
+        return value;
+    }
+
+    private int bit() throws IOException {
+        if (bitsLeft == 0) {
+            if (pos >= data.length) throw new IOException("Scan runs past the end of the file");
+            currentOffset = pos;
+            current = u8(pos++);
+            if (current == 0xFF) {
+                if (u8(pos) != 0x00) throw new IOException("Marker FF" + Integer.toHexString(u8(pos)) + " inside an MCU at " + (pos - 1));
+                pos++;
+            }
+            bitsLeft = 8;
+        }
+        return (current >> --bitsLeft) & 1;
+    }
+
+    private static int extend(int value, int size) {
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+
+    private int u8(int p) throws IOException {
+        if (p < 0 || p >= data.length) throw new IOException("Read past the end at " + p);
+        return data[p] & 0xFF;
+    }
+}
@@ -0,0 +1,241 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A host JPEG as the camera or an encoder writes it (JFIF APP0, an old Exif APP1, an XMP APP1
+ * and a comment before the tables) goes through the stream in every way an encoder might
+ * write it. The result must always be the same: SOI, the new Exif APP1, then the host's
+ * header without its old Exif, then the untouched rest of the file.
+ */
+public class ExifInjectingOutputStreamTest {
+
+    private static final byte[] XMP_ID = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] exif = new ExifSegmentBuilder()
+            .setOrientation(6)
+            .setDateTimeOriginal(1709647629000L, TimeZone.getTimeZone("UTC"))
+            .setGps(48.8584, 2.2945, 35, 1709647629000L)
+            .setThumbnail(ExifSegmentBuilderTest.fakeThumbnail(700))
+            .build();
+    private final byte[] oldExif = new ExifSegmentBuilder().setOrientation(3).setImageDescription("old").build();
+
+    @Test
+    public void wholeBufferWrite() throws IOException {
+        Host host = host();
+        assertInjected(host, inject(out -> out.write(host.bytes)));
+    }
+
+    @Test
+    public void singleByteWrites() throws IOException {
+        Host host = host();
+        assertInjected(host, inject(out -> {
+            for (byte b : host.bytes) out.write(b);
+        }));
+    }
+
+    @Test
+    public void randomChunkWrites() throws IOException {
+        Host host = host();
+        for (long seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            int maxChunk = seed < 10 ? 7 : 300;
+            assertInjected(host, inject(out -> {
+                int off = 0;
+                while (off < host.bytes.length) {
+                    int n = Math.min(host.bytes.length - off, 1 + random.nextInt(maxChunk));
+                    out.write(host.bytes, off, n);
+                    off += n;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Two writes, split at every position of the header: inside SOI, between FF and a marker
+     * code, inside a length, inside the Exif identifier and inside a skipped segment body.
+     */
+    @Test
+    public void writesSplitAtEveryHeaderPosition() throws IOException {
+        Host host = host();
+        for (int split = 1; split <= host.headerEnd + 4; split++) {
+            int at = split;
+            byte[] out = inject(stream -> {
+                stream.write(host.bytes, 0, at);
+                stream.write(host.bytes, at, host.bytes.length - at);
+            });
+            try {
+                assertInjected(host, out);
+            } catch (AssertionError e) {
+                throw new AssertionError("Split at " + at + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Test
+    public void fillBytesBeforeAMarkerAreKept() throws IOException {
+        Host host = host();
+        // FF FF FF E0: two fill bytes before APP0, which a decoder must skip.
+        ByteArrayOutputStream padded = new ByteArrayOutputStream();
+        padded.write(host.bytes, 0, 2);
+        padded.write(0xFF);
+        padded.write(0xFF);
+        padded.write(host.bytes, 2, host.bytes.length - 2);
+        byte[] out = inject(stream -> stream.write(padded.toByteArray()));
+        assertEquals(Arrays.asList("E1 Exif", "E0 JFIF", "E1 XMP", "FE"), headerSegments(out));
+        assertSamePixels(host.bytes, out);
+    }
+
+    @Test
+    public void notAJpegIsRejected() {
+        try {
+            inject(out -> out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+            fail("PNG signature was accepted");
+        } catch (IOException expected) {
+            // Nothing is written for a stream that is not a JPEG.
+        }
+    }
+
+    // --- The checks ---
+
+    private void assertInjected(Host host, byte[] out) throws IOException {
+        // The new Exif APP1 comes first, before JFIF APP0, and is the only Exif block.
+        assertEquals(Arrays.asList("E1 Exif", "E0 JFIF", "E1 XMP", "FE"), headerSegments(out));
+        assertArrayEquals(exif, Arrays.copyOfRange(out, 2, 2 + exif.length));
+        ExifSegmentBuilderTest.Tiff tiff = ExifSegmentBuilderTest.Tiff.parse(exif);
+        assertEquals(6, tiff.ifd0.get(0x0112).intValue());
+
+        // Byte for byte: the host minus its old Exif, with the new segment after SOI.
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(host.bytes, 0, 2);
+        expected.write(exif);
+        expected.write(host.bytes, 2, host.oldExifStart - 2);
+        expected.write(host.bytes, host.oldExifEnd, host.bytes.length - host.oldExifEnd);
+        assertArrayEquals(expected.toByteArray(), out);
+    }
+
+    private static void assertSamePixels(byte[] host, byte[] out) throws IOException {
+        BufferedImage a = ImageIO.read(new ByteArrayInputStream(host));
+        BufferedImage b = ImageIO.read(new ByteArrayInputStream(out));
+        assertEquals(a.getWidth(), b.getWidth());
+        assertEquals(a.getHeight(), b.getHeight());
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * APPn and COM segments up to the first other marker, as "E1 Exif", "E0 JFIF", "FE"...
+     */
+    private static List<String> headerSegments(byte[] jpeg) {
+        assertEquals(0xFF, jpeg[0] & 0xFF);
+        assertEquals(0xD8, jpeg[1] & 0xFF);
+        List<String> segments = new ArrayList<>();
+        int p = 2;
+        while (true) {
+            while ((jpeg[p] & 0xFF) == 0xFF && (jpeg[p + 1] & 0xFF) == 0xFF) p++;
+            assertEquals("Marker at " + p, 0xFF, jpeg[p] & 0xFF);
+            int marker = jpeg[p + 1] & 0xFF;
+            if (!(marker >= 0xE0 && marker <= 0xEF) && marker != 0xFE) return segments;
+            int length = ((jpeg[p + 2] & 0xFF) << 8) | (jpeg[p + 3] & 0xFF);
+            String name = Integer.toHexString(marker).toUpperCase();
+            if (marker == 0xE1 && startsWith(jpeg, p + 4, new byte[]{'E', 'x', 'i', 'f', 0, 0})) {
+                name += " Exif";
+            } else if (marker == 0xE1 && startsWith(jpeg, p + 4, XMP_ID)) {
+                name += " XMP";
+            } else if (marker == 0xE0 && startsWith(jpeg, p + 4, new byte[]{'J', 'F', 'I', 'F', 0})) {
+                name += " JFIF";
+            }
+            segments.add(name);
+            p += 2 + length;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        return offset + prefix.length <= bytes.length
+                && Arrays.equals(Arrays.copyOfRange(bytes, offset, offset + prefix.length), prefix);
+    }
+
+    // --- Helpers ---
+
+    private interface Writes {
+        void to(OutputStream out) throws IOException;
+    }
+
+    private byte[] inject(Writes writes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ExifInjectingOutputStream(bytes, exif)) {
+            writes.to(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Host {
+        byte[] bytes;
+        int oldExifStart;
+        int oldExifEnd;
+        /** Offset of the first marker after the APPn/COM segments (DQT). */
+        int headerEnd;
+    }
+
+    /**
+     * An ImageIO JPEG (SOI, JFIF APP0, tables...) with an old Exif APP1, an XMP APP1 and a
+     * comment inserted after APP0.
+     */
+    private Host host() throws IOException {
+        BufferedImage image = new BufferedImage(40, 24, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 6 << 16) | (y * 10 << 8) | ((x + y) * 4));
+            }
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", encoded);
+        byte[] plain = encoded.toByteArray();
+        assertEquals("ImageIO writes JFIF APP0 first", 0xE0, plain[3] & 0xFF);
+        int afterApp0 = 4 + (((plain[4] & 0xFF) << 8) | (plain[5] & 0xFF));
+
+        ByteArrayOutputStream xmp = new ByteArrayOutputStream();
+        byte[] packet = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"/>".getBytes(StandardCharsets.US_ASCII);
+        xmp.write(0xFF);
+        xmp.write(0xE1);
+        xmp.write((XMP_ID.length + packet.length + 2) >> 8);
+        xmp.write(XMP_ID.length + packet.length + 2);
+        xmp.write(XMP_ID);
+        xmp.write(packet);
+        byte[] comment = {(byte) 0xFF, (byte) 0xFE, 0, 7, 'h', 'o', 's', 't', 0};
+
+        Host host = new Host();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(plain, 0, afterApp0);
+        host.oldExifStart = out.size();
+        out.write(oldExif);
+        host.oldExifEnd = out.size();
+        out.write(xmp.toByteArray());
+        out.write(comment);
+        host.headerEnd = out.size();
+        out.write(plain, afterApp0, plain.length - afterApp0);
+        host.bytes = out.toByteArray();
+        return host;
+    }
+}
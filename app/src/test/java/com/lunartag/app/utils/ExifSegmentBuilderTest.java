@@ -0,0 +1,260 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Builds segments and parses the TIFF back with an independent reader: every IFD is reached
+ * through its pointer, every out-of-line value through its offset, and the IFD1 thumbnail
+ * through JPEGInterchangeFormat / JPEGInterchangeFormatLength.
+ */
+public class ExifSegmentBuilderTest {
+
+    // 2024-03-05 14:07:09 UTC
+    private static final long TIME = 1709647629000L;
+    private static final TimeZone KOLKATA = TimeZone.getTimeZone("Asia/Kolkata");
+
+    @Test
+    public void ifd0ExifAndGpsRoundTrip() {
+        byte[] segment = new ExifSegmentBuilder()
+                .setOrientation(6)
+                .setImageDescription("Plot 7, Ring Road")
+                .setDateTimeOriginal(TIME, KOLKATA)
+                .setGps(28.6139, -77.2090, 216.5, TIME)
+                .build();
+        Tiff tiff = Tiff.parse(segment);
+
+        assertEquals(6, tiff.ifd0.get(0x0112).intValue());
+        assertEquals("Plot 7, Ring Road", tiff.ifd0.get(0x010E).ascii());
+        assertEquals(0, tiff.nextIfd0);
+
+        Ifd exif = tiff.ifd(tiff.ifd0.get(0x8769).intValue());
+        assertEquals("0230", new String(exif.get(0x9000).value, StandardCharsets.US_ASCII));
+        assertEquals("2024:03:05 19:37:09", exif.get(0x9003).ascii());
+        assertEquals("2024:03:05 19:37:09", exif.get(0x9004).ascii());
+
+        Ifd gps = tiff.ifd(tiff.ifd0.get(0x8825).intValue());
+        assertArrayEquals(new byte[]{2, 2, 0, 0}, gps.get(0x0000).value);
+        assertEquals("N", gps.get(0x0001).ascii());
+        assertEquals(28.6139, gps.get(0x0002).dms(), 1e-7);
+        assertEquals("W", gps.get(0x0003).ascii());
+        assertEquals(77.2090, gps.get(0x0004).dms(), 1e-7);
+        assertEquals(0, gps.get(0x0005).value[0]);
+        assertEquals(216.5, gps.get(0x0006).rational(0), 1e-9);
+        assertEquals(14.0, gps.get(0x0007).rational(0), 0);
+        assertEquals(7.0, gps.get(0x0007).rational(1), 0);
+        assertEquals(9.0, gps.get(0x0007).rational(2), 0);
+        assertEquals("2024:03:05", gps.get(0x001D).ascii());
+    }
+
+    @Test
+    public void southernBelowSeaLevelWithoutFixTime() {
+        byte[] segment = new ExifSegmentBuilder().setGps(-33.8688, 151.2093, -12.25, 0).build();
+        Tiff tiff = Tiff.parse(segment);
+        assertNull(tiff.ifd0.entries.get(0x8769));
+        Ifd gps = tiff.ifd(tiff.ifd0.get(0x8825).intValue());
+        assertEquals("S", gps.get(0x0001).ascii());
+        assertEquals(33.8688, gps.get(0x0002).dms(), 1e-7);
+        assertEquals("E", gps.get(0x0003).ascii());
+        assertEquals(1, gps.get(0x0005).value[0]);
+        assertEquals(12.25, gps.get(0x0006).rational(0), 1e-9);
+        assertNull(gps.entries.get(0x0007));
+        assertNull(gps.entries.get(0x001D));
+    }
+
+    @Test
+    public void thumbnailIsReachableThroughIfd1() {
+        byte[] thumbnail = fakeThumbnail(3001);
+        byte[] segment = new ExifSegmentBuilder()
+                .setOrientation(1)
+                .setDateTimeOriginal(TIME, KOLKATA)
+                .setGps(12.9716, 77.5946, Double.NaN, TIME)
+                .setThumbnail(thumbnail)
+                .build();
+        Tiff tiff = Tiff.parse(segment);
+
+        assertTrue("IFD0 links to IFD1", tiff.nextIfd0 > 0);
+        Ifd ifd1 = tiff.ifd(tiff.nextIfd0);
+        assertEquals(6, ifd1.get(0x0103).intValue());
+        int offset = ifd1.get(0x0201).intValue();
+        int length = ifd1.get(0x0202).intValue();
+        assertEquals(thumbnail.length, length);
+        assertArrayEquals(thumbnail, Arrays.copyOfRange(tiff.bytes, offset, offset + length));
+        // The thumbnail ends the segment, and the other IFDs are still intact.
+        assertEquals(tiff.bytes.length, offset + length);
+        assertEquals(0, ifd1.next);
+        assertNotNull(tiff.ifd(tiff.ifd0.get(0x8769).intValue()).get(0x9003));
+        assertNull(tiff.ifd(tiff.ifd0.get(0x8825).intValue()).entries.get(0x0006));
+    }
+
+    @Test
+    public void entriesAreSortedAndReplacedNotDuplicated() {
+        byte[] segment = new ExifSegmentBuilder()
+                .setGps(1, 2, 3, TIME)
+                .setOrientation(3)
+                .setImageDescription("first")
+                .setOrientation(8)
+                .setImageDescription("second")
+                .setDateTimeOriginal(TIME, KOLKATA)
+                .build();
+        Tiff tiff = Tiff.parse(segment);
+        assertEquals(Arrays.asList(0x010E, 0x0112, 0x8769, 0x8825), tiff.ifd0.tags());
+        assertEquals(8, tiff.ifd0.get(0x0112).intValue());
+        assertEquals("second", tiff.ifd0.get(0x010E).ascii());
+    }
+
+    @Test
+    public void tooLargeThumbnailIsRejected() {
+        try {
+            new ExifSegmentBuilder().setThumbnail(new byte[ExifSegmentBuilder.MAX_THUMBNAIL_BYTES + 1]);
+            fail("Oversized thumbnail was accepted");
+        } catch (IllegalArgumentException expected) {
+            // The caller drops the thumbnail instead.
+        }
+        byte[] largest = fakeThumbnail(ExifSegmentBuilder.MAX_THUMBNAIL_BYTES);
+        Tiff tiff = Tiff.parse(new ExifSegmentBuilder().setThumbnail(largest).setOrientation(1).build());
+        assertEquals(largest.length, tiff.ifd(tiff.nextIfd0).get(0x0202).intValue());
+    }
+
+    /**
+     * SOI, a little noise, EOI: only the bytes matter here.
+     */
+    static byte[] fakeThumbnail(int length) {
+        byte[] jpeg = new byte[length];
+        for (int i = 0; i < length; i++) jpeg[i] = (byte) (i * 31 + 7);
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[length - 2] = (byte) 0xFF;
+        jpeg[length - 1] = (byte) 0xD9;
+        return jpeg;
+    }
+
+    // --- An independent TIFF reader ---
+
+    static final class Field {
+        final int type;
+        final int count;
+        final byte[] value;
+
+        Field(int type, int count, byte[] value) {
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        int intValue() {
+            if (type == 3) return ((value[0] & 0xFF) << 8) | (value[1] & 0xFF);
+            if (type == 4) return u32(value, 0);
+            throw new AssertionError("Not an integer field: type " + type);
+        }
+
+        String ascii() {
+            assertEquals("ASCII type", 2, type);
+            assertEquals("NUL-terminated", 0, value[value.length - 1]);
+            return new String(value, 0, value.length - 1, StandardCharsets.UTF_8);
+        }
+
+        double rational(int index) {
+            assertEquals("RATIONAL type", 5, type);
+            return (double) u32(value, index * 8) / u32(value, index * 8 + 4);
+        }
+
+        double dms() {
+            assertEquals(3, count);
+            return rational(0) + rational(1) / 60 + rational(2) / 3600;
+        }
+    }
+
+    static final class Ifd {
+        final Map<Integer, Field> entries = new LinkedHashMap<>();
+        int next;
+
+        Field get(int tag) {
+            Field field = entries.get(tag);
+            assertNotNull("Missing tag 0x" + Integer.toHexString(tag), field);
+            return field;
+        }
+
+        List<Integer> tags() {
+            return new ArrayList<>(entries.keySet());
+        }
+    }
+
+    /**
+     * The TIFF of an APP1 segment (FF E1 len "Exif\0\0" TIFF), offsets relative to its header.
+     */
+    static final class Tiff {
+        byte[] bytes;
+        Ifd ifd0;
+        int nextIfd0;
+
+        static Tiff parse(byte[] segment) {
+            assertEquals(0xFF, segment[0] & 0xFF);
+            assertEquals(0xE1, segment[1] & 0xFF);
+            int length = ((segment[2] & 0xFF) << 8) | (segment[3] & 0xFF);
+            assertEquals("Segment length", segment.length - 2, length);
+            assertArrayEquals(new byte[]{'E', 'x', 'i', 'f', 0, 0}, Arrays.copyOfRange(segment, 4, 10));
+            Tiff tiff = new Tiff();
+            tiff.bytes = Arrays.copyOfRange(segment, 10, segment.length);
+            assertEquals("Big-endian", 'M', tiff.bytes[0]);
+            assertEquals('M', tiff.bytes[1]);
+            assertEquals(42, ((tiff.bytes[2] & 0xFF) << 8) | (tiff.bytes[3] & 0xFF));
+            tiff.ifd0 = tiff.ifd(u32(tiff.bytes, 4));
+            tiff.nextIfd0 = tiff.ifd0.next;
+            return tiff;
+        }
+
+        Ifd ifd(int offset) {
+            assertTrue("IFD offset " + offset + " is word-aligned", (offset & 1) == 0);
+            assertTrue("IFD offset " + offset + " is inside the TIFF", offset > 0 && offset + 2 <= bytes.length);
+            Ifd ifd = new Ifd();
+            int count = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+            int previous = -1;
+            for (int i = 0; i < count; i++) {
+                int p = offset + 2 + 12 * i;
+                int tag = ((bytes[p] & 0xFF) << 8) | (bytes[p + 1] & 0xFF);
+                int type = ((bytes[p + 2] & 0xFF) << 8) | (bytes[p + 3] & 0xFF);
+                int n = u32(bytes, p + 4);
+                assertTrue("Tags sorted and unique", tag > previous);
+                previous = tag;
+                int size = n * typeSize(type);
+                int at = size <= 4 ? p + 8 : u32(bytes, p + 8);
+                if (size > 4) {
+                    assertTrue("Value offset is word-aligned", (at & 1) == 0);
+                }
+                assertTrue("Value of tag 0x" + Integer.toHexString(tag) + " inside the TIFF", at + size <= bytes.length);
+                ifd.entries.put(tag, new Field(type, n, Arrays.copyOfRange(bytes, at, at + size)));
+            }
+            ifd.next = u32(bytes, offset + 2 + 12 * count);
+            return ifd;
+        }
+
+        private static int typeSize(int type) {
+            switch (type) {
+                case 1: case 2: case 7: return 1;
+                case 3: return 2;
+                case 4: return 4;
+                case 5: return 8;
+                default: throw new AssertionError("Unexpected TIFF type " + type);
+            }
+        }
+    }
+
+    private static int u32(byte[] b, int p) {
+        return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,210 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * YUV_420_888 plane layouts as HALs hand them out, converted to NV21 and then to ARGB.
+ * The expected NV21 is built from the logical sample values, independent of the layout.
+ */
+public class YuvConversionContextTest {
+
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 14;
+
+    @Test
+    public void planarWithoutPadding() {
+        assertConverts(Layout.PLANAR, WIDTH, WIDTH / 2, false);
+    }
+
+    @Test
+    public void planarWithOddRowStride() {
+        assertConverts(Layout.PLANAR, WIDTH + 5, WIDTH / 2 + 3, false);
+    }
+
+    @Test
+    public void planarWithShortLastRow() {
+        assertConverts(Layout.PLANAR, WIDTH + 7, WIDTH / 2 + 5, true);
+    }
+
+    @Test
+    public void pixelStrideTwoInSeparateBuffers() {
+        assertConverts(Layout.SEPARATE_STRIDE_2, WIDTH + 3, WIDTH + 1, false);
+    }
+
+    @Test
+    public void interleavedVuFastPath() {
+        assertConverts(Layout.INTERLEAVED_VU, WIDTH, WIDTH, false);
+    }
+
+    @Test
+    public void interleavedVuWithOddRowStrideAndShortLastRow() {
+        assertConverts(Layout.INTERLEAVED_VU, WIDTH + 9, WIDTH + 9, true);
+    }
+
+    @Test
+    public void readOnlyInterleavedPlanesFallBackToGenericPath() {
+        Frame frame = new Frame(WIDTH, HEIGHT, 11);
+        Planes planes = frame.layout(Layout.INTERLEAVED_VU, WIDTH + 1, WIDTH + 1, false);
+        byte[] nv21 = new YuvConversionContext().toNv21(planes.y.asReadOnlyBuffer(), planes.yRowStride,
+                planes.u.asReadOnlyBuffer(), planes.v.asReadOnlyBuffer(), planes.uvRowStride,
+                planes.uvPixelStride, WIDTH, HEIGHT);
+        assertArrayEquals(frame.nv21(), nv21);
+    }
+
+    @Test
+    public void reusesItsBufferAndLeavesPlanesRewound() {
+        Frame frame = new Frame(WIDTH, HEIGHT, 12);
+        Planes planes = frame.layout(Layout.INTERLEAVED_VU, WIDTH + 2, WIDTH + 2, false);
+        YuvConversionContext context = new YuvConversionContext();
+        byte[] first = planes.convert(context);
+        byte[] second = planes.convert(context);
+        assertSame(first, second);
+        assertEquals(0, planes.y.position());
+        assertEquals(0, planes.u.position());
+        assertEquals(0, planes.v.position());
+        // The aliasing probe must leave the pixels as it found them.
+        assertArrayEquals(frame.nv21(), second);
+    }
+
+    private static void assertConverts(Layout layout, int yRowStride, int uvRowStride, boolean shortLastRow) {
+        Frame frame = new Frame(WIDTH, HEIGHT, layout.ordinal() * 31L + yRowStride);
+        Planes planes = frame.layout(layout, yRowStride, uvRowStride, shortLastRow);
+        byte[] nv21 = planes.convert(new YuvConversionContext());
+        assertArrayEquals(frame.nv21(), nv21);
+        assertEquals(WIDTH * HEIGHT * 3 / 2, nv21.length);
+
+        // End to end: the ARGB of the converted frame matches the reference.
+        int[] argb = new int[WIDTH * HEIGHT];
+        YuvToArgbConverter.convert(nv21, WIDTH, HEIGHT, 90, argb);
+        YuvToArgbConverterTest.assertMatchesReference(frame.nv21(), WIDTH, HEIGHT, 90, argb);
+    }
+
+    // --- Plane layouts ---
+
+    private enum Layout {
+        /** I420-like: three buffers, pixel stride 1. */
+        PLANAR,
+        /** Pixel stride 2, but U and V are separate allocations (no aliasing). */
+        SEPARATE_STRIDE_2,
+        /** Pixel stride 2, U and V are two views of one V,U,V,U... buffer (NV21 in disguise). */
+        INTERLEAVED_VU
+    }
+
+    private static final class Planes {
+        ByteBuffer y, u, v;
+        int yRowStride, uvRowStride, uvPixelStride;
+        final int width, height;
+
+        Planes(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        byte[] convert(YuvConversionContext context) {
+            return context.toNv21(y, yRowStride, u, v, uvRowStride, uvPixelStride, width, height);
+        }
+    }
+
+    /**
+     * One frame of random samples, laid out on demand.
+     */
+    private static final class Frame {
+        final int width, height;
+        final byte[] luma;
+        final byte[] us;
+        final byte[] vs;
+
+        Frame(int width, int height, long seed) {
+            this.width = width;
+            this.height = height;
+            Random random = new Random(seed);
+            luma = new byte[width * height];
+            us = new byte[width * height / 4];
+            vs = new byte[width * height / 4];
+            random.nextBytes(luma);
+            random.nextBytes(us);
+            random.nextBytes(vs);
+        }
+
+        byte[] nv21() {
+            byte[] out = new byte[width * height * 3 / 2];
+            System.arraycopy(luma, 0, out, 0, luma.length);
+            for (int i = 0, o = luma.length; i < us.length; i++) {
+                out[o++] = vs[i];
+                out[o++] = us[i];
+            }
+            return out;
+        }
+
+        Planes layout(Layout layout, int yRowStride, int uvRowStride, boolean shortLastRow) {
+            int uvWidth = width / 2, uvHeight = height / 2;
+            Planes planes = new Planes(width, height);
+            planes.yRowStride = yRowStride;
+            planes.uvRowStride = uvRowStride;
+            planes.uvPixelStride = layout == Layout.PLANAR ? 1 : 2;
+
+            byte[] y = new byte[size(yRowStride, height, width, shortLastRow)];
+            fillPadding(y);
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(luma, row * width, y, row * yRowStride, width);
+            }
+            planes.y = ByteBuffer.wrap(y);
+
+            if (layout == Layout.INTERLEAVED_VU) {
+                // One buffer V,U,V,U...; V starts at 0 and U at 1, each one byte short of the other.
+                byte[] vu = new byte[size(uvRowStride, uvHeight, 2 * uvWidth, shortLastRow)];
+                fillPadding(vu);
+                for (int row = 0; row < uvHeight; row++) {
+                    for (int col = 0; col < uvWidth; col++) {
+                        vu[row * uvRowStride + 2 * col] = vs[row * uvWidth + col];
+                        vu[row * uvRowStride + 2 * col + 1] = us[row * uvWidth + col];
+                    }
+                }
+                ByteBuffer all = ByteBuffer.wrap(vu);
+                all.limit(vu.length - 1);
+                planes.v = all.slice();
+                all.limit(vu.length).position(1);
+                planes.u = all.slice();
+                return planes;
+            }
+
+            int stride = planes.uvPixelStride;
+            int rowBytes = (uvWidth - 1) * stride + 1;
+            byte[] u = new byte[size(uvRowStride, uvHeight, rowBytes, shortLastRow)];
+            byte[] v = new byte[u.length];
+            fillPadding(u);
+            fillPadding(v);
+            for (int row = 0; row < uvHeight; row++) {
+                for (int col = 0; col < uvWidth; col++) {
+                    u[row * uvRowStride + col * stride] = us[row * uvWidth + col];
+                    v[row * uvRowStride + col * stride] = vs[row * uvWidth + col];
+                }
+            }
+            planes.u = ByteBuffer.wrap(u);
+            planes.v = ByteBuffer.wrap(v);
+            return planes;
+        }
+
+        /**
+         * Plane size: every row padded to the stride, except the last one if the HAL cuts it short.
+         */
+        private static int size(int rowStride, int rows, int rowBytes, boolean shortLastRow) {
+            return shortLastRow ? rowStride * (rows - 1) + rowBytes : rowStride * rows;
+        }
+
+        /**
+         * Padding bytes get a value no sample is compared against, so reading them shows up.
+         */
+        private static void fillPadding(byte[] plane) {
+            Arrays.fill(plane, (byte) 0x5A);
+        }
+    }
+}
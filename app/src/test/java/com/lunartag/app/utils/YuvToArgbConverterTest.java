@@ -0,0 +1,153 @@
+package com.lunartag.app.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the fixed-point NV21 -> ARGB conversion against a floating-point BT.601 full-range
+ * reference, for every rotation, through both the single-array and the parallel band entry points.
+ */
+public class YuvToArgbConverterTest {
+
+    // Fixed point and the reference may round differently by one step.
+    private static final int TOLERANCE = 1;
+
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    @Test
+    public void unrotatedMatchesReference() {
+        byte[] nv21 = randomNv21(64, 48, 1);
+        int[] out = new int[64 * 48];
+        YuvToArgbConverter.convert(nv21, 64, 48, out);
+        assertMatchesReference(nv21, 64, 48, 0, out);
+    }
+
+    @Test
+    public void everyRotationMatchesReference() {
+        int width = 40, height = 30;
+        byte[] nv21 = randomNv21(width, height, 2);
+        for (int rotation : ROTATIONS) {
+            int[] out = new int[width * height];
+            YuvToArgbConverter.convert(nv21, width, height, rotation, out);
+            assertMatchesReference(nv21, width, height, rotation, out);
+        }
+    }
+
+    @Test
+    public void negativeAndOversizedRotationsAreNormalized() {
+        int width = 16, height = 8;
+        byte[] nv21 = randomNv21(width, height, 3);
+        int[] expected = new int[width * height];
+        int[] actual = new int[width * height];
+        YuvToArgbConverter.convert(nv21, width, height, 270, expected);
+        YuvToArgbConverter.convert(nv21, width, height, -90, actual);
+        assertArrayEquals(expected, actual);
+        YuvToArgbConverter.convert(nv21, width, height, 630, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void parallelBandsCoverTheFrameExactlyOnce() {
+        // Tall enough for several bands, with a height that is not a multiple of the band size.
+        int width = 36, height = 250;
+        byte[] nv21 = randomNv21(width, height, 4);
+        for (int rotation : ROTATIONS) {
+            int outWidth = YuvToArgbConverter.rotatedWidth(width, height, rotation);
+            int outHeight = YuvToArgbConverter.rotatedHeight(width, height, rotation);
+            int[] out = new int[outWidth * outHeight];
+            int[] writes = new int[outWidth * outHeight];
+            YuvToArgbConverter.convert(nv21, width, height, rotation,
+                    (argb, left, top, regionWidth, regionHeight) -> {
+                        synchronized (out) {
+                            for (int y = 0; y < regionHeight; y++) {
+                                for (int x = 0; x < regionWidth; x++) {
+                                    int i = (top + y) * outWidth + left + x;
+                                    out[i] = argb[y * regionWidth + x];
+                                    writes[i]++;
+                                }
+                            }
+                        }
+                    });
+            for (int count : writes) {
+                assertEquals("rotation " + rotation, 1, count);
+            }
+            assertMatchesReference(nv21, width, height, rotation, out);
+        }
+    }
+
+    @Test
+    public void extremesClampInsteadOfWrapping() {
+        int width = 4, height = 2;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        // Maximum V, minimum U: on white luma red overflows, on black luma green underflows.
+        for (int i = 0; i < width; i++) nv21[i] = (byte) 255;
+        for (int i = width * height; i < nv21.length; i += 2) {
+            nv21[i] = (byte) 255; // V
+            nv21[i + 1] = 0;      // U
+        }
+        int[] out = new int[width * height];
+        YuvToArgbConverter.convert(nv21, width, height, out);
+        for (int x = 0; x < width; x++) {
+            assertEquals(0xFFD01C, out[x] & 0xFFFFFF);         // r 433 -> 255, g 208, b 28
+            assertEquals(0xB20000, out[width + x] & 0xFFFFFF); // r 178, g -46 -> 0, b -227 -> 0
+        }
+    }
+
+    // --- Reference ---
+
+    static byte[] randomNv21(int width, int height, long seed) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(nv21);
+        return nv21;
+    }
+
+    /**
+     * BT.601 full range (JFIF), in doubles, for the source pixel (x, y) of an NV21 frame.
+     */
+    static int referenceArgb(byte[] nv21, int width, int height, int x, int y) {
+        int uv = width * height + (y / 2) * width + (x / 2) * 2;
+        double l = nv21[y * width + x] & 0xFF;
+        double v = (nv21[uv] & 0xFF) - 128;
+        double u = (nv21[uv + 1] & 0xFF) - 128;
+        int r = clamp(Math.round(l + 1.402 * v));
+        int g = clamp(Math.round(l - 0.344136 * u - 0.714136 * v));
+        int b = clamp(Math.round(l + 1.772 * u));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Compares a converted, clockwise-rotated frame with the reference, pixel by pixel.
+     */
+    static void assertMatchesReference(byte[] nv21, int width, int height, int rotation, int[] out) {
+        int outWidth = YuvToArgbConverter.rotatedWidth(width, height, rotation);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int ox, oy;
+                switch (rotation) {
+                    case 90:  ox = height - 1 - y; oy = x; break;
+                    case 180: ox = width - 1 - x; oy = height - 1 - y; break;
+                    case 270: ox = y; oy = width - 1 - x; break;
+                    default:  ox = x; oy = y; break;
+                }
+                int expected = referenceArgb(nv21, width, height, x, y);
+                int actual = out[oy * outWidth + ox];
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int diff = Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+                    assertTrue("rotation " + rotation + " pixel (" + x + "," + y + ") expected "
+                                    + Integer.toHexString(expected) + " got " + Integer.toHexString(actual),
+                            diff <= TOLERANCE);
+                }
+                assertEquals(0xFF, actual >>> 24);
+            }
+        }
+    }
+
+    private static int clamp(long c) {
+        return (int) Math.max(0, Math.min(255, c));
+    }
+}
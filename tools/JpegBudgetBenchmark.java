@@ -0,0 +1,166 @@
+import com.lunartag.app.utils.QualitySearch;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Desktop benchmark of the size-budgeted JPEG encoding (com.lunartag.app.utils.BudgetedJpegEncoder)
+ * against the old fixed quality 100.
+ *
+ * For every image it reports, for both paths: output size, encode time (the budgeted path
+ * includes the downscale and sample search) and luma PSNR against the decoded source.
+ * The search is the same {@link QualitySearch} the app runs, with the same range, tries,
+ * sample size and learned size correction; ImageIO uses the same IJG quality scaling as
+ * Android's encoder, so the chosen qualities carry over, the timings only roughly.
+ *
+ * Build and run from the repository root:
+ * <pre>
+ *   javac -d /tmp/ltjb -sourcepath app/src/main/java tools/JpegBudgetBenchmark.java
+ *   java -cp /tmp/ltjb JpegBudgetBenchmark [budgetKb] photo1.jpg photo2.jpg ...
+ * </pre>
+ */
+public class JpegBudgetBenchmark {
+
+    // Keep in sync with BudgetedJpegEncoder.
+    private static final int MIN_QUALITY = 60;
+    private static final int MAX_QUALITY = 95;
+    private static final int MAX_TRIES = 5;
+    private static final int SAMPLE_LONG_EDGE = 640;
+    private static final double CORRECTION_WEIGHT = 0.3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: JpegBudgetBenchmark [budgetKb] image.jpg ...");
+            System.exit(1);
+        }
+        int first = 0;
+        long budgetBytes = 1536 * 1024L;
+        if (args[0].matches("\\d+")) {
+            budgetBytes = Long.parseLong(args[0]) * 1024L;
+            first = 1;
+        }
+        List<File> files = new ArrayList<>();
+        for (int i = first; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+
+        // Warm up the JIT and the codec so the first file's timings are not skewed.
+        BufferedImage warmup = read(files.get(0));
+        encode(warmup, 100);
+        encode(warmup, 80);
+
+        double correction = 1.0;
+        long legacyBytes = 0, legacyNanos = 0, budgetTotalBytes = 0, budgetNanos = 0;
+        System.out.println("file  WxH  | q100: size ms psnr | budget: q tries size ms psnr");
+        for (File file : files) {
+            final BufferedImage image = read(file);
+            int[] reference = argb(image);
+
+            long t0 = System.nanoTime();
+            byte[] legacy = encode(image, 100);
+            long t1 = System.nanoTime();
+
+            final BufferedImage sample = downscale(image);
+            final double pixelRatio = (double) image.getWidth() * image.getHeight()
+                    / ((double) sample.getWidth() * sample.getHeight());
+            final double k = correction;
+            final double[] rawAtQuality = new double[101];
+            QualitySearch.Outcome outcome = QualitySearch.highestWithin(q -> {
+                rawAtQuality[q] = encode(sample, q).length * pixelRatio;
+                return rawAtQuality[q] * k;
+            }, budgetBytes, MIN_QUALITY, MAX_QUALITY, MAX_TRIES);
+            int tries = outcome.tries;
+            if (rawAtQuality[outcome.quality] == 0) {
+                rawAtQuality[outcome.quality] = encode(sample, outcome.quality).length * pixelRatio;
+                tries++;
+            }
+            byte[] budgeted = encode(image, outcome.quality);
+            long t2 = System.nanoTime();
+
+            double observed = budgeted.length / rawAtQuality[outcome.quality];
+            correction = Math.max(0.25, Math.min(2.0, correction + CORRECTION_WEIGHT * (observed - correction)));
+
+            double legacyPsnr = QualitySearch.lumaPsnr(reference, argb(decode(legacy)));
+            double budgetPsnr = QualitySearch.lumaPsnr(reference, argb(decode(budgeted)));
+            System.out.println(String.format(Locale.US,
+                    "%s  %dx%d | %.2fMB %dms %.1fdB | q%d %d %.2fMB %dms %.1fdB",
+                    file.getName(), image.getWidth(), image.getHeight(),
+                    mb(legacy.length), (t1 - t0) / 1_000_000L, legacyPsnr,
+                    outcome.quality, tries, mb(budgeted.length), (t2 - t1) / 1_000_000L, budgetPsnr));
+
+            legacyBytes += legacy.length;
+            legacyNanos += t1 - t0;
+            budgetTotalBytes += budgeted.length;
+            budgetNanos += t2 - t1;
+        }
+        int n = files.size();
+        System.out.println(String.format(Locale.US,
+                "average | q100: %.2fMB %dms | budget: %.2fMB %dms | size -%.0f%% | correction %.2f",
+                mb(legacyBytes / n), legacyNanos / n / 1_000_000L,
+                mb(budgetTotalBytes / n), budgetNanos / n / 1_000_000L,
+                100.0 * (legacyBytes - budgetTotalBytes) / legacyBytes, correction));
+    }
+
+    private static BufferedImage read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) throw new IOException("Cannot decode " + file);
+        // Same pixel layout as an ARGB_8888 Bitmap (and no alpha for the JPEG writer).
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        rgb.getGraphics().drawImage(image, 0, 0, null);
+        return rgb;
+    }
+
+    private static byte[] encode(BufferedImage image, int quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new java.io.ByteArrayInputStream(jpeg));
+    }
+
+    private static BufferedImage downscale(BufferedImage image) {
+        int longEdge = Math.max(image.getWidth(), image.getHeight());
+        if (longEdge <= SAMPLE_LONG_EDGE) return image;
+        double scale = (double) SAMPLE_LONG_EDGE / longEdge;
+        int w = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage sample = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = sample.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, w, h, null);
+        g.dispose();
+        return sample;
+    }
+
+    private static int[] argb(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,106 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.FileImageOutputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * Writes the golden JPEG fixtures of the splicer tests (app/src/test/resources/jpeg).
+ *
+ * The fixtures come from ImageIO's libjpeg-based encoder, not from the app's StripEncoder, so
+ * the tests check the splicer against files it did not produce: 4:2:0 and 4:4:4, with and without
+ * a restart interval, at a size that is not a whole number of MCUs. The picture is deterministic
+ * (gradients, edges and seeded noise), so every block has AC energy to walk through.
+ *
+ * Build and run from the repository root:
+ * <pre>
+ *   javac -d /tmp/ltjf tools/JpegFixtureGenerator.java
+ *   java -cp /tmp/ltjf JpegFixtureGenerator app/src/test/resources/jpeg
+ * </pre>
+ */
+public class JpegFixtureGenerator {
+
+    // Not a multiple of 8 or 16 in either direction: the last MCU column and row are partial.
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 157;
+    private static final float QUALITY = 0.9f;
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "app/src/test/resources/jpeg");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        BufferedImage image = picture(WIDTH, HEIGHT);
+        // Restart intervals that do not divide the MCUs per row (13 at 4:2:0, 26 at 4:4:4), so
+        // some MCU rows start on a restart boundary and others in the middle of an interval.
+        write(image, 2, 0, new File(dir, "host_420.jpg"));
+        write(image, 2, 5, new File(dir, "host_420_dri.jpg"));
+        write(image, 1, 0, new File(dir, "host_444.jpg"));
+        write(image, 1, 4, new File(dir, "host_444_dri.jpg"));
+    }
+
+    static BufferedImage picture(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(5);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + ((x / 12 + y / 12) % 2 == 0 ? 40 : 0)) & 0xFF;
+                int g = (y * 255 / height) ^ (x & 0x1F);
+                int b = 128 + (int) (100 * Math.sin(x / 7.0) * Math.cos(y / 9.0)) + random.nextInt(24) - 12;
+                image.setRGB(x, y, (clamp(r) << 16) | (clamp(g) << 8) | clamp(b));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * @param lumaSampling 2 for 4:2:0 (luma 2x2, chroma 1x1), 1 for 4:4:4.
+     * @param restartInterval MCUs per restart interval, 0 for none.
+     */
+    private static void write(BufferedImage image, int lumaSampling, int restartInterval, File file)
+            throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(QUALITY);
+
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        String format = "javax_imageio_jpeg_image_1.0";
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+        IIOMetadataNode markers = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+        NodeList specs = root.getElementsByTagName("componentSpec");
+        for (int i = 0; i < specs.getLength(); i++) {
+            IIOMetadataNode spec = (IIOMetadataNode) specs.item(i);
+            int sampling = i == 0 ? lumaSampling : 1;
+            spec.setAttribute("HsamplingFactor", Integer.toString(sampling));
+            spec.setAttribute("VsamplingFactor", Integer.toString(sampling));
+        }
+        if (restartInterval > 0) {
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", Integer.toString(restartInterval));
+            markers.insertBefore(dri, root.getElementsByTagName("sos").item(0));
+        }
+        metadata.setFromTree(format, root);
+
+        file.delete();
+        try (FileImageOutputStream out = new FileImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        System.out.println(file + ": " + file.length() + " bytes");
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+}
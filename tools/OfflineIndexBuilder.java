@@ -0,0 +1,140 @@
+import com.lunartag.app.geo.Geohash;
+import com.lunartag.app.geo.PlaceIndex;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Desktop tool that builds the offline reverse-geocoding index read by
+ * com.lunartag.app.geo.PlaceIndex on the phone.
+ *
+ * Input is a UTF-8 CSV with one place or street per line: {@code lat,lon,name}
+ * (the name may itself contain commas; lines starting with '#' are skipped).
+ * Any gazetteer or OpenStreetMap extract can be flattened into this shape.
+ *
+ * Build and run from the repository root:
+ * <pre>
+ *   javac -d /tmp/ltpi -sourcepath app/src/main/java tools/OfflineIndexBuilder.java
+ *   java -cp /tmp/ltpi OfflineIndexBuilder places.csv offline_places.idx [bucketPrecision]
+ * </pre>
+ * Then copy the output to the app's files dir (or app/src/main/assets) as offline_places.idx.
+ */
+public class OfflineIndexBuilder {
+
+    // ~1.2 km x 0.6 km buckets: a 3x3 neighbourhood always covers at least 600 m around a point.
+    private static final int DEFAULT_BUCKET_PRECISION = 6;
+
+    private static class Place {
+        final int latE6;
+        final int lonE6;
+        final int nameOffset;
+
+        Place(int latE6, int lonE6, int nameOffset) {
+            this.latE6 = latE6;
+            this.lonE6 = lonE6;
+            this.nameOffset = nameOffset;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OfflineIndexBuilder <places.csv> <out.idx> [bucketPrecision]");
+            System.exit(1);
+        }
+        int precision = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BUCKET_PRECISION;
+
+        Map<Long, List<Place>> buckets = new HashMap<>();
+        Map<String, Integer> nameOffsets = new HashMap<>();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(strings);
+        int placeCount = 0;
+        int skipped = 0;
+
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split(",", 3);
+                if (parts.length < 3) {
+                    skipped++;
+                    continue;
+                }
+                double lat;
+                double lon;
+                try {
+                    lat = Double.parseDouble(parts[0].trim());
+                    lon = Double.parseDouble(parts[1].trim());
+                } catch (NumberFormatException e) {
+                    skipped++;
+                    continue;
+                }
+                String name = parts[2].trim();
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                if (utf8.length > 0xFFFF || Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+                    skipped++;
+                    continue;
+                }
+                Integer offset = nameOffsets.get(name);
+                if (offset == null) {
+                    offset = strings.size();
+                    stringsOut.writeShort(utf8.length);
+                    stringsOut.write(utf8);
+                    nameOffsets.put(name, offset);
+                }
+                long cell = Geohash.toLong(Geohash.encode(lat, lon, precision));
+                buckets.computeIfAbsent(cell, k -> new ArrayList<>())
+                        .add(new Place((int) Math.round(lat * 1e6), (int) Math.round(lon * 1e6), offset));
+                placeCount++;
+            }
+        }
+
+        List<Long> cells = new ArrayList<>(buckets.keySet());
+        cells.sort(null);
+        int placesOffset = PlaceIndex.HEADER_SIZE + cells.size() * PlaceIndex.BUCKET_SIZE;
+        int stringsOffset = placesOffset + placeCount * PlaceIndex.PLACE_SIZE;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(args[1]), 1 << 16))) {
+            out.writeInt(PlaceIndex.MAGIC);
+            out.writeInt(PlaceIndex.VERSION);
+            out.writeInt(precision);
+            out.writeInt(cells.size());
+            out.writeInt(placeCount);
+            out.writeInt(placesOffset);
+            out.writeInt(stringsOffset);
+
+            int first = 0;
+            for (long cell : cells) {
+                int count = buckets.get(cell).size();
+                out.writeLong(cell);
+                out.writeInt(first);
+                out.writeInt(count);
+                first += count;
+            }
+            for (long cell : cells) {
+                for (Place p : buckets.get(cell)) {
+                    out.writeInt(p.latE6);
+                    out.writeInt(p.lonE6);
+                    out.writeInt(p.nameOffset);
+                }
+            }
+            strings.writeTo(out);
+        }
+
+        System.out.println("Wrote " + placeCount + " places in " + cells.size() + " buckets (precision "
+                + precision + ", " + nameOffsets.size() + " distinct names, " + skipped + " lines skipped) to "
+                + args[1]);
+    }
+}
@@ -0,0 +1,193 @@
+import com.lunartag.app.utils.YuvToArgbConverter;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Desktop benchmark of the direct NV21 -> ARGB conversion (com.lunartag.app.utils.YuvToArgbConverter)
+ * against the old path, which compressed the frame to a quality-100 JPEG and decoded it back.
+ *
+ * For every frame it reports the time of both paths (median of the runs), the speed-up and the
+ * luma PSNR of the old path's output against the direct one, i.e. what the q100 round trip cost
+ * in accuracy. The old path runs on ImageIO here instead of YuvImage and BitmapFactory: both are
+ * libjpeg-based, so the ratio carries over, the absolute timings only roughly. The direct path
+ * is the same code the app runs, band-parallel on the common pool, with every band copied into
+ * a full-frame array the way ImageUtils copies it into the Bitmap.
+ *
+ * Frames are photos (converted to NV21) or, without arguments, random frames at common sensor
+ * sizes. Build and run from the repository root:
+ * <pre>
+ *   javac -d /tmp/ltyb -sourcepath app/src/main/java tools/YuvConversionBenchmark.java
+ *   java -cp /tmp/ltyb YuvConversionBenchmark [photo1.jpg photo2.jpg ...]
+ * </pre>
+ */
+public class YuvConversionBenchmark {
+
+    private static final int RUNS = 7;
+    private static final int[][] SENSOR_SIZES = {{1920, 1080}, {3264, 2448}, {4000, 3000}};
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<int[]> sizes = new ArrayList<>();
+        List<byte[]> frames = new ArrayList<>();
+        if (args.length == 0) {
+            Random random = new Random(42);
+            for (int[] size : SENSOR_SIZES) {
+                byte[] nv21 = new byte[size[0] * size[1] * 3 / 2];
+                random.nextBytes(nv21);
+                names.add("random");
+                sizes.add(size);
+                frames.add(nv21);
+            }
+        } else {
+            for (String arg : args) {
+                BufferedImage image = ImageIO.read(new File(arg));
+                int width = image.getWidth() & ~1, height = image.getHeight() & ~1;
+                names.add(new File(arg).getName());
+                sizes.add(new int[]{width, height});
+                frames.add(toNv21(image, width, height));
+            }
+        }
+
+        // Warm up the JIT and the codec so the first frame's timings are not skewed.
+        int[] warm = sizes.get(0);
+        legacy(legacyInput(frames.get(0), warm[0], warm[1]));
+        direct(frames.get(0), warm[0], warm[1]);
+
+        System.out.println("frame  WxH  | q100 round trip ms | direct ms | speed-up | q100 luma PSNR");
+        for (int i = 0; i < frames.size(); i++) {
+            byte[] nv21 = frames.get(i);
+            int width = sizes.get(i)[0], height = sizes.get(i)[1];
+            long[] legacyNanos = new long[RUNS];
+            long[] directNanos = new long[RUNS];
+            BufferedImage input = legacyInput(nv21, width, height);
+            int[] legacyArgb = null, directArgb = null;
+            for (int run = 0; run < RUNS; run++) {
+                long t0 = System.nanoTime();
+                legacyArgb = legacy(input);
+                long t1 = System.nanoTime();
+                directArgb = direct(nv21, width, height);
+                long t2 = System.nanoTime();
+                legacyNanos[run] = t1 - t0;
+                directNanos[run] = t2 - t1;
+            }
+            double legacyMs = median(legacyNanos) / 1e6;
+            double directMs = median(directNanos) / 1e6;
+            System.out.println(String.format(Locale.US, "%s %dx%d | %.1f | %.1f | %.1fx | %.1f dB",
+                    names.get(i), width, height, legacyMs, directMs, legacyMs / directMs,
+                    lumaPsnr(directArgb, legacyArgb)));
+        }
+    }
+
+    /**
+     * YuvImage reads NV21 directly; ImageIO needs RGB, so it gets the exact pixels, prepared
+     * outside the timed region.
+     */
+    private static BufferedImage legacyInput(byte[] nv21, int width, int height) {
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] argb = new int[width * height];
+        YuvToArgbConverter.convert(nv21, width, height, argb);
+        frame.setRGB(0, 0, width, height, argb, 0, width);
+        return frame;
+    }
+
+    /**
+     * The old path: frame -> JPEG q100 -> decoded pixels.
+     */
+    private static int[] legacy(BufferedImage frame) throws IOException {
+        int width = frame.getWidth(), height = frame.getHeight();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(1.0f);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(frame, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+        return decoded.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * The current path: band-parallel conversion, each band copied into the frame as it lands.
+     */
+    private static int[] direct(byte[] nv21, int width, int height) {
+        int[] frame = new int[width * height];
+        YuvToArgbConverter.convert(nv21, width, height, 0,
+                (argb, left, top, regionWidth, regionHeight) -> {
+                    for (int row = 0; row < regionHeight; row++) {
+                        System.arraycopy(argb, row * regionWidth, frame, (top + row) * width + left, regionWidth);
+                    }
+                });
+        return frame;
+    }
+
+    /**
+     * BT.601 full-range RGB -> NV21, 2x2 chroma averaging.
+     */
+    private static byte[] toNv21(BufferedImage image, int width, int height) {
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int i = 0; i < rgb.length; i++) {
+            int p = rgb[i];
+            int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+            nv21[i] = (byte) clamp(Math.round(0.299 * r + 0.587 * g + 0.114 * b));
+        }
+        int o = width * height;
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                double u = 0, v = 0;
+                for (int k = 0; k < 4; k++) {
+                    int p = rgb[(y + k / 2) * width + x + k % 2];
+                    int r = (p >> 16) & 0xFF, g = (p >> 8) & 0xFF, b = p & 0xFF;
+                    u += -0.168736 * r - 0.331264 * g + 0.5 * b;
+                    v += 0.5 * r - 0.418688 * g - 0.081312 * b;
+                }
+                nv21[o++] = (byte) clamp(Math.round(v / 4 + 128));
+                nv21[o++] = (byte) clamp(Math.round(u / 4 + 128));
+            }
+        }
+        return nv21;
+    }
+
+    private static double lumaPsnr(int[] reference, int[] test) {
+        double sum = 0;
+        for (int i = 0; i < reference.length; i++) {
+            double d = luma(reference[i]) - luma(test[i]);
+            sum += d * d;
+        }
+        double mse = sum / reference.length;
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private static double luma(int argb) {
+        return 0.299 * ((argb >> 16) & 0xFF) + 0.587 * ((argb >> 8) & 0xFF) + 0.114 * (argb & 0xFF);
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static int clamp(long c) {
+        return (int) Math.max(0, Math.min(255, c));
+    }
+}
@@ -0,0 +1,254 @@
+#!/usr/bin/env python3
+"""
+Query-plan check for the Room schema (com.lunartag.app.data.AppDatabase).
+
+Creates the v5 database from its schema JSON, fills photos and audit_logs with 100k rows each,
+runs the migrations to the current version as written in DatabaseMigrations.java and checks the
+result against the latest schema JSON. The JSONs are Room's exports in app/schemas when they are
+there (see export_room_schemas.sh), otherwise the reconstructions in tools/schemas-reconstructed,
+which are not Room output: a pass against those shows the migrations agree with the entity
+sources as parsed here, not that Room accepts them. Then asserts with EXPLAIN QUERY PLAN
+that the DAO queries, read from their @Query annotations, use their index: no full-table scan
+and no temporary B-tree for ORDER BY.
+
+The on-device counterpart is QueryPlanTest (androidTest), which explains the statements Room
+itself runs, including the SQL AuditLogPagingSource builds at run time.
+
+Run from the repository root (Python 3, standard library only):
+    python3 tools/check_query_plans.py
+"""
+
+import json
+import os
+import random
+import re
+import sqlite3
+import sys
+import time
+
+ROWS = 100_000
+
+ROOT = os.path.join(os.path.dirname(os.path.abspath(__file__)), os.pardir)
+DATA = os.path.join(ROOT, "app", "src", "main", "java", "com", "lunartag", "app", "data")
+EXPORTED = os.path.join(ROOT, "app", "schemas", "com.lunartag.app.data.AppDatabase")
+RECONSTRUCTED = os.path.join(ROOT, "tools", "schemas-reconstructed", "com.lunartag.app.data.AppDatabase")
+START_VERSION = 5
+
+
+def java_strings(expr, constants):
+    """Evaluates a Java concatenation of string literals and String constants."""
+    parts = []
+    for literal, name in re.findall(r'"((?:[^"\\]|\\.)*)"|\b([A-Z][A-Z0-9_]*)\b', expr):
+        parts.append(json.loads('"' + literal + '"') if not name else constants[name])
+    return "".join(parts)
+
+
+def read_migrations():
+    """{start version: [SQL]} from the db.execSQL calls in DatabaseMigrations."""
+    with open(os.path.join(DATA, "DatabaseMigrations.java"), encoding="utf-8") as f:
+        src = f.read()
+    migrations = {}
+    for m in re.finditer(r"MIGRATION_(\d+)_\d+ = new Migration\(.*?\n    \};", src, re.S):
+        migrations[int(m.group(1))] = [java_strings(call, {})
+                                       for call in re.findall(r"db\.execSQL\((.*?)\);\n", m.group(0), re.S)]
+    return migrations
+
+
+def read_dao_queries(*daos):
+    """{"Dao.method": SQL} from the @Query annotations, with Room's :name parameters."""
+    queries = {}
+    for dao in daos:
+        with open(os.path.join(DATA, dao + ".java"), encoding="utf-8") as f:
+            src = f.read()
+        constants = {name: java_strings(expr, {})
+                     for name, expr in re.findall(r"^\s*String (\w+) = (.*?);$", src, re.M)}
+        for expr, method in re.findall(r'@Query\((.*?)\)\s*\n\s*[\w<>, ]+? (\w+)\(', src, re.S):
+            queries[dao + "." + method] = java_strings(expr, constants)
+    return queries
+
+
+def create(db, version):
+    """The tables, indices and FTS triggers of a schema JSON, as Room creates them."""
+    with open(os.path.join(SCHEMAS, f"{version}.json"), encoding="utf-8") as f:
+        schema = json.load(f)["database"]
+    for entity in schema["entities"]:
+        table = entity["tableName"]
+        db.execute(entity["createSql"].replace("${TABLE_NAME}", table))
+        for index in entity.get("indices", []):
+            db.execute(index["createSql"].replace("${TABLE_NAME}", table))
+        for trigger in entity.get("contentSyncTriggers", []):
+            db.execute(trigger)
+    return schema
+
+
+def shape(db):
+    """Columns, keys, indices, triggers and FTS definitions, to compare two databases."""
+    tables = [r[0] for r in db.execute("SELECT name FROM sqlite_master WHERE type = 'table' "
+                                       "AND name NOT LIKE 'sqlite_%' AND name NOT LIKE '%_fts_%' ORDER BY name")]
+    result = {"triggers": [r[0] for r in db.execute(
+        "SELECT name FROM sqlite_master WHERE type = 'trigger' ORDER BY name")]}
+    for table in tables:
+        sql = db.execute("SELECT sql FROM sqlite_master WHERE name = ?", (table,)).fetchone()[0]
+        result[table] = (
+            # By name, like Room's validation: ADD COLUMN appends where the entity may not.
+            sorted(r[1:] for r in db.execute(f"PRAGMA table_info(`{table}`)")),
+            db.execute(f"PRAGMA foreign_key_list(`{table}`)").fetchall(),
+            sorted((r[1], r[2], [c[2] for c in db.execute(f"PRAGMA index_info(`{r[1]}`)")])
+                   for r in db.execute(f"PRAGMA index_list(`{table}`)") if not r[1].startswith("sqlite_")),
+            re.sub(r"\s+", " ", sql.replace("IF NOT EXISTS ", "")) if "VIRTUAL" in sql else None)
+    return result
+
+
+MIGRATIONS = read_migrations()
+LATEST = max(MIGRATIONS) + 1
+SCHEMAS, SCHEMA_KIND = next(((d, kind) for d, kind in ((EXPORTED, "exported"), (RECONSTRUCTED, "reconstructed"))
+                             if all(os.path.exists(os.path.join(d, f"{v}.json")) for v in (START_VERSION, LATEST))))
+DAO = read_dao_queries("PhotoDao", "AuditLogDao")
+
+GALLERY = DAO["PhotoDao.getGalleryNewest"].split("FROM photos ")[0] + "FROM photos "
+BACKFILL = DAO["PhotoDao.getPhotosMissingAddress"]
+PHOTO_SEARCH = DAO["PhotoDao.searchOlderThan"]
+# A keyset position in the middle of the data set.
+KEY_ID = 50_000
+KEY_TS = 1_700_000_000_000 + (KEY_ID - 1) * 60_000
+KEY = {"timestamp": KEY_TS, "id": KEY_ID, "limit": 60}
+CUTOFF = 1_700_000_000_000 + 50_000 * 1_000
+
+# AuditLogPagingSource builds its SQL at run time, so these are copies of what it builds for
+# each filter (the page older than a key). QueryPlanTest (androidTest) explains the statements
+# the paging source really runs.
+AUDIT_PAGE = "SELECT * FROM audit_logs WHERE 1{} AND timestamp <= ? AND (timestamp < ? OR id < ?) " \
+             "ORDER BY timestamp DESC, id DESC LIMIT ?"
+AUDIT_FTS = " AND +id IN (SELECT docid FROM audit_logs_fts WHERE audit_logs_fts MATCH ?)"
+AUDIT_SEARCH = ("SELECT audit_logs.* FROM audit_logs_fts JOIN audit_logs ON audit_logs.id = audit_logs_fts.docid "
+                "WHERE audit_logs_fts MATCH ? AND audit_logs_fts.docid < ? "
+                "ORDER BY audit_logs_fts.docid DESC LIMIT ?")
+AUDIT_KEY = (1_700_000_000_000 + 60_000 * 1_000, 1_700_000_000_000 + 60_000 * 1_000, 60_000, 50)
+
+# From a word on every row to a single photo, and what is typed on the way there.
+SEARCHES = ['"sp*"', '"springfield*"', '"harbour*"', '"harbour*" "17*"', '"lunar*" "hal*"',
+            '"mill*" "199*" "north*"', '"zz*"']
+SEARCH_BUDGET_MS = 50
+SEARCH_PAGES = 10
+
+# (query, SQL, arguments, index that must be used). The DAO SQL is read from the @Query
+# annotations, so a changed query is checked as it is.
+QUERIES = [
+    ("PhotoDao.observePendingPhotos", DAO["PhotoDao.observePendingPhotos"], {},
+     "index_photos_status_sendScheduledAt"),
+    ("PhotoDao.observeRecentPhotos", DAO["PhotoDao.observeRecentPhotos"], {"limit": 10},
+     "index_photos_captureTimestampReal"),
+    ("PhotoDao.getGalleryNewest", DAO["PhotoDao.getGalleryNewest"], {"limit": 60},
+     "index_photos_captureTimestampReal"),
+    ("PhotoDao.getGalleryFrom", DAO["PhotoDao.getGalleryFrom"], KEY, "index_photos_captureTimestampReal"),
+    ("PhotoDao.getGalleryOlderThan", DAO["PhotoDao.getGalleryOlderThan"], KEY, "index_photos_captureTimestampReal"),
+    ("PhotoDao.getGalleryNewerThan", DAO["PhotoDao.getGalleryNewerThan"], KEY, "index_photos_captureTimestampReal"),
+    ("PhotoDao.countGalleryOlderThan", DAO["PhotoDao.countGalleryOlderThan"], KEY,
+     "index_photos_captureTimestampReal"),
+    ("PhotoDao.countGalleryNewerThan", DAO["PhotoDao.countGalleryNewerThan"], KEY,
+     "index_photos_captureTimestampReal"),
+    ("PhotoDao.getPhotosMissingAddress", BACKFILL, {"afterId": KEY_ID, "limit": 100},
+     "INTEGER PRIMARY KEY"),  # photoId is the rowid of photo_details
+    ("PhotoDao.searchFrom", DAO["PhotoDao.searchFrom"], {"query": '"harbour*"', "id": 1 << 62, "limit": 60},
+     "INTEGER PRIMARY KEY"),
+    ("PhotoDao.searchOlderThan", PHOTO_SEARCH, {"query": '"harbour*"', "id": KEY_ID, "limit": 60},
+     "INTEGER PRIMARY KEY"),
+    ("PhotoDao.searchNewerThan", DAO["PhotoDao.searchNewerThan"], {"query": '"harbour*"', "id": KEY_ID, "limit": 60},
+     "INTEGER PRIMARY KEY"),
+    ("AuditLogDao.getLogsForPhoto", DAO["AuditLogDao.getLogsForPhoto"], {"photoId": 4242},
+     "index_audit_logs_photoId_timestamp"),
+    ("AuditLogDao.getLogsOlderThan", DAO["AuditLogDao.getLogsOlderThan"],
+     {"cutoff": CUTOFF, "afterId": 0, "limit": 500}, "INTEGER PRIMARY KEY"),
+    ("AuditLogDao.deleteArchived", DAO["AuditLogDao.deleteArchived"],
+     {"minId": 1, "maxId": 5_000, "cutoff": CUTOFF, "limit": 500}, "INTEGER PRIMARY KEY"),
+    ("AuditLogPagingSource (all)", AUDIT_PAGE.format(""), AUDIT_KEY, "index_audit_logs_timestamp"),
+    ("AuditLogPagingSource (action)", AUDIT_PAGE.format(" AND action = ?"),
+     ("SEND_ATTEMPT",) + AUDIT_KEY, "index_audit_logs_action_timestamp"),
+    ("AuditLogPagingSource (photo)", AUDIT_PAGE.format(" AND photoId = ?"),
+     (4242,) + AUDIT_KEY, "index_audit_logs_photoId_timestamp"),
+    ("AuditLogPagingSource (search)", AUDIT_SEARCH,
+     ('"send*"', 60_000, 50), "INTEGER PRIMARY KEY"),
+    ("AuditLogPagingSource (photo + search)", AUDIT_PAGE.format(" AND photoId = ?" + AUDIT_FTS),
+     (4242, '"send*"') + AUDIT_KEY, "index_audit_logs_photoId_timestamp"),
+]
+
+
+def populate(db):
+    rnd = random.Random(7)
+    start = 1_700_000_000_000
+    statuses = ["SENT"] * 8 + ["PENDING", "FAILED"]
+    streets = ["Main Street", "Harbour Road", "Station Avenue", "Mill Lane", "Church Street"]
+    companies = ["Lunar Field Services Ltd.", "Lunar Halls Facility Care", "Northgate Security",
+                 "Müller Gebäudereinigung"]
+    db.executemany(
+        "INSERT INTO photos (filePath, assignedTimestamp, captureTimestampReal, lat, lon, "
+        "accuracyMeters, addressHuman, shiftStart, shiftEnd, watermarkName, companyName, "
+        "sendScheduledAt, status, createdAt) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
+        ((f"/photos/LunarTag_{i}.jpg", start + i * 60_000, start + i * 60_000,
+          rnd.uniform(-90, 90), rnd.uniform(-180, 180), 5.0,
+          # One photo in ten was captured offline and still waits for the backfill.
+          None if i % 10 == 0 else f"{rnd.randint(1, 200)} {rnd.choice(streets)}, Springfield 12345, Country",
+          "08:00 AM", "05:00 PM", "LunarTag", companies[i % len(companies)],
+          start + i * 60_000 + rnd.randint(0, 3_600_000), rnd.choice(statuses), start + i * 60_000)
+         for i in range(ROWS)))
+    db.executemany(
+        "INSERT INTO audit_logs (photoId, action, details, timestamp) VALUES (?,?,?,?)",
+        ((rnd.randint(1, ROWS // 10), "SEND_ATTEMPT", None, start + i * 1_000) for i in range(ROWS)))
+
+
+def build(migrate=True):
+    """An in-memory database at v6 with ROWS rows, migrated to the current version if asked."""
+    db = sqlite3.connect(":memory:")
+    create(db, START_VERSION)
+    populate(db)
+    for version in range(START_VERSION, LATEST if migrate else START_VERSION + 1):
+        for sql in MIGRATIONS[version]:
+            db.execute(sql)
+    db.commit()
+    return db
+
+
+def main():
+    db = build()
+
+    fresh = sqlite3.connect(":memory:")
+    create(fresh, LATEST)
+    if shape(db) != shape(fresh):
+        print(f"FAIL v{START_VERSION} + DatabaseMigrations does not match the {SCHEMA_KIND} schema {LATEST}.json")
+        return 1
+    print(f"ok   v{START_VERSION} + DatabaseMigrations matches the {SCHEMA_KIND} schema {LATEST}.json")
+
+    failures = 0
+    for name, sql, args, index in QUERIES:
+        plan = [row[3] for row in db.execute("EXPLAIN QUERY PLAN " + sql, args)]
+        uses_index = any(index in step for step in plan)
+        # "SCAN <fts> VIRTUAL TABLE INDEX n" is a full-text index lookup, not a table scan.
+        full_scan = any(step.startswith("SCAN") and "USING" not in step and "VIRTUAL TABLE" not in step
+                        for step in plan)
+        temp_sort = any("TEMP B-TREE" in step for step in plan)
+        ok = uses_index and not full_scan and not temp_sort
+        failures += 0 if ok else 1
+        print(f"{'ok  ' if ok else 'FAIL'} {name}: {' | '.join(plan)}")
+    print(f"{len(QUERIES) - failures}/{len(QUERIES)} queries use their index ({ROWS} rows per table)")
+
+    # Gallery search: every page, first to deep, within the budget whatever the number of matches.
+    slow = 0
+    for match in SEARCHES:
+        key, found, times = 1 << 62, 0, []
+        for _ in range(SEARCH_PAGES):
+            start = time.perf_counter()
+            rows = db.execute(PHOTO_SEARCH, {"query": match, "id": key, "limit": 60}).fetchall()
+            times.append((time.perf_counter() - start) * 1000)
+            found += len(rows)
+            if len(rows) < 60:
+                break
+            key = rows[-1][0]
+        ok = max(times) < SEARCH_BUDGET_MS
+        slow += 0 if ok else 1
+        print(f"{'ok  ' if ok else 'FAIL'} search {match}: {found} rows in {len(times)} pages, "
+              f"first {times[0]:.1f} ms, worst {max(times):.1f} ms")
+    return 1 if failures or slow else 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# Exports the Room schema of every AppDatabase version with room-compiler, into
+# app/schemas/com.lunartag.app.data.AppDatabase/<version>.json (read by MigrationTestHelper).
+#
+# For each version N it checks out the last commit whose AppDatabase declares version = N in a
+# temporary worktree and compiles it. The versions written before exportSchema was turned on
+# (1-5) get exportSchema = true in the worktree only; the schema location is passed to the
+# annotation processor through an init script, so every historical build.gradle works as is.
+#
+# Uses gradle from the PATH (or $GRADLE). Needs the Android SDK (ANDROID_HOME or local.properties),
+# app/google-services.json and network access to Google Maven.
+# Run from the repository root, then run the instrumented tests on a device or emulator:
+#     tools/export_room_schemas.sh
+#     gradle :app:connectedDebugAndroidTest
+# and commit app/schemas together with the test results.
+
+set -euo pipefail
+
+ROOT="$(git rev-parse --show-toplevel)"
+DB_SRC="app/src/main/java/com/lunartag/app/data/AppDatabase.java"
+OUT="$ROOT/app/schemas/com.lunartag.app.data.AppDatabase"
+WORK="$(mktemp -d)"
+trap 'git -C "$ROOT" worktree prune; rm -rf "$WORK"' EXIT
+
+cat > "$WORK/schemas.gradle" <<'EOF'
+allprojects {
+    tasks.withType(JavaCompile).configureEach {
+        options.compilerArgs += ["-Aroom.schemaLocation=" + System.getenv("ROOM_SCHEMA_OUT")]
+    }
+}
+EOF
+
+# version -> last commit declaring it, oldest version first.
+declare -A LAST
+for commit in $(git -C "$ROOT" log --format=%H --reverse -- "$DB_SRC"); do
+    version=$(git -C "$ROOT" show "$commit:$DB_SRC" | sed -n 's/.*version = \([0-9]*\).*/\1/p' | head -1)
+    [ -n "$version" ] && LAST[$version]=$commit
+done
+current=$(sed -n 's/.*version = \([0-9]*\).*/\1/p' "$ROOT/$DB_SRC" | head -1)
+
+mkdir -p "$OUT"
+for version in $(printf '%s\n' "${!LAST[@]}" | sort -n); do
+    commit=${LAST[$version]}
+    [ "$version" = "$current" ] && commit=HEAD
+    echo "== version $version at $(git -C "$ROOT" log -1 --format='%h %s' "$commit")"
+    tree="$WORK/v$version"
+    git -C "$ROOT" worktree add --detach "$tree" "$commit" > /dev/null
+    sed -i 's/exportSchema = false/exportSchema = true/' "$tree/$DB_SRC"
+    for untracked in local.properties app/google-services.json; do
+        if [ -f "$ROOT/$untracked" ]; then cp "$ROOT/$untracked" "$tree/$untracked"; fi
+    done
+    ROOM_SCHEMA_OUT="$WORK/out$version" "${GRADLE:-gradle}" -p "$tree" --init-script "$WORK/schemas.gradle" \
+        -q :app:compileDebugJavaWithJavac
+    cp "$WORK/out$version/com.lunartag.app.data.AppDatabase/$version.json" "$OUT/$version.json"
+    git -C "$ROOT" worktree remove --force "$tree"
+done
+echo "Exported: $(ls "$OUT" | sort -n | tr '\n' ' ')"
@@ -0,0 +1,81 @@
+#!/usr/bin/env python3
+"""
+Row-mapping cost of the wide photos row versus the slim projections (PhotoDao).
+
+Builds the same 100k-row database as check_query_plans.py twice: once at v6 (one wide photos
+table, the list queries reading SELECT *) and once migrated to v7 (photos / photo_details split,
+the list queries reading GalleryItem / PhotoLocation columns). Each query is run and every row
+mapped to a dict, like Room's cursor-to-object code, and the best of several runs is reported.
+
+The numbers are a proxy only: they time desktop SQLite and Python's dict(zip()), not Room's
+generated mapping or Android's CursorWindow, and say nothing about absolute cost on a device.
+Use them for the relative effect of a schema change before it is built. For the app's own
+numbers, run the instrumented PhotoQueryBenchmarkTest (app/src/androidTest, data package),
+which calls the real PhotoDao on the device.
+
+Run from the repository root (Python 3, standard library only):
+    python3 tools/photo_query_benchmark.py
+"""
+
+import os
+import sqlite3
+import sys
+import time
+
+sys.path.insert(0, os.path.dirname(os.path.abspath(__file__)))
+from check_query_plans import BACKFILL, GALLERY, ROWS, build  # noqa: E402
+
+RUNS = 7
+
+# (list, v6 SQL, v7 SQL, arguments)
+CASES = [
+    ("dashboard recent (10)",
+     "SELECT * FROM photos ORDER BY captureTimestampReal DESC, id DESC LIMIT ?",
+     GALLERY + "ORDER BY captureTimestampReal DESC, id DESC LIMIT ?", (10,)),
+    ("dashboard pending",
+     "SELECT * FROM photos WHERE status = 'PENDING' ORDER BY sendScheduledAt",
+     GALLERY + "WHERE status = 'PENDING' ORDER BY sendScheduledAt", ()),
+    ("gallery, whole list",
+     "SELECT * FROM photos ORDER BY captureTimestampReal DESC",
+     GALLERY + "ORDER BY captureTimestampReal DESC", ()),
+    ("address backfill page (100)",
+     "SELECT * FROM photos WHERE addressHuman IS NULL AND id > ? "
+     "AND NOT (lat = 0 AND lon = 0) ORDER BY id LIMIT ?",
+     BACKFILL, (0, 100)),
+]
+
+
+def best_of(db, sql, args):
+    best = float("inf")
+    rows = 0
+    for _ in range(RUNS):
+        t = time.perf_counter()
+        cursor = db.execute(sql, args)
+        names = [d[0] for d in cursor.description]
+        mapped = [dict(zip(names, row)) for row in cursor]
+        best = min(best, time.perf_counter() - t)
+        rows = len(mapped)
+    return best * 1000, rows, len(names)
+
+
+def main():
+    wide = build(migrate=False)
+    slim = build(migrate=True)
+    print(f"{'query':30} {'rows':>7} {'cols v6':>8} {'ms v6':>8} {'cols v7':>8} {'ms v7':>8} {'speedup':>8}")
+    for name, wide_sql, slim_sql, args in CASES:
+        wide_ms, rows, wide_cols = best_of(wide, wide_sql, args)
+        slim_ms, slim_rows, slim_cols = best_of(slim, slim_sql, args)
+        assert rows == slim_rows, f"{name}: {rows} != {slim_rows} rows"
+        print(f"{name:30} {rows:>7} {wide_cols:>8} {wide_ms:>8.2f} {slim_cols:>8} {slim_ms:>8.2f} "
+              f"{wide_ms / slim_ms:>7.1f}x")
+    for label, db in (("v6", wide), ("v7", slim)):
+        try:
+            size = db.execute("SELECT SUM(pgsize) FROM dbstat WHERE name = 'photos'").fetchone()[0]
+        except sqlite3.OperationalError:
+            break  # SQLite built without SQLITE_ENABLE_DBSTAT_VTAB
+        print(f"photos table {label}: {size / ROWS:.0f} bytes per row")
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
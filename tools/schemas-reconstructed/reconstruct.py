@@ -0,0 +1,319 @@
+#!/usr/bin/env python3
+"""
+Reconstructs Room-format schema JSONs for every AppDatabase version from the entity sources of
+the last commit declaring that version, into tools/schemas-reconstructed/.
+
+These are NOT Room exports: the entity parsing and the identity hash follow room-compiler 2.6.1
+as closely as a regex parser can, but nothing here was produced or checked by Room. They only
+feed the desktop check (check_query_plans.py) until real exports exist in app/schemas, made by
+export_room_schemas.sh; MigrationTestHelper never reads them.
+
+Run from the repository root:
+    python3 tools/schemas-reconstructed/reconstruct.py [version=commit ...]
+"""
+import hashlib
+import json
+import os
+import re
+import subprocess
+import sys
+
+REPO = subprocess.run(["git", "rev-parse", "--show-toplevel"], capture_output=True, text=True,
+                      cwd=os.path.dirname(os.path.abspath(__file__)), check=True).stdout.strip()
+MODEL = "app/src/main/java/com/lunartag/app/model/"
+DB_SRC = "app/src/main/java/com/lunartag/app/data/AppDatabase.java"
+
+
+def last_commit_per_version():
+    """{version: last commit declaring it}, the current version at the working tree."""
+    versions = {}
+    log = subprocess.run(["git", "-C", REPO, "log", "--format=%H", "--reverse", "--", DB_SRC],
+                         capture_output=True, text=True, check=True).stdout.split()
+    for commit in log:
+        m = re.search(r"version\s*=\s*(\d+)", show(commit, DB_SRC))
+        if m:
+            versions[int(m.group(1))] = commit
+    current = int(re.search(r"version\s*=\s*(\d+)", show("WORKTREE", DB_SRC)).group(1))
+    versions[current] = "WORKTREE"
+    return versions
+
+
+def show(rev, path):
+    if rev == "WORKTREE":
+        return open(os.path.join(REPO, path)).read()
+    return subprocess.run(["git", "-C", REPO, "show", f"{rev}:{path}"], capture_output=True, text=True,
+                          check=True).stdout
+
+
+def balanced(text, start):
+    depth = 0
+    for i in range(start, len(text)):
+        if text[i] == "(":
+            depth += 1
+        elif text[i] == ")":
+            depth -= 1
+            if depth == 0:
+                return text[start + 1:i]
+    raise ValueError("unbalanced")
+
+
+def strip_comments(src):
+    src = re.sub(r"/\*.*?\*/", "", src, flags=re.S)
+    return re.sub(r"//[^\n]*", "", src)
+
+
+INT_TYPES = {"long", "int", "boolean", "short", "byte"}
+BOXED_INT = {"Long", "Integer", "Boolean", "Short", "Byte"}
+REAL_TYPES = {"double", "float"}
+BOXED_REAL = {"Double", "Float"}
+
+
+def parse_entity(src):
+    src = strip_comments(src)
+    m = src.find("@Entity(")
+    entity_args = balanced(src, m + len("@Entity"))
+    table = re.search(r'tableName\s*=\s*"([^"]+)"', entity_args).group(1)
+    indices = [re.findall(r'"([^"]+)"', v) for v in re.findall(r"@Index\(value\s*=\s*\{([^}]*)\}", entity_args)]
+    fks = []
+    for fk in re.finditer(r"@ForeignKey\(", entity_args):
+        args = balanced(entity_args, fk.end() - 1)
+        fks.append({
+            "entity": re.search(r"entity\s*=\s*(\w+)\.class", args).group(1),
+            "parent": re.search(r'parentColumns\s*=\s*"(\w+)"', args).group(1),
+            "child": re.search(r'childColumns\s*=\s*"(\w+)"', args).group(1),
+            "onDelete": re.search(r"onDelete\s*=\s*ForeignKey\.(\w+)", args).group(1),
+        })
+    fts = None
+    f = src.find("@Fts4")
+    if f >= 0:
+        args = balanced(src, f + len("@Fts4")) if src[f + 5] == "(" else ""
+        tok = re.search(r"tokenizer\s*=\s*FtsOptions\.TOKENIZER_(\w+)", args)
+        prefix = re.search(r"prefix\s*=\s*\{([^}]*)\}", args)
+        fts = {
+            "content": re.search(r"contentEntity\s*=\s*(\w+)\.class", args).group(1),
+            "tokenizer": tok.group(1).lower() if tok else "simple",
+            "prefix": [int(x) for x in prefix.group(1).split(",")] if prefix else [],
+        }
+    body = src[src.index("{", src.index("class ")) + 1:]
+    fields = []
+    pending = []
+    depth = 0
+    for line in body.split("\n"):
+        s = line.strip()
+        if depth == 0:
+            if s.startswith("@"):
+                pending.append(s)
+            else:
+                fm = re.match(r"(?:public |private |protected )?(?!static)(?!final)([\w.<>]+)\s+(\w+)\s*(=[^;]*)?;$", s)
+                if fm and "(" not in s:
+                    typ, name = fm.group(1), fm.group(2)
+                    pk = next((a for a in pending if a.startswith("@PrimaryKey")), None)
+                    nonnull = any(a.startswith("@NonNull") for a in pending)
+                    default = None
+                    for a in pending:
+                        d = re.search(r'defaultValue\s*=\s*"([^"]*)"', a)
+                        if d:
+                            default = d.group(1)
+                    if typ in INT_TYPES:
+                        aff, nn = "INTEGER", True
+                    elif typ in BOXED_INT:
+                        aff, nn = "INTEGER", nonnull
+                    elif typ in REAL_TYPES:
+                        aff, nn = "REAL", True
+                    elif typ in BOXED_REAL:
+                        aff, nn = "REAL", nonnull
+                    elif typ == "String":
+                        aff, nn = "TEXT", nonnull
+                    else:
+                        raise ValueError(f"type {typ}")
+                    fields.append({"name": name, "affinity": aff, "notNull": nn or pk is not None and aff != "TEXT",
+                                   "default": default,
+                                   "pk": pk is not None, "auto": pk is not None and "autoGenerate = true" in pk})
+                if s and not s.startswith("@"):
+                    pending = []
+        depth += line.count("{") - line.count("}")
+    return {"table": table, "indices": indices, "fks": fks, "fts": fts, "fields": fields}
+
+
+def column_def(f, auto_pk):
+    spec = ""
+    if auto_pk:
+        spec += " PRIMARY KEY AUTOINCREMENT"
+    if f["notNull"]:
+        spec += " NOT NULL"
+    if f["default"] is not None:
+        spec += " DEFAULT " + f["default"]
+    return f"`{f['name']}` {f['affinity']}{spec}"
+
+
+def build_bundle(e, tables):
+    t = "${TABLE_NAME}"
+    fields = [{"fieldPath": f["name"], "columnName": f["name"], "affinity": f["affinity"], "notNull": f["notNull"]}
+              for f in e["fields"]]
+    for bundle, f in zip(fields, e["fields"]):
+        if f["default"] is not None:
+            bundle["defaultValue"] = f["default"]
+    if e["fts"]:
+        content = tables[e["fts"]["content"]]
+        opts = []
+        if e["fts"]["tokenizer"] != "simple":
+            opts.append("tokenize=" + e["fts"]["tokenizer"])
+        opts.append(f"content=`{content}`")
+        if e["fts"]["prefix"]:
+            opts.append("prefix=`" + ",".join(map(str, e["fts"]["prefix"])) + "`")
+        create = (f"CREATE VIRTUAL TABLE IF NOT EXISTS `{t}` USING FTS4("
+                  + ", ".join([column_def(f, False) for f in e["fields"]] + opts) + ")")
+        names = [f["name"] for f in e["fields"]]
+        cols = ", ".join(f"`{n}`" for n in names)
+        vals = ", ".join(f"NEW.`{n}`" for n in names)
+        table = e["table"]
+        triggers = [
+            f"CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_{table}_BEFORE_UPDATE BEFORE UPDATE ON `{content}` "
+            f"BEGIN DELETE FROM `{table}` WHERE `docid`=OLD.`rowid`; END",
+            f"CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_{table}_BEFORE_DELETE BEFORE DELETE ON `{content}` "
+            f"BEGIN DELETE FROM `{table}` WHERE `docid`=OLD.`rowid`; END",
+            f"CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_{table}_AFTER_UPDATE AFTER UPDATE ON `{content}` "
+            f"BEGIN INSERT INTO `{table}`(`docid`, {cols}) VALUES (NEW.`rowid`, {vals}); END",
+            f"CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_{table}_AFTER_INSERT AFTER INSERT ON `{content}` "
+            f"BEGIN INSERT INTO `{table}`(`docid`, {cols}) VALUES (NEW.`rowid`, {vals}); END",
+        ]
+        return {
+            "ftsVersion": "FTS4",
+            "ftsOptions": {
+                "tokenizer": e["fts"]["tokenizer"],
+                "tokenizerArgs": [],
+                "contentTable": content,
+                "languageIdColumnName": "",
+                "matchInfo": "FTS4",
+                "notIndexedColumns": [],
+                "prefixSizes": e["fts"]["prefix"],
+                "preferredOrder": "ASC",
+            },
+            "contentSyncTriggers": triggers,
+            "tableName": e["table"],
+            "createSql": create,
+            "fields": fields,
+            "primaryKey": {"autoGenerate": False, "columnNames": []},
+            "indices": [],
+            "foreignKeys": [],
+        }
+    pk = [f for f in e["fields"] if f["pk"]]
+    auto = len(pk) == 1 and pk[0]["auto"]
+    defs = [column_def(f, auto and f["pk"]) for f in e["fields"]]
+    if not auto:
+        defs.append("PRIMARY KEY(" + ", ".join(f"`{f['name']}`" for f in pk) + ")")
+    for fk in e["fks"]:
+        defs.append(f"FOREIGN KEY(`{fk['child']}`) REFERENCES `{tables[fk['entity']]}`(`{fk['parent']}`) "
+                    f"ON UPDATE NO ACTION ON DELETE {fk['onDelete']} ")
+    return {
+        "tableName": e["table"],
+        "createSql": f"CREATE TABLE IF NOT EXISTS `{t}` (" + ", ".join(defs) + ")",
+        "fields": fields,
+        "primaryKey": {"autoGenerate": auto, "columnNames": [f["name"] for f in pk]},
+        "indices": [{
+            "name": f"index_{e['table']}_" + "_".join(cols),
+            "unique": False,
+            "columnNames": cols,
+            "orders": [],
+            "createSql": f"CREATE INDEX IF NOT EXISTS `index_{e['table']}_{'_'.join(cols)}` ON `{t}` ("
+                         + ", ".join(f"`{c}`" for c in cols) + ")",
+        } for cols in e["indices"]],
+        "foreignKeys": [{
+            "table": tables[fk["entity"]],
+            "onDelete": fk["onDelete"],
+            "onUpdate": "NO ACTION",
+            "columns": [fk["child"]],
+            "referencedColumns": [fk["parent"]],
+        } for fk in e["fks"]],
+    }
+
+
+# --- Room's SchemaIdentityKey ---
+SEPARATOR = "?:?"
+
+
+class IdKey:
+    def __init__(self):
+        self.sb = []
+
+    def append(self, s):
+        self.sb.append(s.replace(SEPARATOR, "\\" + SEPARATOR) + SEPARATOR)
+
+    def append_sorted(self, keys):
+        for k in sorted(keys, key=str.lower):
+            self.append(k)
+
+    def hash(self):
+        return hashlib.md5("".join(self.sb).encode("utf-8")).hexdigest()
+
+
+def field_key(f):
+    key = f"{f['columnName']}-{f['affinity']}-{'true' if f['notNull'] else 'false'}"
+    if "defaultValue" in f:
+        key += "-defaultValue=" + f["defaultValue"]
+    return key
+
+
+def entity_key(b):
+    k = IdKey()
+    k.append(b["tableName"])
+    if "ftsVersion" in b:
+        k.append_sorted([field_key(f) for f in b["fields"]])
+        k.append(b["ftsVersion"])
+        o = b["ftsOptions"]
+        k.append(o["tokenizer"])
+        k.append(",".join(o["tokenizerArgs"]))
+        k.append(o["contentTable"])
+        k.append(o["languageIdColumnName"])
+        k.append(o["matchInfo"])
+        k.append(",".join(o["notIndexedColumns"]))
+        k.append(",".join(map(str, o["prefixSizes"])))
+        k.append(o["preferredOrder"])
+        return k.hash()
+    pk = b["primaryKey"]
+    k.append("[" + ",".join(pk["columnNames"]) + "]-" + ("true" if pk["autoGenerate"] else "false"))
+    k.append_sorted([field_key(f) for f in b["fields"]])
+    k.append_sorted([f"{'true' if i['unique'] else 'false'}-{i['name']}-{','.join(i['columnNames'])}"
+                     for i in b["indices"]])
+    k.append_sorted([f"{fk['table']}-{','.join(fk['referencedColumns'])}-{','.join(fk['columns'])}"
+                     f"-{fk['onDelete']}-{fk['onUpdate']}-false" for fk in b["foreignKeys"]])
+    return k.hash()
+
+
+def main():
+    versions = last_commit_per_version()
+    if len(sys.argv) > 1:
+        versions = {int(k): v for k, v in (a.split("=") for a in sys.argv[1:])}
+    out_dir = os.path.join(REPO, "tools/schemas-reconstructed/com.lunartag.app.data.AppDatabase")
+    os.makedirs(out_dir, exist_ok=True)
+    for version, rev in sorted(versions.items()):
+        db_src = strip_comments(show(rev, "app/src/main/java/com/lunartag/app/data/AppDatabase.java"))
+        classes = re.findall(r"(\w+)\.class", re.search(r"entities\s*=\s*\{([^}]*)\}", db_src).group(1))
+        declared = int(re.search(r"version\s*=\s*(\d+)", db_src).group(1))
+        assert declared == version, (version, declared)
+        entities = {c: parse_entity(show(rev, MODEL + c + ".java")) for c in classes}
+        tables = {c: e["table"] for c, e in entities.items()}
+        bundles = [build_bundle(entities[c], tables) for c in classes]
+        k = IdKey()
+        k.append_sorted([entity_key(b) for b in bundles])
+        identity = k.hash()
+        schema = {
+            "formatVersion": 1,
+            "database": {
+                "version": version,
+                "identityHash": identity,
+                "entities": bundles,
+                "views": [],
+                "setupQueries": [
+                    "CREATE TABLE IF NOT EXISTS room_master_table (id INTEGER PRIMARY KEY,identity_hash TEXT)",
+                    f"INSERT OR REPLACE INTO room_master_table (id,identity_hash) VALUES(42, '{identity}')",
+                ],
+            },
+        }
+        with open(os.path.join(out_dir, f"{version}.json"), "w") as f:
+            json.dump(schema, f, indent=2)
+        print(version, rev, identity, [b["tableName"] for b in bundles])
+
+
+if __name__ == "__main__":
+    main()